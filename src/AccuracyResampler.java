@@ -0,0 +1,447 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/***
+ * An AccuracyResampler estimates how much the performance on Tricopa tasks would vary over other sets of similar tasks,
+ * by resampling the tasks: bootstrap resamples draw as many tasks as there are with replacement, and k-fold resamples
+ * partition the tasks into k folds.
+ *
+ * The performance on each task is found once and reused by every resample, so thousands of resamples take little longer than
+ * administering the tasks once. Only cross-validated training, in which knowledge is learned from the other folds before
+ * each fold is administered, administers tasks again.
+ * @author pkalluri
+ *
+ */
+public class AccuracyResampler {
+
+	/***
+	 * The fraction of resampled statistics outside a confidence interval, half below it and half above it.
+	 */
+	private static final double CONFIDENCE_ALPHA = .05;
+
+	/***
+	 * An estimate of a statistic from its value in each resample.
+	 */
+	public static class Estimate {
+		private final double mean;
+		private final double standardDeviation;
+		private final double lower;
+		private final double upper;
+		private final int numResamples;
+
+		/***
+		 * Construct the estimate of a statistic from its values, ignoring values that are not numbers.
+		 * @param values the value of the statistic in each resample
+		 */
+		Estimate(double[] values) {
+			double[] sortedValues = new double[values.length];
+			int numValues = 0;
+			double sum = 0;
+			for (double value : values) {
+				if (!Double.isNaN(value)) {
+					sortedValues[numValues] = value;
+					numValues ++;
+					sum += value;
+				}
+			}
+			sortedValues = Arrays.copyOf(sortedValues, numValues);
+			Arrays.sort(sortedValues);
+			this.numResamples = numValues;
+			this.mean = (numValues == 0) ? Double.NaN : sum / numValues;
+			double sumOfSquares = 0;
+			for (double value : sortedValues) {
+				sumOfSquares += (value - this.mean) * (value - this.mean);
+			}
+			this.standardDeviation = (numValues <= 1) ? 0 : Math.sqrt(sumOfSquares / (numValues - 1));
+			this.lower = AccuracyResampler.getPercentile(sortedValues, CONFIDENCE_ALPHA / 2);
+			this.upper = AccuracyResampler.getPercentile(sortedValues, 1 - CONFIDENCE_ALPHA / 2);
+		}
+
+		public double getMean() {
+			return this.mean;
+		}
+
+		public double getStandardDeviation() {
+			return this.standardDeviation;
+		}
+
+		/***
+		 * Get the lower end of the 95% percentile interval of the resampled statistic.
+		 * @return the 2.5th percentile of the statistic over resamples
+		 */
+		public double getLower() {
+			return this.lower;
+		}
+
+		/***
+		 * Get the upper end of the 95% percentile interval of the resampled statistic.
+		 * @return the 97.5th percentile of the statistic over resamples
+		 */
+		public double getUpper() {
+			return this.upper;
+		}
+
+		public int getNumberOfResamples() {
+			return this.numResamples;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%.1f%% +/- %.1f%% [%.1f%%, %.1f%%]", 100 * this.mean, 100 * this.standardDeviation, 100 * this.lower, 100 * this.upper);
+		}
+	}
+
+	/***
+	 * Estimates of the statistics reported by Simulation.getScoreStatement.
+	 * Only the percentile interval of bootstrap resamples, each as large as the set of tasks, is a confidence interval of the statistic
+	 * over a set of tasks; that of folds or partitions is their spread, as described by getInterval.
+	 */
+	public static class Estimates {
+		/***
+		 * The fraction of tasks answered.
+		 */
+		public final Estimate answeredRate;
+		/***
+		 * The fraction of answered tasks answered correctly.
+		 */
+		public final Estimate accuracyOnAnswered;
+		private final String interval;
+
+		Estimates(Estimate answeredRate, Estimate accuracyOnAnswered, String interval) {
+			this.answeredRate = answeredRate;
+			this.accuracyOnAnswered = accuracyOnAnswered;
+			this.interval = interval;
+		}
+
+		/***
+		 * Get what the percentile interval of each estimate is.
+		 * @return a description of the interval, e.g. "95% CI" or "per-fold 95% range"
+		 */
+		public String getInterval() {
+			return this.interval;
+		}
+	}
+
+	/***
+	 * The performance on each task, in task number order.
+	 */
+	private final int[] taskNumbers;
+	private final TricopaTaskPerformance[] performances;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTOR //////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a new AccuracyResampler of the given performance.
+	 * @param performanceOnTasks the performance on each task, by task number, e.g. from Simulation.administerTricopaTasks
+	 */
+	public AccuracyResampler(Map<Integer, TricopaTaskPerformance> performanceOnTasks) {
+		if (performanceOnTasks.isEmpty()) { throw new IllegalArgumentException("There must be at least one task."); }
+		Map<Integer, TricopaTaskPerformance> sortedPerformance = new TreeMap<Integer, TricopaTaskPerformance>(performanceOnTasks);
+		this.taskNumbers = new int[sortedPerformance.size()];
+		this.performances = new TricopaTaskPerformance[sortedPerformance.size()];
+		int i = 0;
+		for (Map.Entry<Integer, TricopaTaskPerformance> performanceOnTask : sortedPerformance.entrySet()) {
+			this.taskNumbers[i] = performanceOnTask.getKey();
+			this.performances[i] = performanceOnTask.getValue();
+			i ++;
+		}
+	}
+
+	public int getNumberOfTasks() {
+		return this.taskNumbers.length;
+	}
+
+	//////////////////////////////////////////
+	/////// RESAMPLING ///////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Estimate the statistics from bootstrap resamples, each drawing as many tasks as there are with replacement.
+	 * Resample r is drawn by a Random seeded with (seed + r), so the estimates do not depend on the number of threads.
+	 * @param numResamples the number of resamples to draw
+	 * @param seed
+	 * @param numThreads the number of threads among which to divide resamples
+	 * @return the estimates
+	 * @throws InterruptedException if interrupted while waiting for resamples
+	 */
+	public Estimates bootstrap(final int numResamples, final long seed, int numThreads) throws InterruptedException {
+		if (numResamples <= 0) { throw new IllegalArgumentException("The number of resamples must be positive."); }
+		if (numThreads <= 0) { throw new IllegalArgumentException("The number of threads must be positive."); }
+		final double[] answeredRates = new double[numResamples];
+		final double[] accuracies = new double[numResamples];
+		final int numShares = Math.min(numThreads, numResamples);
+
+		ExecutorService resamplers = Executors.newFixedThreadPool(numShares);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int share=0; share<numShares; share++) {
+				final int firstResample = share;
+				futures.add(resamplers.submit(new Runnable() {
+					@Override
+					public void run() {
+						int numTasks = AccuracyResampler.this.getNumberOfTasks();
+						for (int r=firstResample; r<numResamples; r+=numShares) {
+							Random random = new Random(seed + r);
+							int numCorrect = 0;
+							int numAnswered = 0;
+							for (int i=0; i<numTasks; i++) {
+								TricopaTaskPerformance performance = AccuracyResampler.this.performances[random.nextInt(numTasks)];
+								if (performance == TricopaTaskPerformance.CORRECT) { numCorrect ++; }
+								if (performance == TricopaTaskPerformance.CORRECT || performance == TricopaTaskPerformance.INCORRECT) { numAnswered ++; }
+							}
+							answeredRates[r] = (double) numAnswered / numTasks;
+							accuracies[r] = (numAnswered == 0) ? Double.NaN : (double) numCorrect / numAnswered;
+						}
+					}
+				}));
+			}
+			AccuracyResampler.waitFor(futures);
+		} finally {
+			resamplers.shutdownNow();
+		}
+		return new Estimates(new Estimate(answeredRates), new Estimate(accuracies), "95% CI");
+	}
+
+	/***
+	 * Estimate the statistics from the folds of the given number of k-fold partitions, each of a different shuffle of the tasks.
+	 * Each fold holds only about 1/k of the tasks, so the interval is the spread of the statistic over sets of that size, wider than
+	 * a confidence interval over the whole set; pooling the folds of a partition would merely give back the statistic over all tasks.
+	 * @param k the number of folds in a partition
+	 * @param repetitions the number of partitions
+	 * @param seed
+	 * @return the estimates, from one resample per fold of every partition
+	 */
+	public Estimates kFold(int k, int repetitions, long seed) {
+		if (k <= 1 || k > this.getNumberOfTasks()) { throw new IllegalArgumentException("The number of folds must be between 2 and the number of tasks."); }
+		Random random = new Random(seed);
+		double[] answeredRates = new double[k * repetitions];
+		double[] accuracies = new double[k * repetitions];
+		for (int repetition=0; repetition<repetitions; repetition++) {
+			List<List<Integer>> folds = AccuracyResampler.getFolds(this.getNumberOfTasks(), k, random);
+			for (int fold=0; fold<k; fold++) {
+				int numCorrect = 0;
+				int numAnswered = 0;
+				for (int i : folds.get(fold)) {
+					if (this.performances[i] == TricopaTaskPerformance.CORRECT) { numCorrect ++; }
+					if (this.performances[i] == TricopaTaskPerformance.CORRECT || this.performances[i] == TricopaTaskPerformance.INCORRECT) { numAnswered ++; }
+				}
+				answeredRates[repetition * k + fold] = (double) numAnswered / folds.get(fold).size();
+				accuracies[repetition * k + fold] = (numAnswered == 0) ? Double.NaN : (double) numCorrect / numAnswered;
+			}
+		}
+		return new Estimates(new Estimate(answeredRates), new Estimate(accuracies), "per-fold 95% range");
+	}
+
+	//////////////////////////////////////////
+	/////// CROSS-VALIDATED TRAINING /////////
+	//////////////////////////////////////////
+
+	/***
+	 * Cross-validate knowledge training: for each fold of each k-fold partition of the tasks, learn knowledge from the other
+	 * folds with a KnowledgeTrainer, starting from the given flags, and administer the fold with the learned knowledge.
+	 * Folds are trained in parallel.
+	 * @param tricopaTasks the numbered Tricopa tasks
+	 * @param answers the number of the correct choice of each task
+	 * @param characters the Strings known to refer to characters
+	 * @param actionFlags the flags of each action to start training from
+	 * @param k the number of folds in a partition
+	 * @param repetitions the number of partitions
+	 * @param maxPasses the most passes over all actions each KnowledgeTrainer makes
+	 * @param seed
+	 * @param numThreads the number of folds to train at once
+	 * @return the performance on each task when held out, by task number, in each partition
+	 * @throws InterruptedException if interrupted while waiting for training
+	 */
+	public static List<Map<Integer, TricopaTaskPerformance>> crossValidateTraining(Map<Integer, TricopaTask> tricopaTasks,
+			final Map<Integer, Integer> answers, final Set<String> characters, final Map<String, String> actionFlags,
+			int k, int repetitions, final int maxPasses, long seed, int numThreads) throws InterruptedException {
+		if (k <= 1 || k > tricopaTasks.size()) { throw new IllegalArgumentException("The number of folds must be between 2 and the number of tasks."); }
+		if (numThreads <= 0) { throw new IllegalArgumentException("The number of threads must be positive."); }
+		final List<Integer> taskNumbers = new ArrayList<Integer>(new TreeMap<Integer, TricopaTask>(tricopaTasks).keySet());
+		Random random = new Random(seed);
+
+		ExecutorService trainers = Executors.newFixedThreadPool(numThreads);
+		try {
+			List<Map<Integer, TricopaTaskPerformance>> heldOutPerformances = new ArrayList<Map<Integer, TricopaTaskPerformance>>();
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int repetition=0; repetition<repetitions; repetition++) {
+				final Map<Integer, TricopaTaskPerformance> heldOutPerformance = Collections.synchronizedMap(new TreeMap<Integer, TricopaTaskPerformance>());
+				heldOutPerformances.add(heldOutPerformance);
+				for (List<Integer> fold : AccuracyResampler.getFolds(taskNumbers.size(), k, random)) {
+					final Map<Integer, TricopaTask> trainingTasks = new TreeMap<Integer, TricopaTask>(tricopaTasks);
+					final Map<Integer, TricopaTask> heldOutTasks = new TreeMap<Integer, TricopaTask>();
+					for (int i : fold) {
+						heldOutTasks.put(taskNumbers.get(i), trainingTasks.remove(taskNumbers.get(i)));
+					}
+					futures.add(trainers.submit(new Callable<Void>() {
+						@Override
+						public Void call() throws InterruptedException {
+							KnowledgeTrainer trainer = new KnowledgeTrainer(trainingTasks, answers, characters, actionFlags);
+							trainer.train(maxPasses, 1);
+							heldOutPerformance.putAll(AccuracyResampler.administer(trainer.getActionFlags(), heldOutTasks, answers, characters));
+							return null;
+						}
+					}));
+				}
+			}
+			AccuracyResampler.waitFor(futures);
+			return heldOutPerformances;
+		} finally {
+			trainers.shutdownNow();
+		}
+	}
+
+	/***
+	 * Estimate the statistics from the given performances, one resample per performance, pooling every task of a performance.
+	 * For the partitions of crossValidateTraining, the interval is the spread of the statistic over partitions, i.e. how much
+	 * the held-out statistic depends on how the tasks are partitioned, not a confidence interval over other sets of tasks.
+	 * @param performances the performance on each task in each resample, e.g. from crossValidateTraining
+	 * @return the estimates
+	 */
+	public static Estimates getEstimates(List<Map<Integer, TricopaTaskPerformance>> performances) {
+		double[] answeredRates = new double[performances.size()];
+		double[] accuracies = new double[performances.size()];
+		for (int r=0; r<performances.size(); r++) {
+			int numCorrect = 0;
+			int numAnswered = 0;
+			for (TricopaTaskPerformance performance : performances.get(r).values()) {
+				if (performance == TricopaTaskPerformance.CORRECT) { numCorrect ++; }
+				if (performance == TricopaTaskPerformance.CORRECT || performance == TricopaTaskPerformance.INCORRECT) { numAnswered ++; }
+			}
+			answeredRates[r] = performances.get(r).isEmpty() ? Double.NaN : (double) numAnswered / performances.get(r).size();
+			accuracies[r] = (numAnswered == 0) ? Double.NaN : (double) numCorrect / numAnswered;
+		}
+		return new Estimates(new Estimate(answeredRates), new Estimate(accuracies), "per-partition 95% range");
+	}
+
+	/***
+	 * Get the fraction of the given partitions in which each task was answered correctly.
+	 * @param performances the performance on each task in each partition, e.g. from crossValidateTraining
+	 * @return map mapping each task number to the fraction of partitions in which it was answered correctly
+	 */
+	public static Map<Integer, Double> getStability(List<Map<Integer, TricopaTaskPerformance>> performances) {
+		Map<Integer, Double> stability = new TreeMap<Integer, Double>();
+		for (Map<Integer, TricopaTaskPerformance> performanceOnTasks : performances) {
+			for (Map.Entry<Integer, TricopaTaskPerformance> performanceOnTask : performanceOnTasks.entrySet()) {
+				double correct = (performanceOnTask.getValue() == TricopaTaskPerformance.CORRECT) ? 1 : 0;
+				Double sum = stability.get(performanceOnTask.getKey());
+				stability.put(performanceOnTask.getKey(), ((sum == null) ? 0 : sum) + correct);
+			}
+		}
+		for (Map.Entry<Integer, Double> taskStability : stability.entrySet()) {
+			taskStability.setValue(taskStability.getValue() / performances.size());
+		}
+		return stability;
+	}
+
+	//////////////////////////////////////////
+	/////// REPORTING ////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a table of the given estimates, one line per resampling method, in order, naming what each line's interval is.
+	 * @param methods a name for each resampling method, e.g. "bootstrap"
+	 * @param estimates the estimates of each resampling method
+	 * @return a table of the given estimates
+	 */
+	public static String getEstimatesTable(List<String> methods, List<Estimates> estimates) {
+		StringBuilder table = new StringBuilder();
+		int methodWidth = "Resampling".length();
+		for (String method : methods) {
+			methodWidth = Math.max(methodWidth, method.length());
+		}
+		int intervalWidth = "Interval".length();
+		for (Estimates estimate : estimates) {
+			intervalWidth = Math.max(intervalWidth, estimate.getInterval().length());
+		}
+		String format = "%-" + methodWidth + "s %-10s %-" + intervalWidth + "s %-34s %s%n";
+		table.append(String.format(format, "Resampling", "Resamples", "Interval", "Answered (mean +/- sd [interval])", "Correct of answered (mean +/- sd [interval])"));
+		for (int i=0; i<methods.size(); i++) {
+			table.append(String.format(format, methods.get(i), estimates.get(i).answeredRate.getNumberOfResamples(), estimates.get(i).getInterval(),
+					estimates.get(i).answeredRate, estimates.get(i).accuracyOnAnswered));
+		}
+		return table.toString();
+	}
+
+	//////////////////////////////////////////
+	/////// PRIVATE HELPERS //////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Partition the indices 0 to numTasks-1, shuffled by the given random, into k folds of nearly equal size.
+	 */
+	private static List<List<Integer>> getFolds(int numTasks, int k, Random random) {
+		List<Integer> indices = new ArrayList<Integer>();
+		for (int i=0; i<numTasks; i++) {
+			indices.add(i);
+		}
+		Collections.shuffle(indices, random);
+		List<List<Integer>> folds = new ArrayList<List<Integer>>();
+		for (int fold=0; fold<k; fold++) {
+			folds.add(new ArrayList<Integer>());
+		}
+		for (int i=0; i<numTasks; i++) {
+			folds.get(i % k).add(indices.get(i));
+		}
+		return folds;
+	}
+
+	/***
+	 * Get the value below which the given fraction of the given sorted values lie, interpolating between values.
+	 */
+	private static double getPercentile(double[] sortedValues, double fraction) {
+		if (sortedValues.length == 0) {
+			return Double.NaN;
+		}
+		double position = fraction * (sortedValues.length - 1);
+		int below = (int) Math.floor(position);
+		int above = Math.min(below + 1, sortedValues.length - 1);
+		return sortedValues[below] + (position - below) * (sortedValues[above] - sortedValues[below]);
+	}
+
+	/***
+	 * Administer the given tasks with knowledge of the given flags, giving actions the flags do not mention no flags.
+	 */
+	private static Map<Integer, TricopaTaskPerformance> administer(Map<String, String> actionFlags, Map<Integer, TricopaTask> tricopaTasks,
+			Map<Integer, Integer> answers, Set<String> characters) {
+		Map<String, ActionROD> actionKnowledgebase = new HashMap<String, ActionROD>();
+		for (Map.Entry<String, String> actionFlag : actionFlags.entrySet()) {
+			actionKnowledgebase.put(actionFlag.getKey(), FileUtility.getActionROD(actionFlag.getValue(), ModelParameters.DEFAULT_RATIO_PERMITTED_WITHIN_ROD));
+		}
+		TaskDependencyIndex index = new TaskDependencyIndex(tricopaTasks);
+		for (int taskNumber : tricopaTasks.keySet()) {
+			for (String action : index.getActions(taskNumber)) {
+				if (!actionKnowledgebase.containsKey(action)) {
+					actionKnowledgebase.put(action, FileUtility.getActionROD("", ModelParameters.DEFAULT_RATIO_PERMITTED_WITHIN_ROD));
+				}
+			}
+		}
+		MultiLaneEvaluator evaluator = new MultiLaneEvaluator(Arrays.asList(actionKnowledgebase), characters);
+		return evaluator.administerTricopaTasks(tricopaTasks, answers).get(0).performanceOnTasks;
+	}
+
+	private static void waitFor(List<? extends Future<?>> futures) throws InterruptedException {
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Resampling failed unexpectedly.", e.getCause());
+			}
+		}
+	}
+
+}
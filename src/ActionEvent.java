@@ -1,4 +1,5 @@
 
+import java.util.Objects;
 import java.util.Set;
 
 /***
@@ -43,6 +44,33 @@ public final class ActionEvent {
 		return (relationshipAgents.contains(this.actor) || relationshipAgents.contains(this.actedUpon));
 	}
 	
+	/***
+	 * Test this ActionEvent for equality with another Object.
+	 * 
+	 * @param other the other Object
+	 * @return true iff the other Object is an ActionEvent with the same actor, action, and actedUpon
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof ActionEvent)) {
+			return false;
+		}
+		ActionEvent otherActionEvent = (ActionEvent) other;
+		return Objects.equals(this.actor, otherActionEvent.actor) 
+				&& Objects.equals(this.action, otherActionEvent.action) 
+				&& Objects.equals(this.actedUpon, otherActionEvent.actedUpon);
+	}
+	
+	/***
+	 * Generate a hash code for this ActionEvent.
+	 * 
+	 * @return hash code for this ActionEvent
+	 */
+	@Override
+	public int hashCode() {
+		return Objects.hash(this.actor, this.action, this.actedUpon);
+	}
+	
 	@Override
 	public String toString() {
 		String str = "";
@@ -0,0 +1,297 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/***
+ * An ActionEventLog is an append-only file of the ActionEvents an agent has read, in the order they were read, with a small marker
+ * where each reading starts and finishes. Together with a WorldModelCheckpoint, it allows an interrupted reading to be recovered by
+ * restoring the checkpoint and replaying only what was logged after the checkpoint was taken.
+ *
+ * Each ActionEvent is logged as its actor, action and actedUpon, each written as a length-prefixed UTF-8 String
+ * (length -1 denotes null). A marker starts with an int below -1 instead:
+ * <pre>
+ * int     -2 (reading started)
+ * byte    1 iff the reading is of a followup scenario
+ * byte    belief storage (the ordinal of the world model's BeliefStorage)
+ * byte    1 iff the world model stores its belief history
+ * int     number of relationships the world model is projected onto, or -1 if it is not projected
+ * String  ... each projected relationship as two Strings
+ *
+ * int     -3 (reading finished)
+ * </pre>
+ * @author pkalluri
+ *
+ */
+public class ActionEventLog implements Closeable {
+
+	private static final int READING_STARTED = -2;
+	private static final int READING_FINISHED = -3;
+	
+	/***
+	 * The file holding the log.
+	 */
+	private final File file;
+
+	/***
+	 * The stream appending to the log, opened on the first append.
+	 */
+	private DataOutputStream output;
+
+	/***
+	 * The position (in bytes) at which the next ActionEvent will be logged.
+	 */
+	private long position;
+
+	////////////////////////////////////////////////////////////
+	//////// CONSTRUCTOR ///////////////////////////////////////
+	////////////////////////////////////////////////////////////
+
+	/***
+	 * Open the ActionEventLog in the indicated file. ActionEvents are appended after any already logged.
+	 * @param filename the name of the log file
+	 */
+	public ActionEventLog(String filename) {
+		this.file = new File(filename);
+		this.output = null;
+		this.position = this.file.length();
+	}
+
+	////////////////////////////////////////////////////////////
+	//////// WRITING ///////////////////////////////////////////
+	////////////////////////////////////////////////////////////
+
+	/***
+	 * Append the given actionEvent to the log.
+	 * @param actionEvent
+	 * @throws IOException
+	 */
+	public void append(ActionEvent actionEvent) throws IOException {
+		this.openOutput();
+		int sizeBefore = this.output.size();
+		WorldModelCheckpoint.writeString(this.output, actionEvent.actor);
+		WorldModelCheckpoint.writeString(this.output, actionEvent.action);
+		WorldModelCheckpoint.writeString(this.output, actionEvent.actedUpon);
+		this.position += this.output.size() - sizeBefore;
+	}
+	
+	/***
+	 * Append a marker of the start of a reading into a new world model built in the given way.
+	 * @param followupScenario true iff the reading is of a followup scenario, so memory is not reset
+	 * @param beliefStorage the way the world model stores its beliefs
+	 * @param storeHistory true iff the world model stores its belief history
+	 * @param projectedRelationships the relationships the world model is projected onto, or null if it is not projected
+	 * @throws IOException
+	 */
+	public void appendReadingStarted(boolean followupScenario, BeliefStorage beliefStorage, boolean storeHistory, 
+			Collection<Pair<String>> projectedRelationships) throws IOException {
+		this.openOutput();
+		int sizeBefore = this.output.size();
+		this.output.writeInt(READING_STARTED);
+		this.output.writeBoolean(followupScenario);
+		this.output.writeByte(beliefStorage.ordinal());
+		this.output.writeBoolean(storeHistory);
+		if (projectedRelationships == null) {
+			this.output.writeInt(-1);
+		} else {
+			this.output.writeInt(projectedRelationships.size());
+			for (Pair<String> relationship : projectedRelationships) {
+				Iterator<String> elements = relationship.getElements().iterator();
+				String a = elements.next();
+				WorldModelCheckpoint.writeString(this.output, a);
+				WorldModelCheckpoint.writeString(this.output, elements.hasNext() ? elements.next() : a);
+			}
+		}
+		this.position += this.output.size() - sizeBefore;
+	}
+	
+	/***
+	 * Append a marker of the end of the current reading, after its world model was reflected on.
+	 * @throws IOException
+	 */
+	public void appendReadingFinished() throws IOException {
+		this.openOutput();
+		this.output.writeInt(READING_FINISHED);
+		this.position += 4;
+	}
+
+	/***
+	 * Flush all appended ActionEvents to the file.
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		if (this.output != null) {
+			this.output.flush();
+		}
+	}
+
+	/***
+	 * Get the position (in bytes) at which the next ActionEvent or marker will be logged.
+	 * A WorldModelCheckpoint records this position so that replay can start where the checkpoint left off.
+	 * @return the position at which the next ActionEvent or marker will be logged
+	 */
+	public long getPosition() {
+		return this.position;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.output != null) {
+			this.output.close();
+			this.output = null;
+		}
+	}
+
+	////////////////////////////////////////////////////////////
+	//////// REPLAYING /////////////////////////////////////////
+	////////////////////////////////////////////////////////////
+
+	/***
+	 * Get everything logged at or after the given position, in the order it was logged.
+	 * A trailing ActionEvent or marker that was only partly written (for example because of a crash) is discarded
+	 * and cut from the file, so that later appends remain readable.
+	 * @param fromPosition the position (in bytes) of the first ActionEvent or marker to replay
+	 * @return the ActionEvents and markers logged at or after the given position
+	 * @throws IOException
+	 */
+	public List<Entry> replayFrom(long fromPosition) throws IOException {
+		this.close();
+		List<Entry> entries = new ArrayList<Entry>();
+		if (!this.file.exists()) {
+			this.position = 0;
+			return entries;
+		}
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(this.file, "rw")) {
+			FileChannel channel = randomAccessFile.getChannel();
+			long length = channel.size();
+			if (fromPosition > length) {
+				throw new IOException("Checkpoint refers to position " + fromPosition + " beyond the end of " + this.file + ".");
+			}
+
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, fromPosition, length - fromPosition);
+			int endOfLastCompleteEntry = 0;
+			while (buffer.hasRemaining()) {
+				Entry entry;
+				try {
+					entry = ActionEventLog.readEntry(buffer);
+				} catch (BufferUnderflowException e) {
+					break; //partly written
+				}
+				entries.add(entry);
+				endOfLastCompleteEntry = buffer.position();
+			}
+
+			this.position = fromPosition + endOfLastCompleteEntry;
+			if (this.position < length) {
+				channel.truncate(this.position);
+			}
+		}
+		return entries;
+	}
+
+	/***
+	 * Read one logged ActionEvent or marker from the given buffer.
+	 * @param buffer
+	 * @return the ActionEvent or marker
+	 * @throws BufferUnderflowException if the buffer ends before the ActionEvent or marker is complete
+	 * @throws IOException if the buffer holds something other than an ActionEvent or marker
+	 */
+	private static Entry readEntry(ByteBuffer buffer) throws IOException {
+		int start = buffer.position();
+		int tag = buffer.getInt();
+		if (tag == READING_FINISHED) {
+			return new Entry(null, false, true, false, null, false, null);
+		}
+		if (tag == READING_STARTED) {
+			boolean followupScenario = buffer.get() != 0;
+			int beliefStorageOrdinal = buffer.get();
+			if (beliefStorageOrdinal < 0 || beliefStorageOrdinal >= BeliefStorage.values().length) {
+				throw new IOException("A reading marker in the ActionEventLog records an unknown belief storage.");
+			}
+			boolean storeHistory = buffer.get() != 0;
+			int numProjectedRelationships = buffer.getInt();
+			List<Pair<String>> projectedRelationships = null;
+			if (numProjectedRelationships >= 0) {
+				projectedRelationships = new ArrayList<Pair<String>>();
+				for (int i=0; i<numProjectedRelationships; i++) {
+					projectedRelationships.add(new Pair<String>(WorldModelCheckpoint.readString(buffer), WorldModelCheckpoint.readString(buffer)));
+				}
+			}
+			return new Entry(null, true, false, followupScenario, BeliefStorage.values()[beliefStorageOrdinal], storeHistory, projectedRelationships);
+		}
+		if (tag < -1) {
+			throw new IOException("The ActionEventLog holds an entry of unknown kind " + tag + ".");
+		}
+		buffer.position(start); //the tag was the length of the actor
+		String actor = WorldModelCheckpoint.readString(buffer);
+		String action = WorldModelCheckpoint.readString(buffer);
+		String actedUpon = WorldModelCheckpoint.readString(buffer);
+		return new Entry(new ActionEvent(actor, action, actedUpon), false, false, false, null, false, null);
+	}
+
+	/***
+	 * Helper: open the stream appending to the log, if it is not already open.
+	 * @throws IOException
+	 */
+	private void openOutput() throws IOException {
+		if (this.output == null) {
+			this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.file, true)));
+		}
+	}
+
+	////////////////////////////////////////////////////////////
+	//////// ENTRIES ///////////////////////////////////////////
+	////////////////////////////////////////////////////////////
+
+	/***
+	 * An Entry is one ActionEvent or marker replayed from an ActionEventLog.
+	 * @author pkalluri
+	 *
+	 */
+	public static class Entry {
+
+		/***
+		 * The logged ActionEvent, or null if this entry is a marker.
+		 */
+		public final ActionEvent actionEvent;
+
+		/***
+		 * True iff this entry marks the start of a reading, or the end of a reading.
+		 */
+		public final boolean readingStarted;
+		public final boolean readingFinished;
+
+		/***
+		 * If this entry marks the start of a reading: whether it is of a followup scenario, and how its world model was built.
+		 */
+		public final boolean followupScenario;
+		public final BeliefStorage beliefStorage;
+		public final boolean storeHistory;
+		public final List<Pair<String>> projectedRelationships;
+
+		private Entry(ActionEvent actionEvent, boolean readingStarted, boolean readingFinished, boolean followupScenario,
+				BeliefStorage beliefStorage, boolean storeHistory, List<Pair<String>> projectedRelationships) {
+			this.actionEvent = actionEvent;
+			this.readingStarted = readingStarted;
+			this.readingFinished = readingFinished;
+			this.followupScenario = followupScenario;
+			this.beliefStorage = beliefStorage;
+			this.storeHistory = storeHistory;
+			this.projectedRelationships = projectedRelationships;
+		}
+
+	}
+
+}
@@ -0,0 +1,73 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/***
+ * An ActionEventTrie holds a list of Scenarios as a trie of their ActionEvents, so that Scenarios beginning with 
+ * the same ActionEvents share the nodes for those ActionEvents.
+ * Reading the trie depth-first reads each shared prefix only once.
+ * @author pkalluri
+ *
+ */
+public class ActionEventTrie {
+	
+	/***
+	 * A node of an ActionEventTrie, reached by reading the ActionEvents on the path from the root.
+	 */
+	static class Node {
+		/***
+		 * The nodes reached by reading one more ActionEvent, in the order the ActionEvents were first inserted.
+		 */
+		final Map<ActionEvent, Node> children = new LinkedHashMap<ActionEvent, Node>();
+		
+		/***
+		 * The indices of the Scenarios that end at this node.
+		 */
+		final List<Integer> endingScenarios = new ArrayList<Integer>();
+	}
+	
+	/***
+	 * The node reached by reading no ActionEvents.
+	 */
+	final Node root;
+	
+	/***
+	 * The number of nodes in this trie, excluding the root.
+	 */
+	private int size;
+	
+	////////////////////////////////////////////////////////////
+	//////// CONSTRUCTOR ///////////////////////////////////////
+	////////////////////////////////////////////////////////////
+	
+	/***
+	 * Create an ActionEventTrie holding the given scenarios. Each Scenario is identified by its index in the given list.
+	 * @param scenarios
+	 */
+	public ActionEventTrie(List<Scenario> scenarios) {
+		this.root = new Node();
+		this.size = 0;
+		for (int i=0; i<scenarios.size(); i++) {
+			Node node = this.root;
+			for (ActionEvent actionEvent : scenarios.get(i).actionEvents) {
+				Node child = node.children.get(actionEvent);
+				if (child == null) {
+					child = new Node();
+					node.children.put(actionEvent, child);
+					this.size ++;
+				}
+				node = child;
+			}
+			node.endingScenarios.add(i);
+		}
+	}
+	
+	/***
+	 * Get the number of distinct ActionEvents that must be read to read all Scenarios in this trie.
+	 * @return the number of nodes in this trie, excluding the root
+	 */
+	public int size() {
+		return this.size;
+	}
+}
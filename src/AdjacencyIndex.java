@@ -0,0 +1,170 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/***
+ * An AdjacencyIndex indexes the modeled relationships of each agent, so that questions like "who are X's strongest enemies"
+ * are answered without scanning every relationship.
+ *
+ * For each agent and each RelationshipType, the agents it has a modeled relationship with are kept in a balanced search tree
+ * ordered by the believed probability of that RelationshipType. A change of beliefs moves the relationship within its two agents' trees
+ * in O(log degree), and the top k are read off a tree in O(log degree + k).
+ *
+ * An AdjacencyIndex is kept up to date as a BeliefChangeListener of a world model (see AffinitybasedWorldModel.getAdjacencyIndex).
+ * Beliefs that decay change without notifying listeners, so a relationship is placed by its beliefs as of its last update or its last
+ * refresh; AffinitybasedWorldModel.getMostBelieved refreshes an agent's relationships, caught up on decay, before reading off its top k.
+ * @author pkalluri
+ *
+ */
+public class AdjacencyIndex implements BeliefChangeListener {
+
+	/***
+	 * An Adjacency is an agent adjacent to an indexed agent, with the believed probability of a RelationshipType between them.
+	 */
+	private static final class Adjacency implements Comparable<Adjacency> {
+		final String agent;
+		final double probability;
+
+		Adjacency(String agent, double probability) {
+			this.agent = agent;
+			this.probability = probability;
+		}
+
+		@Override
+		public int compareTo(Adjacency other) {
+			int comparison = Double.compare(other.probability, this.probability); //most probable first
+			return (comparison != 0) ? comparison : this.agent.compareTo(other.agent);
+		}
+	}
+
+	/***
+	 * The indexed agents -- mapped to, for each RelationshipType (by ordinal), their adjacent agents ordered by the believed probability of that RelationshipType.
+	 */
+	private final Map<String, List<TreeSet<Adjacency>>> adjacencies;
+
+	/***
+	 * The indexed agents -- mapped to their adjacent agents -- mapped to their indexed Adjacencies (by ordinal of RelationshipType).
+	 */
+	private final Map<String, Map<String, Adjacency[]>> indexedAdjacencies;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTOR //////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a new AdjacencyIndex indexing no relationships.
+	 */
+	public AdjacencyIndex() {
+		this.adjacencies = new HashMap<String, List<TreeSet<Adjacency>>>();
+		this.indexedAdjacencies = new HashMap<String, Map<String, Adjacency[]>>();
+	}
+
+	//////////////////////////////////////////
+	/////// OVERRIDE INTERFACE METHODS ///////
+	//////////////////////////////////////////
+
+	@Override
+	public void beliefsChanged(Pair<String> relationship, Map<RelationshipType, Double> previousBeliefs, Map<RelationshipType, Double> beliefs, int age) {
+		Iterator<String> elements = relationship.getElements().iterator();
+		String a = elements.next();
+		if (!elements.hasNext()) {
+			return; //an agent's relationship with itself is not an adjacency
+		}
+		String b = elements.next();
+		this.index(a, b, beliefs);
+		this.index(b, a, beliefs);
+	}
+
+	//////////////////////////////////////////
+	/////// QUERYING /////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Get up to k agents the given agent is most believed to have the given RelationshipType with, most believed first.
+	 * Agents believed equally likely are ordered by name.
+	 * @param agent
+	 * @param relationshipType
+	 * @param k
+	 * @return up to k agents the given agent is most believed to have the given RelationshipType with
+	 */
+	public List<String> getTop(String agent, RelationshipType relationshipType, int k) {
+		List<String> top = new ArrayList<String>();
+		List<TreeSet<Adjacency>> agentAdjacencies = this.adjacencies.get(agent);
+		if (agentAdjacencies == null) {
+			return top;
+		}
+		for (Adjacency adjacency : agentAdjacencies.get(relationshipType.ordinal())) {
+			if (top.size() >= k) {
+				break;
+			}
+			top.add(adjacency.agent);
+		}
+		return top;
+	}
+
+	/***
+	 * Get the number of agents the given agent has an indexed relationship with.
+	 * @param agent
+	 * @return the degree of the given agent
+	 */
+	public int getDegree(String agent) {
+		Map<String, Adjacency[]> agentAdjacencies = this.indexedAdjacencies.get(agent);
+		return (agentAdjacencies == null) ? 0 : agentAdjacencies.size();
+	}
+
+	/***
+	 * Get the agents the given agent has an indexed relationship with.
+	 * @param agent
+	 * @return the agents adjacent to the given agent
+	 */
+	public List<String> getAdjacentAgents(String agent) {
+		Map<String, Adjacency[]> agentAdjacencies = this.indexedAdjacencies.get(agent);
+		return (agentAdjacencies == null) ? new ArrayList<String>() : new ArrayList<String>(agentAdjacencies.keySet());
+	}
+
+	//////////////////////////////////////////
+	/////// PRIVATE HELPERS //////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Index the given beliefs about the relationship of the given agent with the given adjacent agent, replacing any indexed before.
+	 * @param agent
+	 * @param adjacentAgent
+	 * @param beliefs
+	 */
+	private void index(String agent, String adjacentAgent, Map<RelationshipType, Double> beliefs) {
+		List<TreeSet<Adjacency>> agentAdjacencies = this.adjacencies.get(agent);
+		Map<String, Adjacency[]> agentIndexedAdjacencies = this.indexedAdjacencies.get(agent);
+		if (agentAdjacencies == null) {
+			agentAdjacencies = new ArrayList<TreeSet<Adjacency>>();
+			for (int i=0; i<RelationshipType.values().length; i++) {
+				agentAdjacencies.add(new TreeSet<Adjacency>());
+			}
+			this.adjacencies.put(agent, agentAdjacencies);
+			agentIndexedAdjacencies = new HashMap<String, Adjacency[]>();
+			this.indexedAdjacencies.put(agent, agentIndexedAdjacencies);
+		}
+
+		Adjacency[] indexed = agentIndexedAdjacencies.get(adjacentAgent);
+		if (indexed == null) {
+			indexed = new Adjacency[RelationshipType.values().length];
+			agentIndexedAdjacencies.put(adjacentAgent, indexed);
+		}
+		for (RelationshipType relationshipType : RelationshipType.values()) {
+			int i = relationshipType.ordinal();
+			double probability = beliefs.get(relationshipType);
+			if (indexed[i] != null) {
+				if (indexed[i].probability == probability) {
+					continue;
+				}
+				agentAdjacencies.get(i).remove(indexed[i]);
+			}
+			indexed[i] = new Adjacency(adjacentAgent, probability);
+			agentAdjacencies.get(i).add(indexed[i]);
+		}
+	}
+
+}
@@ -1,10 +1,17 @@
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 
 /***
  * An AffinitybasedAgent interprets social scenarios by deducing the affinities of the constituent relationships.
@@ -17,7 +24,7 @@ import java.util.Set;
  * @author pkalluri
  *
  */
-public class AffinitybasedAgent implements TricopaParticipant {
+public class AffinitybasedAgent implements TricopaParticipant, Closeable {
 	
 	/***
 	 * The agent's knowledge about actions.
@@ -25,9 +32,9 @@ public class AffinitybasedAgent implements TricopaParticipant {
 	private final Map<String, ActionROD> actionKnowledgebase;
 	
 	/***
-	 * The Strings that the agent knows refer to non-agents.
+	 * Fills ActionEvents about non-agents with recently observed agents, by assuming implicit response.
 	 */
-	private final Set<String> characters;
+	private final ImplicitResponseResolver implicitResponseResolver;
 	
 	/***
 	 * The agent's memory of recently observed agents.
@@ -39,8 +46,84 @@ public class AffinitybasedAgent implements TricopaParticipant {
 	 */
 	private AffinitybasedWorldModel  rememberedWorldModel;
 	
+	/***
+	 * The way the world models the agent builds store their beliefs, and whether they store their belief history.
+	 */
+	private BeliefStorage beliefStorage;
+	private boolean storingHistory;
+	
+	/***
+	 * The number of ActionEvents read so far while building the most recently built AffinitybasedWorldModel.
+	 */
+	private long numEventsRead;
+	
+	/***
+	 * The log to which read ActionEvents are appended, or null if checkpointing is off.
+	 */
+	private ActionEventLog eventLog;
+	
+	/***
+	 * The file to which checkpoints are written, if checkpointing is on.
+	 */
+	private String checkpointFilename;
+	
+	/***
+	 * The number of ActionEvents to read between consecutive checkpoints, if checkpointing is on.
+	 */
+	private int eventsBetweenCheckpoints;
+	
+	/***
+	 * The number of ActionEvents logged since the last checkpoint, if checkpointing is on.
+	 */
+	private int numEventsSinceCheckpoint;
+	
+	/***
+	 * True iff checkpoints should include the belief history of the world model, if checkpointing is on.
+	 */
+	private boolean checkpointHistory;
+	
 	private final boolean verbose;
 	
+	/***
+	 * The sink to which the agent's reading and choosing is traced, or null if tracing is off.
+	 */
+	private TraceSink traceSink;
+	
+	/***
+	 * The console sink a verbose agent creates for itself, with a thread of its own, or null once it is replaced or closed.
+	 */
+	private AsyncTraceSink consoleTraceSink;
+	
+	/***
+	 * The world model whose belief changes are being traced, if tracing is on.
+	 */
+	private AffinitybasedWorldModel tracedWorldModel;
+	
+	/***
+	 * Traces the belief changes of the traced world model.
+	 */
+	private final BeliefChangeListener beliefChangeTracer;
+	
+	/***
+	 * The metrics to which the agent's reading and choosing is counted.
+	 */
+	private AgentMetrics metrics;
+	
+	/***
+	 * The constants by which the agent interprets knowledge and revises beliefs.
+	 */
+	private ModelParameters parameters;
+	
+	/***
+	 * The normalized log probability of each choice of the Tricopa task last done, or NaN for choices not scored completely.
+	 */
+	private double[] lastChoiceScores;
+	
+	/***
+	 * True iff every choice is scored completely, rather than cutting short any choice that can no longer win.
+	 */
+	private boolean scoringEveryChoice;
+	
 	private NumberFormat percentageFormat; //convenient format to use for percentages
 	
 	////////////////////////////////////////////////////////////
@@ -55,15 +138,32 @@ public class AffinitybasedAgent implements TricopaParticipant {
 	 */
 	public AffinitybasedAgent(Map<String, ActionROD> actionKnowledgebase, Set<String> characters, boolean verbose) {
 		this.actionKnowledgebase = actionKnowledgebase;
-		this.characters = characters;
+		this.implicitResponseResolver = new ImplicitResponseResolver(characters);
 		
 		this.rememberedAgents = new RecentlyObservedAgentsMemory();
 		this.rememberedWorldModel = null;
+		this.beliefStorage = BeliefStorage.HEAP;
+		this.storingHistory = true;
+		this.numEventsRead = 0;
+		this.eventLog = null;
 		
 		this.verbose = verbose;
 		
 		this.percentageFormat = NumberFormat.getPercentInstance();
 		this.percentageFormat.setMinimumIntegerDigits(2);
+		
+		this.metrics = new AgentMetrics();
+		this.parameters = ModelParameters.DEFAULT;
+		
+		this.consoleTraceSink = verbose ? new AsyncTraceSink(new ConsoleTraceSink(System.out)) : null;
+		this.traceSink = this.consoleTraceSink;
+		this.tracedWorldModel = null;
+		this.beliefChangeTracer = new BeliefChangeListener() {
+			@Override
+			public void beliefsChanged(Pair<String> relationship, Map<RelationshipType, Double> previousBeliefs, Map<RelationshipType, Double> beliefs, int age) {
+				AffinitybasedAgent.this.trace(new TraceRecord.BeliefsChanged(relationship, beliefs, age));
+			}
+		};
 	}
 
 	////////////////////////////////////////////////////////////
@@ -96,6 +196,53 @@ public class AffinitybasedAgent implements TricopaParticipant {
 		this.getWorldModelOf(scenario, followupScenario, true, relationship);
 	}
 	
+	/***
+	 * Read the given scenario projected onto the given relationships, given the scenario may or may not be a followupScenario.
+	 * Reading projected onto the given relationships means the agent only models the given relationships, so that reading 
+	 * costs little more than remembering recently observed agents for ActionEvents about other relationships.
+	 * The agent's beliefs about the given relationships are the same as if it had read the whole scenario,
+	 * but it has no beliefs about other relationships.
+	 * If the scenario is a followupScenario, then memory flows continuously from the last interpreted scenario 
+	 * into the interpretation of this scenario.
+	 * @param scenario the scenario to read
+	 * @param followupScenario true iff the agent should consider its memory from the previous scenario while building
+	 * @param relationships the relationships to read about
+	 * @throws InsufficientActionKnowledgeException there was insufficient knowledge to read the scenario
+	 */
+	public void readProjectedOnto(Scenario scenario, boolean followupScenario, Collection<Pair<String>> relationships) throws InsufficientActionKnowledgeException {
+		this.getWorldModelOf(scenario, followupScenario, false, null, new AffinitybasedWorldModel(relationships, this.beliefStorage, this.storingHistory));
+	}
+	
+	/***
+	 * Read the given scenario into the given, possibly shared, worldModel without reflecting on it, given the scenario may or 
+	 * may not be a followupScenario. Several agents, each reading its own scenario, may read into the same
+	 * ConcurrentAffinitybasedWorldModel at once; the owner of the world model reflects on it once all reading is done.
+	 * The world model revises beliefs by its own constants, so it should be constructed with the agent's ModelParameters.
+	 * If the scenario is a followupScenario, then memory flows continuously from the last interpreted scenario 
+	 * into the interpretation of this scenario.
+	 * @param worldModel the world model to read into
+	 * @param scenario the scenario to read
+	 * @param followupScenario true iff the agent should consider its memory from the previous scenario while reading
+	 * @throws InsufficientActionKnowledgeException there was insufficient knowledge to read the scenario
+	 */
+	public void readInto(WorldModel worldModel, Scenario scenario, boolean followupScenario) throws InsufficientActionKnowledgeException {
+		if (!followupScenario) { //new scneario, reset memory of agents
+			rememberedAgents.reset();
+		}
+		for (ActionEvent actionEvent : scenario.actionEvents) {
+			//check for knowledge
+			if (	!actionKnowledgebase.containsKey(actionEvent.action)	) { 
+				this.metrics.knowledgeMisses.increment();
+				throw new InsufficientActionKnowledgeException (actionEvent.action);
+			}
+			try {
+				this.updateWith(worldModel, actionEvent, actionKnowledgebase.get(actionEvent.action));
+			} catch (UnableToFillActionEventException e) {
+				//memory was still updated
+			}
+		}
+	}
+	
 	/***
 	 * Build a world model of the given scenario with a possible focus on the given relationship,
 	 * given the scenario may or may not be a followupScenario.
@@ -109,81 +256,159 @@ public class AffinitybasedAgent implements TricopaParticipant {
 	 * @throws InsufficientActionKnowledgeException there was insufficient knowledge to get a world model of the scenario
 	 */
 	private AffinitybasedWorldModel getWorldModelOf(Scenario scenario, boolean followupScenario, boolean focus, Pair<String> relationship) throws InsufficientActionKnowledgeException {
-		if (verbose) {
-			this.printThreeColumnTextLine("", "(Friend|Neutral|Enemy)", "(Friend|Neutral|Enemy)");
-			this.printThreeColumnTextLine("Event", "Action R.O.D.", "Beliefs about relationships");
-			System.out.println("----------------------------------------------------------------");
+		return this.getWorldModelOf(scenario, followupScenario, focus, relationship, new AffinitybasedWorldModel(this.beliefStorage, this.storingHistory));
+	}
+	
+	/***
+	 * Build the given empty worldModel into a world model of the given scenario with a possible focus on the given relationship,
+	 * given the scenario may or may not be a followupScenario.
+	 * @param scenario the scenario to build a world model of
+	 * @param followupScenario true iff the agent should consider its memory from the previous scenario while building
+	 * @param worldModel the empty world model to build
+	 * @return the world model of the given scenario 
+	 * @throws InsufficientActionKnowledgeException there was insufficient knowledge to get a world model of the scenario
+	 */
+	private AffinitybasedWorldModel getWorldModelOf(Scenario scenario, boolean followupScenario, boolean focus, Pair<String> relationship, AffinitybasedWorldModel worldModel) throws InsufficientActionKnowledgeException {
+		long startNanos = System.nanoTime();
+		this.startReading(worldModel, followupScenario);
+		
+		try {
+			this.readActionEvents(worldModel, scenario.actionEvents, focus, relationship);
+			this.finishReading(worldModel, focus, relationship);
+		} finally {
+			this.flushTrace();
+			this.metrics.scenariosRead.increment();
+			this.metrics.scenarioReadTimes.recordSince(startNanos);
 		}
+		return worldModel;
+	}
+	
+	/***
+	 * Start reading into the given empty worldModel, given the scenario may or may not be a followupScenario, logging the start if checkpointing is on.
+	 * @param worldModel the empty world model to build
+	 * @param followupScenario true iff the agent should consider its memory from the previous scenario while building
+	 */
+	private void startReading(AffinitybasedWorldModel worldModel, boolean followupScenario) {
+		worldModel.setParameters(this.parameters);
+		this.traceWorldModel(worldModel);
+		this.trace(new TraceRecord.ReadingStarted());
 		
 		//Reset memory
-		AffinitybasedWorldModel worldModel = new AffinitybasedWorldModel();
 		if (!followupScenario) { //new scneario, reset memory of agents
 			rememberedAgents.reset();
 		}
-		this.rememberedWorldModel = worldModel;
-		
-		for (ActionEvent actionEvent : scenario.actionEvents ) {
-			//check for knowledge
-			if (	!actionKnowledgebase.containsKey(actionEvent.action)	) { 
-				throw new InsufficientActionKnowledgeException (actionEvent.action);
-			}
-			ActionROD actionKnowledge = actionKnowledgebase.get(actionEvent.action);
+		this.remember(worldModel);
+		this.numEventsRead = 0;
+		if (this.eventLog != null) { //mark the start of this reading, so that its ActionEvents are never replayed onto an earlier reading
 			try {
-				ActionEvent fullActionEvent = this.getFullActionEvent(actionEvent); //get action event with 2 agents, by assuming implicit response
-				
-				worldModel.update(fullActionEvent, actionKnowledge);
-				this.updateMemory(fullActionEvent);
-				
-				if (verbose) {
-					if (!focus) {
-						String worldModelConciseString = worldModel.toConciseString();
-						String newline = System.getProperty("line.separator");
-						if (worldModelConciseString.contains(newline) ) { // long world model string
-							worldModelConciseString = this.tabOverMultiLineString(worldModelConciseString);
-						}						
-						this.printThreeColumnTextLine(actionEvent.toString(), actionKnowledge.toConciseString(), worldModelConciseString);				
-					} else { 
-						if (fullActionEvent.containsEither(relationship)) { //focus on only logging information relevant to the given relationship
-							String worldModelString = worldModel.toConciseString(relationship); //(will never be long string)
-							this.printThreeColumnTextLine(actionEvent.toString(), actionKnowledge.toConciseString(), worldModelString);				
-						}
-					}
-				}
-			} catch (UnableToFillActionEventException e) {
-				this.updateMemory(actionEvent); //still update memory
-				
-				if (verbose) {
-					if (!focus) {
-						String worldModelConciseString = worldModel.toConciseString();
-						String newline = System.getProperty("line.separator");
-						if (worldModelConciseString.contains(newline) ) { // long world model string
-							worldModelConciseString = this.tabOverMultiLineString(worldModelConciseString);
-						}						
-						this.printThreeColumnTextLine(actionEvent.toString(), actionKnowledge.toConciseString(), worldModelConciseString);				
-					} else { 
-						//don't print, not relevant to focus
+				this.eventLog.appendReadingStarted(followupScenario, worldModel.getBeliefStorage(), worldModel.isStoringHistory(), 
+						worldModel.getProjectedRelationships());
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+	
+	/***
+	 * Read the given actionEvents into the given worldModel, logging and checkpointing if checkpointing is on.
+	 * @param worldModel the world model being built
+	 * @param actionEvents the ActionEvents to read
+	 * @param focus true iff verbose logging should focus on the given relationship
+	 * @param relationship the relationship to focus on, if any
+	 * @throws InsufficientActionKnowledgeException there was insufficient knowledge to read an ActionEvent
+	 */
+	private void readActionEvents(AffinitybasedWorldModel worldModel, List<ActionEvent> actionEvents, boolean focus, Pair<String> relationship) throws InsufficientActionKnowledgeException {
+		for (ActionEvent actionEvent : actionEvents) {
+			this.readActionEvent(worldModel, actionEvent, focus, relationship);
+			this.numEventsRead ++;
+			
+			if (this.eventLog != null) {
+				try {
+					this.eventLog.append(actionEvent);
+					this.numEventsSinceCheckpoint ++;
+					if (this.numEventsSinceCheckpoint >= this.eventsBetweenCheckpoints) {
+						this.checkpoint(false);
 					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
 				}
 			}
 		}//done with events
+	}
+	
+	/***
+	 * Read the given actionEvent into the given worldModel.
+	 * @param worldModel the world model being built
+	 * @param actionEvent the ActionEvent to read
+	 * @param focus true iff verbose logging should focus on the given relationship
+	 * @param relationship the relationship to focus on, if any
+	 * @throws InsufficientActionKnowledgeException there was insufficient knowledge to read the ActionEvent
+	 */
+	private void readActionEvent(AffinitybasedWorldModel worldModel, ActionEvent actionEvent, boolean focus, Pair<String> relationship) throws InsufficientActionKnowledgeException {
+		this.checkForCancellation();
+		//check for knowledge
+		if (	!actionKnowledgebase.containsKey(actionEvent.action)	) { 
+			this.metrics.knowledgeMisses.increment();
+			throw new InsufficientActionKnowledgeException (actionEvent.action);
+		}
+		ActionROD actionKnowledge = actionKnowledgebase.get(actionEvent.action);
+		int numberOfRelationships = worldModel.getNumberOfRelationships();
+		try {
+			ActionEvent fullActionEvent = this.updateWith(worldModel, actionEvent, actionKnowledge);
+			this.metrics.pairsCreated.add(worldModel.getNumberOfRelationships() - numberOfRelationships);
+			if (this.traceSink != null) {
+				this.trace(new TraceRecord.ActionEventRead(actionEvent, actionKnowledge, fullActionEvent, focus ? relationship : null));
+			}
+		} catch (UnableToFillActionEventException e) {
+			if (this.traceSink != null) {
+				this.trace(new TraceRecord.ActionEventRead(actionEvent, actionKnowledge, null, focus ? relationship : null));
+			}
+		}
+	}
+	
+	/***
+	 * Update the given worldModel and memory with the given actionEvent.
+	 * @param worldModel the world model being built
+	 * @param actionEvent the ActionEvent read
+	 * @param actionKnowledge the knowledge about the action in the ActionEvent
+	 * @return the ActionEvent with 2 agents, by assuming implicit response
+	 * @throws UnableToFillActionEventException if the ActionEvent could not be filled, in which case only memory was updated
+	 */
+	private ActionEvent updateWith(WorldModel worldModel, ActionEvent actionEvent, ActionROD actionKnowledge) throws UnableToFillActionEventException {
+		this.metrics.eventsRead.increment();
+		ActionEvent fullActionEvent;
+		try {
+			fullActionEvent = this.getFullActionEvent(actionEvent); //get action event with 2 agents, by assuming implicit response
+		} catch (UnableToFillActionEventException e) {
+			this.updateMemory(actionEvent); //still update memory
+			throw e;
+		}
+		worldModel.update(fullActionEvent, actionKnowledge);
+		this.updateMemory(fullActionEvent);
+		return fullActionEvent;
+	}
+	
+	/***
+	 * Finish reading into the given worldModel by reflecting on and refining its beliefs, logging the end if checkpointing is on.
+	 * @param worldModel the world model being built
+	 * @param focus true iff verbose logging should focus on the given relationship
+	 * @param relationship the relationship to focus on, if any
+	 */
+	private void finishReading(AffinitybasedWorldModel worldModel, boolean focus, Pair<String> relationship) {
+		long startNanos = System.nanoTime();
 		worldModel.reflectOnAndRefineBeliefs();
+		this.metrics.reflectionTimes.recordSince(startNanos);
 		
-		if (verbose) {
-			if (!focus) {
-				String worldModelConciseString = worldModel.toConciseString();
-				String newline = System.getProperty("line.separator");
-				if (worldModelConciseString.contains(newline) ) { // long world model string
-					worldModelConciseString = this.tabOverMultiLineString(worldModelConciseString);
-				}						
-				this.printThreeColumnTextLine("Reflecting", "", worldModelConciseString);				
-			} else { 
-				String worldModelString = worldModel.toConciseString(relationship); //(will never be long string)
-				this.printThreeColumnTextLine("Reflecting", "", worldModelString);				
+		if (this.eventLog != null) { //a finished reading is replayed by reflecting again, so it needs no checkpoint of its own
+			try {
+				this.eventLog.appendReadingFinished();
+				this.eventLog.flush();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
 			}
-			
-			System.out.println(); //end of reading this scenario
 		}
-		return worldModel;
+		
+		this.trace(new TraceRecord.ReadingFinished(focus ? relationship : null));
 	}
 	
 	/***
@@ -199,6 +424,116 @@ public class AffinitybasedAgent implements TricopaParticipant {
 		return (eventAgents.equals(relationship.getElements()));
 	}
 	
+	////////////////////////////////////////////////////////////
+	//////// CHECKPOINTING AND RECOVERY ////////////////////////
+	////////////////////////////////////////////////////////////
+	
+	/***
+	 * Turn on checkpointing: every ActionEvent read is appended to the given eventLog, along with a small marker where each reading starts 
+	 * and finishes, and every eventsBetweenCheckpoints ActionEvents logged (over any number of readings) the reading state is checkpointed 
+	 * to the indicated file. An interrupted reading can then be recovered with resume.
+	 * @param eventLog the log to which read ActionEvents are appended
+	 * @param checkpointFilename the file to which checkpoints are written
+	 * @param eventsBetweenCheckpoints the number of ActionEvents to read between consecutive checkpoints
+	 * @param includeHistory true iff checkpoints should include the belief history of the world model
+	 */
+	public void setCheckpointing(ActionEventLog eventLog, String checkpointFilename, int eventsBetweenCheckpoints, boolean includeHistory) {
+		if (eventsBetweenCheckpoints <= 0) { throw new IllegalArgumentException("The number of events between checkpoints must be positive."); }
+		this.eventLog = eventLog;
+		this.checkpointFilename = checkpointFilename;
+		this.eventsBetweenCheckpoints = eventsBetweenCheckpoints;
+		this.checkpointHistory = includeHistory;
+		this.numEventsSinceCheckpoint = 0;
+	}
+	
+	/***
+	 * Checkpoint the current reading state.
+	 * @param reflected true iff the world model has already been reflected on
+	 * @throws IOException
+	 */
+	private void checkpoint(boolean reflected) throws IOException {
+		this.eventLog.flush();
+		WorldModelCheckpoint.write(this.checkpointFilename, this.rememberedWorldModel, this.rememberedAgents, 
+				this.eventLog.getPosition(), this.numEventsRead, reflected, this.checkpointHistory);
+		this.numEventsSinceCheckpoint = 0;
+	}
+	
+	/***
+	 * Recover an interrupted reading by restoring the checkpoint in the indicated file and replaying what was logged in the given eventLog
+	 * after that checkpoint was taken: each reading started is started again into a world model built the same way, each ActionEvent is read 
+	 * and each reading finished is reflected on again. If there is no checkpoint yet, the whole log is replayed. Checkpointing then continues
+	 * with the given eventLog. If the last reading was not finished, it can be finished with continueReading.
+	 * ActionEvents logged outside any reading are refused rather than replayed onto a finished reading.
+	 * @param checkpointFilename the checkpoint file
+	 * @param eventLog the log to which the interrupted reading was appending ActionEvents
+	 * @return the number of ActionEvents of the last reading that have now been read
+	 * @throws IOException the checkpoint or log could not be read, or ActionEvents were logged outside any reading
+	 * @throws InsufficientActionKnowledgeException there was insufficient knowledge to replay the logged ActionEvents
+	 */
+	public long resume(String checkpointFilename, ActionEventLog eventLog) throws IOException, InsufficientActionKnowledgeException {
+		long eventLogPosition = 0;
+		boolean readingOpen = false;
+		if (new File(checkpointFilename).exists()) {
+			WorldModelCheckpoint checkpoint = WorldModelCheckpoint.read(checkpointFilename);
+			this.remember(checkpoint.worldModel);
+			this.rememberedWorldModel.setParameters(this.parameters);
+			this.rememberedAgents = checkpoint.memory;
+			this.numEventsRead = checkpoint.numEventsRead;
+			this.traceWorldModel(this.rememberedWorldModel);
+			eventLogPosition = checkpoint.eventLogPosition;
+			readingOpen = !checkpoint.reflected;
+		}
+		List<ActionEventLog.Entry> loggedEntries = eventLog.replayFrom(eventLogPosition);
+		
+		this.eventLog = null; //nothing replayed is logged again
+		try {
+			for (ActionEventLog.Entry entry : loggedEntries) {
+				if (entry.readingStarted) {
+					AffinitybasedWorldModel worldModel = (entry.projectedRelationships == null) 
+							? new AffinitybasedWorldModel(entry.beliefStorage, entry.storeHistory) 
+							: new AffinitybasedWorldModel(entry.projectedRelationships, entry.beliefStorage, entry.storeHistory);
+					this.startReading(worldModel, entry.followupScenario);
+					readingOpen = true;
+				} else if (!readingOpen) {
+					throw new IOException("The ActionEventLog holds " + (entry.readingFinished ? "the end of a reading" : "an ActionEvent") 
+							+ " outside any reading, after the checkpoint in " + checkpointFilename + ".");
+				} else if (entry.readingFinished) {
+					this.finishReading(this.rememberedWorldModel, false, null);
+					readingOpen = false;
+				} else {
+					this.readActionEvent(this.rememberedWorldModel, entry.actionEvent, false, null);
+					this.numEventsRead ++;
+				}
+			}
+		} finally {
+			this.flushTrace();
+		}
+		
+		this.eventLog = eventLog;
+		this.checkpointFilename = checkpointFilename;
+		this.numEventsSinceCheckpoint = 0;
+		if (this.eventsBetweenCheckpoints <= 0) {
+			this.eventsBetweenCheckpoints = Integer.MAX_VALUE;
+		}
+		return this.numEventsRead;
+	}
+	
+	/***
+	 * Continue an unfinished reading (for example one recovered with resume) by reading the given remainder of
+	 * the scenario into the most recently built world model, then reflecting on it.
+	 * @param remainder the ActionEvents of the scenario that have not yet been read
+	 * @throws InsufficientActionKnowledgeException there was insufficient knowledge to read the remainder
+	 */
+	public void continueReading(Scenario remainder) throws InsufficientActionKnowledgeException {
+		this.traceWorldModel(this.rememberedWorldModel);
+		try {
+			this.readActionEvents(this.rememberedWorldModel, remainder.actionEvents, false, null);
+			this.finishReading(this.rememberedWorldModel, false, null);
+		} finally {
+			this.flushTrace();
+		}
+	}
+	
 	////////////////////////////////////////////////////////////
 	//////// QUERYING RECENT WORLD MODEL ///////////////////////
 	////////////////////////////////////////////////////////////
@@ -214,6 +549,14 @@ public class AffinitybasedAgent implements TricopaParticipant {
 		return this.rememberedWorldModel.getBeliefs(relationship);
 	}
 	
+	/***
+	 * Get the relationships modeled while reading the recently read scenario.
+	 * @return the relationships modeled while reading the recently read scenario
+	 */
+	public Iterable<Pair<String>> getRelationships() {
+		return this.rememberedWorldModel.getRelationships();
+	}
+	
 	/***
 	 * State the belief regarding the RelationshipType and confidence for the given relationship
 	 * given the most recently read scenario.
@@ -261,12 +604,31 @@ public class AffinitybasedAgent implements TricopaParticipant {
 	private int choiceOfPlausibleAlternatives(Scenario premise, List<Scenario> possibleChoices) 
 					throws InsufficientActionKnowledgeException, UndecidedAgentException {
 		AffinitybasedWorldModel worldModel = getWorldModelOf(premise, false, false, null);
+		try {
+			return this.choiceOfPlausibleAlternatives(worldModel, possibleChoices);
+		} finally {
+			this.flushTrace();
+		}
+	}
+	
+	/***
+	 * Given the world model of a premise Scenario, consider the possibleChoices and return which is thought more likely to apply now. 
+	 * @param worldModel the world model of the premise
+	 * @param possibleChoices
+	 * @return the number of the choice (1 or 2) thought more likely to apply now
+	 * @throws InsufficientActionKnowledgeException there was insufficient knowledge to read a choice
+	 * @throws UndecidedAgentException the agent was unable to decide between the choices
+	 */
+	private int choiceOfPlausibleAlternatives(AffinitybasedWorldModel worldModel, List<Scenario> possibleChoices) 
+					throws InsufficientActionKnowledgeException, UndecidedAgentException {
 		RecentlyObservedAgentsMemory preChoosingMemory = new RecentlyObservedAgentsMemory(this.rememberedAgents); //clone
+		this.lastChoiceScores = new double[possibleChoices.size()];
+		Arrays.fill(this.lastChoiceScores, Double.NaN);
 		
 		//Consider choices
 		int longestDescriptionLength = getMaxDescriptionLength(possibleChoices);
 		
-		double probabilityOfBestChoice = 0;
+		double logProbabilityOfBestChoice = Double.NEGATIVE_INFINITY;
 		int bestChoiceNumber = -1;
 		
 		int choiceNumber = 0;
@@ -274,91 +636,303 @@ public class AffinitybasedAgent implements TricopaParticipant {
 		for (Scenario choice : possibleChoices) {
 			choiceNumber ++;
 			
-			double probabilityOfThisChoice = 1;
+			double logProbabilityOfThisChoice = 0;
 			double sumOfEventProbs = 0; // the sum of the probabilities of all events (used for normalizing)
 			int numProbabilityUpdates = 0;
+			boolean pruned = false;
 			
 			this.rememberedAgents = preChoosingMemory;
-			if (verbose) {
-				this.printThreeColumnTextLine("Possible event", "Action R.O.D.","p");
-				System.out.println("----------------------------------------------------------------");
-			}
+			long startNanos = System.nanoTime();
+			this.trace(new TraceRecord.ChoiceStarted());
 			for (ActionEvent actionEvent : choice.actionEvents ) {
+				this.checkForCancellation();
 				//check for knowledge
 				if (	!actionKnowledgebase.containsKey(actionEvent.action)	) { 
+					this.metrics.knowledgeMisses.increment();
 					throw new InsufficientActionKnowledgeException (actionEvent.action);
 				}
 				ActionROD actionKnowledge = actionKnowledgebase.get(actionEvent.action);
 				
+				if (pruned) { //the memory after each choice flows into the next, so a choice cut short is still read into memory
+					try {
+						this.updateMemory(this.getFullActionEvent(actionEvent));
+					} catch (UnableToFillActionEventException e) {
+						this.updateMemory(actionEvent);
+					}
+					continue;
+				}
+				
 				try {
 					ActionEvent fullActionEvent = this.getFullActionEvent(actionEvent); //get valid unit	
 
 					double probabilityOfThisEvent = worldModel.probabilityOf(fullActionEvent,actionKnowledge );
 					sumOfEventProbs += probabilityOfThisEvent;
-					probabilityOfThisChoice *= probabilityOfThisEvent;	
+					logProbabilityOfThisChoice += Math.log(probabilityOfThisEvent);	
 					numProbabilityUpdates ++;
 					this.updateMemory(fullActionEvent); //update memory based on this unit
 					
-					if (verbose) {
-						this.printThreeColumnTextLine(actionEvent.toString(), actionKnowledge.toConciseString(),this.percentageFormat.format(probabilityOfThisEvent)) ;
-					}			
+					if (this.traceSink != null) {
+						this.trace(new TraceRecord.PossibleEventScored(actionEvent, actionKnowledge, probabilityOfThisEvent));
+					}
 				} catch (UnableToFillActionEventException e) {
 					this.updateMemory(actionEvent); //update memory based on original unit
-					if (verbose) {
-						this.printThreeColumnTextLine(actionEvent.toString(), actionKnowledge.toConciseString(), "N/A") ;
-					}		
+					if (this.traceSink != null) {
+						this.trace(new TraceRecord.PossibleEventScored(actionEvent, actionKnowledge, Double.NaN));
+					}
+				}
+				
+				//no event has probability above 1, so this choice can no longer beat the best choice
+				if (!this.scoringEveryChoice && this.isCertainlyWorse(logProbabilityOfThisChoice, logProbabilityOfBestChoice)) {
+					pruned = true;
+					this.trace(new TraceRecord.ChoicePruned(Math.exp(logProbabilityOfThisChoice)));
 				}
 			}//done with units
-			
-			if (numProbabilityUpdates != 0) {
-				double eventProbForNormalizing = sumOfEventProbs/(double)numProbabilityUpdates; //average
-				for (int i = numProbabilityUpdates; i < longestDescriptionLength; i++) {
-					if (verbose) {
-						this.printThreeColumnTextLine("Normalizing", "", this.percentageFormat.format(eventProbForNormalizing)) ;
-					}		
-					probabilityOfThisChoice *= eventProbForNormalizing;
-				}//done normalizing
-			}
-			
-			if (numProbabilityUpdates == 0) {
-				probabilityOfThisChoice = 0; //do not reward complete disjoint
+			this.metrics.choiceScoringTimes.recordSince(startNanos);
+			if (pruned) {
+				continue;
 			}
 			
-			if (verbose) {
-				this.printThreeColumnTextLine("", "", "P=" + this.percentageFormat.format(probabilityOfThisChoice)) ;
-				System.out.println(); //end of this choice
-			}
+			int numberOfNormalizingEvents = (numProbabilityUpdates == 0) ? 0 : Math.max(longestDescriptionLength - numProbabilityUpdates, 0);
+			double eventProbForNormalizing = (numProbabilityUpdates == 0) ? 0 : sumOfEventProbs/(double)numProbabilityUpdates; //average
+			logProbabilityOfThisChoice = getNormalizedLogProbability(logProbabilityOfThisChoice, sumOfEventProbs, numProbabilityUpdates, longestDescriptionLength);
+			this.lastChoiceScores[choiceNumber-1] = logProbabilityOfThisChoice;
+			this.trace(new TraceRecord.ChoiceScored(numberOfNormalizingEvents, eventProbForNormalizing, Math.exp(logProbabilityOfThisChoice)));
 			
 			//update best choice
-			if (choiceNumber!=1 && probabilityOfThisChoice == probabilityOfBestChoice) { //tie
-				if(verbose) {System.out.println("I am undecided.");}
+			if (choiceNumber!=1 && InterpretationRanking.isTie(logProbabilityOfThisChoice, logProbabilityOfBestChoice)) { //tie
+				this.trace(new TraceRecord.Undecided());
 				throw new UndecidedAgentException();
-			} else if (probabilityOfThisChoice > probabilityOfBestChoice) {
-				probabilityOfBestChoice = probabilityOfThisChoice;
+			} else if (logProbabilityOfThisChoice > logProbabilityOfBestChoice) {
+				logProbabilityOfBestChoice = logProbabilityOfThisChoice;
 				bestChoiceNumber = choiceNumber;
 			}
 		}//done with choice
 
-		if (verbose) {
-			System.out.println("I choose interpretation " + bestChoiceNumber + ".");
-		}
+		this.trace(new TraceRecord.ChoiceMade(bestChoiceNumber));
 		return bestChoiceNumber;
 
 	}
 	
+	/***
+	 * Given a premise Scenario, rank any number of candidate interpretations from most to least likely to apply now.
+	 * 
+	 * Each candidate is scored as the log probability of its ActionEvents given the world model of the premise, normalized 
+	 * to the length of the longest candidate, and is read starting from the memory the agent had after reading the premise.
+	 * Candidates beginning with the same ActionEvents share the reading of those ActionEvents: the candidates are read
+	 * depth-first from an ActionEventTrie, and memory is only copied where candidates branch apart, so memory use is
+	 * bounded by the length of the longest candidate.
+	 * @param premise the premise Scenario
+	 * @param candidates the candidate interpretations
+	 * @return the ranking of the candidates
+	 * @throws InsufficientActionKnowledgeException there was insufficient knowledge to read the premise or a candidate
+	 */
+	public InterpretationRanking rankInterpretations(Scenario premise, List<Scenario> candidates) throws InsufficientActionKnowledgeException {
+		return this.rankInterpretations(premise, candidates, false);
+	}
+	
+	/***
+	 * Given a premise Scenario, rank any number of candidate interpretations from most to least likely to apply now,
+	 * optionally pruning candidates that cannot be the most likely.
+	 * 
+	 * Because no ActionEvent has probability above 1, the log probability of a partly read candidate bounds 
+	 * the score of the whole candidate from above. When pruning, the agent stops reading all candidates sharing a
+	 * partly read prefix as soon as that bound falls below the score of the best candidate so far. The best candidate 
+	 * is then still scored exactly, but pruned candidates are only given their bound (see InterpretationRanking.isExact).
+	 * @param premise the premise Scenario
+	 * @param candidates the candidate interpretations
+	 * @param prune true iff candidates that cannot be the most likely should be pruned
+	 * @return the ranking of the candidates
+	 * @throws InsufficientActionKnowledgeException there was insufficient knowledge to read the premise or a candidate
+	 */
+	public InterpretationRanking rankInterpretations(Scenario premise, List<Scenario> candidates, boolean prune) throws InsufficientActionKnowledgeException {
+		AffinitybasedWorldModel worldModel = getWorldModelOf(premise, false, false, null);
+		RecentlyObservedAgentsMemory preRankingMemory = this.rememberedAgents;
+		
+		double[] scores = new double[candidates.size()];
+		boolean[] exact = new boolean[candidates.size()];
+		double[] bestScore = { Double.NEGATIVE_INFINITY };
+		ActionEventTrie trie = new ActionEventTrie(candidates);
+		this.scoreCandidates(worldModel, trie.root, new RecentlyObservedAgentsMemory(preRankingMemory), 
+				0, 0, 0, getMaxDescriptionLength(candidates), prune, bestScore, scores, exact);
+		
+		this.rememberedAgents = preRankingMemory;
+		return new InterpretationRanking(scores, exact);
+	}
+	
+	/***
+	 * Score all candidates ending at or below the given node of an ActionEventTrie, given the state of reading
+	 * the ActionEvents on the path to that node.
+	 * @param worldModel the world model of the premise
+	 * @param node the node reached
+	 * @param memory the memory after reading the path to the node (may be modified)
+	 * @param logProbabilityOfPath the log probability of the ActionEvents on the path to the node
+	 * @param sumOfEventProbs the sum of the probabilities of the ActionEvents on the path to the node
+	 * @param numProbabilityUpdates the number of ActionEvents on the path to the node that had a probability
+	 * @param longestDescriptionLength the length of the longest candidate
+	 * @param prune true iff candidates that cannot be the most likely should be pruned
+	 * @param bestScore holds the score of the best candidate scored so far
+	 * @param scores the scores of the candidates, to fill
+	 * @param exact whether the score of each candidate is exact, to fill
+	 * @throws InsufficientActionKnowledgeException there was insufficient knowledge to read an ActionEvent
+	 */
+	private void scoreCandidates(AffinitybasedWorldModel worldModel, ActionEventTrie.Node node, RecentlyObservedAgentsMemory memory,
+			double logProbabilityOfPath, double sumOfEventProbs, int numProbabilityUpdates, int longestDescriptionLength, 
+			boolean prune, double[] bestScore, double[] scores, boolean[] exact) throws InsufficientActionKnowledgeException {
+		if (prune && this.isCertainlyWorse(logProbabilityOfPath, bestScore[0])) {
+			this.fillBound(node, logProbabilityOfPath, scores); //still checks for knowledge
+			return;
+		}
+		for (int candidate : node.endingScenarios) {
+			scores[candidate] = getNormalizedLogProbability(logProbabilityOfPath, sumOfEventProbs, numProbabilityUpdates, longestDescriptionLength);
+			exact[candidate] = true;
+			bestScore[0] = Math.max(bestScore[0], scores[candidate]);
+		}
+		
+		boolean branching = node.children.size() > 1;
+		for (Map.Entry<ActionEvent, ActionEventTrie.Node> child : node.children.entrySet()) {
+			ActionEvent actionEvent = child.getKey();
+			//check for knowledge
+			if (	!actionKnowledgebase.containsKey(actionEvent.action)	) { 
+				this.metrics.knowledgeMisses.increment();
+				throw new InsufficientActionKnowledgeException (actionEvent.action);
+			}
+			ActionROD actionKnowledge = actionKnowledgebase.get(actionEvent.action);
+			
+			this.rememberedAgents = branching ? new RecentlyObservedAgentsMemory(memory) : memory; //siblings need the memory at this node
+			try {
+				ActionEvent fullActionEvent = this.getFullActionEvent(actionEvent);
+				double probabilityOfThisEvent = worldModel.probabilityOf(fullActionEvent, actionKnowledge);
+				this.updateMemory(fullActionEvent);
+				this.scoreCandidates(worldModel, child.getValue(), this.rememberedAgents, logProbabilityOfPath + Math.log(probabilityOfThisEvent), 
+						sumOfEventProbs + probabilityOfThisEvent, numProbabilityUpdates + 1, longestDescriptionLength, prune, bestScore, scores, exact);
+			} catch (UnableToFillActionEventException e) {
+				this.updateMemory(actionEvent);
+				this.scoreCandidates(worldModel, child.getValue(), this.rememberedAgents, logProbabilityOfPath, 
+						sumOfEventProbs, numProbabilityUpdates, longestDescriptionLength, prune, bestScore, scores, exact);
+			}
+		}
+	}
+	
+	/***
+	 * Give all candidates ending at or below the given pruned node of an ActionEventTrie the given bound as their score.
+	 * Pruned candidates are not scored, but knowledge of their actions is still required, just as if they had been scored.
+	 * @param node the pruned node
+	 * @param bound the log probability of the path to the node
+	 * @param scores the scores of the candidates, to fill
+	 * @throws InsufficientActionKnowledgeException there was insufficient knowledge about an action below the node
+	 */
+	private void fillBound(ActionEventTrie.Node node, double bound, double[] scores) throws InsufficientActionKnowledgeException {
+		for (int candidate : node.endingScenarios) {
+			scores[candidate] = bound;
+		}
+		for (Map.Entry<ActionEvent, ActionEventTrie.Node> child : node.children.entrySet()) {
+			this.checkKnowledgeOf(Arrays.asList(child.getKey()));
+			this.fillBound(child.getValue(), bound, scores);
+		}
+	}
+	
+	/***
+	 * Check that the agent has knowledge about the actions of all the given actionEvents.
+	 * @param actionEvents
+	 * @throws InsufficientActionKnowledgeException there was insufficient knowledge about the action of one of the actionEvents
+	 */
+	private void checkKnowledgeOf(List<ActionEvent> actionEvents) throws InsufficientActionKnowledgeException {
+		for (ActionEvent actionEvent : actionEvents) {
+			if (	!actionKnowledgebase.containsKey(actionEvent.action)	) { 
+				this.metrics.knowledgeMisses.increment();
+				throw new InsufficientActionKnowledgeException (actionEvent.action);
+			}
+		}
+	}
+	
+	/***
+	 * Return true iff a candidate whose score is at most the given bound can neither beat nor tie the given best score.
+	 * @param bound an upper bound on the log probability of a candidate
+	 * @param bestScore the log probability of the best candidate so far
+	 * @return true iff the candidate is certainly worse than the best candidate so far
+	 */
+	private boolean isCertainlyWorse(double bound, double bestScore) {
+		return bound < bestScore && !InterpretationRanking.isTie(bound, bestScore);
+	}
+	
+	/***
+	 * Get the log probability of a candidate normalized to the length of the longest candidate: a candidate shorter than the longest
+	 * is treated as though its missing ActionEvents each had the average probability of its ActionEvents.
+	 * A candidate with no probable ActionEvents is given probability 0, so as not to reward candidates disjoint from the world model.
+	 * @param logProbabilityOfCandidate the log probability of the candidate's ActionEvents
+	 * @param sumOfEventProbs the sum of the probabilities of the candidate's ActionEvents
+	 * @param numProbabilityUpdates the number of the candidate's ActionEvents that had a probability
+	 * @param longestDescriptionLength the length of the longest candidate
+	 * @return the normalized log probability of the candidate
+	 */
+	static double getNormalizedLogProbability(double logProbabilityOfCandidate, double sumOfEventProbs, int numProbabilityUpdates, int longestDescriptionLength) {
+		if (numProbabilityUpdates == 0) {
+			return Double.NEGATIVE_INFINITY; //do not reward complete disjoint
+		}
+		double eventProbForNormalizing = sumOfEventProbs/(double)numProbabilityUpdates; //average
+		int numMissingEvents = Math.max(0, longestDescriptionLength - numProbabilityUpdates);
+		return logProbabilityOfCandidate + numMissingEvents * Math.log(eventProbForNormalizing);
+	}
+	
+	/***
+	 * Cancel reading or choosing, by throwing a CancellationException, if the current thread has been interrupted,
+	 * e.g. because the task being done has run out of time. The interruption is left set for the caller to see.
+	 */
+	private void checkForCancellation() {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new CancellationException("Interrupted while reading or choosing.");
+		}
+	}
+	
 	/***
 	 * Get the length of the longest Scenario in the given list of Scenarios.
 	 * @param scenarios the list of Scenarios to compare the lengths of
 	 * @return the length of the longest Scenario in the given list of Scenarios
 	 */
-	private int getMaxDescriptionLength(List<Scenario> scenarios) {
-		return Math.max(scenarios.get(0).length, scenarios.get(1).length);
+	static int getMaxDescriptionLength(List<Scenario> scenarios) {
+		int maxLength = 0;
+		for (Scenario scenario : scenarios) {
+			maxLength = Math.max(maxLength, scenario.length);
+		}
+		return maxLength;
 	}
 
+	/***
+	 * Do the given tricopaTask, as a TricopaParticipant does. The task is cancelled, by throwing a CancellationException,
+	 * if the current thread is interrupted while it is being done.
+	 */
 	@Override
 	public int doTricopaTask(TricopaTask tricopaTask) throws InsufficientActionKnowledgeException, UndecidedAgentException {
-		int choice = this.choiceOfPlausibleAlternatives(tricopaTask.premise, tricopaTask.possibleChoices);
-		return choice;
+		long startNanos = System.nanoTime();
+		try {
+			int choice = this.choiceOfPlausibleAlternatives(tricopaTask.premise, tricopaTask.possibleChoices);
+			this.metrics.tasksDecided.increment();
+			return choice;
+		} catch (UndecidedAgentException e) {
+			this.metrics.tasksUndecided.increment();
+			throw e;
+		} finally {
+			this.metrics.taskDecisionTimes.recordSince(startNanos);
+		}
+	}
+	
+	/***
+	 * Get the normalized log probability of each choice of the Tricopa task last done. Choices left once undecided, and a last
+	 * choice cut short because it could no longer win unless scoring every choice, are given NaN.
+	 * @return the score of each choice of the last Tricopa task, in order, or null if no task has been done
+	 */
+	@Override
+	public double[] getLastChoiceScores() {
+		return (this.lastChoiceScores == null) ? null : this.lastChoiceScores.clone();
+	}
+	
+	/***
+	 * Score every choice completely iff scoringEveryChoice, e.g. to report every score with getLastChoiceScores.
+	 * Otherwise any choice that can no longer win is cut short, which makes the same choices faster.
+	 * @param scoringEveryChoice
+	 */
+	public void setScoringEveryChoice(boolean scoringEveryChoice) {
+		this.scoringEveryChoice = scoringEveryChoice;
 	}
 	
 	////////////////////////////////////////////////////////////
@@ -370,18 +944,7 @@ public class AffinitybasedAgent implements TricopaParticipant {
 	 * @param actionEvent
 	 */
 	public void updateMemory(ActionEvent actionEvent) {
-		/***
-		 * Update memory based on actedUpon agent.
-		 */
-		if (this.isAgent(actionEvent.actedUpon)	) {
-			rememberedAgents.update(actionEvent.actedUpon, this.verbose);
-		}
-		/***
-		 * Then, update memory based on actor agent, in order to give actor agent recency/salience in immediate memory.
-		 */
-		if (this.isAgent(actionEvent.actor)	) {
-			rememberedAgents.update(actionEvent.actor, this.verbose);
-		}
+		this.implicitResponseResolver.updateMemory(actionEvent, this.rememberedAgents);
 	}
 
 
@@ -398,114 +961,182 @@ public class AffinitybasedAgent implements TricopaParticipant {
 	 * @throws UnableToFillActionEventException if unable
 	 */
 	private ActionEvent getFullActionEvent(ActionEvent actionEvent) throws UnableToFillActionEventException {		
-		boolean full = true;
+		ActionEvent fullActionEvent;
+		try {
+			fullActionEvent = this.implicitResponseResolver.getFullActionEvent(actionEvent, this.rememberedAgents);
+		} catch (UnableToFillActionEventException e) {
+			this.metrics.implicitResponseFailures.increment();
+			throw e;
+		}
+		if (fullActionEvent != actionEvent) {
+			this.metrics.implicitResponseFills.increment();
+		}
+		return fullActionEvent;			
+	}
 	
-		ActionEvent modifiedActionEvent =  actionEvent;
-		if (!this.isAgent(	actionEvent.actor) ) {
-			try {
-				modifiedActionEvent = this.replaceActor(actionEvent);
-				full = true;
-			} catch (UnableToFillActionEventException e) {
-				full = false;
-			}
-		}//replaced
-		if (!this.isAgent(	actionEvent.actedUpon) ) {
-			try {
-				modifiedActionEvent = this.replaceActedUpon(actionEvent);
-				full = true;
-			} catch (UnableToFillActionEventException e) {
-				full = false;
-			}
-		}//replaced
-		
-		if (!full) { throw new UnableToFillActionEventException(); }
-		return modifiedActionEvent;			
+	////////////////////////////////////////////////////////////
+	//////// METRICS ///////////////////////////////////////////
+	////////////////////////////////////////////////////////////
+	
+	/***
+	 * Get the metrics to which the agent's reading and choosing is counted.
+	 * @return the agent's metrics
+	 */
+	public AgentMetrics getMetrics() {
+		return this.metrics;
 	}
 	
 	/***
- 	 * When encountering non-agents (empty or objects) in ActionEvent actor slots, try to 
-	 * fill the ActionEvents using a principle of implicit response.
-	 * This assumes that the non-agents are in fact emotional stand-ins for recently observed agents.
-	 * @param actionEvent
-	 * @return an ActionEvent with replaced actor
-	 * @throws UnableToFillActionEventException if unable
+	 * Count the agent's reading and choosing to the given metrics, e.g. to share metrics between agents.
+	 * @param metrics
 	 */
-	private ActionEvent replaceActor(ActionEvent actionEvent) throws UnableToFillActionEventException {
-		ActionEvent modifiedActionEvent = null;		
+	public void setMetrics(AgentMetrics metrics) {
+		this.metrics = metrics;
+	}
 	
-		if (isAgent(rememberedAgents.getLastObservedAgent()) && !actionEvent.actedUpon.equals(rememberedAgents.getLastObservedAgent())) { //if different
-			modifiedActionEvent = new ActionEvent(rememberedAgents.getLastObservedAgent(),actionEvent.action,actionEvent.actedUpon);					
-		} else if (isAgent(rememberedAgents.getSecondToLastObservedAgent()) && !actionEvent.actedUpon.equals(rememberedAgents.getSecondToLastObservedAgent())) { //if different
-			modifiedActionEvent = new ActionEvent(rememberedAgents.getSecondToLastObservedAgent(),actionEvent.action,actionEvent.actedUpon);					
-		}
-		
-		if (modifiedActionEvent == null) { 
-			throw new UnableToFillActionEventException();
-		} else { 
-			return modifiedActionEvent;
-		}
+	/***
+	 * Get the agent's knowledge about actions.
+	 * @return the agent's knowledge about actions, which must not be modified
+	 */
+	public Map<String, ActionROD> getActionKnowledgebase() {
+		return this.actionKnowledgebase;
 	}
 	
 	/***
-	 * When an observer encounters non-agents (empty or objects) in the actedUpon slot of an ActionEvent,
-	 * try to replace the actor using an assumption that the non-agents are in fact emotional stand-ins
-	 * for recently observed agents.
-	 * @param actionEvent
-	 * @return an ActionEvent with replaced actedUpon agent
-	 * @throws UnableToFillActionEventException if unable
+	 * Get the Strings that the agent knows refer to characters.
+	 * @return the characters, which must not be modified
 	 */
-	private ActionEvent replaceActedUpon(ActionEvent descriptionUnit) throws UnableToFillActionEventException {
-		ActionEvent modifiedActionEvent = null;
-
-		if (isAgent(rememberedAgents.getLastObservedAgent()) && !descriptionUnit.actor.equals(rememberedAgents.getLastObservedAgent())) { //if different
-			modifiedActionEvent = new ActionEvent(descriptionUnit.actor,descriptionUnit.action,this.rememberedAgents.getLastObservedAgent());					
-		} else if (isAgent(rememberedAgents.getSecondToLastObservedAgent()) && !descriptionUnit.actor.equals(rememberedAgents.getSecondToLastObservedAgent())) { //if different
-			modifiedActionEvent = new ActionEvent(descriptionUnit.actor,descriptionUnit.action,this.rememberedAgents.getSecondToLastObservedAgent());					
+	public Set<String> getCharacters() {
+		return this.implicitResponseResolver.getCharacters();
+	}
+	
+	/***
+	 * Get the constants by which the agent revises beliefs.
+	 * @return the agent's parameters
+	 */
+	public ModelParameters getParameters() {
+		return this.parameters;
+	}
+	
+	/***
+	 * Revise beliefs in the world models the agent builds from now on by the given constants.
+	 * The ratio permitted within an ROD is not applied here, because the agent's knowledge is already interpreted:
+	 * knowledge should be read with FileUtility.getActionKnowledgebase using the same ratio.
+	 * @param parameters
+	 */
+	public void setParameters(ModelParameters parameters) {
+		this.parameters = parameters;
+	}
+	
+	/***
+	 * Build world models that store their beliefs in the given way from now on, rather than on the heap with their belief history.
+	 * For example, an agent reading a scenario of a very large cast may store its beliefs SPILLING without storing history.
+	 * World models built before are unaffected.
+	 * @param beliefStorage the way to store beliefs
+	 * @param storeHistory true iff the world models should store their belief history
+	 */
+	public void setBeliefStorage(BeliefStorage beliefStorage, boolean storeHistory) {
+		this.beliefStorage = beliefStorage;
+		this.storingHistory = storeHistory;
+	}
+	
+	/***
+	 * Helper: remember the given world model as the most recently built, closing the one it replaces so that
+	 * any direct memory or spill file it holds is released now. World models given to readInto are never remembered, so never closed.
+	 * @param worldModel
+	 */
+	private void remember(AffinitybasedWorldModel worldModel) {
+		if (this.rememberedWorldModel != null && this.rememberedWorldModel != worldModel) {
+			this.closeWorldModel(this.rememberedWorldModel);
 		}
-
-		if (modifiedActionEvent == null) {
-			throw new UnableToFillActionEventException();
-		} else {
-			return modifiedActionEvent;
+		this.rememberedWorldModel = worldModel;
+	}
+	
+	/***
+	 * Helper: close the given world model the agent built.
+	 * @param worldModel
+	 */
+	private void closeWorldModel(AffinitybasedWorldModel worldModel) {
+		try {
+			worldModel.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
 	}
 	
 	////////////////////////////////////////////////////////////
-	//////// MISCELANEOUS HELPERS //////////////////////////////
+	//////// HELPERS - RE: TRACING /////////////////////////////
 	////////////////////////////////////////////////////////////
-
+	
 	/***
-	 * Returns true iff the String s refers to an agent.
-	 * @param s
-	 * @return true iff the String s refers to an agent
+	 * Trace the agent's reading and choosing to the given sink instead of the current one, replacing the console output of a verbose agent.
+	 * Records are emitted on the agent's thread, so a sink that does real work should be wrapped in an AsyncTraceSink.
+	 * The console output of a verbose agent is closed once replaced, but the given sink is never closed by the agent, so it may be shared.
+	 * @param traceSink the sink to trace to, or null to stop tracing
 	 */
-	private boolean isAgent(String s) {
-		return (s!=null && this.characters.contains(s));
+	public void setTraceSink(TraceSink traceSink) {
+		this.flushTrace();
+		if (this.tracedWorldModel != null) {
+			this.tracedWorldModel.removeBeliefChangeListener(this.beliefChangeTracer);
+			this.tracedWorldModel = null;
+		}
+		if (this.consoleTraceSink != null && this.consoleTraceSink != traceSink) {
+			this.consoleTraceSink.close(); //stop its thread
+			this.consoleTraceSink = null;
+		}
+		this.traceSink = traceSink;
 	}
 	
-	////////////////////////////////////////////////////////////
-	//////// HELPERS - RE: VERBOSITY ///////////////////////////
-	////////////////////////////////////////////////////////////
+	/***
+	 * Stop tracing, closing the console output of a verbose agent and so stopping its thread, and close the most recently built world model,
+	 * releasing any direct memory or spill file it holds. The agent may still read and choose afterwards, untraced.
+	 */
+	@Override
+	public void close() {
+		this.setTraceSink(null);
+		if (this.rememberedWorldModel != null) {
+			this.closeWorldModel(this.rememberedWorldModel);
+			this.rememberedWorldModel = null;
+		}
+	}
+	
+	/***
+	 * Helper: emit the given record, if tracing is on.
+	 * @param record
+	 */
+	private void trace(TraceRecord record) {
+		if (this.traceSink != null) {
+			this.traceSink.accept(record);
+		}
+	}
 	
 	/***
-	 * Helper: format text into clean lines of text with 3 columns.
-	 * @param s1 the text to be put in column 1
-	 * @param s2 the text to be put in column 2
-	 * @param s3 the text to be put in column 3
+	 * Helper: start tracing the belief changes of the given worldModel, if tracing is on and it is not already traced,
+	 * starting with its current beliefs.
+	 * @param worldModel
 	 */
-	private void printThreeColumnTextLine(String s1, String s2, String s3) {
-		System.out.format("%-32s %-24s %s %n", s1, s2, s3);
+	private void traceWorldModel(AffinitybasedWorldModel worldModel) {
+		if (this.traceSink == null || worldModel == this.tracedWorldModel) {
+			return;
+		}
+		if (this.tracedWorldModel != null) {
+			this.tracedWorldModel.removeBeliefChangeListener(this.beliefChangeTracer);
+		}
+		this.tracedWorldModel = worldModel;
+		this.trace(new TraceRecord.WorldModelStarted());
+		for (Pair<String> relationship : worldModel.getRelationships()) {
+			this.trace(new TraceRecord.BeliefsChanged(relationship, worldModel.getBeliefs(relationship), 0));
+		}
+		worldModel.addBeliefChangeListener(this.beliefChangeTracer);
 	}
 	
 	/***
-	 * Helper: get a version of the given multi-line string with all lines tabbed over.
-	 * @param str a multi-line string
-	 * @return
+	 * Helper: wait until the records emitted so far are handled, if tracing is on, e.g. before returning to a caller that prints.
 	 */
-	private String tabOverMultiLineString(String str) {
-		String s = str.replaceAll("(?m)^", "\t\t\t\t\t\t");
-		s = s.substring(6); //remove beginning of 
-		return s;
+	private void flushTrace() {
+		if (this.traceSink != null) {
+			this.traceSink.flush();
+		}
 	}
 	
 }
@@ -1,10 +1,17 @@
 
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.text.NumberFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /***
  * The AffinitybasedWorldModel implements the WorldModel interface.
@@ -15,16 +22,19 @@ import java.util.Map;
  * @author pkalluri
  *
  */
-public class AffinitybasedWorldModel implements WorldModel{
+public class AffinitybasedWorldModel implements WorldModel, Closeable {
 	/***
-	 * The agents known to exist
+	 * The relationships this world model is projected onto -- mapped from each of their agents -- or null if this world model
+	 * models all relationships. A projected world model only materializes and updates the projected relationships.
 	 */
-	private List<String> agents;
+	private Map<String, List<Pair<String>>> projection;
 	
 	/***
-	 * The relationships between the agents known to exist -- mapped to their current relationship models.
+	 * The agents known to exist, and the relationships between them -- with their current relationship models and the number of times
+	 * their relationship model has been revised. The update count is the emphasis placed on the next update of the relationship,
+	 * and is kept whether or not history is stored.
 	 */
-	private Map<Pair<String>, SymmetricRelationshipModel> affinityBeliefs;
+	private RelationshipStore affinityBeliefs;
 	
 	/***
 	 * The relationships between the agents known to exist  -- mapped to their entire relationship model history.
@@ -36,11 +46,53 @@ public class AffinitybasedWorldModel implements WorldModel{
 	 */
 	private int age;
 	
+	/***
+	 * The policy by which beliefs decay toward the uninformed prior as the world ages, or null if beliefs never decay.
+	 */
+	private BeliefDecayPolicy decayPolicy;
+	
+	/***
+	 * The age at which the decay policy was set, i.e. the age up to which the stored models of relationships not updated since have been decayed.
+	 * The stored model of a relationship updated since has been decayed up to its last update age, which is kept in the RelationshipStore.
+	 */
+	private int decayPolicyAge;
+	
+	/***
+	 * The relationships updated since windowing was turned on -- mapped to their beliefs given only their most recent ActionEvents --
+	 * or null if windowing is off.
+	 */
+	private Map<Pair<String>, WindowedRelationshipModel> windowedBeliefs;
+	
+	/***
+	 * The number of most recent ActionEvents of a relationship its windowed beliefs are given, or 0 if windowing is off.
+	 */
+	private int windowSize;
+	
+	/***
+	 * The listeners notified whenever the stored beliefs about a relationship change.
+	 */
+	private List<BeliefChangeListener> beliefChangeListeners;
+	
+	/***
+	 * The index of the relationships of each agent, or null if it has not been asked for.
+	 */
+	private AdjacencyIndex adjacencyIndex;
+	
+	/***
+	 * The agents whose relationships were refreshed in the adjacency index while beliefs decay -- mapped to the age they were refreshed at.
+	 */
+	private Map<String, Integer> adjacencyRefreshAges;
+	
+	/***
+	 * The constants by which beliefs are revised.
+	 */
+	private ModelParameters parameters;
+	
 	//////////////////////////////////////////
 	/////// PARAMETERS ///////////////////////
 	//////////////////////////////////////////
 	/***
-	 * Always store the affinity belief history of the world.
+	 * Store the affinity belief history of the world iff true (the default).
 	 */
 	private boolean STORE_HISTORY = true;
 	
@@ -52,10 +104,70 @@ public class AffinitybasedWorldModel implements WorldModel{
 	 * Construct a new AffinitybasedWorldModel containing no information.
 	 */
 	public AffinitybasedWorldModel() {
-		this.agents = new ArrayList<String> ();
-		this.affinityBeliefs = new HashMap<Pair<String>, SymmetricRelationshipModel> ();
+		this(new HeapRelationshipStore(), true);
+	}
+	
+	/***
+	 * Construct a new AffinitybasedWorldModel containing no information, storing its beliefs in the given way.
+	 * For example, an archive world of a very large cast may store its beliefs QUANTIZED without storing history,
+	 * trading a relative error of about 0.05% per revision of a relationship for a small fraction of the memory.
+	 * @param beliefStorage the way to store beliefs about relationships
+	 * @param storeHistory true iff the affinity belief history of the world should be stored
+	 */
+	public AffinitybasedWorldModel(BeliefStorage beliefStorage, boolean storeHistory) {
+		this(beliefStorage.createRelationshipStore(), storeHistory);
+	}
+	
+	/***
+	 * Construct a new AffinitybasedWorldModel containing no information, keeping its beliefs in the given RelationshipStore.
+	 * For example, a world model of a very large cast may keep its beliefs in an OffHeapRelationshipStore without storing history,
+	 * so that its heap usage does not grow with the number of relationships.
+	 * @param relationshipStore an empty RelationshipStore
+	 * @param storeHistory true iff the affinity belief history of the world should be stored
+	 */
+	public AffinitybasedWorldModel(RelationshipStore relationshipStore, boolean storeHistory) {
+		this.projection = null;
+		this.affinityBeliefs = relationshipStore;
 		this.affinityBeliefHistory = new HashMap<Pair<String>, Map<Integer,Map<RelationshipType,Double>>>();
 		this.age = 1;
+		this.STORE_HISTORY = storeHistory;
+		this.decayPolicy = null;
+		this.decayPolicyAge = this.age;
+		this.windowedBeliefs = null;
+		this.windowSize = 0;
+		this.beliefChangeListeners = new ArrayList<BeliefChangeListener>();
+		this.adjacencyIndex = null;
+		this.adjacencyRefreshAges = new HashMap<String, Integer>();
+		this.parameters = ModelParameters.DEFAULT;
+	}
+	
+	/***
+	 * Construct a new AffinitybasedWorldModel containing no information, projected onto the given relationships.
+	 * The projected world model only materializes and updates the given relationships, so updates about other relationships
+	 * cost constant time, but its beliefs about the given relationships are the same as those of a world model of all relationships.
+	 * @param relationships the relationships to project onto
+	 */
+	public AffinitybasedWorldModel(Collection<Pair<String>> relationships) {
+		this(relationships, BeliefStorage.HEAP, true);
+	}
+	
+	/***
+	 * Construct a new AffinitybasedWorldModel containing no information, projected onto the given relationships and storing its beliefs in the given way.
+	 * @param relationships the relationships to project onto
+	 * @param beliefStorage the way to store beliefs about relationships
+	 * @param storeHistory true iff the affinity belief history of the world should be stored
+	 */
+	public AffinitybasedWorldModel(Collection<Pair<String>> relationships, BeliefStorage beliefStorage, boolean storeHistory) {
+		this(beliefStorage, storeHistory);
+		this.projection = new HashMap<String, List<Pair<String>>>();
+		for (Pair<String> relationship : relationships) {
+			for (String agent : relationship.getElements()) {
+				if (!this.projection.containsKey(agent)) {
+					this.projection.put(agent, new ArrayList<Pair<String>>());
+				}
+				this.projection.get(agent).add(relationship);
+			}
+		}
 	}
 	
 	//////////////////////////////////////////
@@ -71,17 +183,11 @@ public class AffinitybasedWorldModel implements WorldModel{
 		/***
 		 * Add all implied pairs to the world model
 		 */
-		if (  !agents.contains(actionEvent.actor)  ) {
-			for (String agent : agents) {
-				affinityBeliefs.put(new Pair<String>(agent,actionEvent.actor)  , new SymmetricRelationshipModel());
-			}//done adding pairs
-			agents.add(actionEvent.actor);
+		if (  !this.affinityBeliefs.containsAgent(actionEvent.actor)  ) {
+			this.addAgent(actionEvent.actor);
 		}
-		if (  (!agents.contains(actionEvent.actedUpon))  ) {
-			for (String character : agents) {
-				affinityBeliefs.put(new Pair<String>(character,actionEvent.actedUpon)  , new SymmetricRelationshipModel());
-			}//done adding pairs
-			agents.add(actionEvent.actedUpon);
+		if (  (!this.affinityBeliefs.containsAgent(actionEvent.actedUpon))  ) {
+			this.addAgent(actionEvent.actedUpon);
 		}
 		
 
@@ -89,15 +195,27 @@ public class AffinitybasedWorldModel implements WorldModel{
 		 * Update the acting pair's relationship model
 		 */
 		Pair<String> actingPair = new Pair<String>(actionEvent.actor, actionEvent.actedUpon);
-		SymmetricRelationshipModel relationship = affinityBeliefs.get(actingPair);
+		if (!this.isProjectedOnto(actingPair)) {
+			this.age ++;
+			return;
+		}
+		SymmetricRelationshipModel relationship = this.getRelationshipModel(actingPair); //caught up on any decay
 //		relationship.update(actionKnowledge, this.age + 1);
-		double emphasis;
-		if (this.affinityBeliefHistory.containsKey(actingPair)) {
-			emphasis = this.affinityBeliefHistory.get(actingPair).size();
-		} else {
-			emphasis = 0;
+		int updateCount = this.getUpdateCount(actingPair);
+		Map<RelationshipType, Double> previousBeliefs = this.beliefChangeListeners.isEmpty() ? null : relationship.getBeliefs();
+		relationship.update(actionKnowledge, Math.pow(this.parameters.getEmphasisBase(), updateCount));
+		this.affinityBeliefs.put(actingPair, relationship, updateCount + 1);
+		if (!this.beliefChangeListeners.isEmpty()) {
+			this.notifyBeliefChange(actingPair, previousBeliefs, relationship.getBeliefs());
+		}
+		if (this.windowedBeliefs != null) {
+			WindowedRelationshipModel windowedRelationship = this.windowedBeliefs.get(actingPair);
+			if (windowedRelationship == null) {
+				windowedRelationship = new WindowedRelationshipModel(this.windowSize, this.parameters.getEmphasisBase());
+				this.windowedBeliefs.put(actingPair, windowedRelationship);
+			}
+			windowedRelationship.update(actionKnowledge);
 		}
-		relationship.update(actionKnowledge, Math.pow(2, emphasis));
 
 		/***
 		 * Save if save parameter is ON.
@@ -113,6 +231,52 @@ public class AffinitybasedWorldModel implements WorldModel{
 			timeToBeliefs.put(age, relationship.getBeliefs());
 		}
 		this.age ++;
+		this.recordUpdateAge(actingPair); //current as of the age after this update
+	}
+	
+	/***
+	 * Add the given agent to the agents known to exist, along with all implied pairs (or, if this world model is
+	 * projected, all implied projected pairs).
+	 * @param newAgent
+	 */
+	private void addAgent(String newAgent) {
+		if (this.projection == null) {
+			for (String agent : this.affinityBeliefs.getAgents()) {
+				Pair<String> pair = new Pair<String>(agent,newAgent);
+				affinityBeliefs.put(pair, new SymmetricRelationshipModel(), 0);
+				if (!this.beliefChangeListeners.isEmpty()) {
+					this.notifyBeliefChange(pair, null, new SymmetricRelationshipModel().getBeliefs());
+				}
+			}//done adding pairs
+		} else if (this.projection.containsKey(newAgent)) {
+			for (Pair<String> relationship : this.projection.get(newAgent)) {
+				for (String agent : relationship.getElements()) {
+					if (!agent.equals(newAgent) && this.affinityBeliefs.containsAgent(agent)) {
+						affinityBeliefs.put(relationship, new SymmetricRelationshipModel(), 0);
+						if (!this.beliefChangeListeners.isEmpty()) {
+							this.notifyBeliefChange(relationship, null, new SymmetricRelationshipModel().getBeliefs());
+						}
+					}
+				}
+			}//done adding projected pairs
+		}
+		this.affinityBeliefs.addAgent(newAgent);
+	}
+	
+	/***
+	 * Return true iff this world model models the given relationship, i.e. it is not projected or it is projected onto the given relationship.
+	 * @param relationship
+	 * @return true iff this world model models the given relationship
+	 */
+	private boolean isProjectedOnto(Pair<String> relationship) {
+		if (this.projection == null) {
+			return true;
+		}
+		for (String agent : relationship.getElements()) {
+			List<Pair<String>> projectedRelationships = this.projection.get(agent);
+			return projectedRelationships != null && projectedRelationships.contains(relationship);
+		}
+		return false;
 	}
 	
 	@Override
@@ -124,7 +288,7 @@ public class AffinitybasedWorldModel implements WorldModel{
 		 * more than generally, heuristically true / sometimes untrue assumptions of neutrality.
 		 */
 //		this.assumeUninformedRelationshipAreNeutralRelationships();
-		this.assumeUninformedRelationshipAre( Arrays.asList(RelationshipType.ENEMY, RelationshipType.FRIEND, RelationshipType.NEUTRAL) ); 
+		this.assumeUninformedRelationshipAre( this.parameters.getDefaultOrdering() ); 
 	}
 	
 	/***
@@ -134,16 +298,21 @@ public class AffinitybasedWorldModel implements WorldModel{
 	 * more than generally, heuristically true / sometimes untrue assumptions.
 	 */
 	private void assumeUninformedRelationshipAre(List<RelationshipType> orderedRelationshipTypes) {
-		for (Map.Entry<Pair<String>, SymmetricRelationshipModel> entry : this.affinityBeliefs.entrySet()) {
-			if (!entry.getValue().isInformative()) { //if all beliefs are uninformative, rewrite
+		for (Pair<String> pair : this.affinityBeliefs) {
+			SymmetricRelationshipModel relationshipModel = this.getRelationshipModel(pair);
+			if (!relationshipModel.isInformative(this.parameters.getInformativenessThreshold())) { //if all beliefs are uninformative, rewrite
 				SymmetricRelationshipModel defaultRelationshipModel = new SymmetricRelationshipModel(orderedRelationshipTypes);
-				entry.setValue(defaultRelationshipModel);
+				this.affinityBeliefs.put(pair, defaultRelationshipModel, this.getUpdateCount(pair) + 1);
+				this.recordUpdateAge(pair);
+				if (!this.beliefChangeListeners.isEmpty()) {
+					this.notifyBeliefChange(pair, relationshipModel.getBeliefs(), defaultRelationshipModel.getBeliefs());
+				}
 				/***
 				 * Save if save parameter is ON.
 				 */
 				if (STORE_HISTORY) { 
 					Map<Integer,Map<RelationshipType,Double>> timeToBeliefs;
-					Pair<String> actingPair = entry.getKey();
+					Pair<String> actingPair = pair;
 					if (!affinityBeliefHistory.containsKey(actingPair)) {
 						timeToBeliefs = new HashMap<Integer,Map<RelationshipType,Double>>();
 						affinityBeliefHistory.put(actingPair, timeToBeliefs);
@@ -164,16 +333,21 @@ public class AffinitybasedWorldModel implements WorldModel{
 	 */
 	private void assumeUninformedRelationshipAreNeutralRelationships() {
 		double BIG_PROBABILITY_TO_SMALL_PROBABILITY_RATIO = 2;
-		for (Map.Entry<Pair<String>, SymmetricRelationshipModel> entry : this.affinityBeliefs.entrySet()) {
-			if (!entry.getValue().isInformative()) { //if all beliefs are neutral, rewrite as neutral relationship
+		for (Pair<String> pair : this.affinityBeliefs) {
+			SymmetricRelationshipModel relationshipModel = this.getRelationshipModel(pair);
+			if (!relationshipModel.isInformative(this.parameters.getInformativenessThreshold())) { //if all beliefs are neutral, rewrite as neutral relationship
 				SymmetricRelationshipModel neutralRelationshipModel = new SymmetricRelationshipModel(RelationshipType.NEUTRAL, BIG_PROBABILITY_TO_SMALL_PROBABILITY_RATIO);
-				entry.setValue(neutralRelationshipModel);
+				this.affinityBeliefs.put(pair, neutralRelationshipModel, this.getUpdateCount(pair) + 1);
+				this.recordUpdateAge(pair);
+				if (!this.beliefChangeListeners.isEmpty()) {
+					this.notifyBeliefChange(pair, relationshipModel.getBeliefs(), neutralRelationshipModel.getBeliefs());
+				}
 				/***
 				 * Save if save parameter is ON.
 				 */
 				if (STORE_HISTORY) { 
 					Map<Integer,Map<RelationshipType,Double>> timeToBeliefs;
-					Pair<String> actingPair = entry.getKey();
+					Pair<String> actingPair = pair;
 					if (!affinityBeliefHistory.containsKey(actingPair)) {
 						timeToBeliefs = new HashMap<Integer,Map<RelationshipType,Double>>();
 						affinityBeliefHistory.put(actingPair, timeToBeliefs);
@@ -192,9 +366,9 @@ public class AffinitybasedWorldModel implements WorldModel{
 		AffinitybasedWorldModel otherSocialNetworkModel = (AffinitybasedWorldModel) otherRelationshipInfo;
 		double distance = 0;
 		//Pairs that exist in both should match well
-		for (Pair<String> pair : this.affinityBeliefs.keySet()) {
-			if (otherSocialNetworkModel.affinityBeliefs.containsKey(pair)) {
-				distance += this.affinityBeliefs.get(pair).distanceScore(otherSocialNetworkModel.affinityBeliefs.get(pair));
+		for (Pair<String> pair : this.affinityBeliefs) {
+			if (otherSocialNetworkModel.affinityBeliefs.contains(pair)) {
+				distance += this.getRelationshipModel(pair).distanceScore(otherSocialNetworkModel.getRelationshipModel(pair));
 			}
 			distance -= .01; //Reward social models for modeling the same pairs
 		}
@@ -205,7 +379,7 @@ public class AffinitybasedWorldModel implements WorldModel{
 	public double probabilityOf(ActionEvent descriptionUnit, ActionROD actionKnowledge) {
 		double DEFAULT_PROBABILITY = 1; //if pair doesn't match
 		
-		SymmetricRelationshipModelInterface relationship = this.affinityBeliefs.get(new Pair<String>(descriptionUnit.actor, descriptionUnit.actedUpon));
+		SymmetricRelationshipModelInterface relationship = this.getRelationshipModel(new Pair<String>(descriptionUnit.actor, descriptionUnit.actedUpon));
 		if (relationship != null) {
 			return relationship.probabilityOf(actionKnowledge) ;
 		} else {
@@ -227,8 +401,8 @@ public class AffinitybasedWorldModel implements WorldModel{
 		int MAX_NUMBER_OF_ENTRIES_PER_LINE = 5;
 		
 		int numberOfEntries = 0;
-		for (Map.Entry<Pair<String>, SymmetricRelationshipModel> entry : this.affinityBeliefs.entrySet()) {
-			toPrint += entry.getKey() + ":" + entry.getValue().toConciseString() + ", ";
+		for (Pair<String> pair : this.affinityBeliefs) {
+			toPrint += pair + ":" + this.getRelationshipModel(pair).toConciseString() + ", ";
 			numberOfEntries ++;
 			if (numberOfEntries % MAX_NUMBER_OF_ENTRIES_PER_LINE == 0) {
 				toPrint += "\n";
@@ -245,7 +419,7 @@ public class AffinitybasedWorldModel implements WorldModel{
 	 */
 	public String toConciseString(Pair<String> relationship) {
 		String str = "";
-		SymmetricRelationshipModel relationshipModel = this.affinityBeliefs.get(relationship);
+		SymmetricRelationshipModel relationshipModel = this.getRelationshipModel(relationship);
 		if (relationshipModel != null) {
 			str = relationship + ":" + relationshipModel.toConciseString();
 		} else {
@@ -273,9 +447,444 @@ public class AffinitybasedWorldModel implements WorldModel{
 	 * @return the beliefs about the given relationship as a map mapping possible RelationshipTypes to believed probability of the RelationshipTypes
 	 */
 	public Map<RelationshipType, Double> getBeliefs(Pair<String> relationship) {
-		if (!this.affinityBeliefs.containsKey(relationship)) {
+		SymmetricRelationshipModel relationshipModel = this.getRelationshipModel(relationship);
+		if (relationshipModel == null) {
+			return new SymmetricRelationshipModel().getBeliefs();
+		}
+		return relationshipModel.getBeliefs();
+	}
+	
+	/***
+	 * Get the number of times the model of the given relationship has been revised.
+	 * If beliefs decay, this is the number of revisions still in effect, i.e. it decays along with the beliefs.
+	 * @param relationship
+	 * @return the number of times the model of the given relationship has been revised
+	 */
+	public int getUpdateCount(Pair<String> relationship) {
+		int updateCount = this.affinityBeliefs.getUpdateCount(relationship);
+		double retainedFraction = this.getRetainedFraction(relationship);
+		if (retainedFraction < 1) {
+			updateCount = (int) (updateCount * retainedFraction);
+		}
+		return updateCount;
+	}
+	
+	/***
+	 * Return true iff the given relationship is modeled.
+	 * @param relationship
+	 * @return true iff the given relationship is modeled
+	 */
+	public boolean isModeling(Pair<String> relationship) {
+		return this.affinityBeliefs.contains(relationship);
+	}
+	
+	/***
+	 * Get the number of modeled relationships.
+	 * @return the number of modeled relationships
+	 */
+	public int getNumberOfRelationships() {
+		return this.affinityBeliefs.size();
+	}
+	
+	/***
+	 * Get the modeled relationships, in the order in which toConciseString lists them.
+	 * @return the modeled relationships
+	 */
+	public Iterable<Pair<String>> getRelationships() {
+		return this.affinityBeliefs;
+	}
+	
+	/***
+	 * Revise beliefs by the given constants from now on, instead of the default constants.
+	 * @param parameters
+	 */
+	public void setParameters(ModelParameters parameters) {
+		this.parameters = parameters;
+	}
+	
+	/***
+	 * Get the constants by which beliefs are revised.
+	 * @return the constants by which beliefs are revised
+	 */
+	public ModelParameters getParameters() {
+		return this.parameters;
+	}
+	
+	/***
+	 * Set the policy by which beliefs decay toward the uninformed prior as the world ages.
+	 * Decay is applied lazily, when a relationship is next read or updated, so it never requires a pass over all relationships.
+	 * Relationships updated before the policy is set start decaying from the age at which it is set.
+	 * Replacing a policy first stores the decay due under the replaced policy, which is the only time all relationships are visited.
+	 * @param decayPolicy the decay policy, or null if beliefs should never decay
+	 */
+	public void setDecayPolicy(BeliefDecayPolicy decayPolicy) {
+		if (this.decayPolicy != null) {
+			List<Pair<String>> decayedPairs = new ArrayList<Pair<String>>();
+			for (Pair<String> pair : this.affinityBeliefs) {
+				if (this.getRetainedFraction(pair) < 1) {
+					decayedPairs.add(pair);
+				}
+			}
+			for (Pair<String> pair : decayedPairs) { //beliefs as read are unchanged, so listeners are not notified
+				this.affinityBeliefs.put(pair, this.getRelationshipModel(pair), this.getUpdateCount(pair));
+			}
+		}
+		this.decayPolicy = decayPolicy;
+		this.decayPolicyAge = this.age; //last update ages recorded before now are superseded
+	}
+	
+	/***
+	 * Get the policy by which beliefs decay toward the uninformed prior as the world ages.
+	 * @return the decay policy, or null if beliefs never decay
+	 */
+	public BeliefDecayPolicy getDecayPolicy() {
+		return this.decayPolicy;
+	}
+	
+	/***
+	 * Turn on windowing: from now on, alongside the lifetime beliefs about each relationship, keep the beliefs given only its most recent
+	 * ActionEvents. Each ActionEvent adds O(1) amortized time. Any windowed beliefs kept so far are discarded.
+	 * Windowed beliefs are revised with the emphasis base of the current constants, so the constants should be set first.
+	 * @param windowSize the number of most recent ActionEvents of a relationship to give its windowed beliefs, or 0 to turn windowing off
+	 */
+	public void setWindowSize(int windowSize) {
+		int maximumWindowSize = WindowedRelationshipModel.getMaximumWindowSize(this.parameters.getEmphasisBase());
+		if (windowSize < 0 || windowSize > maximumWindowSize) {
+			throw new IllegalArgumentException("The window size must be between 0 and " + maximumWindowSize + ".");
+		}
+		this.windowSize = windowSize;
+		this.windowedBeliefs = (windowSize == 0) ? null : new HashMap<Pair<String>, WindowedRelationshipModel>();
+	}
+	
+	/***
+	 * Get the number of most recent ActionEvents of a relationship its windowed beliefs are given.
+	 * @return the window size, or 0 if windowing is off
+	 */
+	public int getWindowSize() {
+		return this.windowSize;
+	}
+	
+	/***
+	 * Get the beliefs about the given relationship given only its most recent ActionEvents (see setWindowSize), as a map mapping possible
+	 * RelationshipTypes to believed probability of the RelationshipTypes. These are the beliefs an uninformed relationship model would
+	 * hold had it observed only those ActionEvents; reflection does not affect them.
+	 * @param relationship
+	 * @return the beliefs about the given relationship given only its most recent ActionEvents
+	 */
+	public Map<RelationshipType, Double> getWindowedBeliefs(Pair<String> relationship) {
+		if (this.windowedBeliefs == null) { throw new IllegalStateException("Windowing is off."); }
+		WindowedRelationshipModel windowedRelationship = this.windowedBeliefs.get(relationship);
+		if (windowedRelationship == null) {
 			return new SymmetricRelationshipModel().getBeliefs();
 		}
-		return this.affinityBeliefs.get(relationship).getBeliefs();
+		return windowedRelationship.getBeliefs();
+	}
+	
+	/***
+	 * Get the number of ActionEvents of the given relationship its windowed beliefs are given, which is at most the window size.
+	 * @param relationship
+	 * @return the number of ActionEvents of the given relationship in its window
+	 */
+	public int getNumberOfWindowedActionEvents(Pair<String> relationship) {
+		if (this.windowedBeliefs == null) { throw new IllegalStateException("Windowing is off."); }
+		WindowedRelationshipModel windowedRelationship = this.windowedBeliefs.get(relationship);
+		return (windowedRelationship == null) ? 0 : windowedRelationship.getNumberOfActionEvents();
+	}
+	
+	/***
+	 * Add a listener to be notified whenever the stored beliefs about a relationship change.
+	 * @param listener
+	 */
+	public void addBeliefChangeListener(BeliefChangeListener listener) {
+		this.beliefChangeListeners.add(listener);
+	}
+	
+	/***
+	 * Remove a listener added by addBeliefChangeListener.
+	 * @param listener
+	 */
+	public void removeBeliefChangeListener(BeliefChangeListener listener) {
+		this.beliefChangeListeners.remove(listener);
+	}
+	
+	/***
+	 * Get the index of the relationships of each agent, which answers top-k queries without scanning all relationships.
+	 * The first call builds the index from all modeled relationships, as decayed to the current age; from then on it is kept up to date
+	 * as beliefs change. Beliefs that decay change without notice, so while beliefs decay the index may be behind; getMostBelieved catches it up.
+	 * @return the index of the relationships of each agent
+	 */
+	public AdjacencyIndex getAdjacencyIndex() {
+		if (this.adjacencyIndex == null) {
+			this.adjacencyIndex = new AdjacencyIndex();
+			for (Pair<String> pair : this.affinityBeliefs) {
+				this.adjacencyIndex.beliefsChanged(pair, null, this.getRelationshipModel(pair).getBeliefs(), this.age);
+			}
+			this.addBeliefChangeListener(this.adjacencyIndex);
+		}
+		return this.adjacencyIndex;
+	}
+	
+	/***
+	 * Get up to k agents the given agent is most believed to have the given RelationshipType with, most believed first,
+	 * e.g. the given agent's k strongest enemies. This uses (and on first use builds) the adjacency index.
+	 * While beliefs decay, the given agent's relationships are first refreshed in the index, as decayed to the current age,
+	 * at most once per age.
+	 * @param agent
+	 * @param relationshipType
+	 * @param k
+	 * @return up to k agents the given agent is most believed to have the given RelationshipType with
+	 */
+	public List<String> getMostBelieved(String agent, RelationshipType relationshipType, int k) {
+		AdjacencyIndex index = this.getAdjacencyIndex();
+		if (this.decayPolicy != null) {
+			Integer refreshAge = this.adjacencyRefreshAges.get(agent);
+			if (refreshAge == null || refreshAge != this.age) {
+				for (String adjacentAgent : index.getAdjacentAgents(agent)) {
+					Pair<String> relationship = new Pair<String>(agent, adjacentAgent);
+					index.beliefsChanged(relationship, null, this.getRelationshipModel(relationship).getBeliefs(), this.age);
+				}
+				this.adjacencyRefreshAges.put(agent, this.age);
+			}
+		}
+		return index.getTop(agent, relationshipType, k);
+	}
+	
+	/***
+	 * Close the RelationshipStore holding this world model's beliefs if it is Closeable, e.g. releasing the direct memory of an
+	 * OffHeapRelationshipStore or deleting the spill file of a temporary SpillingRelationshipStore. The world model must not be used afterwards.
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.affinityBeliefs instanceof Closeable) {
+			((Closeable) this.affinityBeliefs).close();
+		}
+	}
+	
+	/***
+	 * Return true iff this world model is projected onto some relationships rather than modeling all relationships.
+	 * @return true iff this world model is projected
+	 */
+	public boolean isProjected() {
+		return this.projection != null;
+	}
+	
+	/***
+	 * Get the relationships this world model is projected onto.
+	 * @return the relationships this world model is projected onto, or null if it models all relationships
+	 */
+	public Set<Pair<String>> getProjectedRelationships() {
+		if (!this.isProjected()) {
+			return null;
+		}
+		Set<Pair<String>> projectedRelationships = new HashSet<Pair<String>>();
+		for (List<Pair<String>> relationships : this.projection.values()) {
+			projectedRelationships.addAll(relationships);
+		}
+		return projectedRelationships;
+	}
+	
+	/***
+	 * Get the way this world model stores its beliefs about relationships.
+	 * @return the way this world model stores its beliefs
+	 */
+	public BeliefStorage getBeliefStorage() {
+		return this.affinityBeliefs.getBeliefStorage();
+	}
+	
+	/***
+	 * Return true iff this world model stores the affinity belief history of the world.
+	 * @return true iff this world model stores its belief history
+	 */
+	public boolean isStoringHistory() {
+		return this.STORE_HISTORY;
+	}
+	
+	/***
+	 * Notify all belief change listeners that the beliefs about the given relationship changed at the current age.
+	 * @param relationship
+	 * @param previousBeliefs the beliefs before the change, or null if the relationship was not modeled before
+	 * @param beliefs the beliefs after the change
+	 */
+	private void notifyBeliefChange(Pair<String> relationship, Map<RelationshipType, Double> previousBeliefs, Map<RelationshipType, Double> beliefs) {
+		for (BeliefChangeListener listener : this.beliefChangeListeners) {
+			listener.beliefsChanged(relationship, previousBeliefs, beliefs, this.age);
+		}
+	}
+	
+	//////////////////////////////////////////
+	/////// HELPERS - RE: DECAY //////////////
+	//////////////////////////////////////////
+	
+	/***
+	 * Get the model of the given relationship as of the current age, i.e. caught up on any decay since it was last updated.
+	 * The stored relationship model is left as it is, so a model that has decayed is a copy.
+	 * @param relationship
+	 * @return the model of the given relationship as of the current age, or null if the relationship is not modeled
+	 */
+	private SymmetricRelationshipModel getRelationshipModel(Pair<String> relationship) {
+		SymmetricRelationshipModel relationshipModel = this.affinityBeliefs.get(relationship);
+		double retainedFraction = this.getRetainedFraction(relationship);
+		if (relationshipModel != null && retainedFraction < 1) {
+			relationshipModel = new SymmetricRelationshipModel(relationshipModel.getBeliefs());
+			relationshipModel.decay(retainedFraction);
+		}
+		return relationshipModel;
+	}
+	
+	/***
+	 * Get the fraction of the evidence about the given relationship retained since it was last updated.
+	 * @param relationship
+	 * @return the fraction of the evidence retained, which is 1 if beliefs do not decay
+	 */
+	private double getRetainedFraction(Pair<String> relationship) {
+		if (this.decayPolicy == null) {
+			return 1;
+		}
+		int decayedUpToAge = Math.max(this.affinityBeliefs.getLastUpdateAge(relationship), this.decayPolicyAge); //the policy age if not updated since it was set
+		if (decayedUpToAge == this.age) {
+			return 1;
+		}
+		return this.decayPolicy.getRetainedFraction(this.age - decayedUpToAge);
+	}
+	
+	/***
+	 * Record that the stored model of the given relationship is current as of the current age.
+	 * @param relationship
+	 */
+	private void recordUpdateAge(Pair<String> relationship) {
+		if (this.decayPolicy != null) {
+			this.affinityBeliefs.setLastUpdateAge(relationship, this.age);
+		}
+	}
+	
+	//////////////////////////////////////////
+	/////// CHECKPOINTING ////////////////////
+	//////////////////////////////////////////
+	
+	/***
+	 * Write this world model to the given stream: the relationships it is projected onto (if it is projected), its age, its agent table, and for each relationship its beliefs, 
+	 * its update count and, optionally, its belief history. Relationships refer to agents by their index in the agent table.
+	 * See WorldModelCheckpoint for the surrounding file format.
+	 * Decay policies and windowed beliefs are not written, so a world model with either cannot be written: it is refused rather than restored without them.
+	 * @param output the stream to write to
+	 * @param includeHistory true iff the belief history should be written
+	 * @throws IOException
+	 * @throws IllegalStateException if this world model has a decay policy or windowing is on
+	 */
+	void writeTo(DataOutputStream output, boolean includeHistory) throws IOException {
+		if (this.decayPolicy != null || this.windowedBeliefs != null) {
+			throw new IllegalStateException("A world model with a decay policy or windowed beliefs cannot be checkpointed.");
+		}
+		if (this.isProjected()) {
+			Set<Pair<String>> projectedRelationships = this.getProjectedRelationships();
+			output.writeInt(projectedRelationships.size());
+			for (Pair<String> relationship : projectedRelationships) {
+				Iterator<String> elements = relationship.getElements().iterator();
+				String a = elements.next();
+				WorldModelCheckpoint.writeString(output, a);
+				WorldModelCheckpoint.writeString(output, elements.hasNext() ? elements.next() : a);
+			}
+		}
+		output.writeInt(this.age);
+		
+		Map<String, Integer> agentIndices = new HashMap<String, Integer>();
+		output.writeInt(this.affinityBeliefs.getNumberOfAgents());
+		for (String agent : this.affinityBeliefs.getAgents()) {
+			agentIndices.put(agent, agentIndices.size());
+			WorldModelCheckpoint.writeString(output, agent);
+		}
+		
+		output.writeInt(this.affinityBeliefs.size());
+		for (Pair<String> pair : this.affinityBeliefs) {
+			Iterator<String> elements = pair.getElements().iterator();
+			String a = elements.next();
+			String b = elements.hasNext() ? elements.next() : a;
+			output.writeInt(agentIndices.get(a));
+			output.writeInt(agentIndices.get(b));
+			WorldModelCheckpoint.writeBeliefs(output, this.getRelationshipModel(pair).getBeliefs()); //as decayed to the current age
+			output.writeInt(this.getUpdateCount(pair));
+			
+			if (includeHistory) {
+				Map<Integer,Map<RelationshipType,Double>> timeToBeliefs = this.affinityBeliefHistory.get(pair);
+				if (timeToBeliefs == null) {
+					output.writeInt(0);
+				} else {
+					output.writeInt(timeToBeliefs.size());
+					for (Map.Entry<Integer,Map<RelationshipType,Double>> historyEntry : timeToBeliefs.entrySet()) {
+						output.writeInt(historyEntry.getKey());
+						WorldModelCheckpoint.writeBeliefs(output, historyEntry.getValue());
+					}
+				}
+			}
+		}
+	}
+	
+	/***
+	 * Read a world model written by writeTo from the given stream, leaving the stream positioned after the world model.
+	 * The world model read has the default constants, no decay policy and windowing off, and stores its beliefs in the given way.
+	 * @param input the stream to read from
+	 * @param projected true iff the world model written was projected
+	 * @param includesHistory true iff the belief history was written
+	 * @param beliefStorage the way the world model read should store its beliefs
+	 * @param storeHistory true iff the world model read should store its belief history
+	 * @return the world model read from the given stream
+	 * @throws IOException
+	 */
+	static AffinitybasedWorldModel readFrom(DataInput input, boolean projected, boolean includesHistory, BeliefStorage beliefStorage, boolean storeHistory) throws IOException {
+		AffinitybasedWorldModel worldModel;
+		if (projected) {
+			int numProjectedRelationships = input.readInt();
+			List<Pair<String>> projectedRelationships = new ArrayList<Pair<String>>();
+			for (int i=0; i<numProjectedRelationships; i++) {
+				projectedRelationships.add(new Pair<String>(WorldModelCheckpoint.readString(input), WorldModelCheckpoint.readString(input)));
+			}
+			worldModel = new AffinitybasedWorldModel(projectedRelationships, beliefStorage, storeHistory);
+		} else {
+			worldModel = new AffinitybasedWorldModel(beliefStorage, storeHistory);
+		}
+		try {
+			worldModel.readBeliefsFrom(input, includesHistory);
+		} catch (IOException | RuntimeException e) {
+			worldModel.close(); //release the store of a world model never returned
+			throw e;
+		}
+		return worldModel;
+	}
+	
+	/***
+	 * Helper: read the age, agent table and relationships written by writeTo into this empty world model.
+	 * @param input the stream to read from
+	 * @param includesHistory true iff the belief history was written
+	 * @throws IOException
+	 */
+	private void readBeliefsFrom(DataInput input, boolean includesHistory) throws IOException {
+		this.age = input.readInt();
+		
+		int numAgents = input.readInt();
+		String[] agentTable = new String[numAgents];
+		for (int i=0; i<numAgents; i++) {
+			agentTable[i] = WorldModelCheckpoint.readString(input);
+			this.affinityBeliefs.addAgent(agentTable[i]);
+		}
+		
+		int numRelationships = input.readInt();
+		for (int i=0; i<numRelationships; i++) {
+			Pair<String> pair = new Pair<String>(agentTable[input.readInt()], agentTable[input.readInt()]);
+			SymmetricRelationshipModel relationshipModel = new SymmetricRelationshipModel(WorldModelCheckpoint.readBeliefs(input));
+			this.affinityBeliefs.put(pair, relationshipModel, input.readInt());
+			
+			if (includesHistory) {
+				int numHistoryEntries = input.readInt();
+				if (numHistoryEntries != 0) {
+					Map<Integer,Map<RelationshipType,Double>> timeToBeliefs = new HashMap<Integer,Map<RelationshipType,Double>>();
+					for (int j=0; j<numHistoryEntries; j++) {
+						int time = input.readInt();
+						timeToBeliefs.put(time, WorldModelCheckpoint.readBeliefs(input));
+					}
+					this.affinityBeliefHistory.put(pair, timeToBeliefs);
+				}
+			}
+		}
 	}
 }
@@ -0,0 +1,229 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/***
+ * AgentMetrics count what AffinitybasedAgents do while reading and choosing, and how long it takes,
+ * cheaply enough to be on all the time: counters are LongAdders and durations are recorded in LatencyHistograms,
+ * so several agents on several threads may share one AgentMetrics.
+ *
+ * Scenario reads and task decisions are timed as a whole, in addition to the steps within them.
+ * The metrics may be read as a text snapshot, or over JMX once registered.
+ * @author pkalluri
+ *
+ */
+public class AgentMetrics implements AgentMetricsMBean {
+
+	/***
+	 * The JMX domain under which AgentMetrics are registered.
+	 */
+	public static final String JMX_DOMAIN = "Affinitybased";
+
+	//////////////////////////////////////////
+	/////// COUNTERS /////////////////////////
+	//////////////////////////////////////////
+	final LongAdder eventsRead;
+	final LongAdder implicitResponseFills;
+	final LongAdder implicitResponseFailures;
+	final LongAdder pairsCreated;
+	final LongAdder knowledgeMisses;
+	final LongAdder scenariosRead;
+	final LongAdder tasksDecided;
+	final LongAdder tasksUndecided;
+
+	//////////////////////////////////////////
+	/////// DURATIONS ////////////////////////
+	//////////////////////////////////////////
+	final LatencyHistogram scenarioReadTimes;
+	final LatencyHistogram reflectionTimes;
+	final LatencyHistogram choiceScoringTimes;
+	final LatencyHistogram taskDecisionTimes;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTOR //////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct new AgentMetrics with all counts at 0.
+	 */
+	public AgentMetrics() {
+		this.eventsRead = new LongAdder();
+		this.implicitResponseFills = new LongAdder();
+		this.implicitResponseFailures = new LongAdder();
+		this.pairsCreated = new LongAdder();
+		this.knowledgeMisses = new LongAdder();
+		this.scenariosRead = new LongAdder();
+		this.tasksDecided = new LongAdder();
+		this.tasksUndecided = new LongAdder();
+
+		this.scenarioReadTimes = new LatencyHistogram();
+		this.reflectionTimes = new LatencyHistogram();
+		this.choiceScoringTimes = new LatencyHistogram();
+		this.taskDecisionTimes = new LatencyHistogram();
+	}
+
+	//////////////////////////////////////////
+	/////// OVERRIDE INTERFACE METHODS ///////
+	//////////////////////////////////////////
+
+	/***
+	 * Get the number of ActionEvents read into world models.
+	 */
+	@Override
+	public long getEventsRead() {
+		return this.eventsRead.sum();
+	}
+
+	/***
+	 * Get the number of ActionEvents about non-agents that were filled with recently observed agents, by assuming implicit response.
+	 */
+	@Override
+	public long getImplicitResponseFills() {
+		return this.implicitResponseFills.sum();
+	}
+
+	/***
+	 * Get the number of ActionEvents that could not be filled with recently observed agents.
+	 */
+	@Override
+	public long getImplicitResponseFailures() {
+		return this.implicitResponseFailures.sum();
+	}
+
+	/***
+	 * Get the number of relationships that started being modeled while reading.
+	 */
+	@Override
+	public long getPairsCreated() {
+		return this.pairsCreated.sum();
+	}
+
+	/***
+	 * Get the number of ActionEvents whose action was missing from the knowledge.
+	 */
+	@Override
+	public long getKnowledgeMisses() {
+		return this.knowledgeMisses.sum();
+	}
+
+	/***
+	 * Get the number of scenarios read, including the premises of tasks.
+	 */
+	@Override
+	public long getScenariosRead() {
+		return this.scenariosRead.sum();
+	}
+
+	/***
+	 * Get the number of tasks in which a choice was made.
+	 */
+	@Override
+	public long getTasksDecided() {
+		return this.tasksDecided.sum();
+	}
+
+	/***
+	 * Get the number of tasks in which the agent was undecided.
+	 */
+	@Override
+	public long getTasksUndecided() {
+		return this.tasksUndecided.sum();
+	}
+
+	@Override
+	public String getScenarioReadTimes() {
+		return this.scenarioReadTimes.toString();
+	}
+
+	@Override
+	public String getReflectionTimes() {
+		return this.reflectionTimes.toString();
+	}
+
+	@Override
+	public String getChoiceScoringTimes() {
+		return this.choiceScoringTimes.toString();
+	}
+
+	@Override
+	public String getTaskDecisionTimes() {
+		return this.taskDecisionTimes.toString();
+	}
+
+	@Override
+	public String getSnapshot() {
+		StringBuilder snapshot = new StringBuilder();
+		AgentMetrics.appendLine(snapshot, "Events read", this.getEventsRead());
+		AgentMetrics.appendLine(snapshot, "Implicit response fills", this.getImplicitResponseFills());
+		AgentMetrics.appendLine(snapshot, "Implicit response failures", this.getImplicitResponseFailures());
+		AgentMetrics.appendLine(snapshot, "Pairs created", this.getPairsCreated());
+		AgentMetrics.appendLine(snapshot, "Knowledge misses", this.getKnowledgeMisses());
+		AgentMetrics.appendLine(snapshot, "Scenarios read", this.getScenariosRead());
+		AgentMetrics.appendLine(snapshot, "Tasks decided", this.getTasksDecided());
+		AgentMetrics.appendLine(snapshot, "Tasks undecided", this.getTasksUndecided());
+		AgentMetrics.appendLine(snapshot, "Scenario read time", this.scenarioReadTimes);
+		AgentMetrics.appendLine(snapshot, "Reflection time", this.reflectionTimes);
+		AgentMetrics.appendLine(snapshot, "Choice scoring time", this.choiceScoringTimes);
+		AgentMetrics.appendLine(snapshot, "Task decision time", this.taskDecisionTimes);
+		return snapshot.toString();
+	}
+
+	@Override
+	public void reset() {
+		this.eventsRead.reset();
+		this.implicitResponseFills.reset();
+		this.implicitResponseFailures.reset();
+		this.pairsCreated.reset();
+		this.knowledgeMisses.reset();
+		this.scenariosRead.reset();
+		this.tasksDecided.reset();
+		this.tasksUndecided.reset();
+
+		this.scenarioReadTimes.reset();
+		this.reflectionTimes.reset();
+		this.choiceScoringTimes.reset();
+		this.taskDecisionTimes.reset();
+	}
+
+	//////////////////////////////////////////
+	/////// ADDED METHODS ////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Register these metrics with the platform MBean server under the given name, so they can be read over JMX, e.g. with jconsole.
+	 * @param name the name to register under, unique among registered AgentMetrics
+	 * @throws JMException the metrics could not be registered, e.g. because the name is taken
+	 */
+	public void register(String name) throws JMException {
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, AgentMetrics.getObjectName(name));
+	}
+
+	/***
+	 * Unregister the AgentMetrics registered under the given name.
+	 * @param name
+	 * @throws JMException no AgentMetrics are registered under the given name
+	 */
+	public static void unregister(String name) throws JMException {
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(AgentMetrics.getObjectName(name));
+	}
+
+	@Override
+	public String toString() {
+		return this.getSnapshot();
+	}
+
+	//////////////////////////////////////////
+	/////// PRIVATE HELPERS //////////////////
+	//////////////////////////////////////////
+
+	private static ObjectName getObjectName(String name) throws JMException {
+		return new ObjectName(JMX_DOMAIN + ":type=AgentMetrics,name=" + ObjectName.quote(name));
+	}
+
+	private static void appendLine(StringBuilder snapshot, String label, Object value) {
+		snapshot.append(String.format("%-28s %s%n", label, value));
+	}
+
+}
@@ -0,0 +1,43 @@
+/***
+ * The management interface through which AgentMetrics are exposed over JMX.
+ * @author pkalluri
+ *
+ */
+public interface AgentMetricsMBean {
+
+	public long getEventsRead();
+
+	public long getImplicitResponseFills();
+
+	public long getImplicitResponseFailures();
+
+	public long getPairsCreated();
+
+	public long getKnowledgeMisses();
+
+	public long getScenariosRead();
+
+	public long getTasksDecided();
+
+	public long getTasksUndecided();
+
+	public String getScenarioReadTimes();
+
+	public String getReflectionTimes();
+
+	public String getChoiceScoringTimes();
+
+	public String getTaskDecisionTimes();
+
+	/***
+	 * Get a text snapshot of all metrics.
+	 * @return a text snapshot of all metrics
+	 */
+	public String getSnapshot();
+
+	/***
+	 * Reset all metrics.
+	 */
+	public void reset();
+
+}
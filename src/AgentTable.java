@@ -0,0 +1,245 @@
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/***
+ * An AgentTable gives each agent known to a RelationshipStore an int id, in the order the agents are added, and keeps the agents'
+ * names entirely in direct memory, so that the heap used by a store does not grow with the number of agents.
+ *
+ * Names are appended as UTF-8 bytes to a byte array; each id has an entry holding where its name starts, the length of its name
+ * and the hash of its name. Names are looked up through an open-addressing (linear probing) table of ids + 1 (0 denotes an empty slot),
+ * which is rebuilt at twice the capacity when it becomes half full.
+ *
+ * Closing the table releases its direct memory at once; a closed table must not be used.
+ * @author pkalluri
+ *
+ */
+public class AgentTable implements Closeable, Iterable<String> {
+
+	private static final int NAME_START_OFFSET = 0;
+	private static final int NAME_LENGTH_OFFSET = 8;
+	private static final int NAME_HASH_OFFSET = 12;
+	private static final int ENTRY_SIZE = 16;
+	private static final int INITIAL_CAPACITY = 64;
+
+	/***
+	 * The UTF-8 bytes of all names, and the number of bytes used.
+	 */
+	private final ChunkedBuffer names;
+	private long namesLength;
+
+	/***
+	 * The entry of each id.
+	 */
+	private final ChunkedBuffer entries;
+
+	/***
+	 * The table from names to ids, and its number of slots.
+	 */
+	private ChunkedBuffer slots;
+	private long capacity;
+
+	/***
+	 * The number of agents.
+	 */
+	private int size;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTOR //////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a new AgentTable of no agents.
+	 */
+	public AgentTable() {
+		this.names = new ChunkedBuffer(1, 16 * INITIAL_CAPACITY);
+		this.namesLength = 0;
+		this.entries = new ChunkedBuffer(ENTRY_SIZE, INITIAL_CAPACITY);
+		this.capacity = 2 * INITIAL_CAPACITY;
+		this.slots = new ChunkedBuffer(4, this.capacity);
+		this.size = 0;
+	}
+
+	//////////////////////////////////////////
+	/////// AGENTS ///////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Get the id of the given agent.
+	 * @param agent
+	 * @return the id of the given agent, or -1 if it has none
+	 */
+	public int getId(String agent) {
+		byte[] name = agent.getBytes(StandardCharsets.UTF_8);
+		long slot = this.probe(name, AgentTable.hash(name));
+		return (slot < 0) ? -1 : this.slots.getInt(slot, 0) - 1;
+	}
+
+	/***
+	 * Get the id of the given agent, giving it the next id if it has none.
+	 * @param agent
+	 * @return the id of the given agent
+	 */
+	public int add(String agent) {
+		byte[] name = agent.getBytes(StandardCharsets.UTF_8);
+		int hash = AgentTable.hash(name);
+		long slot = this.probe(name, hash);
+		if (slot >= 0) {
+			return this.slots.getInt(slot, 0) - 1;
+		}
+		if (this.size == Integer.MAX_VALUE) {
+			throw new IllegalStateException("An AgentTable can hold at most " + Integer.MAX_VALUE + " agents.");
+		}
+		int id = this.size;
+		if (this.namesLength + name.length > this.names.getCapacity()) {
+			this.names.ensureCapacity(Math.max(this.namesLength + name.length, 2 * this.names.getCapacity()));
+		}
+		for (int i=0; i<name.length; i++) {
+			this.names.putByte(this.namesLength + i, 0, name[i]);
+		}
+		if (id == this.entries.getCapacity()) {
+			this.entries.ensureCapacity(2 * this.entries.getCapacity());
+		}
+		this.entries.putLong(id, NAME_START_OFFSET, this.namesLength);
+		this.entries.putInt(id, NAME_LENGTH_OFFSET, name.length);
+		this.entries.putInt(id, NAME_HASH_OFFSET, hash);
+		this.namesLength += name.length;
+		this.slots.putInt(-1 - slot, 0, id + 1);
+		this.size ++;
+		if (2L * this.size > this.capacity) {
+			this.grow();
+		}
+		return id;
+	}
+
+	/***
+	 * Get the agent with the given id.
+	 * @param id
+	 * @return the agent with the given id
+	 */
+	public String getName(int id) {
+		if (id < 0 || id >= this.size) { throw new IndexOutOfBoundsException("No agent has id " + id + "."); }
+		long start = this.entries.getLong(id, NAME_START_OFFSET);
+		byte[] name = new byte[this.entries.getInt(id, NAME_LENGTH_OFFSET)];
+		for (int i=0; i<name.length; i++) {
+			name[i] = this.names.getByte(start + i, 0);
+		}
+		return new String(name, StandardCharsets.UTF_8);
+	}
+
+	/***
+	 * Get the number of agents.
+	 * @return the number of agents
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/***
+	 * Iterate over the agents in id order. Agents added while iterating are not visited.
+	 */
+	@Override
+	public Iterator<String> iterator() {
+		final int numAgents = this.size;
+		return new Iterator<String>() {
+			private int nextId = 0;
+
+			@Override
+			public boolean hasNext() {
+				return this.nextId < numAgents;
+			}
+
+			@Override
+			public String next() {
+				if (!this.hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return AgentTable.this.getName(this.nextId++);
+			}
+		};
+	}
+
+	/***
+	 * Release the direct memory of this table.
+	 */
+	@Override
+	public void close() {
+		this.names.close();
+		this.entries.close();
+		this.slots.close();
+		this.size = 0;
+	}
+
+	//////////////////////////////////////////
+	/////// PRIVATE HELPERS //////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Probe the table for the given name.
+	 * @return the slot holding the name's id if it has one, otherwise -1 minus the empty slot where it would be added
+	 */
+	private long probe(byte[] name, int hash) {
+		long mask = this.capacity - 1;
+		long slot = hash & mask;
+		while (true) {
+			int slotId = this.slots.getInt(slot, 0) - 1;
+			if (slotId < 0) {
+				return -1 - slot;
+			}
+			if (this.entries.getInt(slotId, NAME_HASH_OFFSET) == hash && this.hasName(slotId, name)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/***
+	 * Return true iff the agent with the given id has the given name.
+	 */
+	private boolean hasName(int id, byte[] name) {
+		if (this.entries.getInt(id, NAME_LENGTH_OFFSET) != name.length) {
+			return false;
+		}
+		long start = this.entries.getLong(id, NAME_START_OFFSET);
+		for (int i=0; i<name.length; i++) {
+			if (this.names.getByte(start + i, 0) != name[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/***
+	 * Rebuild the table from names to ids at twice the capacity.
+	 */
+	private void grow() {
+		ChunkedBuffer oldSlots = this.slots;
+		this.capacity *= 2;
+		this.slots = new ChunkedBuffer(4, this.capacity);
+		long mask = this.capacity - 1;
+		for (int id=0; id<this.size; id++) {
+			long slot = this.entries.getInt(id, NAME_HASH_OFFSET) & mask;
+			while (this.slots.getInt(slot, 0) != 0) {
+				slot = (slot + 1) & mask;
+			}
+			this.slots.putInt(slot, 0, id + 1);
+		}
+		oldSlots.close();
+	}
+
+	/***
+	 * Hash the given name, spreading its bits over the table.
+	 */
+	private static int hash(byte[] name) {
+		int h = 1;
+		for (byte b : name) {
+			h = 31 * h + b;
+		}
+		h ^= (h >>> 16);
+		h *= 0x85ebca6b;
+		h ^= (h >>> 13);
+		return h;
+	}
+
+}
@@ -0,0 +1,174 @@
+/***
+ * An AsyncTraceSink hands TraceRecords to another TraceSink on its own thread, through a bounded ring buffer,
+ * so an agent only pays for putting each record in the buffer and the other sink formats and writes records in the background.
+ *
+ * Records are handed on in the order they are received. When the buffer is full the agent waits for room, so no record is lost.
+ * flush returns once the other sink has handled (and flushed) every record received before the call, so an agent can flush
+ * before anything else writes to the same stream.
+ * @author pkalluri
+ *
+ */
+public class AsyncTraceSink implements TraceSink {
+
+	/***
+	 * The number of records the buffer holds if none is specified.
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private final TraceSink sink;
+
+	/***
+	 * The ring buffer: the record received n-th, counting from 0, is at n % capacity until it is handed on.
+	 * Guarded by this sink's monitor.
+	 */
+	private final TraceRecord[] buffer;
+	private long numberReceived;
+	private long numberHandled;
+	private boolean closed;
+
+	private final Thread handler;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTORS /////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a new AsyncTraceSink with the default capacity handing records to the given sink.
+	 * @param sink
+	 */
+	public AsyncTraceSink(TraceSink sink) {
+		this(sink, DEFAULT_CAPACITY);
+	}
+
+	/***
+	 * Construct a new AsyncTraceSink handing records to the given sink.
+	 * @param sink
+	 * @param capacity the number of records the buffer holds
+	 */
+	public AsyncTraceSink(TraceSink sink, int capacity) {
+		if (capacity <= 0) { throw new IllegalArgumentException("The capacity must be positive."); }
+		this.sink = sink;
+		this.buffer = new TraceRecord[capacity];
+		this.numberReceived = 0;
+		this.numberHandled = 0;
+		this.closed = false;
+
+		this.handler = new Thread("AsyncTraceSink") {
+			@Override
+			public void run() {
+				AsyncTraceSink.this.handleRecords();
+			}
+		};
+		this.handler.setDaemon(true); //do not keep the program running for the sake of tracing
+		this.handler.start();
+	}
+
+	//////////////////////////////////////////
+	/////// OVERRIDE INTERFACE METHODS ///////
+	//////////////////////////////////////////
+
+	@Override
+	public synchronized void accept(TraceRecord record) {
+		if (this.closed) { throw new IllegalStateException("The sink is closed."); }
+		boolean interrupted = false;
+		while (this.numberReceived - this.numberHandled == this.buffer.length) {
+			try {
+				this.wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		this.buffer[(int) (this.numberReceived % this.buffer.length)] = record;
+		this.numberReceived ++;
+		this.notifyAll();
+	}
+
+	@Override
+	public void flush() {
+		synchronized (this) {
+			long numberToHandle = this.numberReceived;
+			boolean interrupted = false;
+			while (this.numberHandled < numberToHandle) {
+				try {
+					this.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		this.sink.flush();
+	}
+
+	//////////////////////////////////////////
+	/////// ADDED METHODS ////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Hand on the records already received, then stop the background thread. Records may not be received after closing.
+	 */
+	public void close() {
+		synchronized (this) {
+			this.closed = true;
+			this.notifyAll();
+		}
+		try {
+			this.handler.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.sink.flush();
+	}
+
+	//////////////////////////////////////////
+	/////// PRIVATE HELPERS //////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Hand records on to the other sink until closed, taking every waiting record from the buffer at once.
+	 */
+	private void handleRecords() {
+		TraceRecord[] records = new TraceRecord[this.buffer.length];
+		while (true) {
+			int numberOfRecords;
+			synchronized (this) {
+				while (this.numberReceived == this.numberHandled && !this.closed) {
+					try {
+						this.wait();
+					} catch (InterruptedException e) {
+						//keep handling records until closed
+					}
+				}
+				if (this.numberReceived == this.numberHandled) { //closed and empty
+					return;
+				}
+				numberOfRecords = (int) (this.numberReceived - this.numberHandled);
+				for (int i=0; i<numberOfRecords; i++) {
+					int slot = (int) ((this.numberHandled + i) % this.buffer.length);
+					records[i] = this.buffer[slot];
+					this.buffer[slot] = null;
+				}
+			}
+
+			for (int i=0; i<numberOfRecords; i++) {
+				try {
+					this.sink.accept(records[i]);
+				} catch (RuntimeException e) { //a failing record must not stop tracing
+					e.printStackTrace();
+				}
+				records[i] = null;
+			}
+
+			synchronized (this) {
+				this.numberHandled += numberOfRecords;
+				this.notifyAll(); //room in the buffer, and records handled for flush
+			}
+		}
+	}
+
+}
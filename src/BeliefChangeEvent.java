@@ -0,0 +1,73 @@
+import java.util.Map;
+
+/***
+ * A BeliefChangeEvent describes a significant change of the beliefs about a relationship: the most believed RelationshipType changed,
+ * or the confidence (the probability of the most believed RelationshipType) crossed a threshold of interest.
+ * @author pkalluri
+ *
+ */
+public class BeliefChangeEvent {
+
+	/***
+	 * The relationship whose beliefs changed.
+	 */
+	public final Pair<String> relationship;
+
+	/***
+	 * The most believed RelationshipType before and after the change, each null if no single RelationshipType was most believed.
+	 */
+	public final RelationshipType previousMostBelieved;
+	public final RelationshipType mostBelieved;
+
+	/***
+	 * The probability of the most believed RelationshipType before and after the change.
+	 */
+	public final double previousConfidence;
+	public final double confidence;
+
+	/***
+	 * The beliefs after the change.
+	 */
+	public final Map<RelationshipType, Double> beliefs;
+
+	/***
+	 * The age of the world model at the change.
+	 */
+	public final int age;
+
+	/***
+	 * Construct a new BeliefChangeEvent.
+	 * @param relationship
+	 * @param previousMostBelieved
+	 * @param mostBelieved
+	 * @param previousConfidence
+	 * @param confidence
+	 * @param beliefs
+	 * @param age
+	 */
+	public BeliefChangeEvent(Pair<String> relationship, RelationshipType previousMostBelieved, RelationshipType mostBelieved,
+			double previousConfidence, double confidence, Map<RelationshipType, Double> beliefs, int age) {
+		this.relationship = relationship;
+		this.previousMostBelieved = previousMostBelieved;
+		this.mostBelieved = mostBelieved;
+		this.previousConfidence = previousConfidence;
+		this.confidence = confidence;
+		this.beliefs = beliefs;
+		this.age = age;
+	}
+
+	/***
+	 * Return true iff the most believed RelationshipType changed.
+	 * @return true iff the most believed RelationshipType changed
+	 */
+	public boolean isFlip() {
+		return this.previousMostBelieved != this.mostBelieved;
+	}
+
+	@Override
+	public String toString() {
+		return this.relationship + " at " + this.age + ": " + this.previousMostBelieved + "(" + this.previousConfidence + ") -> "
+				+ this.mostBelieved + "(" + this.confidence + ")";
+	}
+
+}
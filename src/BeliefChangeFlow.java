@@ -0,0 +1,73 @@
+/***
+ * BeliefChangeFlow holds the interfaces by which belief changes are published to subscribers with backpressure.
+ * They have the same shape and contract as those of java.util.concurrent.Flow (Reactive Streams), which this code base
+ * cannot use because it targets Java 8; moving to java.util.concurrent.Flow is a matter of changing imports.
+ * @author pkalluri
+ *
+ */
+public final class BeliefChangeFlow {
+
+	private BeliefChangeFlow() {
+	}
+
+	/***
+	 * A Publisher produces items received by Subscribers, each according to the demand it signals through its Subscription.
+	 * @param <T> the type of item published
+	 */
+	public static interface Publisher<T> {
+
+		/***
+		 * Add the given subscriber, which is then sent onSubscribe with a new Subscription.
+		 * @param subscriber
+		 */
+		public void subscribe(Subscriber<? super T> subscriber);
+	}
+
+	/***
+	 * A Subscriber receives items from a Publisher, no more than it has requested through its Subscription.
+	 * @param <T> the type of item received
+	 */
+	public static interface Subscriber<T> {
+
+		/***
+		 * Receive the Subscription through which items are requested, before any other method is invoked.
+		 * @param subscription
+		 */
+		public void onSubscribe(Subscription subscription);
+
+		/***
+		 * Receive the next item.
+		 * @param item
+		 */
+		public void onNext(T item);
+
+		/***
+		 * Receive an unrecoverable error, after which no more items are received.
+		 * @param throwable
+		 */
+		public void onError(Throwable throwable);
+
+		/***
+		 * Receive notice that no more items will be received.
+		 */
+		public void onComplete();
+	}
+
+	/***
+	 * A Subscription links a Publisher and a Subscriber.
+	 */
+	public static interface Subscription {
+
+		/***
+		 * Request up to n more items. A non-positive n is an error, signaled through onError.
+		 * @param n
+		 */
+		public void request(long n);
+
+		/***
+		 * Stop receiving items, eventually.
+		 */
+		public void cancel();
+	}
+
+}
@@ -0,0 +1,20 @@
+import java.util.Map;
+
+/***
+ * A BeliefChangeListener is notified by an AffinitybasedWorldModel whenever the stored beliefs about a relationship change:
+ * when the relationship is first modeled, when it is updated by an ActionEvent, and when it is refined upon reflection.
+ * @author pkalluri
+ *
+ */
+public interface BeliefChangeListener {
+
+	/***
+	 * Notify that the beliefs about the given relationship changed.
+	 * @param relationship the relationship whose beliefs changed
+	 * @param previousBeliefs the beliefs before the change, or null if the relationship was not modeled before
+	 * @param beliefs the beliefs after the change
+	 * @param age the age of the world model at the change
+	 */
+	public void beliefsChanged(Pair<String> relationship, Map<RelationshipType, Double> previousBeliefs, Map<RelationshipType, Double> beliefs, int age);
+
+}
@@ -0,0 +1,336 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/***
+ * A BeliefChangePublisher publishes the significant belief changes of a world model to subscribers, so they can react to
+ * relationships changing without polling every relationship after each ActionEvent.
+ *
+ * It listens to the world model (see AffinitybasedWorldModel.addBeliefChangeListener) and publishes a BeliefChangeEvent when the most
+ * believed RelationshipType of a relationship changes, or when the confidence in it crosses one of the given thresholds.
+ *
+ * Each subscriber has a bounded buffer of events. Events are delivered in batches of up to a maximum batch size, each batch counting
+ * as one item of demand, on the given Executor. When a subscriber's buffer is full, the world model blocks until the subscriber
+ * requests more, so a subscriber that stops requesting without cancelling stops the world model.
+ * @author pkalluri
+ *
+ */
+public class BeliefChangePublisher implements BeliefChangeFlow.Publisher<List<BeliefChangeEvent>>, BeliefChangeListener {
+
+	//////////////////////////////////////////
+	/////// PARAMETERS ///////////////////////
+	//////////////////////////////////////////
+	/***
+	 * The number of events each subscriber's buffer holds if none is specified.
+	 */
+	public static final int DEFAULT_BUFFER_CAPACITY = 256;
+
+	/***
+	 * The largest number of events delivered at once if none is specified.
+	 */
+	public static final int DEFAULT_MAX_BATCH_SIZE = 16;
+
+	private final Executor executor;
+	private final int bufferCapacity;
+	private final int maxBatchSize;
+
+	/***
+	 * The confidences whose crossing is significant, in increasing order.
+	 */
+	private final double[] thresholds;
+
+	//////////////////////////////////////////
+	/////// STATE ////////////////////////////
+	//////////////////////////////////////////
+	private final List<BufferedSubscription> subscriptions;
+	private volatile boolean closed;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTORS /////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a new BeliefChangePublisher with the default buffer capacity and maximum batch size, delivering on the common pool.
+	 * @param thresholds the confidences whose crossing is significant, e.g. .5 and .9
+	 */
+	public BeliefChangePublisher(double... thresholds) {
+		this(ForkJoinPool.commonPool(), DEFAULT_BUFFER_CAPACITY, DEFAULT_MAX_BATCH_SIZE, thresholds);
+	}
+
+	/***
+	 * Construct a new BeliefChangePublisher.
+	 * @param executor the Executor on which events are delivered
+	 * @param bufferCapacity the number of events each subscriber's buffer holds
+	 * @param maxBatchSize the largest number of events delivered at once
+	 * @param thresholds the confidences whose crossing is significant, e.g. .5 and .9
+	 */
+	public BeliefChangePublisher(Executor executor, int bufferCapacity, int maxBatchSize, double... thresholds) {
+		if (bufferCapacity <= 0 || maxBatchSize <= 0) { throw new IllegalArgumentException("The buffer capacity and maximum batch size must be positive."); }
+		this.executor = executor;
+		this.bufferCapacity = bufferCapacity;
+		this.maxBatchSize = maxBatchSize;
+		this.thresholds = thresholds.clone();
+		Arrays.sort(this.thresholds);
+		this.subscriptions = new CopyOnWriteArrayList<BufferedSubscription>();
+		this.closed = false;
+	}
+
+	//////////////////////////////////////////
+	/////// OVERRIDE INTERFACE METHODS ///////
+	//////////////////////////////////////////
+
+	@Override
+	public void subscribe(BeliefChangeFlow.Subscriber<? super List<BeliefChangeEvent>> subscriber) {
+		BufferedSubscription subscription = new BufferedSubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+		if (this.closed) {
+			subscription.complete();
+		} else {
+			this.subscriptions.add(subscription);
+		}
+	}
+
+	@Override
+	public void beliefsChanged(Pair<String> relationship, Map<RelationshipType, Double> previousBeliefs, Map<RelationshipType, Double> beliefs, int age) {
+		if (this.subscriptions.isEmpty()) {
+			return;
+		}
+		RelationshipType previousMostBelieved = null;
+		double previousConfidence = 1./RelationshipType.values().length; //a newly modeled relationship is uninformed
+		if (previousBeliefs != null) {
+			previousMostBelieved = BeliefChangePublisher.getMostBelieved(previousBeliefs);
+			previousConfidence = BeliefChangePublisher.getConfidence(previousBeliefs);
+		}
+		RelationshipType mostBelieved = BeliefChangePublisher.getMostBelieved(beliefs);
+		double confidence = BeliefChangePublisher.getConfidence(beliefs);
+
+		if (previousMostBelieved != mostBelieved || this.crossesThreshold(previousConfidence, confidence)) {
+			BeliefChangeEvent event = new BeliefChangeEvent(relationship, previousMostBelieved, mostBelieved, previousConfidence, confidence, beliefs, age);
+			for (BufferedSubscription subscription : this.subscriptions) {
+				subscription.offer(event);
+			}
+		}
+	}
+
+	//////////////////////////////////////////
+	/////// ADDED METHODS ////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Stop publishing. Each subscriber receives onComplete once it has received all events already buffered for it.
+	 */
+	public void close() {
+		this.closed = true;
+		for (BufferedSubscription subscription : this.subscriptions) {
+			subscription.complete();
+		}
+		this.subscriptions.clear();
+	}
+
+	/***
+	 * Get the number of current subscribers.
+	 * @return the number of current subscribers
+	 */
+	public int getNumberOfSubscribers() {
+		return this.subscriptions.size();
+	}
+
+	//////////////////////////////////////////
+	/////// PRIVATE HELPERS //////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Return true iff some threshold lies between the given confidences, i.e. the confidence crossed it.
+	 * @param previousConfidence
+	 * @param confidence
+	 * @return true iff the confidence crossed some threshold
+	 */
+	private boolean crossesThreshold(double previousConfidence, double confidence) {
+		for (double threshold : this.thresholds) {
+			if ((previousConfidence >= threshold) != (confidence >= threshold)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/***
+	 * Get the single most believed RelationshipType in the given beliefs.
+	 * @param beliefs
+	 * @return the most believed RelationshipType, or null if several are believed equally and most
+	 */
+	private static RelationshipType getMostBelieved(Map<RelationshipType, Double> beliefs) {
+		RelationshipType mostBelieved = null;
+		double confidence = Double.NEGATIVE_INFINITY;
+		boolean tied = false;
+		for (RelationshipType relationshipType : RelationshipType.values()) {
+			double belief = beliefs.get(relationshipType);
+			if (belief > confidence) {
+				mostBelieved = relationshipType;
+				confidence = belief;
+				tied = false;
+			} else if (belief == confidence) {
+				tied = true;
+			}
+		}
+		return tied ? null : mostBelieved;
+	}
+
+	/***
+	 * Get the probability of the most believed RelationshipType in the given beliefs.
+	 * @param beliefs
+	 * @return the probability of the most believed RelationshipType
+	 */
+	private static double getConfidence(Map<RelationshipType, Double> beliefs) {
+		double confidence = 0;
+		for (double belief : beliefs.values()) {
+			confidence = Math.max(confidence, belief);
+		}
+		return confidence;
+	}
+
+	/***
+	 * A BufferedSubscription buffers the events of one subscriber and delivers them in batches as the subscriber requests them.
+	 * Its state is guarded by its own monitor; the subscriber is only ever called by one delivery task at a time.
+	 */
+	private class BufferedSubscription implements BeliefChangeFlow.Subscription, Runnable {
+		private final BeliefChangeFlow.Subscriber<? super List<BeliefChangeEvent>> subscriber;
+		private final Deque<BeliefChangeEvent> buffer;
+		private long demand;
+		private boolean delivering;
+		private boolean completed;
+		private boolean cancelled;
+		private Throwable error;
+
+		BufferedSubscription(BeliefChangeFlow.Subscriber<? super List<BeliefChangeEvent>> subscriber) {
+			this.subscriber = subscriber;
+			this.buffer = new ArrayDeque<BeliefChangeEvent>();
+			this.demand = 0;
+			this.delivering = false;
+			this.completed = false;
+			this.cancelled = false;
+			this.error = null;
+		}
+
+		@Override
+		public synchronized void request(long n) {
+			if (this.cancelled) {
+				return;
+			}
+			if (n <= 0) {
+				this.error = new IllegalArgumentException("Demand must be positive, but " + n + " was requested.");
+			} else {
+				this.demand = (this.demand + n < 0) ? Long.MAX_VALUE : this.demand + n; //saturate on overflow
+			}
+			this.scheduleDelivery();
+		}
+
+		@Override
+		public synchronized void cancel() {
+			this.cancelled = true;
+			this.buffer.clear();
+			BeliefChangePublisher.this.subscriptions.remove(this);
+			this.notifyAll(); //release a blocked publisher
+		}
+
+		/***
+		 * Buffer the given event, waiting while the buffer is full.
+		 * @param event
+		 */
+		synchronized void offer(BeliefChangeEvent event) {
+			boolean interrupted = false;
+			while (this.buffer.size() >= BeliefChangePublisher.this.bufferCapacity && !this.cancelled) {
+				try {
+					this.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			if (this.cancelled) {
+				return;
+			}
+			this.buffer.addLast(event);
+			this.scheduleDelivery();
+		}
+
+		/***
+		 * Complete this subscription once its buffer is delivered.
+		 */
+		synchronized void complete() {
+			this.completed = true;
+			this.scheduleDelivery();
+		}
+
+		/***
+		 * Start a delivery task, unless one is running. The monitor must be held.
+		 */
+		private void scheduleDelivery() {
+			if (!this.delivering && !this.cancelled) {
+				this.delivering = true;
+				BeliefChangePublisher.this.executor.execute(this);
+			}
+		}
+
+		/***
+		 * Deliver batches while there is demand for them, then any error or completion.
+		 */
+		@Override
+		public void run() {
+			while (true) {
+				List<BeliefChangeEvent> batch = null;
+				Throwable errorToSignal = null;
+				boolean completeNow = false;
+				synchronized (this) {
+					if (this.cancelled) {
+						this.delivering = false;
+						return;
+					} else if (this.error != null) {
+						errorToSignal = this.error;
+						this.cancelled = true;
+						this.buffer.clear();
+						BeliefChangePublisher.this.subscriptions.remove(this);
+						this.notifyAll();
+					} else if (!this.buffer.isEmpty() && this.demand > 0) {
+						batch = new ArrayList<BeliefChangeEvent>();
+						while (!this.buffer.isEmpty() && batch.size() < BeliefChangePublisher.this.maxBatchSize) {
+							batch.add(this.buffer.pollFirst());
+						}
+						this.demand --;
+						this.notifyAll(); //room in the buffer
+					} else if (this.buffer.isEmpty() && this.completed) {
+						completeNow = true;
+						this.cancelled = true;
+					} else {
+						this.delivering = false;
+						return;
+					}
+				}
+
+				if (errorToSignal != null) {
+					this.subscriber.onError(errorToSignal);
+					return;
+				} else if (completeNow) {
+					this.subscriber.onComplete();
+					return;
+				}
+				try {
+					this.subscriber.onNext(batch);
+				} catch (RuntimeException e) { //a failing subscriber is cancelled
+					this.cancel();
+					this.subscriber.onError(e);
+					return;
+				}
+			}
+		}
+	}
+
+}
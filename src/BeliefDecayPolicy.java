@@ -0,0 +1,21 @@
+/***
+ * A BeliefDecayPolicy decides how much of the evidence about a relationship is retained as the world ages without that
+ * relationship being observed, so that beliefs drift back toward the uninformed prior.
+ *
+ * An AffinitybasedWorldModel with a BeliefDecayPolicy applies decay lazily: it records the age at which each relationship was last
+ * updated, and catches the relationship up only when it is next read or updated.
+ * @author pkalluri
+ *
+ */
+public interface BeliefDecayPolicy {
+
+	/***
+	 * Get the fraction of the evidence about a relationship that is retained after the world ages by the given amount.
+	 * It must be between 0 and 1, be 1 for an elapsed age of 0, and retaining the fraction for a then for b must be the same as
+	 * retaining the fraction for a+b, so that catching up lazily gives the same beliefs whenever it is done.
+	 * @param elapsedAge the number of updates of the world model since the relationship was last updated
+	 * @return the fraction of the evidence about a relationship that is retained
+	 */
+	public double getRetainedFraction(int elapsedAge);
+
+}
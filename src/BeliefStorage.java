@@ -0,0 +1,55 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/***
+ * The BeliefStorage enum describes the ways an AffinitybasedWorldModel can store its beliefs about relationships:
+ * on the heap, off the heap at double precision, off the heap quantized, or spilled to a file.
+ * @author pkalluri
+ *
+ */
+public enum BeliefStorage {
+
+	/***
+	 * Beliefs are stored at double precision in maps on the heap (see HeapRelationshipStore). This is the default.
+	 */
+	HEAP,
+
+	/***
+	 * Beliefs are stored at double precision in direct memory (see OffHeapRelationshipStore).
+	 */
+	OFF_HEAP,
+
+	/***
+	 * Beliefs are stored as 16-bit log-odds in direct memory (see QuantizedBeliefs for the error bounds),
+	 * using 16 bytes per slot rather than 40.
+	 */
+	QUANTIZED,
+
+	/***
+	 * Beliefs are stored at double precision in a temporary spill file, with the most recently used held on the heap
+	 * (see SpillingRelationshipStore). The file is deleted when the world model is closed.
+	 */
+	SPILLING;
+
+	/***
+	 * Create an empty RelationshipStore storing beliefs in this way.
+	 * @return an empty RelationshipStore storing beliefs in this way
+	 */
+	public RelationshipStore createRelationshipStore() {
+		switch (this) {
+		case OFF_HEAP:
+			return new OffHeapRelationshipStore(OffHeapRelationshipStore.DEFAULT_INITIAL_CAPACITY, false);
+		case QUANTIZED:
+			return new OffHeapRelationshipStore(OffHeapRelationshipStore.DEFAULT_INITIAL_CAPACITY, true);
+		case SPILLING:
+			try {
+				return SpillingRelationshipStore.createTemporary(SpillingRelationshipStore.DEFAULT_RESIDENT_CAPACITY);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Could not create a spill file.", e);
+			}
+		default:
+			return new HeapRelationshipStore();
+		}
+	}
+
+}
@@ -0,0 +1,232 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * A ChunkedBuffer is an array of fixed-size elements kept outside the heap, either in direct memory or in a memory-mapped file.
+ * The elements are split over ByteBuffer chunks of at most 2^30 bytes, each holding a power of 2 number of whole elements,
+ * so that the array is indexed by long and is not limited to the 2GB a single ByteBuffer can hold.
+ *
+ * Direct memory is zeroed when allocated, and so is a mapped file when it is extended, so new elements are all zero.
+ * Closing a ChunkedBuffer releases its memory (or unmaps its file) at once rather than when the chunks are garbage collected;
+ * it must not be used afterwards.
+ * @author pkalluri
+ *
+ */
+public class ChunkedBuffer implements Closeable {
+
+	private static final int MAXIMUM_CHUNK_SIZE = 1 << 30;
+
+	/***
+	 * The size of an element in bytes, and the number of elements in a full chunk (as a shift and a mask).
+	 */
+	private final int elementSize;
+	private final int chunkShift;
+	private final long chunkMask;
+
+	/***
+	 * The file the chunks are mapped from, or null if they are allocated in direct memory.
+	 */
+	private final FileChannel channel;
+
+	/***
+	 * The chunks, in order, and the number of elements they hold.
+	 */
+	private final List<ByteBuffer> chunks;
+	private long capacity;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTORS /////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a new ChunkedBuffer of the given number of elements in direct memory.
+	 * @param elementSize the size of an element in bytes
+	 * @param capacity the number of elements
+	 */
+	ChunkedBuffer(int elementSize, long capacity) {
+		this(elementSize, (FileChannel) null);
+		this.ensureCapacity(capacity);
+	}
+
+	/***
+	 * Construct a new ChunkedBuffer of no elements, mapped from the given file as it grows.
+	 * Element i is kept at byte i*elementSize of the file.
+	 * @param elementSize the size of an element in bytes
+	 * @param channel the file to map
+	 */
+	ChunkedBuffer(int elementSize, FileChannel channel) {
+		if (elementSize <= 0 || elementSize > MAXIMUM_CHUNK_SIZE) { throw new IllegalArgumentException("The element size must be between 1 and " + MAXIMUM_CHUNK_SIZE + "."); }
+		this.elementSize = elementSize;
+		this.chunkShift = 31 - Integer.numberOfLeadingZeros(MAXIMUM_CHUNK_SIZE / elementSize);
+		this.chunkMask = (1L << this.chunkShift) - 1;
+		this.channel = channel;
+		this.chunks = new ArrayList<ByteBuffer>();
+		this.capacity = 0;
+	}
+
+	//////////////////////////////////////////
+	/////// SIZE /////////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Get the number of elements.
+	 * @return the number of elements
+	 */
+	long getCapacity() {
+		return this.capacity;
+	}
+
+	/***
+	 * Get the number of bytes held by the chunks.
+	 * @return the number of bytes held
+	 */
+	long getBytes() {
+		return this.capacity * this.elementSize;
+	}
+
+	/***
+	 * Grow to hold at least the given number of elements. Only the last chunk can be less than full; it is grown by at least
+	 * doubling it, copying a direct chunk into a larger one or remapping a mapped chunk.
+	 * @param capacity the number of elements to hold
+	 */
+	void ensureCapacity(long capacity) {
+		if (capacity <= this.capacity) {
+			return;
+		}
+		long fullChunk = this.chunkMask + 1;
+		try {
+			while (this.capacity < capacity) {
+				int lastChunk = this.chunks.size() - 1;
+				long lastChunkCapacity = (lastChunk < 0) ? fullChunk : this.chunks.get(lastChunk).capacity() / this.elementSize;
+				if (lastChunkCapacity < fullChunk) { //replace the last chunk with a larger one
+					long chunkCapacity = Math.min(fullChunk, Math.max(capacity - (this.capacity - lastChunkCapacity), 2 * lastChunkCapacity));
+					ByteBuffer chunk = this.allocateChunk(lastChunk, chunkCapacity);
+					ByteBuffer oldChunk = this.chunks.get(lastChunk);
+					if (this.channel == null) { //a mapped chunk is remapped over the same bytes of the file
+						oldChunk.clear();
+						chunk.put(oldChunk);
+						chunk.clear();
+					}
+					ChunkedBuffer.free(oldChunk);
+					this.chunks.set(lastChunk, chunk);
+					this.capacity += chunkCapacity - lastChunkCapacity;
+				} else {
+					long chunkCapacity = Math.min(fullChunk, capacity - this.capacity);
+					this.chunks.add(this.allocateChunk(lastChunk + 1, chunkCapacity));
+					this.capacity += chunkCapacity;
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not extend a mapped ChunkedBuffer.", e);
+		}
+	}
+
+	/***
+	 * Release the memory of (or unmap) all chunks.
+	 */
+	@Override
+	public void close() {
+		for (ByteBuffer chunk : this.chunks) {
+			ChunkedBuffer.free(chunk);
+		}
+		this.chunks.clear();
+		this.capacity = 0;
+	}
+
+	//////////////////////////////////////////
+	/////// ACCESS ///////////////////////////
+	//////////////////////////////////////////
+
+	byte getByte(long element, int offset) {
+		return this.getChunk(element).get(this.getPosition(element, offset));
+	}
+
+	void putByte(long element, int offset, byte value) {
+		this.getChunk(element).put(this.getPosition(element, offset), value);
+	}
+
+	int getInt(long element, int offset) {
+		return this.getChunk(element).getInt(this.getPosition(element, offset));
+	}
+
+	void putInt(long element, int offset, int value) {
+		this.getChunk(element).putInt(this.getPosition(element, offset), value);
+	}
+
+	long getLong(long element, int offset) {
+		return this.getChunk(element).getLong(this.getPosition(element, offset));
+	}
+
+	void putLong(long element, int offset, long value) {
+		this.getChunk(element).putLong(this.getPosition(element, offset), value);
+	}
+
+	double getDouble(long element, int offset) {
+		return this.getChunk(element).getDouble(this.getPosition(element, offset));
+	}
+
+	void putDouble(long element, int offset, double value) {
+		this.getChunk(element).putDouble(this.getPosition(element, offset), value);
+	}
+
+	//////////////////////////////////////////
+	/////// PRIVATE HELPERS //////////////////
+	//////////////////////////////////////////
+
+	private ByteBuffer getChunk(long element) {
+		return this.chunks.get((int) (element >>> this.chunkShift));
+	}
+
+	private int getPosition(long element, int offset) {
+		return (int) (element & this.chunkMask) * this.elementSize + offset;
+	}
+
+	/***
+	 * Allocate (or map) the chunk with the given number holding the given number of elements.
+	 */
+	private ByteBuffer allocateChunk(int chunkNumber, long chunkCapacity) throws IOException {
+		int chunkSize = (int) (chunkCapacity * this.elementSize);
+		if (this.channel == null) {
+			return ByteBuffer.allocateDirect(chunkSize);
+		}
+		long chunkStart = ((long) chunkNumber << this.chunkShift) * this.elementSize;
+		return this.channel.map(FileChannel.MapMode.READ_WRITE, chunkStart, chunkSize);
+	}
+
+	/***
+	 * Release the memory of the given direct (or mapped) buffer now, through the JDK's cleaner. If the cleaner cannot be reached,
+	 * the memory is left to be released when the buffer is garbage collected.
+	 * @param buffer a buffer returned by ByteBuffer.allocateDirect or FileChannel.map, not a view of one
+	 */
+	private static void free(ByteBuffer buffer) {
+		if (!buffer.isDirect()) {
+			return;
+		}
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			try { //Java 9 and later
+				Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+				Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+				theUnsafe.setAccessible(true);
+				invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			} catch (NoSuchMethodException e) { //Java 8
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				if (cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+			}
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			//left to the garbage collector
+		}
+	}
+
+}
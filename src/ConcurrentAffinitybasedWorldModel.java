@@ -0,0 +1,353 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/***
+ * The ConcurrentAffinitybasedWorldModel implements the WorldModel interface with the same beliefs as the AffinitybasedWorldModel,
+ * but may be updated by several threads at once, for example by several agents each reading a different feed of ActionEvents
+ * about the same world.
+ *
+ * Relationships are partitioned by the hash of their Pair into shards, each with its own writer lock, so that updates
+ * of relationships in different shards proceed in parallel.
+ *
+ * The beliefs about each relationship are held in an immutable, versioned BeliefCell. A writer never modifies a published
+ * cell: it computes the revised beliefs into a new cell and publishes it in place of the old one. Readers therefore never
+ * take a lock and never wait on a writer, and always see a complete, normalized distribution from some update.
+ *
+ * Like the AffinitybasedWorldModel, the ConcurrentAffinitybasedWorldModel assumes a principle of default bias upon reflection.
+ * @author pkalluri
+ *
+ */
+public class ConcurrentAffinitybasedWorldModel implements WorldModel {
+
+	/***
+	 * A BeliefCell is an immutable snapshot of the beliefs about one relationship.
+	 * Its relationship model is never updated once the cell is published.
+	 */
+	private static final class BeliefCell {
+		final SymmetricRelationshipModel relationship;
+		final int updateCount;
+		final long version;
+
+		BeliefCell(SymmetricRelationshipModel relationship, int updateCount, long version) {
+			this.relationship = relationship;
+			this.updateCount = updateCount;
+			this.version = version;
+		}
+	}
+
+	/***
+	 * A Shard holds the relationships whose Pairs hash to it, and the lock serializing the writers of them.
+	 * Cells may be read without the lock; the history may only be accessed with it.
+	 */
+	private static class Shard {
+		final ReentrantLock lock = new ReentrantLock();
+		final Map<Pair<String>, BeliefCell> affinityBeliefs = new ConcurrentHashMap<Pair<String>, BeliefCell>();
+		final Map<Pair<String>, Map<Integer,Map<RelationshipType,Double>>> affinityBeliefHistory = new HashMap<Pair<String>, Map<Integer,Map<RelationshipType,Double>>>();
+	}
+
+	/***
+	 * The shards holding the relationships between the agents known to exist.
+	 */
+	private final Shard[] shards;
+
+	/***
+	 * The agents known to exist, in the order they became known. Guarded by agentLock.
+	 */
+	private final List<String> agents;
+
+	/***
+	 * The agents known to exist, for lock-free membership checks. An agent is only added once all its pairs exist.
+	 */
+	private final Set<String> knownAgents;
+
+	/***
+	 * The lock taken to add agents.
+	 */
+	private final Object agentLock;
+
+	/***
+	 * The number of updates that have been made to this world model.
+	 */
+	private final AtomicInteger age;
+
+	//////////////////////////////////////////
+	/////// PARAMETERS ///////////////////////
+	//////////////////////////////////////////
+	/***
+	 * The number of shards used if none is specified.
+	 */
+	public static final int DEFAULT_NUMBER_OF_SHARDS = 64;
+
+	/***
+	 * Store the affinity belief history of the world iff true.
+	 */
+	private final boolean storeHistory;
+
+	/***
+	 * The constants by which beliefs are revised.
+	 */
+	private final ModelParameters parameters;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTORS /////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a new ConcurrentAffinitybasedWorldModel containing no information, with the default number of shards, storing history.
+	 */
+	public ConcurrentAffinitybasedWorldModel() {
+		this(DEFAULT_NUMBER_OF_SHARDS, true);
+	}
+
+	/***
+	 * Construct a new ConcurrentAffinitybasedWorldModel containing no information, revising beliefs by the default constants.
+	 * @param numberOfShards the number of shards to partition relationships into (rounded up to a power of 2)
+	 * @param storeHistory true iff the affinity belief history of the world should be stored
+	 */
+	public ConcurrentAffinitybasedWorldModel(int numberOfShards, boolean storeHistory) {
+		this(numberOfShards, storeHistory, ModelParameters.DEFAULT);
+	}
+
+	/***
+	 * Construct a new ConcurrentAffinitybasedWorldModel containing no information.
+	 * @param numberOfShards the number of shards to partition relationships into (rounded up to a power of 2)
+	 * @param storeHistory true iff the affinity belief history of the world should be stored
+	 * @param parameters the constants by which beliefs are revised, e.g. those of the agents reading into this world model
+	 */
+	public ConcurrentAffinitybasedWorldModel(int numberOfShards, boolean storeHistory, ModelParameters parameters) {
+		if (numberOfShards <= 0) { throw new IllegalArgumentException("The number of shards must be positive."); }
+		int powerOfTwo = Integer.highestOneBit(numberOfShards);
+		if (powerOfTwo < numberOfShards) {
+			powerOfTwo <<= 1;
+		}
+		this.shards = new Shard[powerOfTwo];
+		for (int i=0; i<this.shards.length; i++) {
+			this.shards[i] = new Shard();
+		}
+		this.agents = new ArrayList<String>();
+		this.knownAgents = ConcurrentHashMap.newKeySet();
+		this.agentLock = new Object();
+		this.age = new AtomicInteger(1);
+		this.storeHistory = storeHistory;
+		this.parameters = parameters;
+	}
+
+	//////////////////////////////////////////
+	/////// OVERRIDE INTERFACE METHODS ///////
+	//////////////////////////////////////////
+	@Override
+	public int getAge() {
+		return this.age.get();
+	}
+
+	@Override
+	public void update(ActionEvent actionEvent, ActionROD actionKnowledge) {
+		/***
+		 * Add all implied pairs to the world model
+		 */
+		this.addAgentIfUnknown(actionEvent.actor);
+		this.addAgentIfUnknown(actionEvent.actedUpon);
+
+		/***
+		 * Update the acting pair's relationship model
+		 */
+		int updateAge = this.age.getAndIncrement();
+		Pair<String> actingPair = new Pair<String>(actionEvent.actor, actionEvent.actedUpon);
+		Shard shard = this.getShard(actingPair);
+		shard.lock.lock();
+		try {
+			BeliefCell cell = shard.affinityBeliefs.get(actingPair);
+			SymmetricRelationshipModel relationship = new SymmetricRelationshipModel(cell.relationship.getBeliefs());
+			relationship.update(actionKnowledge, Math.pow(this.parameters.getEmphasisBase(), cell.updateCount));
+			shard.affinityBeliefs.put(actingPair, new BeliefCell(relationship, cell.updateCount + 1, cell.version + 1)); //publish
+
+			if (this.storeHistory) {
+				ConcurrentAffinitybasedWorldModel.saveHistory(shard, actingPair, updateAge, relationship);
+			}
+		} finally {
+			shard.lock.unlock();
+		}
+	}
+
+	@Override
+	public void reflectOnAndRefineBeliefs() {
+		/***
+		 * As in the AffinitybasedWorldModel, uninformative relationships default to being believed
+		 * to be the RelationshipTypes of the default ordering, in increasing order of likelihood.
+		 */
+		List<RelationshipType> orderedRelationshipTypes = this.parameters.getDefaultOrdering();
+		int reflectionAge = this.age.get();
+		for (Shard shard : this.shards) {
+			shard.lock.lock();
+			try {
+				for (Map.Entry<Pair<String>, BeliefCell> entry : shard.affinityBeliefs.entrySet()) {
+					BeliefCell cell = entry.getValue();
+					if (!cell.relationship.isInformative(this.parameters.getInformativenessThreshold())) { //if all beliefs are uninformative, rewrite
+						SymmetricRelationshipModel defaultRelationshipModel = new SymmetricRelationshipModel(orderedRelationshipTypes);
+						entry.setValue(new BeliefCell(defaultRelationshipModel, cell.updateCount + 1, cell.version + 1)); //publish
+						if (this.storeHistory) {
+							ConcurrentAffinitybasedWorldModel.saveHistory(shard, entry.getKey(), reflectionAge, defaultRelationshipModel);
+						}
+					}
+				}
+			} finally {
+				shard.lock.unlock();
+			}
+		}
+	}
+
+	@Override
+	public double distanceScore(WorldModel otherWorldModel) {
+		ConcurrentAffinitybasedWorldModel other = (ConcurrentAffinitybasedWorldModel) otherWorldModel;
+		double distance = 0;
+		//Pairs that exist in both should match well
+		for (Shard shard : this.shards) {
+			for (Map.Entry<Pair<String>, BeliefCell> entry : shard.affinityBeliefs.entrySet()) {
+				BeliefCell otherCell = other.getBeliefCell(entry.getKey());
+				if (otherCell != null) {
+					distance += entry.getValue().relationship.distanceScore(otherCell.relationship);
+				}
+				distance -= .01; //Reward social models for modeling the same pairs
+			}
+		}
+		return distance;
+	}
+
+	@Override
+	public double probabilityOf(ActionEvent actionEvent, ActionROD actionKnowledge) {
+		double DEFAULT_PROBABILITY = 1; //if pair doesn't match
+
+		BeliefCell cell = this.getBeliefCell(new Pair<String>(actionEvent.actor, actionEvent.actedUpon));
+		if (cell != null) {
+			return cell.relationship.probabilityOf(actionKnowledge);
+		} else {
+			return DEFAULT_PROBABILITY;
+		}
+	}
+
+	//////////////////////////////////////////
+	/////// ADDED METHODS ////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Get the beliefs about the given relationship as a map mapping possible RelationshipTypes to believed probability of the RelationshipTypes.
+	 * The beliefs are read from the latest published snapshot without taking any lock, so they always sum to 1
+	 * and reading them never waits on an update.
+	 * @param relationship
+	 * @return the beliefs about the given relationship as a map mapping possible RelationshipTypes to believed probability of the RelationshipTypes
+	 */
+	public Map<RelationshipType, Double> getBeliefs(Pair<String> relationship) {
+		BeliefCell cell = this.getBeliefCell(relationship);
+		if (cell == null) {
+			return new SymmetricRelationshipModel().getBeliefs();
+		}
+		return cell.relationship.getBeliefs();
+	}
+
+	/***
+	 * Get the number of times the model of the given relationship has been revised.
+	 * @param relationship
+	 * @return the number of times the model of the given relationship has been revised
+	 */
+	public int getUpdateCount(Pair<String> relationship) {
+		BeliefCell cell = this.getBeliefCell(relationship);
+		return (cell == null) ? 0 : cell.updateCount;
+	}
+
+	/***
+	 * Get the version of the beliefs about the given relationship, which increases each time they are revised.
+	 * Comparing versions lets a reader tell whether the beliefs changed between two reads.
+	 * @param relationship
+	 * @return the version of the beliefs about the given relationship, or -1 if the relationship is not modeled
+	 */
+	public long getVersion(Pair<String> relationship) {
+		BeliefCell cell = this.getBeliefCell(relationship);
+		return (cell == null) ? -1 : cell.version;
+	}
+
+	/***
+	 * Get the number of relationships modeled.
+	 * @return the number of relationships modeled
+	 */
+	public int getNumberOfRelationships() {
+		int numRelationships = 0;
+		for (Shard shard : this.shards) {
+			numRelationships += shard.affinityBeliefs.size();
+		}
+		return numRelationships;
+	}
+
+	//////////////////////////////////////////
+	/////// PRIVATE HELPERS //////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * If the given agent is not yet known to exist, add it along with all implied pairs.
+	 * @param newAgent
+	 */
+	private void addAgentIfUnknown(String newAgent) {
+		if (this.knownAgents.contains(newAgent)) {
+			return;
+		}
+		synchronized (this.agentLock) {
+			if (this.knownAgents.contains(newAgent)) {
+				return; //added by another thread
+			}
+			for (String agent : this.agents) {
+				Pair<String> pair = new Pair<String>(agent, newAgent);
+				Shard shard = this.getShard(pair);
+				shard.lock.lock();
+				try {
+					shard.affinityBeliefs.put(pair, new BeliefCell(new SymmetricRelationshipModel(), 0, 0));
+				} finally {
+					shard.lock.unlock();
+				}
+			}//done adding pairs
+			this.agents.add(newAgent);
+			this.knownAgents.add(newAgent); //publish only once all pairs exist
+		}
+	}
+
+	/***
+	 * Get the latest published snapshot of the beliefs about the given relationship, without taking any lock.
+	 * @param relationship
+	 * @return the latest snapshot of the beliefs about the given relationship, or null if it is not modeled
+	 */
+	private BeliefCell getBeliefCell(Pair<String> relationship) {
+		return this.getShard(relationship).affinityBeliefs.get(relationship);
+	}
+
+	/***
+	 * Get the shard holding the given relationship.
+	 * @param relationship
+	 * @return the shard holding the given relationship
+	 */
+	private Shard getShard(Pair<String> relationship) {
+		int hash = relationship.hashCode();
+		hash ^= (hash >>> 16); //spread high bits into the low bits used for indexing
+		return this.shards[hash & (this.shards.length - 1)];
+	}
+
+	/***
+	 * Save the beliefs of the given relationship model at the given age to the history of the given shard. The shard's lock must be held.
+	 * @param shard
+	 * @param relationship
+	 * @param time
+	 * @param relationshipModel
+	 */
+	private static void saveHistory(Shard shard, Pair<String> relationship, int time, SymmetricRelationshipModel relationshipModel) {
+		Map<Integer,Map<RelationshipType,Double>> timeToBeliefs = shard.affinityBeliefHistory.get(relationship);
+		if (timeToBeliefs == null) {
+			timeToBeliefs = new HashMap<Integer,Map<RelationshipType,Double>>();
+			shard.affinityBeliefHistory.put(relationship, timeToBeliefs);
+		}
+		timeToBeliefs.put(time, relationshipModel.getBeliefs());
+	}
+
+}
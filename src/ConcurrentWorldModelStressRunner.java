@@ -0,0 +1,142 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * The ConcurrentWorldModelStressRunner stress tests the lock-free read path of the ConcurrentAffinitybasedWorldModel
+ * and reports its read latency.
+ * @author pkalluri
+ *
+ */
+public class ConcurrentWorldModelStressRunner {
+
+	/***
+	 * Stress test the lock-free read path: writer threads update every relationship of a world model while reader threads
+	 * continuously read beliefs. Every read must be a normalized distribution, and the version a reader sees of
+	 * any relationship must never go backwards. Read latency is reported both under ingest load and at rest.
+	 * @param args optionally, the number of reader threads
+	 * @throws InterruptedException
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		final int NUM_AGENTS = 40;
+		final int NUM_WRITERS = 2;
+		final int UPDATES_PER_WRITER_PER_PAIR = 5; //emphasis doubles with each update, so keep the total per pair small
+		final int NUM_READERS = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+		final double TOLERANCE = 1e-9;
+
+		final ConcurrentAffinitybasedWorldModel worldModel = new ConcurrentAffinitybasedWorldModel(ConcurrentAffinitybasedWorldModel.DEFAULT_NUMBER_OF_SHARDS, false);
+		final List<Pair<String>> pairs = new ArrayList<Pair<String>>();
+		final List<ActionEvent> actionEvents = new ArrayList<ActionEvent>(); //one acting on each pair
+		for (int i=0; i<NUM_AGENTS; i++) {
+			for (int j=i+1; j<NUM_AGENTS; j++) {
+				pairs.add(new Pair<String>("agent" + i, "agent" + j));
+				actionEvents.add(new ActionEvent("agent" + i, "acts", "agent" + j));
+			}
+		}
+		final ActionROD[] actionKnowledge = new ActionROD[RelationshipType.values().length];
+		for (RelationshipType likelyRelationshipType : RelationshipType.values()) {
+			Map<RelationshipType, Boolean> likelyGivenRelationshipType = new HashMap<RelationshipType, Boolean>();
+			for (RelationshipType relationshipType : RelationshipType.values()) {
+				likelyGivenRelationshipType.put(relationshipType, relationshipType == likelyRelationshipType);
+			}
+			actionKnowledge[likelyRelationshipType.ordinal()] = new ActionROD(likelyGivenRelationshipType, 2);
+		}
+
+		final AtomicBoolean ingesting = new AtomicBoolean(true);
+		final AtomicLong failures = new AtomicLong();
+		final AtomicLong readsDuringIngest = new AtomicLong();
+		final AtomicLong nanosDuringIngest = new AtomicLong();
+
+		Thread[] writers = new Thread[NUM_WRITERS];
+		for (int w=0; w<NUM_WRITERS; w++) {
+			final int writerNumber = w;
+			writers[w] = new Thread() {
+				@Override
+				public void run() {
+					Random random = new Random(writerNumber);
+					for (int round=0; round<UPDATES_PER_WRITER_PER_PAIR; round++) {
+						for (ActionEvent actionEvent : actionEvents) {
+							worldModel.update(actionEvent, actionKnowledge[random.nextInt(actionKnowledge.length)]);
+						}
+					}
+				}
+			};
+		}
+
+		Thread[] readers = new Thread[NUM_READERS];
+		for (int r=0; r<NUM_READERS; r++) {
+			final int readerNumber = r;
+			readers[r] = new Thread() {
+				@Override
+				public void run() {
+					Random random = new Random(NUM_WRITERS + readerNumber);
+					long[] lastVersions = new long[pairs.size()];
+					Arrays.fill(lastVersions, -1);
+					long reads = 0;
+					long nanos = 0;
+					while (ingesting.get()) {
+						int pairNumber = random.nextInt(pairs.size());
+						Pair<String> pair = pairs.get(pairNumber);
+						long start = System.nanoTime();
+						long version = worldModel.getVersion(pair);
+						Map<RelationshipType, Double> beliefs = worldModel.getBeliefs(pair);
+						nanos += System.nanoTime() - start;
+						reads++;
+
+						double sum = 0;
+						for (double probability : beliefs.values()) {
+							if (!(probability >= 0 && probability <= 1)) {
+								failures.incrementAndGet();
+							}
+							sum += probability;
+						}
+						if (beliefs.size() != RelationshipType.values().length || Math.abs(sum - 1) > TOLERANCE) {
+							failures.incrementAndGet();
+						}
+						if (version < lastVersions[pairNumber]) {
+							failures.incrementAndGet();
+						}
+						lastVersions[pairNumber] = version;
+					}
+					readsDuringIngest.addAndGet(reads);
+					nanosDuringIngest.addAndGet(nanos);
+				}
+			};
+		}
+
+		for (Thread writer : writers) { writer.start(); }
+		for (Thread reader : readers) { reader.start(); }
+		for (Thread writer : writers) { writer.join(); }
+		ingesting.set(false);
+		for (Thread reader : readers) { reader.join(); }
+
+		long readsAtRest = 0;
+		long nanosAtRest = 0;
+		Random random = new Random();
+		while (readsAtRest < Math.max(1, readsDuringIngest.get() / NUM_READERS)) {
+			Pair<String> pair = pairs.get(random.nextInt(pairs.size()));
+			long start = System.nanoTime();
+			worldModel.getVersion(pair);
+			worldModel.getBeliefs(pair);
+			nanosAtRest += System.nanoTime() - start;
+			readsAtRest++;
+		}
+
+		boolean allUpdated = true;
+		for (Pair<String> pair : pairs) {
+			allUpdated &= worldModel.getUpdateCount(pair) == NUM_WRITERS*UPDATES_PER_WRITER_PER_PAIR;
+		}
+
+		System.out.println("Relationships: " + worldModel.getNumberOfRelationships() + ", updates: " + (worldModel.getAge() - 1));
+		System.out.println("Reads during ingest: " + readsDuringIngest.get() + ", mean latency: "
+				+ (nanosDuringIngest.get() / Math.max(1, readsDuringIngest.get())) + "ns");
+		System.out.println("Reads at rest: " + readsAtRest + ", mean latency: " + (nanosAtRest / readsAtRest) + "ns");
+		System.out.println("Torn or unnormalized reads: " + failures.get());
+		System.out.println((failures.get() == 0 && allUpdated) ? "PASSED" : "FAILED");
+	}
+}
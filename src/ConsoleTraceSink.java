@@ -0,0 +1,169 @@
+import java.io.PrintStream;
+import java.text.NumberFormat;
+import java.util.HashMap;
+import java.util.Map;
+
+/***
+ * A ConsoleTraceSink writes TraceRecords as the three-column text of a verbose agent.
+ *
+ * To print the beliefs about every relationship after each ActionEvent without asking the world model, it keeps its own copy
+ * of the beliefs from the BeliefsChanged records, in a map filled in the same order as the world model's, so relationships are
+ * listed in the same order as AffinitybasedWorldModel.toConciseString lists them for a world model on the heap.
+ * A ConsoleTraceSink must be used by one thread at a time, e.g. behind an AsyncTraceSink.
+ * @author pkalluri
+ *
+ */
+public class ConsoleTraceSink implements TraceSink {
+
+	private static final int MAX_NUMBER_OF_ENTRIES_PER_LINE = 5;
+	private static final Map<RelationshipType, Double> UNINFORMED_BELIEFS = new SymmetricRelationshipModel().getBeliefs();
+
+	private final PrintStream out;
+	private final NumberFormat percentageFormat; //convenient format to use for percentages
+	private final String newline;
+
+	/***
+	 * The beliefs about each relationship of the traced world model.
+	 */
+	private Map<Pair<String>, Map<RelationshipType, Double>> affinityBeliefs;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTOR //////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a new ConsoleTraceSink writing to the given stream.
+	 * @param out
+	 */
+	public ConsoleTraceSink(PrintStream out) {
+		this.out = out;
+		this.percentageFormat = NumberFormat.getPercentInstance();
+		this.percentageFormat.setMinimumIntegerDigits(2);
+		this.newline = System.getProperty("line.separator");
+		this.affinityBeliefs = new HashMap<Pair<String>, Map<RelationshipType, Double>>();
+	}
+
+	//////////////////////////////////////////
+	/////// OVERRIDE INTERFACE METHODS ///////
+	//////////////////////////////////////////
+
+	@Override
+	public void accept(TraceRecord record) {
+		if (record instanceof TraceRecord.BeliefsChanged) {
+			TraceRecord.BeliefsChanged beliefsChanged = (TraceRecord.BeliefsChanged) record;
+			this.affinityBeliefs.put(beliefsChanged.relationship, beliefsChanged.beliefs);
+		} else if (record instanceof TraceRecord.ActionEventRead) {
+			TraceRecord.ActionEventRead actionEventRead = (TraceRecord.ActionEventRead) record;
+			if (actionEventRead.focus == null) {
+				this.printThreeColumnTextLine(actionEventRead.actionEvent.toString(), actionEventRead.actionKnowledge.toConciseString(), this.formatWorldModel());
+			} else if (actionEventRead.fullActionEvent != null && actionEventRead.fullActionEvent.containsEither(actionEventRead.focus)) {
+				//focus on only logging information relevant to the given relationship
+				this.printThreeColumnTextLine(actionEventRead.actionEvent.toString(), actionEventRead.actionKnowledge.toConciseString(), this.formatRelationship(actionEventRead.focus));
+			}
+		} else if (record instanceof TraceRecord.ReadingFinished) {
+			TraceRecord.ReadingFinished readingFinished = (TraceRecord.ReadingFinished) record;
+			if (readingFinished.focus == null) {
+				this.printThreeColumnTextLine("Reflecting", "", this.formatWorldModel());
+			} else {
+				this.printThreeColumnTextLine("Reflecting", "", this.formatRelationship(readingFinished.focus));
+			}
+			this.out.println(); //end of reading this scenario
+		} else if (record instanceof TraceRecord.ReadingStarted) {
+			this.printThreeColumnTextLine("", "(Friend|Neutral|Enemy)", "(Friend|Neutral|Enemy)");
+			this.printThreeColumnTextLine("Event", "Action R.O.D.", "Beliefs about relationships");
+			this.out.println("----------------------------------------------------------------");
+		} else if (record instanceof TraceRecord.WorldModelStarted) {
+			this.affinityBeliefs = new HashMap<Pair<String>, Map<RelationshipType, Double>>();
+		} else if (record instanceof TraceRecord.ChoiceStarted) {
+			this.printThreeColumnTextLine("Possible event", "Action R.O.D.","p");
+			this.out.println("----------------------------------------------------------------");
+		} else if (record instanceof TraceRecord.PossibleEventScored) {
+			TraceRecord.PossibleEventScored possibleEventScored = (TraceRecord.PossibleEventScored) record;
+			String probability = Double.isNaN(possibleEventScored.probability) ? "N/A" : this.percentageFormat.format(possibleEventScored.probability);
+			this.printThreeColumnTextLine(possibleEventScored.actionEvent.toString(), possibleEventScored.actionKnowledge.toConciseString(), probability);
+		} else if (record instanceof TraceRecord.ChoiceScored) {
+			TraceRecord.ChoiceScored choiceScored = (TraceRecord.ChoiceScored) record;
+			for (int i = 0; i < choiceScored.numberOfNormalizingEvents; i++) {
+				this.printThreeColumnTextLine("Normalizing", "", this.percentageFormat.format(choiceScored.normalizingProbability));
+			}
+			this.printThreeColumnTextLine("", "", "P=" + this.percentageFormat.format(choiceScored.probability));
+			this.out.println(); //end of this choice
+		} else if (record instanceof TraceRecord.ChoicePruned) {
+			this.printThreeColumnTextLine("Pruned", "", "P<=" + this.percentageFormat.format(((TraceRecord.ChoicePruned) record).bound));
+			this.out.println(); //end of this choice
+		} else if (record instanceof TraceRecord.Undecided) {
+			this.out.println("I am undecided.");
+		} else if (record instanceof TraceRecord.ChoiceMade) {
+			this.out.println("I choose interpretation " + ((TraceRecord.ChoiceMade) record).choiceNumber + ".");
+		}
+	}
+
+	@Override
+	public void flush() {
+		this.out.flush();
+	}
+
+	//////////////////////////////////////////
+	/////// PRIVATE HELPERS //////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Helper: format the beliefs about every relationship, 5 relationships per line, with all lines after the first tabbed over.
+	 * @return the formatted beliefs
+	 */
+	private String formatWorldModel() {
+		StringBuilder str = new StringBuilder();
+		int numberOfEntries = 0;
+		for (Map.Entry<Pair<String>, Map<RelationshipType, Double>> entry : this.affinityBeliefs.entrySet()) {
+			str.append(entry.getKey()).append(':');
+			this.appendBeliefs(str, entry.getValue());
+			str.append(", ");
+			numberOfEntries ++;
+			if (numberOfEntries % MAX_NUMBER_OF_ENTRIES_PER_LINE == 0) {
+				str.append('\n');
+			}
+		}
+		if (str.length() == 0) { return ""; }
+		str.setLength(str.length()-2);
+		String worldModelString = str.toString();
+		if (worldModelString.contains(this.newline)) { // long world model string
+			worldModelString = worldModelString.replace("\n", "\n\t\t\t\t\t\t");
+		}
+		return worldModelString;
+	}
+
+	/***
+	 * Helper: format the beliefs about the given relationship.
+	 * @param relationship
+	 * @return the formatted beliefs
+	 */
+	private String formatRelationship(Pair<String> relationship) {
+		Map<RelationshipType, Double> beliefs = this.affinityBeliefs.get(relationship);
+		StringBuilder str = new StringBuilder();
+		str.append(relationship).append(':');
+		this.appendBeliefs(str, (beliefs == null) ? UNINFORMED_BELIEFS : beliefs);
+		return str.toString();
+	}
+
+	/***
+	 * Helper: append the given beliefs as in SymmetricRelationshipModel.toConciseString.
+	 * @param str
+	 * @param beliefs
+	 */
+	private void appendBeliefs(StringBuilder str, Map<RelationshipType, Double> beliefs) {
+		str.append(this.percentageFormat.format(beliefs.get(RelationshipType.FRIEND))).append('|');
+		str.append(this.percentageFormat.format(beliefs.get(RelationshipType.NEUTRAL))).append('|');
+		str.append(this.percentageFormat.format(beliefs.get(RelationshipType.ENEMY)));
+	}
+
+	/***
+	 * Helper: format text into clean lines of text with 3 columns.
+	 * @param s1 the text to be put in column 1
+	 * @param s2 the text to be put in column 2
+	 * @param s3 the text to be put in column 3
+	 */
+	private void printThreeColumnTextLine(String s1, String s2, String s3) {
+		this.out.format("%-32s %-24s %s %n", s1, s2, s3);
+	}
+
+}
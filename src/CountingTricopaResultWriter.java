@@ -0,0 +1,52 @@
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/***
+ * A CountingTricopaResultWriter passes the result of each TricopaTask on to another TricopaResultWriter, keeping only the number
+ * of results of each TricopaTaskPerformance, so a summary of any number of tasks can be reported without keeping their results.
+ * @author pkalluri
+ *
+ */
+public class CountingTricopaResultWriter implements TricopaResultWriter {
+
+	private final TricopaResultWriter writer;
+	private final Map<TricopaTaskPerformance, Integer> performanceCounts;
+
+	/***
+	 * Construct a new CountingTricopaResultWriter passing results on to the given writer, which it closes when closed.
+	 * @param writer the writer of results, or null to only count them
+	 */
+	public CountingTricopaResultWriter(TricopaResultWriter writer) {
+		this.writer = writer;
+		this.performanceCounts = new EnumMap<TricopaTaskPerformance, Integer>(TricopaTaskPerformance.class);
+		for (TricopaTaskPerformance performance : TricopaTaskPerformance.values()) {
+			this.performanceCounts.put(performance, 0);
+		}
+	}
+
+	@Override
+	public void write(TricopaTaskResult result) throws IOException {
+		if (this.writer != null) {
+			this.writer.write(result);
+		}
+		this.performanceCounts.put(result.performance, this.performanceCounts.get(result.performance) + 1);
+	}
+
+	/***
+	 * Get the number of results written of each TricopaTaskPerformance.
+	 * @return the number of results of each TricopaTaskPerformance, including those of which there are none
+	 */
+	public Map<TricopaTaskPerformance, Integer> getPerformanceCounts() {
+		return Collections.unmodifiableMap(this.performanceCounts);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.writer != null) {
+			this.writer.close();
+		}
+	}
+
+}
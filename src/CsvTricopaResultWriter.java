@@ -0,0 +1,56 @@
+import java.io.IOException;
+import java.io.Writer;
+
+/***
+ * A CsvTricopaResultWriter writes the result of each TricopaTask as a line of comma-separated values, after a header line.
+ * The scores of the choices share one field, separated by semicolons; unknown scores are left empty.
+ * @author pkalluri
+ *
+ */
+public class CsvTricopaResultWriter implements TricopaResultWriter {
+
+	private static final String HEADER = "task,choice,scores,performance,nanos";
+
+	private final Writer out;
+	private boolean headerWritten;
+
+	/***
+	 * Construct a new CsvTricopaResultWriter writing to the given writer, which it closes when closed.
+	 * @param out
+	 */
+	public CsvTricopaResultWriter(Writer out) {
+		this.out = out;
+		this.headerWritten = false;
+	}
+
+	@Override
+	public void write(TricopaTaskResult result) throws IOException {
+		if (!this.headerWritten) {
+			this.out.write(HEADER);
+			this.out.write('\n');
+			this.headerWritten = true;
+		}
+		StringBuilder line = new StringBuilder();
+		line.append(result.taskNumber).append(',');
+		if (result.choice != TricopaTaskResult.UNDECIDED) {
+			line.append(result.choice);
+		}
+		line.append(',');
+		if (result.scores != null) {
+			for (int i=0; i<result.scores.length; i++) {
+				if (i > 0) { line.append(';'); }
+				if (!Double.isNaN(result.scores[i])) {
+					line.append(result.scores[i]);
+				}
+			}
+		}
+		line.append(',').append(result.performance).append(',').append(result.nanos).append('\n');
+		this.out.write(line.toString());
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.out.close();
+	}
+
+}
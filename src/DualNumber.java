@@ -0,0 +1,140 @@
+/***
+ * A DualNumber is a value together with its derivatives with respect to several variables, for forward-mode differentiation:
+ * every arithmetic operation on DualNumbers computes the derivatives of its result by the chain rule, so evaluating an expression
+ * once with DualNumbers computes its value and its gradient.
+ *
+ * DualNumbers are immutable. All DualNumbers combined must have derivatives with respect to the same number of variables.
+ * @author pkalluri
+ *
+ */
+public final class DualNumber {
+
+	private final double value;
+
+	/***
+	 * The derivative of the value with respect to each variable.
+	 */
+	private final double[] derivatives;
+
+	private DualNumber(double value, double[] derivatives) {
+		this.value = value;
+		this.derivatives = derivatives;
+	}
+
+	/***
+	 * Get a constant, whose derivatives are all 0.
+	 * @param value
+	 * @param numVariables the number of variables
+	 * @return the constant
+	 */
+	public static DualNumber constant(double value, int numVariables) {
+		return new DualNumber(value, new double[numVariables]);
+	}
+
+	/***
+	 * Get the given variable, whose derivative with respect to itself is 1 and with respect to every other variable is 0.
+	 * @param value the value of the variable
+	 * @param variable the index of the variable
+	 * @param numVariables the number of variables
+	 * @return the variable
+	 */
+	public static DualNumber variable(double value, int variable, int numVariables) {
+		double[] derivatives = new double[numVariables];
+		derivatives[variable] = 1;
+		return new DualNumber(value, derivatives);
+	}
+
+	//////////////////////////////////////////
+	/////// GETTERS //////////////////////////
+	//////////////////////////////////////////
+
+	public double getValue() {
+		return this.value;
+	}
+
+	/***
+	 * Get the derivative of the value with respect to the given variable.
+	 * @param variable the index of the variable
+	 * @return the derivative
+	 */
+	public double getDerivative(int variable) {
+		return this.derivatives[variable];
+	}
+
+	public int getNumberOfVariables() {
+		return this.derivatives.length;
+	}
+
+	//////////////////////////////////////////
+	/////// ARITHMETIC ///////////////////////
+	//////////////////////////////////////////
+
+	public DualNumber plus(DualNumber other) {
+		double[] derivatives = new double[this.derivatives.length];
+		for (int i=0; i<derivatives.length; i++) {
+			derivatives[i] = this.derivatives[i] + other.derivatives[i];
+		}
+		return new DualNumber(this.value + other.value, derivatives);
+	}
+
+	public DualNumber minus(DualNumber other) {
+		double[] derivatives = new double[this.derivatives.length];
+		for (int i=0; i<derivatives.length; i++) {
+			derivatives[i] = this.derivatives[i] - other.derivatives[i];
+		}
+		return new DualNumber(this.value - other.value, derivatives);
+	}
+
+	public DualNumber times(DualNumber other) {
+		double[] derivatives = new double[this.derivatives.length];
+		for (int i=0; i<derivatives.length; i++) {
+			derivatives[i] = this.derivatives[i] * other.value + this.value * other.derivatives[i];
+		}
+		return new DualNumber(this.value * other.value, derivatives);
+	}
+
+	public DualNumber times(double factor) {
+		double[] derivatives = new double[this.derivatives.length];
+		for (int i=0; i<derivatives.length; i++) {
+			derivatives[i] = this.derivatives[i] * factor;
+		}
+		return new DualNumber(this.value * factor, derivatives);
+	}
+
+	public DualNumber dividedBy(DualNumber other) {
+		double quotient = this.value / other.value;
+		double[] derivatives = new double[this.derivatives.length];
+		for (int i=0; i<derivatives.length; i++) {
+			derivatives[i] = (this.derivatives[i] - quotient * other.derivatives[i]) / other.value;
+		}
+		return new DualNumber(quotient, derivatives);
+	}
+
+	public DualNumber dividedBy(double divisor) {
+		return this.times(1. / divisor);
+	}
+
+	/***
+	 * Get the natural logarithm of this DualNumber.
+	 * @return the natural logarithm
+	 */
+	public DualNumber log() {
+		double[] derivatives = new double[this.derivatives.length];
+		for (int i=0; i<derivatives.length; i++) {
+			derivatives[i] = this.derivatives[i] / this.value;
+		}
+		return new DualNumber(Math.log(this.value), derivatives);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+		str.append(this.value).append(" [");
+		for (int i=0; i<this.derivatives.length; i++) {
+			if (i > 0) { str.append(", "); }
+			str.append(this.derivatives[i]);
+		}
+		return str.append("]").toString();
+	}
+
+}
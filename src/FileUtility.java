@@ -21,6 +21,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -286,8 +287,21 @@ public class FileUtility {
 	 */
 	public static Map<String, ActionROD> getActionKnowledgebase(String fileName, boolean verbose) throws URISyntaxException, IOException {
 		//The knowledge file is interpreted with the constraint that the ratio between two probabilities in a single action's relative observation distribution must always be 1 or this ratio:
-		double RATIO_PERMITTED_WITHIN_ROD = 2; 		
-		
+		return FileUtility.getActionKnowledgebase(fileName, verbose, ModelParameters.DEFAULT_RATIO_PERMITTED_WITHIN_ROD);
+	}
+	
+	/***
+	 * Get the ActionKnowledge database based on the indicated Knowledge File, interpreted with the constraint that the ratio 
+	 * between two probabilities in a single action's relative observation distribution must always be 1 or the given ratio.
+	 * 
+	 * @param fileName the name of the Knowledge File
+	 * @param verbose
+	 * @param ratioPermittedWithinROD the ratio permitted within a relative observation distribution
+	 * @return the ActionKnowledge database based on the indicated Knowledge File.
+	 * @throws URISyntaxException
+	 * @throws IOException
+	 */
+	public static Map<String, ActionROD> getActionKnowledgebase(String fileName, boolean verbose, double ratioPermittedWithinROD) throws URISyntaxException, IOException {
 		List<String> lines = FileUtility.getLines(fileName);	
     	
 		Map<String, ActionROD> actionKnowledgebase = new HashMap<String, ActionROD>();
@@ -296,33 +310,86 @@ public class FileUtility {
 			if (!trimmedLine.isEmpty()) {
 				String[] args = trimmedLine.split("\\s+");
 
-				//Set up map. For a single action, each entry in this map indicates whether the action is expected in the context of the given RelationshipType
-				Map<RelationshipType, Boolean> expectationsGivenRelationshipType = new HashMap<RelationshipType, Boolean>();
-				for ( RelationshipType relationshipType: Arrays.asList(RelationshipType.values()) ) {
-					expectationsGivenRelationshipType.put(relationshipType, false);
-				}
-				if (args.length >1) { //there is more information to read
-					for (char c : args[1].toCharArray()) {
-						switch(c) {
-							case 'F':
-								expectationsGivenRelationshipType.put(RelationshipType.FRIEND, true);
-								break;
-							case 'E':
-								expectationsGivenRelationshipType.put(RelationshipType.ENEMY, true);
-								break;
-							case 'N':
-								expectationsGivenRelationshipType.put(RelationshipType.NEUTRAL, true);
-								break;
-						}//done with char
-					}//done with all chars on this line
-				}
+				Map<RelationshipType, Boolean> expectationsGivenRelationshipType = FileUtility.getExpectations((args.length > 1) ? args[1] : "");
 				if(verbose) {System.out.println(expectationsGivenRelationshipType);}
-				actionKnowledgebase.put(args[0], new ActionROD(expectationsGivenRelationshipType, RATIO_PERMITTED_WITHIN_ROD));
+				actionKnowledgebase.put(args[0], new ActionROD(expectationsGivenRelationshipType, ratioPermittedWithinROD));
 			}
     	}//done with all lines
     	return actionKnowledgebase;
 	}
 	
+	/***
+	 * Get the flags of each action in the indicated Knowledge File, e.g. "FN" for an action expected of friends and neutrals.
+	 * 
+	 * @param fileName the name of the Knowledge File
+	 * @return map mapping each action to its flags, which are empty if none are given, in the order of the file
+	 * @throws URISyntaxException
+	 * @throws IOException
+	 */
+	public static Map<String, String> getActionFlagsFromFile(String fileName) throws URISyntaxException, IOException {
+		Map<String, String> actionFlags = new LinkedHashMap<String, String>();
+		for (String line : FileUtility.getLines(fileName)) {
+			String trimmedLine = line.trim();
+			if (!trimmedLine.isEmpty()) {
+				String[] args = trimmedLine.split("\\s+");
+				actionFlags.put(args[0], (args.length > 1) ? args[1] : "");
+			}
+		}
+		return actionFlags;
+	}
+	
+	/***
+	 * Get the ActionROD of an action with the given flags, interpreted as a line of a Knowledge File is.
+	 * @param flags the flags of the action, e.g. "FN"
+	 * @param ratioPermittedWithinROD the ratio permitted within a relative observation distribution
+	 * @return the ActionROD of an action with the given flags
+	 */
+	public static ActionROD getActionROD(String flags, double ratioPermittedWithinROD) {
+		return new ActionROD(FileUtility.getExpectations(flags), ratioPermittedWithinROD);
+	}
+	
+	/***
+	 * Write a Knowledge File with the given flags of each action, one action per line in the given order, replacing any existing file.
+	 * @param actionFlags map mapping each action to its flags
+	 * @param fileName the name of the Knowledge File
+	 * @throws IOException
+	 */
+	public static void writeKnowledgeFile(Map<String, String> actionFlags, String fileName) throws IOException {
+		try (BufferedWriter output = new BufferedWriter(new FileWriter(fileName, false))) {
+			for (Map.Entry<String, String> actionFlag : actionFlags.entrySet()) {
+				output.append(actionFlag.getValue().isEmpty() ? actionFlag.getKey() : actionFlag.getKey() + " " + actionFlag.getValue());
+				output.newLine();
+			}
+		}
+	}
+	
+	/***
+	 * Get, for a single action with the given flags, whether the action is expected in the context of each RelationshipType.
+	 * @param flags the flags of the action, e.g. "FN"
+	 * @return map mapping each RelationshipType to whether the action is expected given that RelationshipType
+	 */
+	private static Map<RelationshipType, Boolean> getExpectations(String flags) {
+		//Set up map. For a single action, each entry in this map indicates whether the action is expected in the context of the given RelationshipType
+		Map<RelationshipType, Boolean> expectationsGivenRelationshipType = new HashMap<RelationshipType, Boolean>();
+		for ( RelationshipType relationshipType: Arrays.asList(RelationshipType.values()) ) {
+			expectationsGivenRelationshipType.put(relationshipType, false);
+		}
+		for (char c : flags.toCharArray()) {
+			switch(c) {
+				case 'F':
+					expectationsGivenRelationshipType.put(RelationshipType.FRIEND, true);
+					break;
+				case 'E':
+					expectationsGivenRelationshipType.put(RelationshipType.ENEMY, true);
+					break;
+				case 'N':
+					expectationsGivenRelationshipType.put(RelationshipType.NEUTRAL, true);
+					break;
+			}//done with char
+		}//done with all chars
+		return expectationsGivenRelationshipType;
+	}
+	
 	/***
 	 * Get all lines from the indicated file.
 	 * @param fileName
@@ -389,8 +456,9 @@ public class FileUtility {
 	 * Get the Scenario based on the given line of logical literals.
 	 * @param line line of logical literals
 	 * @return scenario based on the given line of logical literals
+	 * @throws IllegalArgumentException if a literal names more than an actor and an actedUpon
 	 */
-	private static Scenario getScenario(String line) {
+	public static Scenario getScenario(String line) {
 		List<ActionEvent> scenarioUnits = new ArrayList<ActionEvent>();
 		
 		String REFERENCE_REGEX = "e[0-9]+|E[0-9]+"; //Regex to use for matching the e# notation used when one event refers to another event
@@ -431,7 +499,7 @@ public class FileUtility {
 					}
 					
 					if (args.length > 4) {
-						throw new RuntimeException(literal);
+						throw new IllegalArgumentException("Malformed literal \"(" + literal + ")\": an action takes at most an actor and an actedUpon.");
 					}
 					//update list of inner events
 //					for (int i=2; i<args.length; i++) {
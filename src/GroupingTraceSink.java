@@ -0,0 +1,75 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * A GroupingTraceSink lets several agents tracing at once share one TraceSink without their records interleaving.
+ * Each agent traces to its own GroupingTraceSink, which holds the agent's records until the agent flushes, e.g. at the end
+ * of each reading and of choosing, and then hands them to the shared sink all at once.
+ *
+ * The shared sink therefore receives each reading and each choosing as one uninterrupted run of records, so a stateful sink
+ * such as a ConsoleTraceSink (behind an AsyncTraceSink, which is safe to share) prints them as a single agent would.
+ * A GroupingTraceSink must be used by one agent at a time; GroupingTraceSinks sharing a sink are created together by sharing.
+ * @author pkalluri
+ *
+ */
+public class GroupingTraceSink implements TraceSink {
+
+	private final TraceSink sharedSink;
+
+	/***
+	 * Held while handing records to the shared sink, by all GroupingTraceSinks sharing it. It is not the shared sink's monitor,
+	 * since an AsyncTraceSink releases that while it waits for room.
+	 */
+	private final Object handingLock;
+
+	/***
+	 * The records received since the last flush.
+	 */
+	private final List<TraceRecord> records;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTOR //////////////////////
+	//////////////////////////////////////////
+
+	private GroupingTraceSink(TraceSink sharedSink, Object handingLock) {
+		this.sharedSink = sharedSink;
+		this.handingLock = handingLock;
+		this.records = new ArrayList<TraceRecord>();
+	}
+
+	/***
+	 * Create the given number of GroupingTraceSinks sharing the given sink, one for each agent.
+	 * @param sharedSink the sink to share, which must be safe to use from several threads
+	 * @param number the number of GroupingTraceSinks to create
+	 * @return the GroupingTraceSinks sharing the given sink
+	 */
+	public static List<GroupingTraceSink> sharing(TraceSink sharedSink, int number) {
+		Object handingLock = new Object();
+		List<GroupingTraceSink> sinks = new ArrayList<GroupingTraceSink>();
+		for (int i=0; i<number; i++) {
+			sinks.add(new GroupingTraceSink(sharedSink, handingLock));
+		}
+		return sinks;
+	}
+
+	//////////////////////////////////////////
+	/////// OVERRIDE INTERFACE METHODS ///////
+	//////////////////////////////////////////
+
+	@Override
+	public void accept(TraceRecord record) {
+		this.records.add(record);
+	}
+
+	@Override
+	public void flush() {
+		synchronized (this.handingLock) { //no other agent's records in between
+			for (TraceRecord record : this.records) {
+				this.sharedSink.accept(record);
+			}
+		}
+		this.records.clear();
+		this.sharedSink.flush();
+	}
+
+}
@@ -0,0 +1,41 @@
+/***
+ * The HalfLifeDecayPolicy implements the BeliefDecayPolicy interface with exponential decay: the evidence about a relationship
+ * halves every given number of updates of the world model (i.e. ActionEvents read) in which that relationship is not updated.
+ * @author pkalluri
+ *
+ */
+public class HalfLifeDecayPolicy implements BeliefDecayPolicy {
+
+	/***
+	 * The number of updates of the world model over which half the evidence about a relationship is forgotten.
+	 */
+	private final double halfLife;
+
+	/***
+	 * Construct a new HalfLifeDecayPolicy with the given half-life.
+	 * @param halfLife the number of updates of the world model over which half the evidence about a relationship is forgotten
+	 */
+	public HalfLifeDecayPolicy(double halfLife) {
+		if (!(halfLife > 0)) { throw new IllegalArgumentException("The half-life must be positive."); }
+		this.halfLife = halfLife;
+	}
+
+	@Override
+	public double getRetainedFraction(int elapsedAge) {
+		return Math.pow(.5, elapsedAge / this.halfLife);
+	}
+
+	/***
+	 * Get the half-life of this policy.
+	 * @return the number of updates of the world model over which half the evidence about a relationship is forgotten
+	 */
+	public double getHalfLife() {
+		return this.halfLife;
+	}
+
+	@Override
+	public String toString() {
+		return "half-life " + this.halfLife;
+	}
+
+}
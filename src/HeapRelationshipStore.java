@@ -0,0 +1,141 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/***
+ * The HeapRelationshipStore implements the RelationshipStore interface with ordinary maps on the heap.
+ * Models are returned without copying, and relationships are iterated in the order of a HashMap.
+ * This is the RelationshipStore used by default.
+ * @author pkalluri
+ *
+ */
+public class HeapRelationshipStore implements RelationshipStore {
+
+	/***
+	 * The modeled relationships -- mapped to their current relationship models.
+	 */
+	private final Map<Pair<String>, SymmetricRelationshipModel> affinityBeliefs;
+
+	/***
+	 * The modeled relationships -- mapped to the number of times their relationship model has been revised.
+	 */
+	private final Map<Pair<String>, Integer> affinityUpdateCounts;
+
+	/***
+	 * The agents known to exist, in the order they were added, and as a set for constant-time membership checks.
+	 */
+	private final List<String> agents;
+	private final Set<String> knownAgents;
+
+	/***
+	 * The relationships whose last update age has been recorded -- mapped to that age.
+	 */
+	private final Map<Pair<String>, Integer> lastUpdateAges;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTOR //////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a new HeapRelationshipStore modeling no relationships.
+	 */
+	public HeapRelationshipStore() {
+		this.affinityBeliefs = new HashMap<Pair<String>, SymmetricRelationshipModel>();
+		this.affinityUpdateCounts = new HashMap<Pair<String>, Integer>();
+		this.agents = new ArrayList<String>();
+		this.knownAgents = new HashSet<String>();
+		this.lastUpdateAges = new HashMap<Pair<String>, Integer>();
+	}
+
+	//////////////////////////////////////////
+	/////// OVERRIDE INTERFACE METHODS ///////
+	//////////////////////////////////////////
+
+	@Override
+	public boolean contains(Pair<String> relationship) {
+		return this.affinityBeliefs.containsKey(relationship);
+	}
+
+	@Override
+	public SymmetricRelationshipModel get(Pair<String> relationship) {
+		return this.affinityBeliefs.get(relationship);
+	}
+
+	@Override
+	public int getUpdateCount(Pair<String> relationship) {
+		Integer updateCount = this.affinityUpdateCounts.get(relationship);
+		if (updateCount == null) {
+			return 0;
+		}
+		return updateCount;
+	}
+
+	@Override
+	public void put(Pair<String> relationship, SymmetricRelationshipModel relationshipModel, int updateCount) {
+		for (String agent : relationship.getElements()) {
+			this.addAgent(agent);
+		}
+		this.affinityBeliefs.put(relationship, relationshipModel);
+		if (updateCount != 0 || this.affinityUpdateCounts.containsKey(relationship)) {
+			this.affinityUpdateCounts.put(relationship, updateCount);
+		}
+	}
+
+	@Override
+	public BeliefStorage getBeliefStorage() {
+		return BeliefStorage.HEAP;
+	}
+
+	@Override
+	public int size() {
+		return this.affinityBeliefs.size();
+	}
+
+	@Override
+	public void addAgent(String agent) {
+		if (this.knownAgents.add(agent)) {
+			this.agents.add(agent);
+		}
+	}
+
+	@Override
+	public boolean containsAgent(String agent) {
+		return this.knownAgents.contains(agent);
+	}
+
+	@Override
+	public Iterable<String> getAgents() {
+		return new ArrayList<String>(this.agents);
+	}
+
+	@Override
+	public int getNumberOfAgents() {
+		return this.agents.size();
+	}
+
+	@Override
+	public int getLastUpdateAge(Pair<String> relationship) {
+		Integer lastUpdateAge = this.lastUpdateAges.get(relationship);
+		return (lastUpdateAge == null) ? 0 : lastUpdateAge;
+	}
+
+	@Override
+	public void setLastUpdateAge(Pair<String> relationship, int age) {
+		this.lastUpdateAges.put(relationship, age);
+	}
+
+	@Override
+	public Iterator<Pair<String>> iterator() {
+		return this.affinityBeliefs.keySet().iterator();
+	}
+
+	@Override
+	public String toString() {
+		return this.affinityBeliefs.toString();
+	}
+
+}
@@ -0,0 +1,148 @@
+import java.util.Set;
+
+/***
+ * An ImplicitResponseResolver fills ActionEvents about non-agents (empty or objects) using a principle of implicit response,
+ * assuming that the non-agents are in fact emotional stand-ins for recently observed agents.
+ *
+ * Filling depends only on the characters and on a RecentlyObservedAgentsMemory, not on knowledge about actions,
+ * so one resolution of a scenario may be shared by readers with different knowledge.
+ * @author pkalluri
+ *
+ */
+public class ImplicitResponseResolver {
+
+	/***
+	 * The Strings known to refer to characters.
+	 */
+	private final Set<String> characters;
+
+	/***
+	 * Construct a new ImplicitResponseResolver knowing the given characters.
+	 * @param characters the Strings known to refer to characters
+	 */
+	public ImplicitResponseResolver(Set<String> characters) {
+		this.characters = characters;
+	}
+
+	/***
+	 * Get the Strings known to refer to characters.
+	 * @return the characters
+	 */
+	public Set<String> getCharacters() {
+		return this.characters;
+	}
+
+	/***
+	 * Fill the given actionEvent with recently observed agents where it names non-agents.
+	 * @param actionEvent
+	 * @param memory the recently observed agents
+	 * @return a full ActionEvent, which is the given actionEvent if it was already full
+	 * @throws UnableToFillActionEventException if unable
+	 */
+	public ActionEvent getFullActionEvent(ActionEvent actionEvent, RecentlyObservedAgentsMemory memory) throws UnableToFillActionEventException {
+		boolean full = true;
+
+		ActionEvent modifiedActionEvent =  actionEvent;
+		if (!this.isAgent(	actionEvent.actor) ) {
+			try {
+				modifiedActionEvent = this.replaceActor(actionEvent, memory);
+				full = true;
+			} catch (UnableToFillActionEventException e) {
+				full = false;
+			}
+		}//replaced
+		if (!this.isAgent(	actionEvent.actedUpon) ) {
+			try {
+				modifiedActionEvent = this.replaceActedUpon(actionEvent, memory);
+				full = true;
+			} catch (UnableToFillActionEventException e) {
+				full = false;
+			}
+		}//replaced
+
+		if (!full) {
+			throw new UnableToFillActionEventException();
+		}
+		return modifiedActionEvent;
+	}
+
+	/***
+	 * Update the given memory with the agents of the given actionEvent.
+	 * @param actionEvent
+	 * @param memory the recently observed agents
+	 */
+	public void updateMemory(ActionEvent actionEvent, RecentlyObservedAgentsMemory memory) {
+		/***
+		 * Update memory based on actedUpon agent.
+		 */
+		if (this.isAgent(actionEvent.actedUpon)	) {
+			memory.update(actionEvent.actedUpon, false);
+		}
+		/***
+		 * Then, update memory based on actor agent, in order to give actor agent recency/salience in immediate memory.
+		 */
+		if (this.isAgent(actionEvent.actor)	) {
+			memory.update(actionEvent.actor, false);
+		}
+	}
+
+	/***
+	 * Returns true iff the String s refers to an agent.
+	 * @param s
+	 * @return true iff the String s refers to an agent
+	 */
+	public boolean isAgent(String s) {
+		return (s!=null && this.characters.contains(s));
+	}
+
+	//////////////////////////////////////////
+	/////// PRIVATE HELPERS //////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Replace the non-agent actor of the given actionEvent with a recently observed agent.
+	 * @param actionEvent
+	 * @param memory
+	 * @return an ActionEvent with replaced actor
+	 * @throws UnableToFillActionEventException if unable
+	 */
+	private ActionEvent replaceActor(ActionEvent actionEvent, RecentlyObservedAgentsMemory memory) throws UnableToFillActionEventException {
+		ActionEvent modifiedActionEvent = null;
+
+		if (isAgent(memory.getLastObservedAgent()) && !actionEvent.actedUpon.equals(memory.getLastObservedAgent())) { //if different
+			modifiedActionEvent = new ActionEvent(memory.getLastObservedAgent(),actionEvent.action,actionEvent.actedUpon);
+		} else if (isAgent(memory.getSecondToLastObservedAgent()) && !actionEvent.actedUpon.equals(memory.getSecondToLastObservedAgent())) { //if different
+			modifiedActionEvent = new ActionEvent(memory.getSecondToLastObservedAgent(),actionEvent.action,actionEvent.actedUpon);
+		}
+
+		if (modifiedActionEvent == null) {
+			throw new UnableToFillActionEventException();
+		} else {
+			return modifiedActionEvent;
+		}
+	}
+
+	/***
+	 * Replace the non-agent actedUpon agent of the given actionEvent with a recently observed agent.
+	 * @param descriptionUnit
+	 * @param memory
+	 * @return an ActionEvent with replaced actedUpon agent
+	 * @throws UnableToFillActionEventException if unable
+	 */
+	private ActionEvent replaceActedUpon(ActionEvent descriptionUnit, RecentlyObservedAgentsMemory memory) throws UnableToFillActionEventException {
+		ActionEvent modifiedActionEvent = null;
+
+		if (isAgent(memory.getLastObservedAgent()) && !descriptionUnit.actor.equals(memory.getLastObservedAgent())) { //if different
+			modifiedActionEvent = new ActionEvent(descriptionUnit.actor,descriptionUnit.action,memory.getLastObservedAgent());
+		} else if (isAgent(memory.getSecondToLastObservedAgent()) && !descriptionUnit.actor.equals(memory.getSecondToLastObservedAgent())) { //if different
+			modifiedActionEvent = new ActionEvent(descriptionUnit.actor,descriptionUnit.action,memory.getSecondToLastObservedAgent());
+		}
+
+		if (modifiedActionEvent == null) {
+			throw new UnableToFillActionEventException();
+		} else {
+			return modifiedActionEvent;
+		}
+	}
+
+}
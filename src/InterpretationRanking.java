@@ -0,0 +1,170 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/***
+ * An InterpretationRanking holds the scores an agent assigned to each of a list of candidate interpretations of a scenario,
+ * and the resulting ordering of the candidates from most to least plausible. An InterpretationRanking is immutable.
+ * 
+ * Scores are log probabilities, so they do not underflow for long candidates. A candidate that could not be scored
+ * has score negative infinity. Candidates are numbered from 1, in the order they were given to the agent.
+ * @author pkalluri
+ *
+ */
+public class InterpretationRanking {
+	
+	/***
+	 * The greatest difference (relative to the size of the scores) between two scores that are considered tied.
+	 * Summing log probabilities in different orders can round differently, so exactly tied candidates may differ slightly.
+	 */
+	private static final double TIE_TOLERANCE = 1e-12;
+	
+	/***
+	 * The score of each candidate, indexed by candidate number - 1. A higher score means a more plausible candidate.
+	 */
+	private final double[] scores;
+	
+	/***
+	 * Whether the score of each candidate is exact, indexed by candidate number - 1. A candidate pruned while ranking
+	 * is given an upper bound on its score instead.
+	 */
+	private final boolean[] exact;
+	
+	/***
+	 * The candidate numbers, ordered from highest to lowest score (ties keep the order the candidates were given in).
+	 */
+	private final List<Integer> ordering;
+	
+	////////////////////////////////////////////////////////////
+	//////// CONSTRUCTOR ///////////////////////////////////////
+	////////////////////////////////////////////////////////////
+	
+	/***
+	 * Create an InterpretationRanking from the given exact scores.
+	 * @param scores the score of each candidate, indexed by candidate number - 1
+	 */
+	public InterpretationRanking(double[] scores) {
+		this(scores, InterpretationRanking.allExact(scores.length));
+	}
+	
+	/***
+	 * Create an InterpretationRanking from the given scores, some of which may only be upper bounds.
+	 * @param scores the score of each candidate, indexed by candidate number - 1
+	 * @param exact whether the score of each candidate is exact, indexed by candidate number - 1
+	 */
+	public InterpretationRanking(double[] scores, boolean[] exact) {
+		this.scores = scores.clone();
+		this.exact = exact.clone();
+		List<Integer> ordering = new ArrayList<Integer>();
+		for (int candidateNumber = 1; candidateNumber <= scores.length; candidateNumber++) {
+			ordering.add(candidateNumber);
+		}
+		Collections.sort(ordering, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Double.compare(InterpretationRanking.this.getScore(b), InterpretationRanking.this.getScore(a));
+			}
+		});
+		this.ordering = Collections.unmodifiableList(ordering);
+	}
+	
+	////////////////////////////////////////////////////////////
+	//////// GETTERS ///////////////////////////////////////////
+	////////////////////////////////////////////////////////////
+	
+	/***
+	 * Get the number of candidates ranked.
+	 * @return the number of candidates ranked
+	 */
+	public int getNumberOfCandidates() {
+		return this.scores.length;
+	}
+	
+	/***
+	 * Get the score of the indicated candidate.
+	 * @param candidateNumber the number (from 1) of the candidate
+	 * @return the score of the indicated candidate
+	 */
+	public double getScore(int candidateNumber) {
+		return this.scores[candidateNumber - 1];
+	}
+	
+	/***
+	 * Return true iff the score of the indicated candidate is exact rather than an upper bound.
+	 * @param candidateNumber the number (from 1) of the candidate
+	 * @return true iff the score of the indicated candidate is exact
+	 */
+	public boolean isExact(int candidateNumber) {
+		return this.exact[candidateNumber - 1];
+	}
+	
+	/***
+	 * Get the candidate numbers ordered from most to least plausible.
+	 * Candidates whose scores are not exact are ordered by their bounds, below the best candidate.
+	 * @return the candidate numbers ordered from most to least plausible
+	 */
+	public List<Integer> getOrdering() {
+		return this.ordering;
+	}
+	
+	/***
+	 * Get the number of the most plausible candidate.
+	 * @return the number of the most plausible candidate
+	 * @throws UndecidedAgentException no candidate could be scored, or the most plausible candidates are tied
+	 */
+	public int getBestCandidateNumber() throws UndecidedAgentException {
+		if (this.scores.length == 0) {
+			throw new UndecidedAgentException();
+		}
+		int best = this.ordering.get(0);
+		if (this.getScore(best) == Double.NEGATIVE_INFINITY) {
+			throw new UndecidedAgentException();
+		}
+		if (this.scores.length > 1 && InterpretationRanking.isTie(this.getScore(this.ordering.get(1)), this.getScore(best))) {
+			throw new UndecidedAgentException();
+		}
+		return best;
+	}
+	
+	////////////////////////////////////////////////////////////
+	//////// HELPERS ///////////////////////////////////////////
+	////////////////////////////////////////////////////////////
+	
+	/***
+	 * Return true iff the two given scores are tied.
+	 * @param a a log probability
+	 * @param b another log probability
+	 * @return true iff the two given scores are equal up to rounding
+	 */
+	public static boolean isTie(double a, double b) {
+		if (a == b) {
+			return true; //including both negative infinity
+		}
+		if (Double.isInfinite(a) || Double.isInfinite(b)) {
+			return false;
+		}
+		double scale = Math.max(1, Math.max(Math.abs(a), Math.abs(b)));
+		return Math.abs(a - b) <= TIE_TOLERANCE * scale;
+	}
+	
+	/***
+	 * Get an array marking the given number of scores as exact.
+	 * @param numCandidates
+	 * @return an array of numCandidates trues
+	 */
+	private static boolean[] allExact(int numCandidates) {
+		boolean[] exact = new boolean[numCandidates];
+		java.util.Arrays.fill(exact, true);
+		return exact;
+	}
+	
+	@Override
+	public String toString() {
+		String str = "";
+		for (int candidateNumber : this.ordering) {
+			str += candidateNumber + "=" + this.getScore(candidateNumber) + " ";
+		}
+		return str.trim();
+	}
+}
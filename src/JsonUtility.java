@@ -0,0 +1,276 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/***
+ * The JsonUtility contains methods to read and write the small JSON messages this project exchanges, e.g. with SimulationServer clients.
+ *
+ * JSON objects are read as Maps (keeping the order of their members), arrays as Lists, strings as Strings, numbers as Doubles,
+ * true and false as Booleans and null as null. The same types, and other Numbers, are written back.
+ * @author pkalluri
+ *
+ */
+public class JsonUtility {
+
+	private JsonUtility() {
+	}
+
+	////////////////////////////////////////////////////////////
+	//////// FOR WRITING JSON //////////////////////////////////
+	////////////////////////////////////////////////////////////
+
+	/***
+	 * Get the given value as JSON text on a single line.
+	 * @param value a Map with String keys, List, String, Number, Boolean or null
+	 * @return the given value as JSON text
+	 */
+	public static String toJson(Object value) {
+		StringBuilder json = new StringBuilder();
+		JsonUtility.appendJson(json, value);
+		return json.toString();
+	}
+
+	private static void appendJson(StringBuilder json, Object value) {
+		if (value == null) {
+			json.append("null");
+		} else if (value instanceof String) {
+			JsonUtility.appendString(json, (String) value);
+		} else if (value instanceof Double || value instanceof Float) {
+			double number = ((Number) value).doubleValue();
+			if (Double.isNaN(number) || Double.isInfinite(number)) {
+				json.append("null"); //not representable in JSON
+			} else if (number == Math.rint(number) && Math.abs(number) < 1e15) {
+				json.append((long) number);
+			} else {
+				json.append(number);
+			}
+		} else if (value instanceof Number || value instanceof Boolean) {
+			json.append(value);
+		} else if (value instanceof Map) {
+			json.append('{');
+			boolean first = true;
+			for (Map.Entry<?, ?> member : ((Map<?, ?>) value).entrySet()) {
+				if (!first) { json.append(','); }
+				JsonUtility.appendString(json, String.valueOf(member.getKey()));
+				json.append(':');
+				JsonUtility.appendJson(json, member.getValue());
+				first = false;
+			}
+			json.append('}');
+		} else if (value instanceof Iterable) {
+			json.append('[');
+			boolean first = true;
+			for (Object element : (Iterable<?>) value) {
+				if (!first) { json.append(','); }
+				JsonUtility.appendJson(json, element);
+				first = false;
+			}
+			json.append(']');
+		} else {
+			JsonUtility.appendString(json, value.toString());
+		}
+	}
+
+	private static void appendString(StringBuilder json, String str) {
+		json.append('"');
+		for (int i=0; i<str.length(); i++) {
+			char c = str.charAt(i);
+			switch (c) {
+			case '"': json.append("\\\""); break;
+			case '\\': json.append("\\\\"); break;
+			case '\n': json.append("\\n"); break;
+			case '\r': json.append("\\r"); break;
+			case '\t': json.append("\\t"); break;
+			default:
+				if (c < 0x20) {
+					json.append(String.format("\\u%04x", (int) c));
+				} else {
+					json.append(c);
+				}
+			}
+		}
+		json.append('"');
+	}
+
+	////////////////////////////////////////////////////////////
+	//////// FOR READING JSON //////////////////////////////////
+	////////////////////////////////////////////////////////////
+
+	/***
+	 * Read the given JSON text.
+	 * @param text JSON text
+	 * @return the value of the given JSON text
+	 * @throws MalformedJsonException the text is not JSON
+	 */
+	public static Object parse(String text) throws MalformedJsonException {
+		Parser parser = new Parser(text);
+		Object value = parser.readValue();
+		parser.skipWhitespace();
+		if (parser.position != text.length()) {
+			throw new MalformedJsonException("Expected end of text", parser.position);
+		}
+		return value;
+	}
+
+	/***
+	 * Read the given JSON text as a JSON object.
+	 * @param text JSON text
+	 * @return the members of the JSON object
+	 * @throws MalformedJsonException the text is not a JSON object
+	 */
+	@SuppressWarnings("unchecked")
+	public static Map<String, Object> parseObject(String text) throws MalformedJsonException {
+		Object value = JsonUtility.parse(text);
+		if (!(value instanceof Map)) {
+			throw new MalformedJsonException("Expected an object", 0);
+		}
+		return (Map<String, Object>) value;
+	}
+
+	/***
+	 * A Parser reads one JSON text by recursive descent.
+	 */
+	private static class Parser {
+		private final String text;
+		private int position;
+
+		Parser(String text) {
+			this.text = text;
+			this.position = 0;
+		}
+
+		Object readValue() throws MalformedJsonException {
+			this.skipWhitespace();
+			if (this.position >= this.text.length()) {
+				throw new MalformedJsonException("Expected a value", this.position);
+			}
+			char c = this.text.charAt(this.position);
+			switch (c) {
+			case '{': return this.readObject();
+			case '[': return this.readArray();
+			case '"': return this.readString();
+			case 't': this.readLiteral("true"); return Boolean.TRUE;
+			case 'f': this.readLiteral("false"); return Boolean.FALSE;
+			case 'n': this.readLiteral("null"); return null;
+			default:
+				if (c == '-' || (c >= '0' && c <= '9')) {
+					return this.readNumber();
+				}
+				throw new MalformedJsonException("Unexpected '" + c + "'", this.position);
+			}
+		}
+
+		private Map<String, Object> readObject() throws MalformedJsonException {
+			Map<String, Object> members = new LinkedHashMap<String, Object>();
+			this.position ++; //{
+			this.skipWhitespace();
+			if (this.consume('}')) {
+				return members;
+			}
+			do {
+				this.skipWhitespace();
+				if (this.position >= this.text.length() || this.text.charAt(this.position) != '"') {
+					throw new MalformedJsonException("Expected a member name", this.position);
+				}
+				String name = this.readString();
+				this.skipWhitespace();
+				this.expect(':');
+				members.put(name, this.readValue());
+				this.skipWhitespace();
+			} while (this.consume(','));
+			this.expect('}');
+			return members;
+		}
+
+		private List<Object> readArray() throws MalformedJsonException {
+			List<Object> elements = new ArrayList<Object>();
+			this.position ++; //[
+			this.skipWhitespace();
+			if (this.consume(']')) {
+				return elements;
+			}
+			do {
+				elements.add(this.readValue());
+				this.skipWhitespace();
+			} while (this.consume(','));
+			this.expect(']');
+			return elements;
+		}
+
+		private String readString() throws MalformedJsonException {
+			StringBuilder str = new StringBuilder();
+			this.position ++; //opening quote
+			while (this.position < this.text.length()) {
+				char c = this.text.charAt(this.position++);
+				if (c == '"') {
+					return str.toString();
+				} else if (c == '\\') {
+					if (this.position >= this.text.length()) { break; }
+					char escaped = this.text.charAt(this.position++);
+					switch (escaped) {
+					case '"': case '\\': case '/': str.append(escaped); break;
+					case 'b': str.append('\b'); break;
+					case 'f': str.append('\f'); break;
+					case 'n': str.append('\n'); break;
+					case 'r': str.append('\r'); break;
+					case 't': str.append('\t'); break;
+					case 'u':
+						try {
+							str.append((char) Integer.parseInt(this.text.substring(this.position, this.position + 4), 16));
+						} catch (NumberFormatException | IndexOutOfBoundsException e) {
+							throw new MalformedJsonException("Expected 4 hexadecimal digits", this.position);
+						}
+						this.position += 4;
+						break;
+					default:
+						throw new MalformedJsonException("Unexpected escape '\\" + escaped + "'", this.position - 1);
+					}
+				} else {
+					str.append(c);
+				}
+			}
+			throw new MalformedJsonException("Expected the end of the string", this.position);
+		}
+
+		private Double readNumber() throws MalformedJsonException {
+			int start = this.position;
+			while (this.position < this.text.length() && "+-0123456789.eE".indexOf(this.text.charAt(this.position)) >= 0) {
+				this.position ++;
+			}
+			try {
+				return Double.valueOf(this.text.substring(start, this.position));
+			} catch (NumberFormatException e) {
+				throw new MalformedJsonException("Expected a number", start);
+			}
+		}
+
+		private void readLiteral(String literal) throws MalformedJsonException {
+			if (!this.text.startsWith(literal, this.position)) {
+				throw new MalformedJsonException("Expected " + literal, this.position);
+			}
+			this.position += literal.length();
+		}
+
+		private boolean consume(char c) {
+			if (this.position < this.text.length() && this.text.charAt(this.position) == c) {
+				this.position ++;
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(char c) throws MalformedJsonException {
+			if (!this.consume(c)) {
+				throw new MalformedJsonException("Expected '" + c + "'", this.position);
+			}
+		}
+
+		void skipWhitespace() {
+			while (this.position < this.text.length() && Character.isWhitespace(this.text.charAt(this.position))) {
+				this.position ++;
+			}
+		}
+	}
+
+}
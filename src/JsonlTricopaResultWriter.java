@@ -0,0 +1,51 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/***
+ * A JsonlTricopaResultWriter writes the result of each TricopaTask as one line of JSON, e.g.
+ * {"task":1,"choice":2,"scores":[-4.2,-3.1],"performance":"CORRECT","nanos":51234}
+ * An undecided choice, unknown scores and scores that are not numbers are written as null.
+ * @author pkalluri
+ *
+ */
+public class JsonlTricopaResultWriter implements TricopaResultWriter {
+
+	private final Writer out;
+
+	/***
+	 * Construct a new JsonlTricopaResultWriter writing to the given writer, which it closes when closed.
+	 * @param out
+	 */
+	public JsonlTricopaResultWriter(Writer out) {
+		this.out = out;
+	}
+
+	@Override
+	public void write(TricopaTaskResult result) throws IOException {
+		Map<String, Object> line = new LinkedHashMap<String, Object>();
+		line.put("task", result.taskNumber);
+		line.put("choice", (result.choice == TricopaTaskResult.UNDECIDED) ? null : result.choice);
+		List<Double> scores = null;
+		if (result.scores != null) {
+			scores = new ArrayList<Double>();
+			for (double score : result.scores) {
+				scores.add(score);
+			}
+		}
+		line.put("scores", scores);
+		line.put("performance", result.performance.toString());
+		line.put("nanos", result.nanos);
+		this.out.write(JsonUtility.toJson(line));
+		this.out.write('\n');
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.out.close();
+	}
+
+}
@@ -0,0 +1,105 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/***
+ * A KnowledgeCache loads Knowledge Files and Characters Files once and keeps them, so that many agents, possibly on many threads,
+ * share one knowledge base per file instead of parsing the file each time.
+ *
+ * Files are identified by their canonical path. Loaded knowledge bases and character sets must not be modified.
+ * @author pkalluri
+ *
+ */
+public class KnowledgeCache {
+
+	/***
+	 * The loaded knowledge bases and character sets, by canonical file name.
+	 */
+	private final Map<String, Map<String, ActionROD>> actionKnowledgebases;
+	private final Map<String, Set<String>> characterSets;
+
+	/***
+	 * Construct a new empty KnowledgeCache.
+	 */
+	public KnowledgeCache() {
+		this.actionKnowledgebases = new ConcurrentHashMap<String, Map<String, ActionROD>>();
+		this.characterSets = new ConcurrentHashMap<String, Set<String>>();
+	}
+
+	/***
+	 * Get the knowledge base in the given Knowledge File, loading it if it has not been loaded.
+	 * If several threads load the same file at once, one of the loaded knowledge bases is kept.
+	 * @param fileName the name of the Knowledge File
+	 * @return the knowledge base
+	 * @throws UncheckedIOException the file could not be read
+	 */
+	public Map<String, ActionROD> getActionKnowledgebase(String fileName) {
+		String key = KnowledgeCache.getCanonicalName(fileName);
+		Map<String, ActionROD> actionKnowledgebase = this.actionKnowledgebases.get(key);
+		if (actionKnowledgebase == null) {
+			try {
+				actionKnowledgebase = FileUtility.getActionKnowledgebase(key, false);
+			} catch (IOException | URISyntaxException e) {
+				throw new UncheckedIOException("Could not read knowledge file " + fileName, KnowledgeCache.asIOException(e));
+			}
+			Map<String, ActionROD> loadedActionKnowledgebase = this.actionKnowledgebases.putIfAbsent(key, actionKnowledgebase);
+			if (loadedActionKnowledgebase != null) {
+				actionKnowledgebase = loadedActionKnowledgebase;
+			}
+		}
+		return actionKnowledgebase;
+	}
+
+	/***
+	 * Get the characters in the given Characters File, loading them if they have not been loaded.
+	 * If several threads load the same file at once, one of the loaded character sets is kept.
+	 * @param fileName the name of the Characters File
+	 * @return the characters
+	 * @throws UncheckedIOException the file could not be read
+	 */
+	public Set<String> getCharacters(String fileName) {
+		String key = KnowledgeCache.getCanonicalName(fileName);
+		Set<String> characters = this.characterSets.get(key);
+		if (characters == null) {
+			try {
+				characters = FileUtility.getCharactersFromFile(key);
+			} catch (IOException | URISyntaxException e) {
+				throw new UncheckedIOException("Could not read characters file " + fileName, KnowledgeCache.asIOException(e));
+			}
+			Set<String> loadedCharacters = this.characterSets.putIfAbsent(key, characters);
+			if (loadedCharacters != null) {
+				characters = loadedCharacters;
+			}
+		}
+		return characters;
+	}
+
+	/***
+	 * Get the number of files loaded.
+	 * @return the number of Knowledge Files and Characters Files loaded
+	 */
+	public int size() {
+		return this.actionKnowledgebases.size() + this.characterSets.size();
+	}
+
+	//////////////////////////////////////////
+	/////// PRIVATE HELPERS //////////////////
+	//////////////////////////////////////////
+
+	private static String getCanonicalName(String fileName) {
+		try {
+			return new File(fileName).getCanonicalPath();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not resolve file " + fileName, e);
+		}
+	}
+
+	private static IOException asIOException(Exception e) {
+		return (e instanceof IOException) ? (IOException) e : new IOException(e);
+	}
+
+}
@@ -0,0 +1,307 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/***
+ * A KnowledgeTrainer learns the flags of the actions in a Knowledge File from Tricopa tasks with known answers,
+ * so that an AffinitybasedAgent with the learned knowledge answers as many of the tasks correctly as it can find.
+ *
+ * Training is a coordinate search: one action at a time, every possible assignment of flags is tried and the assignment
+ * answering the most tasks correctly is kept, until a pass over all actions changes nothing. Actions are visited in the
+ * order of their influence on the tasks, as found by a SensitivityAnalyzer, so the actions most likely to matter are tried first.
+ *
+ * Changing one action's flags can only change the tasks that mention the action, so only those tasks are done again,
+ * once for all assignments at once in the lanes of a MultiLaneEvaluator, with the tasks divided among several threads.
+ * @author pkalluri
+ *
+ */
+public class KnowledgeTrainer {
+
+	/***
+	 * Every distinct assignment of flags to an action; no flags and all flags are interpreted alike, as uninformative.
+	 */
+	private static final List<String> POSSIBLE_FLAGS = Arrays.asList("", "F", "E", "N", "FE", "FN", "EN");
+
+	private final Map<Integer, TricopaTask> tricopaTasks;
+	private final Map<Integer, Integer> answers;
+	private final Set<String> characters;
+	private final TaskDependencyIndex index;
+
+	/***
+	 * The flags of each action, as currently learned, in the order of the Knowledge File followed by any actions it was missing.
+	 */
+	private final Map<String, String> actionFlags;
+
+	/***
+	 * Whether each task is answered correctly with the knowledge currently learned, by task number.
+	 */
+	private final Map<Integer, Boolean> correctness;
+
+	private ModelParameters parameters;
+	private boolean verbose;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTOR //////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a new KnowledgeTrainer starting from the given flags. Actions the tasks mention but the given flags do not
+	 * are started with no flags.
+	 * @param tricopaTasks the numbered Tricopa tasks to train on
+	 * @param answers the number of the correct choice of each task
+	 * @param characters the Strings known to refer to characters
+	 * @param actionFlags the flags of each action to start from, e.g. from FileUtility.getActionFlagsFromFile
+	 */
+	public KnowledgeTrainer(Map<Integer, TricopaTask> tricopaTasks, Map<Integer, Integer> answers, Set<String> characters, Map<String, String> actionFlags) {
+		this.tricopaTasks = new TreeMap<Integer, TricopaTask>(tricopaTasks);
+		this.answers = answers;
+		this.characters = characters;
+		this.index = new TaskDependencyIndex(this.tricopaTasks);
+		this.actionFlags = new LinkedHashMap<String, String>(actionFlags);
+		for (int taskNumber : this.tricopaTasks.keySet()) {
+			for (String action : this.index.getActions(taskNumber)) {
+				if (!this.actionFlags.containsKey(action)) {
+					this.actionFlags.put(action, "");
+				}
+			}
+		}
+		this.correctness = new HashMap<Integer, Boolean>();
+		this.parameters = ModelParameters.DEFAULT;
+		this.verbose = false;
+	}
+
+	/***
+	 * Interpret flags and revise beliefs by the given constants from now on.
+	 * @param parameters
+	 */
+	public void setParameters(ModelParameters parameters) {
+		this.parameters = parameters;
+	}
+
+	/***
+	 * Print each change to the flags as it is made iff verbose.
+	 * @param verbose
+	 */
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	//////////////////////////////////////////
+	/////// GETTERS //////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Get the flags of each action as currently learned, e.g. to write with FileUtility.writeKnowledgeFile.
+	 * @return map mapping each action to its flags
+	 */
+	public Map<String, String> getActionFlags() {
+		return new LinkedHashMap<String, String>(this.actionFlags);
+	}
+
+	/***
+	 * Get the number of tasks answered correctly with the knowledge currently learned, as of the last training.
+	 * @return the number of tasks answered correctly
+	 */
+	public int getNumberCorrect() {
+		int numCorrect = 0;
+		for (boolean correct : this.correctness.values()) {
+			if (correct) { numCorrect ++; }
+		}
+		return numCorrect;
+	}
+
+	public int getNumberOfTasks() {
+		return this.tricopaTasks.size();
+	}
+
+	//////////////////////////////////////////
+	/////// TRAINING /////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Train until a pass over all actions changes nothing, or for at most the given number of passes.
+	 * @param maxPasses the most passes over all actions to make
+	 * @param numThreads the number of threads among which to divide tasks
+	 * @return the number of changes made to the flags
+	 * @throws InterruptedException if interrupted while waiting for tasks to be done
+	 */
+	public int train(int maxPasses, int numThreads) throws InterruptedException {
+		if (numThreads <= 0) { throw new IllegalArgumentException("The number of threads must be positive."); }
+		Map<String, ActionROD> actionKnowledgebase = new HashMap<String, ActionROD>();
+		for (Map.Entry<String, String> actionFlag : this.actionFlags.entrySet()) {
+			actionKnowledgebase.put(actionFlag.getKey(), FileUtility.getActionROD(actionFlag.getValue(), this.parameters.getRatioPermittedWithinROD()));
+		}
+
+		ExecutorService administrators = Executors.newFixedThreadPool(numThreads);
+		try {
+			//do every task once with the starting knowledge
+			List<Map<String, ActionROD>> startingLane = new ArrayList<Map<String, ActionROD>>();
+			startingLane.add(actionKnowledgebase);
+			for (Map.Entry<Integer, boolean[]> taskCorrectness : this.administer(startingLane, this.tricopaTasks.keySet(), administrators, numThreads).entrySet()) {
+				this.correctness.put(taskCorrectness.getKey(), taskCorrectness.getValue()[0]);
+			}
+
+			int numChanges = 0;
+			for (int pass=1; pass<=maxPasses; pass++) {
+				int numChangesThisPass = 0;
+				for (String action : this.getActionsByInfluence(actionKnowledgebase)) {
+					if (this.trainAction(action, actionKnowledgebase, administrators, numThreads)) {
+						numChangesThisPass ++;
+					}
+				}
+				if (this.verbose) {
+					System.out.println("Pass " + pass + ": " + numChangesThisPass + " changes, " + this.getNumberCorrect() + "/" + this.getNumberOfTasks() + " correct");
+				}
+				numChanges += numChangesThisPass;
+				if (numChangesThisPass == 0) {
+					break; //converged
+				}
+			}
+			return numChanges;
+		} finally {
+			administrators.shutdownNow();
+		}
+	}
+
+	//////////////////////////////////////////
+	/////// PRIVATE HELPERS //////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Try every possible assignment of flags to the given action, keeping the one answering the most tasks correctly.
+	 * The current flags are kept unless another assignment answers strictly more tasks correctly.
+	 * @return true iff the flags of the action were changed
+	 */
+	private boolean trainAction(String action, Map<String, ActionROD> actionKnowledgebase, ExecutorService administrators, int numThreads) throws InterruptedException {
+		SortedSet<Integer> affectedTasks = this.index.getTasksAffectedBy(Arrays.asList(action));
+		if (affectedTasks.isEmpty()) {
+			return false;
+		}
+
+		//one lane per possible assignment, differing from the current knowledge only in this action
+		List<Map<String, ActionROD>> lanes = new ArrayList<Map<String, ActionROD>>();
+		for (String flags : POSSIBLE_FLAGS) {
+			Map<String, ActionROD> laneKnowledgebase = new HashMap<String, ActionROD>(actionKnowledgebase);
+			laneKnowledgebase.put(action, FileUtility.getActionROD(flags, this.parameters.getRatioPermittedWithinROD()));
+			lanes.add(laneKnowledgebase);
+		}
+		Map<Integer, boolean[]> laneCorrectness = this.administer(lanes, affectedTasks, administrators, numThreads);
+
+		int currentNumCorrect = 0;
+		for (int taskNumber : affectedTasks) {
+			if (this.correctness.get(taskNumber)) { currentNumCorrect ++; }
+		}
+		int bestLane = -1;
+		int bestNumCorrect = currentNumCorrect;
+		for (int lane=0; lane<lanes.size(); lane++) {
+			int numCorrect = 0;
+			for (boolean[] correct : laneCorrectness.values()) {
+				if (correct[lane]) { numCorrect ++; }
+			}
+			if (numCorrect > bestNumCorrect) {
+				bestNumCorrect = numCorrect;
+				bestLane = lane;
+			}
+		}
+		if (bestLane < 0) {
+			return false;
+		}
+
+		if (this.verbose) {
+			System.out.println(action + ": \"" + this.actionFlags.get(action) + "\" -> \"" + POSSIBLE_FLAGS.get(bestLane) + "\", "
+					+ currentNumCorrect + " -> " + bestNumCorrect + " of " + affectedTasks.size() + " tasks mentioning it correct");
+		}
+		this.actionFlags.put(action, POSSIBLE_FLAGS.get(bestLane));
+		actionKnowledgebase.put(action, lanes.get(bestLane).get(action));
+		for (Map.Entry<Integer, boolean[]> taskCorrectness : laneCorrectness.entrySet()) {
+			this.correctness.put(taskCorrectness.getKey(), taskCorrectness.getValue()[bestLane]);
+		}
+		return true;
+	}
+
+	/***
+	 * Do the given tasks in every lane, dividing the tasks among the given administrators.
+	 * @return map mapping each task number to whether the task is answered correctly in each lane
+	 */
+	private Map<Integer, boolean[]> administer(List<Map<String, ActionROD>> lanes, Set<Integer> taskNumbers,
+			ExecutorService administrators, int numThreads) throws InterruptedException {
+		final MultiLaneEvaluator evaluator = new MultiLaneEvaluator(lanes, this.characters);
+		evaluator.setParameters(this.parameters);
+
+		List<List<Integer>> shares = new ArrayList<List<Integer>>();
+		for (int i=0; i<Math.min(numThreads, taskNumbers.size()); i++) {
+			shares.add(new ArrayList<Integer>());
+		}
+		int i = 0;
+		for (int taskNumber : taskNumbers) {
+			shares.get(i % shares.size()).add(taskNumber);
+			i ++;
+		}
+
+		List<Future<Map<Integer, boolean[]>>> futures = new ArrayList<Future<Map<Integer, boolean[]>>>();
+		for (final List<Integer> share : shares) {
+			futures.add(administrators.submit(new Callable<Map<Integer, boolean[]>>() {
+				@Override
+				public Map<Integer, boolean[]> call() {
+					Map<Integer, boolean[]> shareCorrectness = new HashMap<Integer, boolean[]>();
+					for (int taskNumber : share) {
+						MultiLaneEvaluator.TaskOutcome outcome = evaluator.doTricopaTask(KnowledgeTrainer.this.tricopaTasks.get(taskNumber));
+						boolean[] correct = new boolean[evaluator.getNumberOfLanes()];
+						for (int lane=0; lane<correct.length; lane++) {
+							try {
+								correct[lane] = (outcome.getChoice(lane) == KnowledgeTrainer.this.answers.get(taskNumber));
+							} catch (UndecidedAgentException | InsufficientActionKnowledgeException e) {
+								correct[lane] = false;
+							}
+						}
+						shareCorrectness.put(taskNumber, correct);
+					}
+					return shareCorrectness;
+				}
+			}));
+		}
+
+		Map<Integer, boolean[]> correctness = new HashMap<Integer, boolean[]>();
+		for (Future<Map<Integer, boolean[]>> future : futures) {
+			try {
+				correctness.putAll(future.get());
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Administering failed unexpectedly.", e.getCause());
+			}
+		}
+		return correctness;
+	}
+
+	/***
+	 * Get the actions the tasks mention, most influential on the tasks' correct choices first.
+	 */
+	private Set<String> getActionsByInfluence(Map<String, ActionROD> actionKnowledgebase) {
+		Set<String> actions = new LinkedHashSet<String>();
+		try {
+			SensitivityAnalyzer analyzer = new SensitivityAnalyzer(actionKnowledgebase, this.characters);
+			analyzer.setParameters(this.parameters);
+			for (SensitivityAnalyzer.ActionInfluence influence : analyzer.rankActions(this.tricopaTasks, this.answers)) {
+				actions.add(influence.action);
+			}
+		} catch (InsufficientActionKnowledgeException e) {
+			throw new IllegalStateException("Every action the tasks mention should be known.", e);
+		}
+		for (int taskNumber : this.tricopaTasks.keySet()) {
+			actions.addAll(this.index.getActions(taskNumber)); //actions with no influence, last
+		}
+		return actions;
+	}
+
+}
@@ -0,0 +1,176 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/***
+ * A LatencyHistogram counts durations, in nanoseconds, in log-linear buckets (as in an HDR histogram),
+ * so that recording costs a few atomic increments and percentiles are off by at most 1/SUB_BUCKETS of the duration.
+ *
+ * Durations below SUB_BUCKETS nanoseconds each have a bucket; each larger power of 2 is divided into SUB_BUCKETS equal buckets.
+ * Durations may be recorded by several threads at once.
+ * @author pkalluri
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int NUM_BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts;
+	private final LongAdder count;
+	private final LongAdder totalNanos;
+	private final AtomicLong maxNanos;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTOR //////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a new empty LatencyHistogram.
+	 */
+	public LatencyHistogram() {
+		this.counts = new AtomicLongArray(NUM_BUCKETS);
+		this.count = new LongAdder();
+		this.totalNanos = new LongAdder();
+		this.maxNanos = new AtomicLong();
+	}
+
+	//////////////////////////////////////////
+	/////// RECORDING ////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Record the given duration.
+	 * @param nanos the duration in nanoseconds; negative durations are recorded as 0
+	 */
+	public void record(long nanos) {
+		nanos = Math.max(nanos, 0);
+		this.counts.incrementAndGet(LatencyHistogram.getBucket(nanos));
+		this.count.increment();
+		this.totalNanos.add(nanos);
+		long max = this.maxNanos.get();
+		while (nanos > max && !this.maxNanos.compareAndSet(max, nanos)) {
+			max = this.maxNanos.get();
+		}
+	}
+
+	/***
+	 * Record the time since the given start, as given by System.nanoTime.
+	 * @param startNanos
+	 */
+	public void recordSince(long startNanos) {
+		this.record(System.nanoTime() - startNanos);
+	}
+
+	/***
+	 * Forget all recorded durations. Durations recorded while resetting may or may not be forgotten.
+	 */
+	public void reset() {
+		for (int i=0; i<NUM_BUCKETS; i++) {
+			this.counts.set(i, 0);
+		}
+		this.count.reset();
+		this.totalNanos.reset();
+		this.maxNanos.set(0);
+	}
+
+	//////////////////////////////////////////
+	/////// QUERYING /////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Get the number of recorded durations.
+	 * @return the number of recorded durations
+	 */
+	public long getCount() {
+		return this.count.sum();
+	}
+
+	/***
+	 * Get the mean recorded duration.
+	 * @return the mean recorded duration in nanoseconds, or 0 if none were recorded
+	 */
+	public double getMeanNanos() {
+		long count = this.count.sum();
+		return (count == 0) ? 0 : (double) this.totalNanos.sum() / count;
+	}
+
+	/***
+	 * Get the longest recorded duration.
+	 * @return the longest recorded duration in nanoseconds
+	 */
+	public long getMaxNanos() {
+		return this.maxNanos.get();
+	}
+
+	/***
+	 * Get the duration that the given percentage of recorded durations do not exceed, up to the width of its bucket.
+	 * @param percentile between 0 and 100
+	 * @return the largest duration in the bucket of the percentile, in nanoseconds, or 0 if none were recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long[] snapshot = new long[NUM_BUCKETS];
+		long total = 0;
+		for (int i=0; i<NUM_BUCKETS; i++) {
+			snapshot[i] = this.counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long cumulative = 0;
+		for (int i=0; i<NUM_BUCKETS; i++) {
+			cumulative += snapshot[i];
+			if (cumulative >= rank) {
+				return Math.min(LatencyHistogram.getHighestValueIn(i), this.getMaxNanos());
+			}
+		}
+		return this.getMaxNanos();
+	}
+
+	/***
+	 * Get a one-line summary of the recorded durations, in microseconds.
+	 * @return a one-line summary of the recorded durations
+	 */
+	@Override
+	public String toString() {
+		return String.format("count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus max=%.1fus", this.getCount(), this.getMeanNanos() / 1e3,
+				this.getValueAtPercentile(50) / 1e3, this.getValueAtPercentile(90) / 1e3, this.getValueAtPercentile(99) / 1e3, this.getMaxNanos() / 1e3);
+	}
+
+	//////////////////////////////////////////
+	/////// PRIVATE HELPERS //////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Get the bucket of the given non-negative duration.
+	 * @param nanos
+	 * @return the bucket of the given duration
+	 */
+	private static int getBucket(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos); //at least SUB_BUCKET_BITS
+		int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/***
+	 * Get the largest duration in the given bucket.
+	 * @param bucket
+	 * @return the largest duration in the given bucket
+	 */
+	private static long getHighestValueIn(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = bucket % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return ((SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+	}
+
+}
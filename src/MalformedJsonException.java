@@ -0,0 +1,21 @@
+/***
+ * A MalformedJsonException indicates that text could not be parsed as JSON.
+ * @author pkalluri
+ *
+ */
+public class MalformedJsonException extends Exception {
+
+	/**
+	 * Generated serialVersionUID
+	 */
+	private static final long serialVersionUID = 2950684316027443589L;
+
+	/***
+	 * Create MalformedJsonException with convenient text describing where the text was malformed.
+	 * @param message what was expected
+	 * @param position the position in the text at which it was expected
+	 */
+	public MalformedJsonException(String message, int position) {
+		super(message + " at position " + position + ".");
+	}
+}
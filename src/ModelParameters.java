@@ -0,0 +1,159 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/***
+ * ModelParameters hold the constants by which knowledge is interpreted and beliefs are revised, so that agents
+ * with other constants than the defaults can be built and compared, e.g. by a ParameterSweep.
+ *
+ * ModelParameters are immutable, so one ModelParameters may be shared by many agents and world models.
+ * @author pkalluri
+ *
+ */
+public class ModelParameters {
+
+	//////////////////////////////////////////
+	/////// DEFAULTS /////////////////////////
+	//////////////////////////////////////////
+	public static final double DEFAULT_RATIO_PERMITTED_WITHIN_ROD = 2;
+	public static final double DEFAULT_EMPHASIS_BASE = 2;
+	public static final List<RelationshipType> DEFAULT_ORDERING = Collections.unmodifiableList(
+			Arrays.asList(RelationshipType.ENEMY, RelationshipType.FRIEND, RelationshipType.NEUTRAL));
+	public static final double DEFAULT_INFORMATIVENESS_THRESHOLD = .001;
+
+	/***
+	 * The parameters of the model as it has always been.
+	 */
+	public static final ModelParameters DEFAULT = new ModelParameters(DEFAULT_RATIO_PERMITTED_WITHIN_ROD,
+			DEFAULT_EMPHASIS_BASE, DEFAULT_ORDERING, DEFAULT_INFORMATIVENESS_THRESHOLD);
+
+	/***
+	 * The ratio between two probabilities in a single action's relative observation distribution must always be 1 or this ratio.
+	 */
+	private final double ratioPermittedWithinROD;
+
+	/***
+	 * The n-th update of a relationship is given this base to the n-th power times the emphasis of a standard update.
+	 */
+	private final double emphasisBase;
+
+	/***
+	 * Upon reflection, uninformative relationships are assumed to be these RelationshipTypes in increasing order of likelihood.
+	 */
+	private final List<RelationshipType> defaultOrdering;
+
+	/***
+	 * A relationship model is informative iff some belief exceeds the uniform belief by more than this threshold.
+	 */
+	private final double informativenessThreshold;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTOR //////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct new ModelParameters.
+	 * @param ratioPermittedWithinROD the ratio between two probabilities in a single action's relative observation distribution, greater than 1
+	 * @param emphasisBase the base of the emphasis placed on successive updates of a relationship, positive
+	 * @param defaultOrdering the RelationshipTypes uninformative relationships are assumed to be, in increasing order of likelihood
+	 * @param informativenessThreshold the threshold above the uniform belief at which a relationship model is informative, non-negative
+	 */
+	public ModelParameters(double ratioPermittedWithinROD, double emphasisBase, List<RelationshipType> defaultOrdering, double informativenessThreshold) {
+		if (!(ratioPermittedWithinROD > 1)) { throw new IllegalArgumentException("The ratio permitted within an ROD must be greater than 1."); }
+		if (!(emphasisBase > 0)) { throw new IllegalArgumentException("The emphasis base must be positive."); }
+		if (!(informativenessThreshold >= 0)) { throw new IllegalArgumentException("The informativeness threshold must not be negative."); }
+		if (defaultOrdering.size() != RelationshipType.values().length || !defaultOrdering.containsAll(Arrays.asList(RelationshipType.values()))) {
+			throw new IllegalArgumentException("The default ordering must order every RelationshipType.");
+		}
+		this.ratioPermittedWithinROD = ratioPermittedWithinROD;
+		this.emphasisBase = emphasisBase;
+		this.defaultOrdering = Collections.unmodifiableList(new ArrayList<RelationshipType>(defaultOrdering));
+		this.informativenessThreshold = informativenessThreshold;
+	}
+
+	//////////////////////////////////////////
+	/////// GETTERS //////////////////////////
+	//////////////////////////////////////////
+
+	public double getRatioPermittedWithinROD() {
+		return this.ratioPermittedWithinROD;
+	}
+
+	public double getEmphasisBase() {
+		return this.emphasisBase;
+	}
+
+	public List<RelationshipType> getDefaultOrdering() {
+		return this.defaultOrdering;
+	}
+
+	public double getInformativenessThreshold() {
+		return this.informativenessThreshold;
+	}
+
+	/***
+	 * Get every ordering of the RelationshipTypes.
+	 * @return every ordering of the RelationshipTypes
+	 */
+	public static List<List<RelationshipType>> getAllOrderings() {
+		List<List<RelationshipType>> orderings = new ArrayList<List<RelationshipType>>();
+		ModelParameters.addOrderings(new ArrayList<RelationshipType>(), new ArrayList<RelationshipType>(Arrays.asList(RelationshipType.values())), orderings);
+		return orderings;
+	}
+
+	private static void addOrderings(List<RelationshipType> prefix, List<RelationshipType> remaining, List<List<RelationshipType>> orderings) {
+		if (remaining.isEmpty()) {
+			orderings.add(new ArrayList<RelationshipType>(prefix));
+			return;
+		}
+		for (int i=0; i<remaining.size(); i++) {
+			RelationshipType relationshipType = remaining.remove(i);
+			prefix.add(relationshipType);
+			ModelParameters.addOrderings(prefix, remaining, orderings);
+			prefix.remove(prefix.size() - 1);
+			remaining.add(i, relationshipType);
+		}
+	}
+
+	/***
+	 * Get the default ordering as text, e.g. ENEMY<FRIEND<NEUTRAL.
+	 * @return the default ordering as text
+	 */
+	public String getDefaultOrderingString() {
+		StringBuilder ordering = new StringBuilder();
+		for (RelationshipType relationshipType : this.defaultOrdering) {
+			if (ordering.length() > 0) { ordering.append('<'); }
+			ordering.append(relationshipType);
+		}
+		return ordering.toString();
+	}
+
+	@Override
+	public String toString() {
+		return "ratio=" + this.ratioPermittedWithinROD + " emphasis=" + this.emphasisBase
+				+ " ordering=" + this.getDefaultOrderingString() + " threshold=" + this.informativenessThreshold;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof ModelParameters)) {
+			return false;
+		}
+		ModelParameters other = (ModelParameters) obj;
+		return Double.compare(this.ratioPermittedWithinROD, other.ratioPermittedWithinROD) == 0
+				&& Double.compare(this.emphasisBase, other.emphasisBase) == 0
+				&& this.defaultOrdering.equals(other.defaultOrdering)
+				&& Double.compare(this.informativenessThreshold, other.informativenessThreshold) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = Double.hashCode(this.ratioPermittedWithinROD);
+		hash = 31 * hash + Double.hashCode(this.emphasisBase);
+		hash = 31 * hash + this.defaultOrdering.hashCode();
+		hash = 31 * hash + Double.hashCode(this.informativenessThreshold);
+		return hash;
+	}
+
+}
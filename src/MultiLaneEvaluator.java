@@ -0,0 +1,343 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/***
+ * A MultiLaneEvaluator reads scenarios and does Tricopa tasks with several knowledge bases at once, one per lane,
+ * answering exactly as an AffinitybasedAgent with each knowledge base would, in a single pass.
+ *
+ * Parsing, implicit response and the order of ActionEvents do not depend on knowledge, so each ActionEvent is filled once
+ * for all lanes; only the beliefs and the scores of choices are kept per lane, in a MultiLaneWorldModel and in arrays.
+ * Comparing many variants of a Knowledge File therefore costs little more than a single run.
+ * @author pkalluri
+ *
+ */
+public class MultiLaneEvaluator {
+
+	private static final RelationshipType[] RELATIONSHIP_TYPES = RelationshipType.values();
+
+	/***
+	 * The outcome of a Tricopa task in each lane.
+	 */
+	public static class TaskOutcome {
+		private final int[] choices;
+		private final String[] missingActions;
+
+		TaskOutcome(int[] choices, String[] missingActions) {
+			this.choices = choices;
+			this.missingActions = missingActions;
+		}
+
+		/***
+		 * Get the number of the choice made in the given lane, as AffinitybasedAgent.doTricopaTask would.
+		 * @param lane
+		 * @return the number of the choice (1 or 2) thought more likely to apply now
+		 * @throws InsufficientActionKnowledgeException the lane's knowledge was insufficient to do the task
+		 * @throws UndecidedAgentException the lane was unable to decide between the choices
+		 */
+		public int getChoice(int lane) throws InsufficientActionKnowledgeException, UndecidedAgentException {
+			if (this.missingActions[lane] != null) {
+				throw new InsufficientActionKnowledgeException(this.missingActions[lane]);
+			}
+			if (this.choices[lane] < 0) {
+				throw new UndecidedAgentException();
+			}
+			return this.choices[lane];
+		}
+	}
+
+	/***
+	 * The performance of a lane on administered Tricopa tasks.
+	 */
+	public static class LaneResults {
+		/***
+		 * The performance on each task administered to the lane, by task number.
+		 */
+		public final Map<Integer, TricopaTaskPerformance> performanceOnTasks;
+		/***
+		 * The action missing from the lane's knowledge, after which no more tasks were administered to the lane, or null.
+		 */
+		public final String missingAction;
+
+		LaneResults(Map<Integer, TricopaTaskPerformance> performanceOnTasks, String missingAction) {
+			this.performanceOnTasks = performanceOnTasks;
+			this.missingAction = missingAction;
+		}
+	}
+
+	/***
+	 * The knowledge about actions of each lane.
+	 */
+	private final List<Map<String, ActionROD>> actionKnowledgebases;
+	private final ImplicitResponseResolver implicitResponseResolver;
+	private ModelParameters parameters;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTOR //////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a new MultiLaneEvaluator with one lane per given knowledge base.
+	 * @param actionKnowledgebases the knowledge about actions of each lane
+	 * @param characters the Strings known to refer to characters
+	 */
+	public MultiLaneEvaluator(List<Map<String, ActionROD>> actionKnowledgebases, Set<String> characters) {
+		if (actionKnowledgebases.isEmpty()) { throw new IllegalArgumentException("There must be at least one lane."); }
+		this.actionKnowledgebases = new ArrayList<Map<String, ActionROD>>(actionKnowledgebases);
+		this.implicitResponseResolver = new ImplicitResponseResolver(characters);
+		this.parameters = ModelParameters.DEFAULT;
+	}
+
+	public int getNumberOfLanes() {
+		return this.actionKnowledgebases.size();
+	}
+
+	/***
+	 * Revise beliefs in every lane by the given constants from now on. The ratio permitted within an ROD is not applied here,
+	 * because the knowledge of the lanes is already interpreted.
+	 * @param parameters
+	 */
+	public void setParameters(ModelParameters parameters) {
+		this.parameters = parameters;
+	}
+
+	//////////////////////////////////////////
+	/////// READING //////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Read the given scenario in every lane and reflect on it.
+	 * @param scenario
+	 * @return the world model of the scenario in every lane, in which lanes missing knowledge are stopped
+	 */
+	public MultiLaneWorldModel read(Scenario scenario) {
+		MultiLaneWorldModel worldModel = new MultiLaneWorldModel(this.getNumberOfLanes(), this.parameters);
+		this.read(worldModel, scenario, new RecentlyObservedAgentsMemory());
+		worldModel.reflectOnAndRefineBeliefs();
+		return worldModel;
+	}
+
+	/***
+	 * Read the given scenario into the given worldModel without reflecting on it.
+	 * @param worldModel the world model being built
+	 * @param scenario
+	 * @param memory the recently observed agents, updated as the scenario is read
+	 */
+	private void read(MultiLaneWorldModel worldModel, Scenario scenario, RecentlyObservedAgentsMemory memory) {
+		double[] relativeProbabilities = new double[RELATIONSHIP_TYPES.length * this.getNumberOfLanes()];
+		for (ActionEvent actionEvent : scenario.actionEvents) {
+			this.getRelativeProbabilities(worldModel, actionEvent.action, relativeProbabilities);
+			try {
+				ActionEvent fullActionEvent = this.implicitResponseResolver.getFullActionEvent(actionEvent, memory);
+				worldModel.update(fullActionEvent, relativeProbabilities);
+				this.implicitResponseResolver.updateMemory(fullActionEvent, memory);
+			} catch (UnableToFillActionEventException e) {
+				this.implicitResponseResolver.updateMemory(actionEvent, memory); //still update memory
+			}
+		}
+	}
+
+	//////////////////////////////////////////
+	/////// CHOOSING /////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Do the given Tricopa task in every lane.
+	 * @param tricopaTask
+	 * @return the outcome of the task in every lane
+	 */
+	public TaskOutcome doTricopaTask(TricopaTask tricopaTask) {
+		return this.doTricopaTask(tricopaTask, new String[this.getNumberOfLanes()]);
+	}
+
+	/***
+	 * Do the given Tricopa task in every lane that has not already been stopped.
+	 * @param tricopaTask
+	 * @param missingActions the action missing from each lane's knowledge, or null for lanes to do the task in
+	 * @return the outcome of the task in every lane
+	 */
+	private TaskOutcome doTricopaTask(TricopaTask tricopaTask, String[] missingActions) {
+		int numLanes = this.getNumberOfLanes();
+		MultiLaneWorldModel worldModel = new MultiLaneWorldModel(numLanes, this.parameters);
+		for (int lane=0; lane<numLanes; lane++) {
+			if (missingActions[lane] != null) {
+				worldModel.stopLane(lane, missingActions[lane]);
+			}
+		}
+		RecentlyObservedAgentsMemory memory = new RecentlyObservedAgentsMemory();
+		this.read(worldModel, tricopaTask.premise, memory);
+		worldModel.reflectOnAndRefineBeliefs();
+
+		//Consider choices; the memory after each choice flows into the next
+		int longestDescriptionLength = AffinitybasedAgent.getMaxDescriptionLength(tricopaTask.possibleChoices);
+		double[] relativeProbabilities = new double[RELATIONSHIP_TYPES.length * numLanes];
+		double[] probabilities = new double[numLanes];
+		double[] logProbabilityOfBestChoice = new double[numLanes];
+		Arrays.fill(logProbabilityOfBestChoice, Double.NEGATIVE_INFINITY);
+		int[] bestChoiceNumber = new int[numLanes];
+		Arrays.fill(bestChoiceNumber, -1);
+		boolean[] undecided = new boolean[numLanes];
+		double[] logProbabilityOfThisChoice = new double[numLanes];
+		double[] sumOfEventProbs = new double[numLanes]; // the sum of the probabilities of all events (used for normalizing)
+
+		int choiceNumber = 0;
+		for (Scenario choice : tricopaTask.possibleChoices) {
+			choiceNumber ++;
+			Arrays.fill(logProbabilityOfThisChoice, 0);
+			Arrays.fill(sumOfEventProbs, 0);
+			int numProbabilityUpdates = 0;
+
+			for (ActionEvent actionEvent : choice.actionEvents) {
+				this.getRelativeProbabilities(worldModel, actionEvent.action, relativeProbabilities);
+				try {
+					ActionEvent fullActionEvent = this.implicitResponseResolver.getFullActionEvent(actionEvent, memory);
+					worldModel.probabilitiesOf(fullActionEvent, relativeProbabilities, probabilities);
+					for (int lane=0; lane<numLanes; lane++) {
+						sumOfEventProbs[lane] += probabilities[lane];
+						logProbabilityOfThisChoice[lane] += Math.log(probabilities[lane]);
+					}
+					numProbabilityUpdates ++;
+					this.implicitResponseResolver.updateMemory(fullActionEvent, memory);
+				} catch (UnableToFillActionEventException e) {
+					this.implicitResponseResolver.updateMemory(actionEvent, memory);
+				}
+			}//done with units
+
+			//update best choice of each lane still deciding
+			for (int lane=0; lane<numLanes; lane++) {
+				if (!worldModel.isLive(lane) || undecided[lane]) {
+					continue;
+				}
+				double normalizedLogProbability = AffinitybasedAgent.getNormalizedLogProbability(logProbabilityOfThisChoice[lane],
+						sumOfEventProbs[lane], numProbabilityUpdates, longestDescriptionLength);
+				if (choiceNumber!=1 && InterpretationRanking.isTie(normalizedLogProbability, logProbabilityOfBestChoice[lane])) { //tie
+					undecided[lane] = true;
+				} else if (normalizedLogProbability > logProbabilityOfBestChoice[lane]) {
+					logProbabilityOfBestChoice[lane] = normalizedLogProbability;
+					bestChoiceNumber[lane] = choiceNumber;
+				}
+			}
+		}//done with choice
+
+		String[] outcomeMissingActions = new String[numLanes];
+		for (int lane=0; lane<numLanes; lane++) {
+			outcomeMissingActions[lane] = worldModel.getMissingAction(lane);
+			if (undecided[lane]) {
+				bestChoiceNumber[lane] = -1;
+			}
+		}
+		return new TaskOutcome(bestChoiceNumber, outcomeMissingActions);
+	}
+
+	/***
+	 * Administer the given tricopaTasks in every lane and assess the performance of each lane against the true answers.
+	 * As with Simulation.administerTricopaTasks, a lane whose knowledge is insufficient for a task is administered no more tasks.
+	 * @param tricopaTasks
+	 * @param answers
+	 * @return the results of each lane
+	 */
+	public List<LaneResults> administerTricopaTasks(Map<Integer, TricopaTask> tricopaTasks, Map<Integer, Integer> answers) {
+		int numLanes = this.getNumberOfLanes();
+		List<Map<Integer, TricopaTaskPerformance>> performances = new ArrayList<Map<Integer, TricopaTaskPerformance>>();
+		for (int lane=0; lane<numLanes; lane++) {
+			performances.add(new HashMap<Integer, TricopaTaskPerformance>());
+		}
+		String[] missingActions = new String[numLanes];
+
+		for (Map.Entry<Integer, TricopaTask> numberedTricopaTask : tricopaTasks.entrySet()) {
+			int taskNumber = numberedTricopaTask.getKey();
+			TaskOutcome outcome = this.doTricopaTask(numberedTricopaTask.getValue(), missingActions.clone());
+			for (int lane=0; lane<numLanes; lane++) {
+				if (missingActions[lane] != null) {
+					continue; //no longer administered
+				}
+				try {
+					if (outcome.getChoice(lane) == answers.get(taskNumber)) {
+						performances.get(lane).put(taskNumber, TricopaTaskPerformance.CORRECT);
+					} else {
+						performances.get(lane).put(taskNumber, TricopaTaskPerformance.INCORRECT);
+					}
+				} catch (UndecidedAgentException e) {
+					performances.get(lane).put(taskNumber, TricopaTaskPerformance.INCOMPLETE);
+				} catch (InsufficientActionKnowledgeException e) {
+					missingActions[lane] = e.getAction();
+				}
+			}
+		}//done with all tasks
+
+		List<LaneResults> results = new ArrayList<LaneResults>();
+		for (int lane=0; lane<numLanes; lane++) {
+			results.add(new LaneResults(performances.get(lane), missingActions[lane]));
+		}
+		return results;
+	}
+
+	//////////////////////////////////////////
+	/////// REPORTING ////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a table of the given results of each lane, one line per lane, in order.
+	 * @param laneNames a name for each lane, e.g. the name of its Knowledge File
+	 * @param results the results of each lane
+	 * @return a table of the given results
+	 */
+	public static String getResultsTable(List<String> laneNames, List<LaneResults> results) {
+		StringBuilder table = new StringBuilder();
+		int nameWidth = "Knowledge".length();
+		for (String laneName : laneNames) {
+			nameWidth = Math.max(nameWidth, laneName.length());
+		}
+		String format = "%-" + nameWidth + "s %-10s %-10s %s%n";
+		table.append(String.format(format, "Knowledge", "Accuracy", "Answered", "Correct"));
+		for (int lane=0; lane<results.size(); lane++) {
+			LaneResults result = results.get(lane);
+			if (result.missingAction != null) {
+				table.append(String.format(format, laneNames.get(lane), "-", "-", "missing knowledge about \"" + result.missingAction + "\""));
+				continue;
+			}
+			int numTasks = result.performanceOnTasks.size();
+			int numCorrect = 0;
+			int numAnswered = 0;
+			for (TricopaTaskPerformance performance : result.performanceOnTasks.values()) {
+				if (performance == TricopaTaskPerformance.CORRECT) { numCorrect ++; }
+				if (performance == TricopaTaskPerformance.CORRECT || performance == TricopaTaskPerformance.INCORRECT) { numAnswered ++; }
+			}
+			table.append(String.format(format, laneNames.get(lane),
+					String.format("%.1f%%", (numTasks == 0) ? 0 : 100. * numCorrect / numTasks),
+					String.format("%.1f%%", (numTasks == 0) ? 0 : 100. * numAnswered / numTasks),
+					numCorrect + "/" + numTasks));
+		}
+		return table.toString();
+	}
+
+	//////////////////////////////////////////
+	/////// PRIVATE HELPERS //////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Get the relative probability of the given action given each RelationshipType in each live lane of the given worldModel,
+	 * stopping lanes whose knowledge is missing the action.
+	 * @param worldModel
+	 * @param action
+	 * @param relativeProbabilities to fill, at index (RelationshipType ordinal * number of lanes + lane)
+	 */
+	private void getRelativeProbabilities(MultiLaneWorldModel worldModel, String action, double[] relativeProbabilities) {
+		int numLanes = this.getNumberOfLanes();
+		for (int lane=0; lane<numLanes; lane++) {
+			ActionROD actionKnowledge = worldModel.isLive(lane) ? this.actionKnowledgebases.get(lane).get(action) : null;
+			if (actionKnowledge == null) {
+				worldModel.stopLane(lane, action);
+			}
+			for (RelationshipType relationshipType : RELATIONSHIP_TYPES) {
+				//stopped lanes are given relative probability 1, so their scores stay finite and are ignored
+				relativeProbabilities[relationshipType.ordinal() * numLanes + lane] =
+						(actionKnowledge == null) ? 1 : actionKnowledge.getRelativeProbabilityGiven(relationshipType);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,298 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/***
+ * A MultiLaneWorldModel models the same world as several AffinitybasedWorldModels that are read the same ActionEvents
+ * with different knowledge, one per lane.
+ *
+ * Which agents and relationships exist depends only on the ActionEvents, so it is kept once; only beliefs and update counts
+ * are kept per lane. The beliefs about a relationship are one array holding every lane's probability of each RelationshipType,
+ * lane by lane within each RelationshipType, so that a lane's beliefs are revised exactly as a SymmetricRelationshipModel's are,
+ * but all lanes are revised in tight loops over primitive arrays.
+ *
+ * A lane is stopped when its knowledge is missing an action read, as an agent stops reading; stopped lanes are no longer revised.
+ * @author pkalluri
+ *
+ */
+public class MultiLaneWorldModel {
+
+	private static final RelationshipType[] RELATIONSHIP_TYPES = RelationshipType.values();
+
+	private final int numLanes;
+
+	/***
+	 * The agents known to exist
+	 */
+	private final List<String> agents;
+	private final Set<String> knownAgents;
+
+	/***
+	 * The relationships between the agents known to exist -- mapped to the probability of each RelationshipType in each lane,
+	 * at index (RelationshipType ordinal * number of lanes + lane).
+	 */
+	private final Map<Pair<String>, double[]> affinityBeliefs;
+
+	/***
+	 * The relationships between the agents known to exist -- mapped to the number of times their beliefs have been revised in each lane.
+	 */
+	private final Map<Pair<String>, int[]> updateCounts;
+
+	/***
+	 * The action missing from each lane's knowledge, or null for lanes that have not been stopped.
+	 */
+	private final String[] missingActions;
+
+	/***
+	 * The constants by which beliefs are revised, in every lane.
+	 */
+	private final ModelParameters parameters;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTOR //////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a new MultiLaneWorldModel containing no information.
+	 * @param numLanes the number of lanes
+	 * @param parameters the constants by which beliefs are revised
+	 */
+	public MultiLaneWorldModel(int numLanes, ModelParameters parameters) {
+		if (numLanes <= 0) { throw new IllegalArgumentException("The number of lanes must be positive."); }
+		this.numLanes = numLanes;
+		this.agents = new ArrayList<String>();
+		this.knownAgents = new HashSet<String>();
+		this.affinityBeliefs = new LinkedHashMap<Pair<String>, double[]>();
+		this.updateCounts = new HashMap<Pair<String>, int[]>();
+		this.missingActions = new String[numLanes];
+		this.parameters = parameters;
+	}
+
+	//////////////////////////////////////////
+	/////// LANES ////////////////////////////
+	//////////////////////////////////////////
+
+	public int getNumberOfLanes() {
+		return this.numLanes;
+	}
+
+	/***
+	 * Return true iff the given lane has not been stopped.
+	 * @param lane
+	 * @return true iff the given lane has not been stopped
+	 */
+	public boolean isLive(int lane) {
+		return this.missingActions[lane] == null;
+	}
+
+	/***
+	 * Get the action whose absence from the given lane's knowledge stopped the lane.
+	 * @param lane
+	 * @return the missing action, or null if the lane has not been stopped
+	 */
+	public String getMissingAction(int lane) {
+		return this.missingActions[lane];
+	}
+
+	/***
+	 * Stop the given lane, because its knowledge is missing the given action.
+	 * @param lane
+	 * @param missingAction
+	 */
+	void stopLane(int lane, String missingAction) {
+		if (this.missingActions[lane] == null) {
+			this.missingActions[lane] = missingAction;
+		}
+	}
+
+	//////////////////////////////////////////
+	/////// READING //////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Update every live lane with the given full actionEvent.
+	 * @param actionEvent an ActionEvent with 2 agents
+	 * @param relativeProbabilities the relative probability of the action given each RelationshipType in each lane,
+	 * at index (RelationshipType ordinal * number of lanes + lane)
+	 */
+	public void update(ActionEvent actionEvent, double[] relativeProbabilities) {
+		if (!this.knownAgents.contains(actionEvent.actor)) {
+			this.addAgent(actionEvent.actor);
+		}
+		if (!this.knownAgents.contains(actionEvent.actedUpon)) {
+			this.addAgent(actionEvent.actedUpon);
+		}
+
+		Pair<String> actingPair = new Pair<String>(actionEvent.actor, actionEvent.actedUpon);
+		double[] beliefs = this.getOrCreateBeliefs(actingPair);
+		int[] updateCounts = this.updateCounts.get(actingPair);
+
+		//the n-th update of a relationship in a lane is repeated (emphasis base)^n times
+		double[] emphasis = new double[this.numLanes];
+		double maxEmphasis = 0;
+		for (int lane=0; lane<this.numLanes; lane++) {
+			if (this.isLive(lane)) {
+				emphasis[lane] = Math.pow(this.parameters.getEmphasisBase(), updateCounts[lane]);
+				maxEmphasis = Math.max(maxEmphasis, emphasis[lane]);
+				updateCounts[lane] ++;
+			}
+		}
+		double[] totalProbabilities = new double[this.numLanes];
+		for (int i=0; i<maxEmphasis; i++) {
+			for (int lane=0; lane<this.numLanes; lane++) {
+				totalProbabilities[lane] = 0;
+			}
+			for (int type=0; type<RELATIONSHIP_TYPES.length; type++) {
+				int offset = type * this.numLanes;
+				for (int lane=0; lane<this.numLanes; lane++) {
+					if (i < emphasis[lane]) {
+						beliefs[offset + lane] *= relativeProbabilities[offset + lane];
+						totalProbabilities[lane] += beliefs[offset + lane];
+					}
+				}
+			}
+			for (int type=0; type<RELATIONSHIP_TYPES.length; type++) {
+				int offset = type * this.numLanes;
+				for (int lane=0; lane<this.numLanes; lane++) {
+					if (i < emphasis[lane]) {
+						beliefs[offset + lane] /= totalProbabilities[lane]; //Normalize, so that probabilities sum to 1
+					}
+				}
+			}
+		}
+	}
+
+	/***
+	 * Reflect on every live lane: as an AffinitybasedWorldModel does, rewrite each uninformative relationship as informed by a
+	 * belief that the RelationshipTypes are in the default ordering of likelihood.
+	 */
+	public void reflectOnAndRefineBeliefs() {
+		double[] defaultBeliefs = new double[RELATIONSHIP_TYPES.length];
+		double sum = 0;
+		double emphasis = 1;
+		for (RelationshipType relationshipType : this.parameters.getDefaultOrdering()) {
+			defaultBeliefs[relationshipType.ordinal()] = emphasis;
+			sum += emphasis;
+			emphasis ++;
+		}
+		for (int type=0; type<RELATIONSHIP_TYPES.length; type++) {
+			defaultBeliefs[type] /= sum;
+		}
+
+		double uniformProbability = 1./(double)RELATIONSHIP_TYPES.length;
+		for (Map.Entry<Pair<String>, double[]> relationship : this.affinityBeliefs.entrySet()) {
+			double[] beliefs = relationship.getValue();
+			int[] updateCounts = this.updateCounts.get(relationship.getKey());
+			for (int lane=0; lane<this.numLanes; lane++) {
+				if (!this.isLive(lane)) {
+					continue;
+				}
+				boolean isInformative = false;
+				for (int type=0; type<RELATIONSHIP_TYPES.length; type++) {
+					if ((beliefs[type * this.numLanes + lane] - uniformProbability) > this.parameters.getInformativenessThreshold()) { //has opinion
+						isInformative = true;
+					}
+				}
+				if (!isInformative) { //rewrite
+					for (int type=0; type<RELATIONSHIP_TYPES.length; type++) {
+						beliefs[type * this.numLanes + lane] = defaultBeliefs[type];
+					}
+					updateCounts[lane] ++;
+				}
+			}
+		}
+	}
+
+	/***
+	 * Get the probability of the given full actionEvent in every live lane.
+	 * @param actionEvent an ActionEvent with 2 agents
+	 * @param relativeProbabilities the relative probability of the action given each RelationshipType in each lane,
+	 * at index (RelationshipType ordinal * number of lanes + lane)
+	 * @param probabilities the probability of the actionEvent in each lane, to fill; 1 if the relationship is not modeled
+	 */
+	public void probabilitiesOf(ActionEvent actionEvent, double[] relativeProbabilities, double[] probabilities) {
+		double[] beliefs = this.affinityBeliefs.get(new Pair<String>(actionEvent.actor, actionEvent.actedUpon));
+		for (int lane=0; lane<this.numLanes; lane++) {
+			probabilities[lane] = (beliefs == null) ? 1 : 0;
+		}
+		if (beliefs == null) {
+			return;
+		}
+		for (int type=0; type<RELATIONSHIP_TYPES.length; type++) {
+			int offset = type * this.numLanes;
+			for (int lane=0; lane<this.numLanes; lane++) {
+				probabilities[lane] += relativeProbabilities[offset + lane] * beliefs[offset + lane];
+			}
+		}
+	}
+
+	//////////////////////////////////////////
+	/////// GETTERS //////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Get the beliefs in the given lane about the given relationship.
+	 * @param relationship
+	 * @param lane
+	 * @return map mapping each RelationshipType to the believed probability of that RelationshipType, or null if the relationship is not modeled
+	 */
+	public Map<RelationshipType, Double> getBeliefs(Pair<String> relationship, int lane) {
+		double[] beliefs = this.affinityBeliefs.get(relationship);
+		if (beliefs == null) {
+			return null;
+		}
+		Map<RelationshipType, Double> laneBeliefs = new HashMap<RelationshipType, Double>();
+		for (RelationshipType relationshipType : RELATIONSHIP_TYPES) {
+			laneBeliefs.put(relationshipType, beliefs[relationshipType.ordinal() * this.numLanes + lane]);
+		}
+		return laneBeliefs;
+	}
+
+	/***
+	 * Get the modeled relationships, in the order in which they started being modeled.
+	 * @return the modeled relationships
+	 */
+	public Iterable<Pair<String>> getRelationships() {
+		return this.affinityBeliefs.keySet();
+	}
+
+	//////////////////////////////////////////
+	/////// PRIVATE HELPERS //////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Add the given agent to the agents known to exist, along with all implied pairs.
+	 * @param newAgent
+	 */
+	private void addAgent(String newAgent) {
+		for (String agent : this.agents) {
+			this.getOrCreateBeliefs(new Pair<String>(agent, newAgent));
+		}
+		this.agents.add(newAgent);
+		this.knownAgents.add(newAgent);
+	}
+
+	/***
+	 * Get the beliefs about the given relationship, starting to model it with uninformed beliefs in every lane if it is not modeled.
+	 * @param relationship
+	 * @return the beliefs about the given relationship
+	 */
+	private double[] getOrCreateBeliefs(Pair<String> relationship) {
+		double[] beliefs = this.affinityBeliefs.get(relationship);
+		if (beliefs == null) {
+			beliefs = new double[RELATIONSHIP_TYPES.length * this.numLanes];
+			double uniformProbability = 1./(double)(RELATIONSHIP_TYPES.length);
+			for (int i=0; i<beliefs.length; i++) {
+				beliefs[i] = uniformProbability;
+			}
+			this.affinityBeliefs.put(relationship, beliefs);
+			this.updateCounts.put(relationship, new int[this.numLanes]);
+		}
+		return beliefs;
+	}
+
+}
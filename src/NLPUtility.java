@@ -17,7 +17,13 @@ import edu.stanford.nlp.parser.lexparser.LexicalizedParser;
 
 public class NLPUtility {
 	
+	private static final String PARSER_MODEL = "edu/stanford/nlp/models/lexparser/englishPCFG.ser.gz";
 	
+	/***
+	 * The parser, loaded the first time it is needed and then kept, since loading the model takes far longer than parsing.
+	 * The parser may be used by several threads at once.
+	 */
+	private static LexicalizedParser parser = null;
 
 	/***
 	 * Get list of ActionEvents from the given lines.
@@ -29,8 +35,7 @@ public class NLPUtility {
 		
 		//Get general NLP tools
 		TokenizerFactory<CoreLabel> tokenizerFactory = PTBTokenizer.factory(new CoreLabelTokenFactory(), "");
-	    String parserModel = "edu/stanford/nlp/models/lexparser/englishPCFG.ser.gz";
-	    LexicalizedParser parser = LexicalizedParser.loadModel(parserModel);
+	    LexicalizedParser parser = NLPUtility.getParser();
 	    TreebankLanguagePack tlp = parser.treebankLanguagePack(); // PennTreebankLanguagePack for English
 	    GrammaticalStructureFactory gsf = tlp.grammaticalStructureFactory();
 		
@@ -215,6 +220,17 @@ public class NLPUtility {
 	    return tdl;
 	}
 	
+	/***
+	 * Get the parser, loading it if it has not been loaded.
+	 * @return the parser
+	 */
+	private static synchronized LexicalizedParser getParser() {
+		if (NLPUtility.parser == null) {
+			NLPUtility.parser = LexicalizedParser.loadModel(PARSER_MODEL);
+		}
+		return NLPUtility.parser;
+	}
+	
 	/***
 	 * Demo use of this ability for getting a scenario from a natural language file.
 	 * @param args
@@ -0,0 +1,517 @@
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/***
+ * The OffHeapRelationshipStore implements the RelationshipStore interface with a hash table kept in direct (off-heap) memory,
+ * so that the heap used by a world model stays flat however many relationships it models.
+ *
+ * Each agent is given an int id, and each relationship is identified by the packed long (smaller id << 32 | larger id).
+ * The table is an open-addressing (linear probing) table of fixed-size slots:
+ * <pre>
+ * long    packed relationship id + 1 (0 denotes an empty slot)
+ * double  belief per RelationshipType, in the declared order of RelationshipTypes
+ * int     update count
+ * int     last update age
+ * </pre>
+ * or, if the store is quantized, of 16-byte slots:
+ * <pre>
+ * long    packed relationship id + 1 (0 denotes an empty slot)
+ * long    beliefs and update count, encoded by QuantizedBeliefs
+ * </pre>
+ * A quantized store holds well over twice as many relationships in the same memory, at the precision documented in QuantizedBeliefs.
+ * Its slots have no room for last update ages, which it keeps in a map on the heap; they are only recorded while beliefs decay.
+ * The agents are kept in an AgentTable, also in direct memory. Models got from this store are copies built from the slot, so they must be put back once changed.
+ *
+ * The table grows without a long pause: when it becomes half full, a table of twice the capacity is allocated, new relationships are
+ * added to it, and each later addition moves a few slots of the old table into it, until the old table is empty and released.
+ * Until then, relationships are looked up in the new table and then in the old one. Tables are ChunkedBuffers indexed by long,
+ * so a table is not limited to the slots that fit in one ByteBuffer.
+ *
+ * Closing the store releases its direct memory at once; a closed store must not be used.
+ * @author pkalluri
+ *
+ */
+public class OffHeapRelationshipStore implements RelationshipStore, Closeable {
+
+	private static final long EMPTY = 0;
+	private static final int KEY_OFFSET = 0;
+	private static final int BELIEFS_OFFSET = 8;
+	private static final int UPDATE_COUNT_OFFSET = BELIEFS_OFFSET + 8*RelationshipType.values().length;
+	private static final int LAST_UPDATE_AGE_OFFSET = UPDATE_COUNT_OFFSET + 4;
+	private static final int SLOT_SIZE = LAST_UPDATE_AGE_OFFSET + 4;
+	private static final int QUANTIZED_SLOT_SIZE = BELIEFS_OFFSET + 8;
+
+	//////////////////////////////////////////
+	/////// PARAMETERS ///////////////////////
+	//////////////////////////////////////////
+	/***
+	 * The number of slots in a new table if none is specified.
+	 */
+	public static final int DEFAULT_INITIAL_CAPACITY = 1024;
+
+	/***
+	 * True iff beliefs are stored quantized, and the resulting size of a slot in bytes.
+	 */
+	private final boolean quantized;
+	private final int slotSize;
+
+	/***
+	 * The largest number of slots a table can have.
+	 */
+	private static final long MAXIMUM_CAPACITY = 1L << 40;
+
+	/***
+	 * The number of slots of the old table moved into the new table upon each addition while growing.
+	 * Moving at least 2 guarantees the old table is empty before the new table is half full.
+	 */
+	private static final int SLOTS_MOVED_PER_ADDITION = 16;
+
+	//////////////////////////////////////////
+	/////// STATE ////////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * The agents known to this store, with their ids.
+	 */
+	private final AgentTable agents;
+
+	/***
+	 * If the store is quantized, the keys of the relationships whose last update age has been recorded -- mapped to that age.
+	 */
+	private final Map<Long, Integer> quantizedLastUpdateAges;
+
+	/***
+	 * The table relationships are added to, and its number of slots.
+	 */
+	private ChunkedBuffer table;
+	private long capacity;
+
+	/***
+	 * The table being emptied into the current table while growing (or null if not growing), its number of slots, and
+	 * the index of its first slot not yet moved.
+	 */
+	private ChunkedBuffer oldTable;
+	private long oldCapacity;
+	private long moveIndex;
+
+	/***
+	 * The number of relationships modeled.
+	 */
+	private int size;
+
+	/***
+	 * The slot found by the last call to locate.
+	 */
+	private long lastLocatedSlot;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTORS /////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a new OffHeapRelationshipStore modeling no relationships at double precision, with the default initial capacity.
+	 */
+	public OffHeapRelationshipStore() {
+		this(DEFAULT_INITIAL_CAPACITY, false);
+	}
+
+	/***
+	 * Construct a new OffHeapRelationshipStore modeling no relationships.
+	 * @param initialCapacity the number of slots to start with (rounded up to a power of 2), e.g. twice the number of relationships expected
+	 * @param quantized true iff beliefs should be stored quantized (see QuantizedBeliefs) rather than at double precision
+	 */
+	public OffHeapRelationshipStore(int initialCapacity, boolean quantized) {
+		this.quantized = quantized;
+		this.slotSize = quantized ? QUANTIZED_SLOT_SIZE : SLOT_SIZE;
+		if (initialCapacity <= 0 || initialCapacity > (1 << 30)) {
+			throw new IllegalArgumentException("The initial capacity must be between 1 and " + (1 << 30) + ".");
+		}
+		int powerOfTwo = Integer.highestOneBit(initialCapacity);
+		if (powerOfTwo < initialCapacity) {
+			powerOfTwo <<= 1;
+		}
+		this.agents = new AgentTable();
+		this.quantizedLastUpdateAges = quantized ? new HashMap<Long, Integer>() : null;
+		this.capacity = powerOfTwo;
+		this.table = this.allocateTable(this.capacity);
+		this.oldTable = null;
+		this.size = 0;
+	}
+
+	//////////////////////////////////////////
+	/////// OVERRIDE INTERFACE METHODS ///////
+	//////////////////////////////////////////
+
+	@Override
+	public boolean contains(Pair<String> relationship) {
+		return this.locate(this.getKey(relationship, false)) != null;
+	}
+
+	@Override
+	public SymmetricRelationshipModel get(Pair<String> relationship) {
+		long key = this.getKey(relationship, false);
+		ChunkedBuffer containingTable = this.locate(key);
+		if (containingTable == null) {
+			return null;
+		}
+		long slot = this.lastLocatedSlot;
+		if (this.quantized) {
+			return new SymmetricRelationshipModel(QuantizedBeliefs.decodeBeliefs(containingTable.getLong(slot, BELIEFS_OFFSET)));
+		}
+		Map<RelationshipType, Double> beliefs = new HashMap<RelationshipType, Double>();
+		for (RelationshipType relationshipType : RelationshipType.values()) {
+			beliefs.put(relationshipType, containingTable.getDouble(slot, BELIEFS_OFFSET + 8*relationshipType.ordinal()));
+		}
+		return new SymmetricRelationshipModel(beliefs);
+	}
+
+	@Override
+	public int getUpdateCount(Pair<String> relationship) {
+		ChunkedBuffer containingTable = this.locate(this.getKey(relationship, false));
+		if (containingTable == null) {
+			return 0;
+		}
+		long slot = this.lastLocatedSlot;
+		if (this.quantized) {
+			return QuantizedBeliefs.decodeUpdateCount(containingTable.getLong(slot, BELIEFS_OFFSET));
+		}
+		return containingTable.getInt(slot, UPDATE_COUNT_OFFSET);
+	}
+
+	@Override
+	public void put(Pair<String> relationship, SymmetricRelationshipModel relationshipModel, int updateCount) {
+		long key = this.getKey(relationship, true);
+		ChunkedBuffer containingTable = this.locate(key);
+		if (containingTable != null) { //already modeled, so overwrite in place
+			this.writeSlot(containingTable, this.lastLocatedSlot, key, relationshipModel.getBeliefs(), updateCount);
+			return;
+		}
+
+		if (2L*(this.size + 1) > this.capacity) {
+			this.grow();
+		}
+		long slot = this.probe(this.table, this.capacity, key);
+		this.writeSlot(this.table, -1 - slot, key, relationshipModel.getBeliefs(), updateCount);
+		this.size ++;
+		this.moveSlots(SLOTS_MOVED_PER_ADDITION);
+	}
+
+	@Override
+	public BeliefStorage getBeliefStorage() {
+		return this.quantized ? BeliefStorage.QUANTIZED : BeliefStorage.OFF_HEAP;
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public void addAgent(String agent) {
+		this.agents.add(agent);
+	}
+
+	@Override
+	public boolean containsAgent(String agent) {
+		return this.agents.getId(agent) >= 0;
+	}
+
+	@Override
+	public Iterable<String> getAgents() {
+		return this.agents;
+	}
+
+	@Override
+	public int getNumberOfAgents() {
+		return this.agents.size();
+	}
+
+	@Override
+	public int getLastUpdateAge(Pair<String> relationship) {
+		long key = this.getKey(relationship, false);
+		if (this.quantized) {
+			Integer lastUpdateAge = this.quantizedLastUpdateAges.get(key);
+			return (lastUpdateAge == null) ? 0 : lastUpdateAge;
+		}
+		ChunkedBuffer containingTable = this.locate(key);
+		return (containingTable == null) ? 0 : containingTable.getInt(this.lastLocatedSlot, LAST_UPDATE_AGE_OFFSET);
+	}
+
+	@Override
+	public void setLastUpdateAge(Pair<String> relationship, int age) {
+		long key = this.getKey(relationship, false);
+		if (this.quantized) {
+			if (key != EMPTY) {
+				this.quantizedLastUpdateAges.put(key, age);
+			}
+			return;
+		}
+		ChunkedBuffer containingTable = this.locate(key);
+		if (containingTable != null) {
+			containingTable.putInt(this.lastLocatedSlot, LAST_UPDATE_AGE_OFFSET, age);
+		}
+	}
+
+	@Override
+	public Iterator<Pair<String>> iterator() {
+		return new Iterator<Pair<String>>() {
+			//first the slots of the current table, then the slots of the old table not yet moved
+			private ChunkedBuffer iteratedTable = OffHeapRelationshipStore.this.table;
+			private long iteratedCapacity = OffHeapRelationshipStore.this.capacity;
+			private final ChunkedBuffer remainingTable = OffHeapRelationshipStore.this.oldTable;
+			private final long remainingCapacity = OffHeapRelationshipStore.this.oldCapacity;
+			private long nextSlot = this.findOccupied(0);
+
+			@Override
+			public boolean hasNext() {
+				return this.nextSlot < this.iteratedCapacity;
+			}
+
+			@Override
+			public Pair<String> next() {
+				if (!this.hasNext()) {
+					throw new NoSuchElementException();
+				}
+				long key = this.iteratedTable.getLong(this.nextSlot, KEY_OFFSET);
+				this.nextSlot = this.findOccupied(this.nextSlot + 1);
+				return OffHeapRelationshipStore.this.getRelationship(key);
+			}
+
+			private long findOccupied(long fromSlot) {
+				long slot = fromSlot;
+				while (true) {
+					while (slot < this.iteratedCapacity && this.iteratedTable.getLong(slot, KEY_OFFSET) == EMPTY) {
+						slot ++;
+					}
+					if (slot < this.iteratedCapacity || this.iteratedTable == this.remainingTable || this.remainingTable == null) {
+						return slot;
+					}
+					this.iteratedTable = this.remainingTable;
+					this.iteratedCapacity = this.remainingCapacity;
+					slot = OffHeapRelationshipStore.this.moveIndex;
+				}
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder("{");
+		for (Pair<String> relationship : this) {
+			if (str.length() > 1) {
+				str.append(", ");
+			}
+			str.append(relationship).append('=').append(this.get(relationship));
+		}
+		return str.append('}').toString();
+	}
+
+	//////////////////////////////////////////
+	/////// ADDED METHODS ////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Get the number of bytes of direct memory currently held by the tables of this store.
+	 * @return the number of bytes of direct memory currently held
+	 */
+	public long getOffHeapBytes() {
+		long bytes = this.table.getBytes();
+		if (this.oldTable != null) {
+			bytes += this.oldTable.getBytes();
+		}
+		return bytes;
+	}
+
+	/***
+	 * Release the direct memory of this store. The store models no relationships afterwards and must not be used.
+	 */
+	@Override
+	public void close() {
+		this.agents.close();
+		this.table.close();
+		if (this.oldTable != null) {
+			this.oldTable.close();
+			this.oldTable = null;
+		}
+		this.size = 0;
+	}
+
+	//////////////////////////////////////////
+	/////// PRIVATE HELPERS //////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Find the table holding the given key, and set lastLocatedSlot to its slot in that table.
+	 * @param key
+	 * @return the table holding the given key, or null if no table holds it
+	 */
+	private ChunkedBuffer locate(long key) {
+		if (key == EMPTY) {
+			return null;
+		}
+		long slot = this.probe(this.table, this.capacity, key);
+		if (slot >= 0) {
+			this.lastLocatedSlot = slot;
+			return this.table;
+		}
+		if (this.oldTable != null) { //a relationship found here has not been moved yet, else it would be found in the current table
+			slot = this.probe(this.oldTable, this.oldCapacity, key);
+			if (slot >= 0) {
+				this.lastLocatedSlot = slot;
+				return this.oldTable;
+			}
+		}
+		return null;
+	}
+
+	/***
+	 * Get the key of the given relationship, as stored in a slot.
+	 * @param relationship
+	 * @param addAgents true iff unknown agents should be given ids
+	 * @return the key of the given relationship, or EMPTY if an agent is unknown and addAgents is false
+	 */
+	private long getKey(Pair<String> relationship, boolean addAgents) {
+		Iterator<String> elements = relationship.getElements().iterator();
+		String a = elements.next();
+		String b = elements.hasNext() ? elements.next() : a;
+		int idA = this.getAgentId(a, addAgents);
+		int idB = this.getAgentId(b, addAgents);
+		if (idA < 0 || idB < 0) {
+			return EMPTY;
+		}
+		long packedId = ((long) Math.min(idA, idB) << 32) | Math.max(idA, idB);
+		return packedId + 1;
+	}
+
+	/***
+	 * Get the relationship stored with the given key.
+	 * @param key
+	 * @return the relationship stored with the given key
+	 */
+	private Pair<String> getRelationship(long key) {
+		long packedId = key - 1;
+		return new Pair<String>(this.agents.getName((int) (packedId >>> 32)), this.agents.getName((int) packedId));
+	}
+
+	/***
+	 * Get the id of the given agent.
+	 * @param agent
+	 * @param add true iff the agent should be given an id if it has none
+	 * @return the id of the given agent, or -1 if it has none and add is false
+	 */
+	private int getAgentId(String agent, boolean add) {
+		return add ? this.agents.add(agent) : this.agents.getId(agent);
+	}
+
+	/***
+	 * Start growing into a table of twice the capacity.
+	 */
+	private void grow() {
+		if (this.capacity >= MAXIMUM_CAPACITY) {
+			throw new IllegalStateException("An OffHeapRelationshipStore can model at most " + (MAXIMUM_CAPACITY / 2) + " relationships.");
+		}
+		if (this.oldTable != null) { //still growing, which only happens if relationships were added faster than slots were moved
+			this.moveSlots(Long.MAX_VALUE);
+		}
+		this.oldTable = this.table;
+		this.oldCapacity = this.capacity;
+		this.moveIndex = 0;
+		this.capacity = this.capacity * 2;
+		this.table = this.allocateTable(this.capacity);
+	}
+
+	/***
+	 * Move up to the given number of slots of the old table into the current table, releasing the old table once all are moved.
+	 * Moved slots are left in place, so that probing the old table for slots not yet moved still works.
+	 * @param numSlots
+	 */
+	private void moveSlots(long numSlots) {
+		if (this.oldTable == null) {
+			return;
+		}
+		long endIndex = Math.min(this.moveIndex + numSlots, this.oldCapacity);
+		for (; this.moveIndex < endIndex; this.moveIndex++) {
+			long key = this.oldTable.getLong(this.moveIndex, KEY_OFFSET);
+			if (key != EMPTY) {
+				long newSlot = -1 - this.probe(this.table, this.capacity, key);
+				for (int i=0; i<this.slotSize; i+=8) {
+					this.table.putLong(newSlot, i, this.oldTable.getLong(this.moveIndex, i));
+				}
+			}
+		}
+		if (this.moveIndex == this.oldCapacity) {
+			this.oldTable.close();
+			this.oldTable = null;
+		}
+	}
+
+	/***
+	 * Allocate a table of the given number of slots, all empty.
+	 * @param capacity
+	 * @return a table of the given number of slots
+	 */
+	private ChunkedBuffer allocateTable(long capacity) {
+		return new ChunkedBuffer(this.slotSize, capacity); //zeroed, i.e. all slots are EMPTY
+	}
+
+	/***
+	 * Probe the given table for the given key.
+	 * @param table
+	 * @param capacity
+	 * @param key
+	 * @return the slot holding the key if it is held, otherwise -1 minus the empty slot where it would be added
+	 */
+	private long probe(ChunkedBuffer table, long capacity, long key) {
+		long mask = capacity - 1;
+		long slot = OffHeapRelationshipStore.hash(key) & mask;
+		while (true) {
+			long slotKey = table.getLong(slot, KEY_OFFSET);
+			if (slotKey == key) {
+				return slot;
+			}
+			if (slotKey == EMPTY) {
+				return -1 - slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/***
+	 * Write the given relationship model into the given slot of the given table.
+	 * @param table
+	 * @param slot
+	 * @param key
+	 * @param beliefs
+	 * @param updateCount
+	 */
+	private void writeSlot(ChunkedBuffer table, long slot, long key, Map<RelationshipType, Double> beliefs, int updateCount) {
+		table.putLong(slot, KEY_OFFSET, key);
+		if (this.quantized) {
+			table.putLong(slot, BELIEFS_OFFSET, QuantizedBeliefs.encode(beliefs, updateCount));
+			return;
+		}
+		for (RelationshipType relationshipType : RelationshipType.values()) {
+			table.putDouble(slot, BELIEFS_OFFSET + 8*relationshipType.ordinal(), beliefs.get(relationshipType));
+		}
+		table.putInt(slot, UPDATE_COUNT_OFFSET, updateCount);
+	}
+
+	/***
+	 * Mix the bits of the given key, so that packed ids of agents added in sequence spread over the table.
+	 * @param key
+	 * @return the hash of the given key
+	 */
+	private static long hash(long key) {
+		long h = key;
+		h ^= (h >>> 33);
+		h *= 0xff51afd7ed558ccdL;
+		h ^= (h >>> 33);
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= (h >>> 33);
+		return h;
+	}
+
+}
@@ -0,0 +1,266 @@
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/***
+ * A ParameterSweep administers the same Tricopa tasks to agents built with many different ModelParameters,
+ * to find out how the accuracy of the model depends on its constants.
+ *
+ * The tasks, answers and characters are read once, and the Knowledge File is read once per ratio permitted within an ROD.
+ * Each variant is administered the tasks by its own agent, on one of several threads.
+ * @author pkalluri
+ *
+ */
+public class ParameterSweep {
+
+	/***
+	 * The Results of administering the tasks to an agent built with specific ModelParameters.
+	 */
+	public static class Results {
+		public final ModelParameters parameters;
+		public final int numCorrect;
+		public final int numIncorrect;
+		public final int numUndecided;
+		public final int numTasks;
+		/***
+		 * The action missing from the knowledge, or null if every task could be administered.
+		 */
+		public final String missingAction;
+
+		Results(ModelParameters parameters, Map<Integer, TricopaTaskPerformance> performanceOnTasks) {
+			this.parameters = parameters;
+			int numCorrect = 0;
+			int numIncorrect = 0;
+			int numUndecided = 0;
+			for (TricopaTaskPerformance performance : performanceOnTasks.values()) {
+				switch (performance) {
+				case CORRECT: numCorrect ++; break;
+				case INCORRECT: numIncorrect ++; break;
+				case INCOMPLETE: case TIMED_OUT: numUndecided ++; break;
+				}
+			}
+			this.numCorrect = numCorrect;
+			this.numIncorrect = numIncorrect;
+			this.numUndecided = numUndecided;
+			this.numTasks = performanceOnTasks.size();
+			this.missingAction = null;
+		}
+
+		Results(ModelParameters parameters, int numTasks, String missingAction) {
+			this.parameters = parameters;
+			this.numCorrect = 0;
+			this.numIncorrect = 0;
+			this.numUndecided = 0;
+			this.numTasks = numTasks;
+			this.missingAction = missingAction;
+		}
+
+		/***
+		 * Get the fraction of all tasks answered correctly.
+		 * @return the accuracy
+		 */
+		public double getAccuracy() {
+			return (this.numTasks == 0) ? 0 : (double) this.numCorrect / this.numTasks;
+		}
+
+		/***
+		 * Get the fraction of all tasks in which a choice was made.
+		 * @return the answered rate
+		 */
+		public double getAnsweredRate() {
+			return (this.numTasks == 0) ? 0 : (double) (this.numCorrect + this.numIncorrect) / this.numTasks;
+		}
+	}
+
+	private final Map<Integer, TricopaTask> tasks;
+	private final Map<Integer, Integer> answers;
+	private final String knowledgeFilename;
+	private final Set<String> characters;
+
+	/***
+	 * The knowledge base read from the Knowledge File, by ratio permitted within an ROD.
+	 */
+	private final Map<Double, Map<String, ActionROD>> actionKnowledgebases;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTOR //////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a new ParameterSweep administering the given tasks.
+	 * @param tasks the numbered Tricopa tasks to administer
+	 * @param answers the correct answers to the tasks, by task number
+	 * @param knowledgeFilename the Knowledge File, read once for each ratio permitted within an ROD
+	 * @param characters the characters
+	 */
+	public ParameterSweep(Map<Integer, TricopaTask> tasks, Map<Integer, Integer> answers, String knowledgeFilename, Set<String> characters) {
+		this.tasks = tasks;
+		this.answers = answers;
+		this.knowledgeFilename = knowledgeFilename;
+		this.characters = characters;
+		this.actionKnowledgebases = new HashMap<Double, Map<String, ActionROD>>();
+	}
+
+	//////////////////////////////////////////
+	/////// GETTING VARIANTS /////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Get the ModelParameters of every combination of the given values.
+	 * @param ratiosPermittedWithinROD
+	 * @param emphasisBases
+	 * @param defaultOrderings
+	 * @param informativenessThresholds
+	 * @return the ModelParameters of every combination of the given values
+	 */
+	public static List<ModelParameters> grid(double[] ratiosPermittedWithinROD, double[] emphasisBases,
+			List<List<RelationshipType>> defaultOrderings, double[] informativenessThresholds) {
+		List<ModelParameters> grid = new ArrayList<ModelParameters>();
+		for (double ratioPermittedWithinROD : ratiosPermittedWithinROD) {
+			for (double emphasisBase : emphasisBases) {
+				for (List<RelationshipType> defaultOrdering : defaultOrderings) {
+					for (double informativenessThreshold : informativenessThresholds) {
+						grid.add(new ModelParameters(ratioPermittedWithinROD, emphasisBase, defaultOrdering, informativenessThreshold));
+					}
+				}
+			}
+		}
+		return grid;
+	}
+
+	/***
+	 * Get a random sample, without replacement, of the given ModelParameters.
+	 * @param grid the ModelParameters to sample from
+	 * @param sampleSize the number of ModelParameters to sample; all are returned if there are no more than this
+	 * @param random
+	 * @return a random sample of the given ModelParameters
+	 */
+	public static List<ModelParameters> randomSample(List<ModelParameters> grid, int sampleSize, Random random) {
+		List<ModelParameters> shuffled = new ArrayList<ModelParameters>(grid);
+		Collections.shuffle(shuffled, random);
+		return shuffled.subList(0, Math.min(sampleSize, shuffled.size()));
+	}
+
+	//////////////////////////////////////////
+	/////// SWEEPING /////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Administer the tasks to an agent built with each of the given ModelParameters, administering to several agents at once.
+	 * @param variants the ModelParameters to build agents with
+	 * @param numThreads the number of agents to administer to at once
+	 * @return the Results of each of the given ModelParameters, in the same order
+	 * @throws IOException the Knowledge File could not be read
+	 * @throws URISyntaxException
+	 * @throws InterruptedException interrupted while waiting for agents to finish
+	 */
+	public List<Results> run(List<ModelParameters> variants, int numThreads) throws IOException, URISyntaxException, InterruptedException {
+		if (numThreads <= 0) { throw new IllegalArgumentException("The number of threads must be positive."); }
+		//read all knowledge up front, so administering only reads shared state
+		for (ModelParameters parameters : variants) {
+			this.getActionKnowledgebase(parameters.getRatioPermittedWithinROD());
+		}
+
+		ExecutorService administrators = Executors.newFixedThreadPool(numThreads);
+		try {
+			List<Future<Results>> futures = new ArrayList<Future<Results>>();
+			for (final ModelParameters parameters : variants) {
+				futures.add(administrators.submit(new Callable<Results>() {
+					@Override
+					public Results call() {
+						return ParameterSweep.this.administer(parameters);
+					}
+				}));
+			}
+
+			List<Results> results = new ArrayList<Results>();
+			for (Future<Results> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					throw new IllegalStateException("Administering failed unexpectedly.", e.getCause());
+				}
+			}
+			return results;
+		} finally {
+			administrators.shutdownNow();
+		}
+	}
+
+	/***
+	 * Administer the tasks to a new agent built with the given parameters.
+	 * @param parameters
+	 * @return the Results of the given parameters
+	 */
+	private Results administer(ModelParameters parameters) {
+		Map<String, ActionROD> actionKnowledgebase;
+		synchronized (this.actionKnowledgebases) {
+			actionKnowledgebase = this.actionKnowledgebases.get(parameters.getRatioPermittedWithinROD());
+		}
+		AffinitybasedAgent agent = new AffinitybasedAgent(actionKnowledgebase, this.characters, false);
+		agent.setParameters(parameters);
+		try {
+			return new Results(parameters, Simulation.administerTricopaTasks(agent, this.tasks, this.answers, false));
+		} catch (InsufficientActionKnowledgeException e) {
+			return new Results(parameters, this.tasks.size(), e.getAction());
+		}
+	}
+
+	private Map<String, ActionROD> getActionKnowledgebase(double ratioPermittedWithinROD) throws IOException, URISyntaxException {
+		synchronized (this.actionKnowledgebases) {
+			Map<String, ActionROD> actionKnowledgebase = this.actionKnowledgebases.get(ratioPermittedWithinROD);
+			if (actionKnowledgebase == null) {
+				actionKnowledgebase = FileUtility.getActionKnowledgebase(this.knowledgeFilename, false, ratioPermittedWithinROD);
+				this.actionKnowledgebases.put(ratioPermittedWithinROD, actionKnowledgebase);
+			}
+			return actionKnowledgebase;
+		}
+	}
+
+	//////////////////////////////////////////
+	/////// REPORTING ////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a table of the given results, from the most to the least accurate, one line per variant.
+	 * @param results
+	 * @return a table of the given results
+	 */
+	public static String getResultsTable(List<Results> results) {
+		List<Results> sortedResults = new ArrayList<Results>(results);
+		Collections.sort(sortedResults, new Comparator<Results>() {
+			@Override
+			public int compare(Results r1, Results r2) {
+				int byAccuracy = Double.compare(r2.getAccuracy(), r1.getAccuracy());
+				return (byAccuracy != 0) ? byAccuracy : Double.compare(r2.getAnsweredRate(), r1.getAnsweredRate());
+			}
+		});
+
+		StringBuilder table = new StringBuilder();
+		String format = "%-8s %-8s %-24s %-10s %-10s %-10s %s%n";
+		table.append(String.format(format, "Ratio", "Emphasis", "Default ordering", "Threshold", "Accuracy", "Answered", "Correct"));
+		for (Results result : sortedResults) {
+			ModelParameters parameters = result.parameters;
+			String correct = (result.missingAction == null)
+					? result.numCorrect + "/" + result.numTasks
+					: "missing knowledge about \"" + result.missingAction + "\"";
+			table.append(String.format(format, parameters.getRatioPermittedWithinROD(), parameters.getEmphasisBase(), parameters.getDefaultOrderingString(),
+					parameters.getInformativenessThreshold(), String.format("%.1f%%", 100 * result.getAccuracy()),
+					String.format("%.1f%%", 100 * result.getAnsweredRate()), correct));
+		}
+		return table.toString();
+	}
+
+}
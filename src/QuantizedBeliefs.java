@@ -0,0 +1,102 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/***
+ * QuantizedBeliefs encodes the beliefs about a relationship, together with its update count, into a single long:
+ * one 16-bit code per RelationshipType (in the declared order of RelationshipTypes) followed by a 16-bit update count.
+ * This fits a long as long as there are at most three RelationshipTypes.
+ *
+ * Each belief is encoded as its log-odds against the most believed RelationshipType, ln(p / p_max), which lies in [-LOG_ODDS_RANGE, 0].
+ * Code 0 denotes a belief of exactly 0, and codes 1 to 65535 divide [-LOG_ODDS_RANGE, 0] into equal steps, so the most believed
+ * RelationshipType is always encoded exactly. Decoding exponentiates and renormalizes.
+ *
+ * Error bounds against the double-precision model, with step = LOG_ODDS_RANGE / 65534:
+ * <ul>
+ * <li>Each log-odds is off by at most step/2, so each decoded belief p' of a belief p with p/p_max &ge; exp(-LOG_ODDS_RANGE)
+ * satisfies |p' - p| &le; (exp(step) - 1) p, i.e. MAXIMUM_RELATIVE_ERROR, about 0.05%.</li>
+ * <li>A belief with p/p_max &lt; exp(-LOG_ODDS_RANGE) is decoded as if it were exp(-LOG_ODDS_RANGE) p_max, an absolute error below 1.3e-14.</li>
+ * <li>Since the probability of an ActionEvent is a weighted average of the beliefs, it too is within MAXIMUM_RELATIVE_ERROR.</li>
+ * <li>Bayesian updates multiply beliefs by exact likelihoods, which shifts log-odds without amplifying earlier rounding, so after
+ * a relationship is revised and re-encoded k times its log-odds are off by at most k step/2 (and typically by about sqrt(k) step/2).</li>
+ * </ul>
+ * Uniform beliefs encode exactly, so uninformative relationships stay uninformative.
+ * Update counts above 65535 are held at 65535; an update with emphasis 2^65535 is never reached in practice.
+ * @author pkalluri
+ *
+ */
+public final class QuantizedBeliefs {
+
+	/***
+	 * The range of log-odds that are distinguished.
+	 */
+	public static final double LOG_ODDS_RANGE = 32;
+
+	private static final int MAX_CODE = 0xFFFF;
+	private static final double STEP = LOG_ODDS_RANGE / (MAX_CODE - 1);
+
+	/***
+	 * The largest relative error of a decoded belief (or probability of an ActionEvent) after a single encoding.
+	 */
+	public static final double MAXIMUM_RELATIVE_ERROR = Math.expm1(STEP);
+
+	private QuantizedBeliefs() {
+	}
+
+	/***
+	 * Encode the given beliefs and update count.
+	 * @param beliefs map mapping each RelationshipType to the believed probability of that RelationshipType
+	 * @param updateCount the number of times the beliefs have been revised
+	 * @return the encoded beliefs and update count
+	 */
+	public static long encode(Map<RelationshipType, Double> beliefs, int updateCount) {
+		double maxBelief = 0;
+		for (double belief : beliefs.values()) {
+			maxBelief = Math.max(maxBelief, belief);
+		}
+		long encoded = 0;
+		for (RelationshipType relationshipType : RelationshipType.values()) {
+			double belief = beliefs.get(relationshipType);
+			long code;
+			if (belief <= 0) {
+				code = 0;
+			} else {
+				double logOdds = Math.max(Math.log(belief / maxBelief), -LOG_ODDS_RANGE);
+				code = MAX_CODE - Math.round(-logOdds / STEP);
+			}
+			encoded = (encoded << 16) | code;
+		}
+		return (encoded << 16) | Math.min(Math.max(updateCount, 0), MAX_CODE);
+	}
+
+	/***
+	 * Decode the beliefs from the given encoded beliefs.
+	 * @param encoded
+	 * @return map mapping each RelationshipType to the believed probability of that RelationshipType
+	 */
+	public static Map<RelationshipType, Double> decodeBeliefs(long encoded) {
+		RelationshipType[] relationshipTypes = RelationshipType.values();
+		double[] relativeBeliefs = new double[relationshipTypes.length];
+		double total = 0;
+		for (int i=relationshipTypes.length-1; i>=0; i--) {
+			encoded >>>= 16;
+			int code = (int) (encoded & MAX_CODE);
+			relativeBeliefs[i] = (code == 0) ? 0 : Math.exp(-(MAX_CODE - code) * STEP);
+			total += relativeBeliefs[i];
+		}
+		Map<RelationshipType, Double> beliefs = new HashMap<RelationshipType, Double>();
+		for (RelationshipType relationshipType : relationshipTypes) {
+			beliefs.put(relationshipType, relativeBeliefs[relationshipType.ordinal()] / total);
+		}
+		return beliefs;
+	}
+
+	/***
+	 * Decode the update count from the given encoded beliefs.
+	 * @param encoded
+	 * @return the number of times the beliefs have been revised
+	 */
+	public static int decodeUpdateCount(long encoded) {
+		return (int) (encoded & MAX_CODE);
+	}
+
+}
@@ -0,0 +1,97 @@
+/***
+ * A RelationshipStore holds, for each modeled relationship, the current relationship model and the number of times
+ * that model has been revised. An AffinitybasedWorldModel keeps its beliefs in a RelationshipStore, so how the beliefs are
+ * laid out in memory can be chosen independently of how they are reasoned about.
+ *
+ * A RelationshipStore also holds the agents known to exist, whether or not they have modeled relationships, and the age at which
+ * each relationship was last updated while its beliefs decay, so that a world model keeps no per-agent or per-relationship state of its own.
+ *
+ * A model got from a RelationshipStore may be a copy, so any change to it must be written back with put.
+ * Iterating over a RelationshipStore visits each modeled relationship once; existing relationships may be put while
+ * iterating, but relationships may not be added.
+ * @author pkalluri
+ *
+ */
+public interface RelationshipStore extends Iterable<Pair<String>> {
+
+	/***
+	 * Return true iff the given relationship is modeled.
+	 * @param relationship
+	 * @return true iff the given relationship is modeled
+	 */
+	public boolean contains(Pair<String> relationship);
+
+	/***
+	 * Get the model of the given relationship.
+	 * @param relationship
+	 * @return the model of the given relationship, or null if the relationship is not modeled
+	 */
+	public SymmetricRelationshipModel get(Pair<String> relationship);
+
+	/***
+	 * Get the number of times the model of the given relationship has been revised.
+	 * @param relationship
+	 * @return the number of times the model of the given relationship has been revised, or 0 if the relationship is not modeled
+	 */
+	public int getUpdateCount(Pair<String> relationship);
+
+	/***
+	 * Model the given relationship with the given relationship model, revised the given number of times.
+	 * @param relationship
+	 * @param relationshipModel
+	 * @param updateCount
+	 */
+	public void put(Pair<String> relationship, SymmetricRelationshipModel relationshipModel, int updateCount);
+
+	/***
+	 * Get the number of relationships modeled.
+	 * @return the number of relationships modeled
+	 */
+	public int size();
+
+	/***
+	 * Add the given agent to the agents known to exist. Putting a relationship adds its agents too.
+	 * @param agent
+	 */
+	public void addAgent(String agent);
+
+	/***
+	 * Return true iff the given agent is known to exist.
+	 * @param agent
+	 * @return true iff the given agent is known to exist
+	 */
+	public boolean containsAgent(String agent);
+
+	/***
+	 * Get the agents known to exist, in the order they were added. Agents added while iterating are not visited.
+	 * @return the agents known to exist
+	 */
+	public Iterable<String> getAgents();
+
+	/***
+	 * Get the number of agents known to exist.
+	 * @return the number of agents known to exist
+	 */
+	public int getNumberOfAgents();
+
+	/***
+	 * Get the age at which the given relationship was last updated, as recorded by setLastUpdateAge.
+	 * @param relationship
+	 * @return the age at which the given relationship was last updated, or 0 if none has been recorded
+	 */
+	public int getLastUpdateAge(Pair<String> relationship);
+
+	/***
+	 * Record the age at which the given modeled relationship was last updated.
+	 * @param relationship
+	 * @param age
+	 */
+	public void setLastUpdateAge(Pair<String> relationship, int age);
+
+	/***
+	 * Get the way this store stores beliefs, so that a checkpointed world model can be restored into the same kind of store.
+	 * @return the way this store stores beliefs
+	 */
+	public BeliefStorage getBeliefStorage();
+
+}
@@ -0,0 +1,265 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/***
+ * A ScenarioBatch reads many scenario files in one process and reports the final beliefs about each scenario as one JSON line,
+ * so that a large set of scenarios costs one start-up rather than one per scenario.
+ *
+ * Each scenario is read by its own agent, on one of several threads, with knowledge and characters shared through a KnowledgeCache.
+ * Result lines are written as scenarios finish, so they may not be in the order of the entries; each names its scenario file.
+ * @author pkalluri
+ *
+ */
+public class ScenarioBatch {
+
+	/***
+	 * An Entry names a scenario file, the files of the knowledge and characters to read it with, and possibly a relationship to report.
+	 */
+	public static class Entry {
+		public final String scenarioFilename;
+		public final String knowledgeFilename;
+		public final String charactersFilename;
+		/***
+		 * The relationship to report, or null to report every modeled relationship.
+		 */
+		public final Pair<String> relationship;
+
+		public Entry(String scenarioFilename, String knowledgeFilename, String charactersFilename, Pair<String> relationship) {
+			this.scenarioFilename = scenarioFilename;
+			this.knowledgeFilename = knowledgeFilename;
+			this.charactersFilename = charactersFilename;
+			this.relationship = relationship;
+		}
+	}
+
+	private final KnowledgeCache knowledgeCache;
+	private final boolean nlScenarios;
+	private final int numThreads;
+
+	/***
+	 * The metrics of every agent reading a scenario.
+	 */
+	private final AgentMetrics metrics;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTOR //////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a new ScenarioBatch.
+	 * @param knowledgeCache the cache through which knowledge and characters are loaded
+	 * @param nlScenarios true iff the scenario files are in natural language
+	 * @param numThreads the number of scenarios to read at once
+	 */
+	public ScenarioBatch(KnowledgeCache knowledgeCache, boolean nlScenarios, int numThreads) {
+		if (numThreads <= 0) { throw new IllegalArgumentException("The number of threads must be positive."); }
+		this.knowledgeCache = knowledgeCache;
+		this.nlScenarios = nlScenarios;
+		this.numThreads = numThreads;
+		this.metrics = new AgentMetrics();
+	}
+
+	//////////////////////////////////////////
+	/////// GETTING ENTRIES //////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Get the entries named by the given input, which is either a glob pattern matching scenario files (e.g. files/stories/*.txt)
+	 * or the name of a manifest file.
+	 *
+	 * Each line of a manifest names a scenario file, optionally followed by a Knowledge File and a Characters File, optionally
+	 * followed by two characters whose relationship to report: scenario [knowledge characters [c1 c2]]. Blank and comment lines are ignored.
+	 * Entries that name no knowledge, characters or relationship use the given defaults.
+	 * @param input a glob pattern or manifest file name
+	 * @param defaultKnowledgeFilename
+	 * @param defaultCharactersFilename
+	 * @param defaultRelationship the relationship to report, or null to report every modeled relationship
+	 * @return the entries named by the given input
+	 * @throws IOException the manifest or directories could not be read
+	 */
+	public static List<Entry> getEntries(String input, String defaultKnowledgeFilename, String defaultCharactersFilename, Pair<String> defaultRelationship) throws IOException {
+		List<Entry> entries = new ArrayList<Entry>();
+		if (ScenarioBatch.isGlob(input)) {
+			for (String scenarioFilename : ScenarioBatch.getMatchingFilenames(input)) {
+				entries.add(new Entry(scenarioFilename, defaultKnowledgeFilename, defaultCharactersFilename, defaultRelationship));
+			}
+			return entries;
+		}
+
+		for (String line : Files.readAllLines(Paths.get(input))) {
+			String trimmedLine = line.trim();
+			if (trimmedLine.isEmpty() || FileUtility.isComment(trimmedLine)) {
+				continue;
+			}
+			String[] args = trimmedLine.split("\\s+");
+			switch (args.length) {
+			case 1:
+				entries.add(new Entry(args[0], defaultKnowledgeFilename, defaultCharactersFilename, defaultRelationship));
+				break;
+			case 3:
+				entries.add(new Entry(args[0], args[1], args[2], defaultRelationship));
+				break;
+			case 5:
+				entries.add(new Entry(args[0], args[1], args[2], new Pair<String>(args[3], args[4])));
+				break;
+			default:
+				throw new IOException("Could not understand manifest line: " + line);
+			}
+		}
+		return entries;
+	}
+
+	static boolean isGlob(String input) {
+		return input.contains("*") || input.contains("?") || input.contains("[") || input.contains("{");
+	}
+
+	/***
+	 * Get the names of the files matching the given glob pattern, in sorted order.
+	 * @param glob
+	 * @return the names of the matching files
+	 * @throws IOException
+	 */
+	static List<String> getMatchingFilenames(String glob) throws IOException {
+		//walk from the deepest directory named before any wildcard
+		int wildcard = glob.length();
+		for (char c : "*?[{".toCharArray()) {
+			int index = glob.indexOf(c);
+			if (index >= 0) { wildcard = Math.min(wildcard, index); }
+		}
+		int lastSeparator = Math.max(glob.lastIndexOf('/', wildcard), glob.lastIndexOf(File.separatorChar, wildcard));
+		Path root = Paths.get((lastSeparator < 0) ? "." : glob.substring(0, lastSeparator + 1));
+		final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+		final boolean relativeToCurrentDirectory = (lastSeparator < 0);
+
+		try (Stream<Path> paths = Files.walk(root)) {
+			List<String> filenames = paths
+					.filter(path -> Files.isRegularFile(path))
+					.map(path -> relativeToCurrentDirectory ? root.relativize(path) : path)
+					.filter(path -> matcher.matches(path))
+					.map(Path::toString)
+					.collect(Collectors.toList());
+			Collections.sort(filenames);
+			return filenames;
+		}
+	}
+
+	//////////////////////////////////////////
+	/////// READING //////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Get the metrics of every agent reading a scenario.
+	 * @return the metrics of every agent reading a scenario
+	 */
+	public AgentMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	/***
+	 * Read the scenarios of the given entries, writing one JSON line per scenario to the given writer as each scenario finishes.
+	 * A line holds the "scenario" file, and either "ok" true and the "beliefs" about the reported relationships,
+	 * or "ok" false and an "error".
+	 * @param entries
+	 * @param out
+	 * @return the number of scenarios that could not be read
+	 * @throws IOException the results could not be written
+	 * @throws InterruptedException interrupted while waiting for scenarios to finish
+	 */
+	public int run(List<Entry> entries, Writer out) throws IOException, InterruptedException {
+		ExecutorService readers = Executors.newFixedThreadPool(this.numThreads);
+		try {
+			CompletionService<Map<String, Object>> results = new ExecutorCompletionService<Map<String, Object>>(readers);
+			for (final Entry entry : entries) {
+				results.submit(new Callable<Map<String, Object>>() {
+					@Override
+					public Map<String, Object> call() {
+						return ScenarioBatch.this.read(entry);
+					}
+				});
+			}
+
+			int numFailures = 0;
+			for (int i=0; i<entries.size(); i++) {
+				Map<String, Object> result;
+				try {
+					result = results.take().get();
+				} catch (ExecutionException e) {
+					throw new IllegalStateException("Reading failed unexpectedly.", e.getCause());
+				}
+				if (!Boolean.TRUE.equals(result.get("ok"))) {
+					numFailures ++;
+				}
+				out.write(JsonUtility.toJson(result));
+				out.write('\n');
+				out.flush();
+			}
+			return numFailures;
+		} finally {
+			readers.shutdownNow();
+		}
+	}
+
+	/***
+	 * Read the scenario of the given entry.
+	 * @param entry
+	 * @return the result of reading the scenario
+	 */
+	private Map<String, Object> read(Entry entry) {
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		result.put("scenario", entry.scenarioFilename);
+		try {
+			AffinitybasedAgent agent = new AffinitybasedAgent(this.knowledgeCache.getActionKnowledgebase(entry.knowledgeFilename),
+					this.knowledgeCache.getCharacters(entry.charactersFilename), false);
+			agent.setMetrics(this.metrics);
+
+			Scenario scenario;
+			if (this.nlScenarios) {
+				scenario = FileUtility.getScenarioFromNLFile(entry.scenarioFilename);
+			} else {
+				scenario = FileUtility.getScenarioFromFile(entry.scenarioFilename);
+			}
+			agent.read(scenario, false);
+
+			Iterable<Pair<String>> relationships;
+			if (entry.relationship == null) {
+				relationships = agent.getRelationships();
+			} else {
+				relationships = Collections.singletonList(entry.relationship);
+			}
+			result.put("ok", true);
+			result.put("beliefs", SimulationServer.getBeliefs(agent, relationships));
+		} catch (InsufficientActionKnowledgeException e) {
+			result.put("ok", false);
+			result.put("error", "The Knowledge File is missing knowledge about \"" + e.getAction() + "\"");
+		} catch (IOException | URISyntaxException | UncheckedIOException e) {
+			result.put("ok", false);
+			result.put("error", "Could not read file: " + e.getMessage());
+		} catch (IllegalArgumentException e) { //a malformed literal fails only its own scenario
+			result.put("ok", false);
+			result.put("error", "Could not parse file: " + e.getMessage());
+		}
+		return result;
+	}
+
+}
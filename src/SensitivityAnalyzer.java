@@ -0,0 +1,494 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+
+/***
+ * A SensitivityAnalyzer finds how strongly the knowledge about each action sways the choices an AffinitybasedAgent makes in
+ * Tricopa tasks, without editing the knowledge and doing the tasks again once per action.
+ *
+ * A task is done exactly as an AffinitybasedAgent does it, but with every relative probability in the relative observation
+ * distributions of the actions the task mentions taken as a variable: beliefs are revised and choices scored in DualNumbers,
+ * so that a single pass through the task computes each choice's score together with its derivative with respect to every
+ * relative probability of every action involved.
+ *
+ * Reflection rewrites uninformative relationships with constant beliefs, so derivatives through rewritten relationships are 0;
+ * derivatives are those of the scores near the given knowledge, where no relationship crosses the informativeness threshold.
+ * @author pkalluri
+ *
+ */
+public class SensitivityAnalyzer {
+
+	private static final RelationshipType[] RELATIONSHIP_TYPES = RelationshipType.values();
+
+	/***
+	 * The scores of the choices of a Tricopa task and their derivatives with respect to the knowledge about its actions.
+	 */
+	public static class TaskSensitivity {
+		private final List<String> actions;
+		private final DualNumber[] scores;
+		private final int choice;
+
+		TaskSensitivity(List<String> actions, DualNumber[] scores, int choice) {
+			this.actions = actions;
+			this.scores = scores;
+			this.choice = choice;
+		}
+
+		/***
+		 * Get the actions whose knowledge the scores were differentiated with respect to.
+		 * @return the actions the task mentions, in sorted order
+		 */
+		public List<String> getActions() {
+			return Collections.unmodifiableList(this.actions);
+		}
+
+		/***
+		 * Get the normalized log probability of the given choice, as AffinitybasedAgent scores it, with its derivative with
+		 * respect to the relative probability of each action given each RelationshipType, at variable
+		 * (index of the action * number of RelationshipTypes + RelationshipType ordinal).
+		 * @param choiceNumber the number of the choice, from 1
+		 * @return the score of the given choice
+		 */
+		public DualNumber getScore(int choiceNumber) {
+			return this.scores[choiceNumber-1];
+		}
+
+		public int getNumberOfChoices() {
+			return this.scores.length;
+		}
+
+		/***
+		 * Get the number of the choice made, as AffinitybasedAgent.doTricopaTask would.
+		 * @return the number of the choice thought more likely to apply now
+		 * @throws UndecidedAgentException the agent would be unable to decide between the choices
+		 */
+		public int getChoice() throws UndecidedAgentException {
+			if (this.choice < 0) {
+				throw new UndecidedAgentException();
+			}
+			return this.choice;
+		}
+
+		/***
+		 * Get the margin by which the given choice beats the best of the other choices, with its derivatives.
+		 * The given choice is made while the margin is positive.
+		 * @param choiceNumber the number of the choice, from 1
+		 * @return the score of the given choice less the highest score of any other choice
+		 */
+		public DualNumber getMargin(int choiceNumber) {
+			DualNumber bestOther = null;
+			for (int other=1; other<=this.scores.length; other++) {
+				if (other != choiceNumber && (bestOther == null || this.getScore(other).getValue() > bestOther.getValue())) {
+					bestOther = this.getScore(other);
+				}
+			}
+			return this.getScore(choiceNumber).minus(bestOther);
+		}
+
+		/***
+		 * Get how strongly the knowledge about the given action sways the margin of the given choice: the sum, over the
+		 * RelationshipTypes, of the magnitude of the derivative of the margin with respect to the action's relative probability.
+		 * @param choiceNumber the number of the choice, from 1
+		 * @param action
+		 * @return the influence of the action, or 0 if the task does not mention the action
+		 */
+		public double getInfluence(int choiceNumber, String action) {
+			int actionIndex = this.actions.indexOf(action);
+			if (actionIndex < 0) {
+				return 0;
+			}
+			DualNumber margin = this.getMargin(choiceNumber);
+			double influence = 0;
+			for (int type=0; type<RELATIONSHIP_TYPES.length; type++) {
+				influence += Math.abs(margin.getDerivative(actionIndex * RELATIONSHIP_TYPES.length + type));
+			}
+			return influence;
+		}
+	}
+
+	/***
+	 * The influence of the knowledge about an action on the margins of the correct choices of the tasks mentioning it.
+	 */
+	public static class ActionInfluence {
+		public final String action;
+		/***
+		 * The summed magnitude of the derivatives of the margins with respect to the relative probability of the action given
+		 * each RelationshipType, by RelationshipType ordinal.
+		 */
+		public final double[] influenceGiven;
+		/***
+		 * The numbers of the tasks mentioning the action whose margins could be differentiated.
+		 */
+		public final List<Integer> tasks;
+		/***
+		 * The number of the task most swayed by the action, or -1 if there are no tasks.
+		 */
+		public int mostInfluencedTask;
+		private double mostInfluence;
+
+		ActionInfluence(String action) {
+			this.action = action;
+			this.influenceGiven = new double[RELATIONSHIP_TYPES.length];
+			this.tasks = new ArrayList<Integer>();
+			this.mostInfluencedTask = -1;
+			this.mostInfluence = -1;
+		}
+
+		/***
+		 * Get the summed magnitude of the derivatives of the margins with respect to every relative probability of the action.
+		 * @return the total influence of the action
+		 */
+		public double getTotalInfluence() {
+			double total = 0;
+			for (double influence : this.influenceGiven) {
+				total += influence;
+			}
+			return total;
+		}
+	}
+
+	private final Map<String, ActionROD> actionKnowledgebase;
+	private final ImplicitResponseResolver implicitResponseResolver;
+	private ModelParameters parameters;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTOR //////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a new SensitivityAnalyzer of the given knowledge.
+	 * @param actionKnowledgebase the knowledge about actions
+	 * @param characters the Strings known to refer to characters
+	 */
+	public SensitivityAnalyzer(Map<String, ActionROD> actionKnowledgebase, Set<String> characters) {
+		this.actionKnowledgebase = actionKnowledgebase;
+		this.implicitResponseResolver = new ImplicitResponseResolver(characters);
+		this.parameters = ModelParameters.DEFAULT;
+	}
+
+	/***
+	 * Revise beliefs by the given constants from now on. The ratio permitted within an ROD is not applied here,
+	 * because the knowledge is already interpreted.
+	 * @param parameters
+	 */
+	public void setParameters(ModelParameters parameters) {
+		this.parameters = parameters;
+	}
+
+	//////////////////////////////////////////
+	/////// ANALYZING ////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Do the given Tricopa task as an AffinitybasedAgent would, differentiating the scores of its choices with respect to
+	 * the knowledge about the given actions.
+	 * @param tricopaTask
+	 * @param actions the actions the task mentions, e.g. from a TaskDependencyIndex
+	 * @return the scores of the choices and their derivatives
+	 * @throws InsufficientActionKnowledgeException the knowledge was insufficient to do the task
+	 */
+	public TaskSensitivity analyze(TricopaTask tricopaTask, SortedSet<String> actions) throws InsufficientActionKnowledgeException {
+		List<String> orderedActions = new ArrayList<String>(actions);
+		int numVariables = orderedActions.size() * RELATIONSHIP_TYPES.length;
+		Map<String, DualNumber[]> relativeProbabilities = new HashMap<String, DualNumber[]>();
+		for (int actionIndex=0; actionIndex<orderedActions.size(); actionIndex++) {
+			String action = orderedActions.get(actionIndex);
+			ActionROD actionKnowledge = this.actionKnowledgebase.get(action);
+			if (actionKnowledge == null) {
+				continue; //reported when the action is read, as an agent would
+			}
+			DualNumber[] rod = new DualNumber[RELATIONSHIP_TYPES.length];
+			for (RelationshipType relationshipType : RELATIONSHIP_TYPES) {
+				rod[relationshipType.ordinal()] = DualNumber.variable(actionKnowledge.getRelativeProbabilityGiven(relationshipType),
+						actionIndex * RELATIONSHIP_TYPES.length + relationshipType.ordinal(), numVariables);
+			}
+			relativeProbabilities.put(action, rod);
+		}
+
+		DualWorldModel worldModel = new DualWorldModel(this.parameters, numVariables);
+		RecentlyObservedAgentsMemory memory = new RecentlyObservedAgentsMemory();
+
+		//Read premise
+		for (ActionEvent actionEvent : tricopaTask.premise.actionEvents) {
+			DualNumber[] rod = SensitivityAnalyzer.getRelativeProbabilities(relativeProbabilities, actionEvent.action);
+			try {
+				ActionEvent fullActionEvent = this.implicitResponseResolver.getFullActionEvent(actionEvent, memory);
+				worldModel.update(fullActionEvent, this.actionKnowledgebase.get(actionEvent.action), rod);
+				this.implicitResponseResolver.updateMemory(fullActionEvent, memory);
+			} catch (UnableToFillActionEventException e) {
+				this.implicitResponseResolver.updateMemory(actionEvent, memory); //still update memory
+			}
+		}
+		worldModel.reflectOnAndRefineBeliefs();
+
+		//Consider choices; the memory after each choice flows into the next
+		int longestDescriptionLength = AffinitybasedAgent.getMaxDescriptionLength(tricopaTask.possibleChoices);
+		DualNumber[] scores = new DualNumber[tricopaTask.possibleChoices.size()];
+		double logProbabilityOfBestChoice = Double.NEGATIVE_INFINITY;
+		int bestChoiceNumber = -1;
+		boolean undecided = false;
+
+		int choiceNumber = 0;
+		for (Scenario choice : tricopaTask.possibleChoices) {
+			choiceNumber ++;
+			DualNumber logProbabilityOfThisChoice = DualNumber.constant(0, numVariables);
+			DualNumber sumOfEventProbs = DualNumber.constant(0, numVariables); // the sum of the probabilities of all events (used for normalizing)
+			int numProbabilityUpdates = 0;
+
+			for (ActionEvent actionEvent : choice.actionEvents) {
+				DualNumber[] rod = SensitivityAnalyzer.getRelativeProbabilities(relativeProbabilities, actionEvent.action);
+				try {
+					ActionEvent fullActionEvent = this.implicitResponseResolver.getFullActionEvent(actionEvent, memory);
+					DualNumber probability = worldModel.probabilityOf(fullActionEvent, this.actionKnowledgebase.get(actionEvent.action), rod);
+					sumOfEventProbs = sumOfEventProbs.plus(probability);
+					logProbabilityOfThisChoice = logProbabilityOfThisChoice.plus(probability.log());
+					numProbabilityUpdates ++;
+					this.implicitResponseResolver.updateMemory(fullActionEvent, memory);
+				} catch (UnableToFillActionEventException e) {
+					this.implicitResponseResolver.updateMemory(actionEvent, memory);
+				}
+			}//done with units
+
+			//normalize as AffinitybasedAgent.getNormalizedLogProbability does
+			DualNumber normalizedLogProbability;
+			if (numProbabilityUpdates == 0) {
+				normalizedLogProbability = DualNumber.constant(Double.NEGATIVE_INFINITY, numVariables);
+			} else {
+				int numMissingEvents = Math.max(0, longestDescriptionLength - numProbabilityUpdates);
+				normalizedLogProbability = logProbabilityOfThisChoice.plus(sumOfEventProbs.dividedBy(numProbabilityUpdates).log().times(numMissingEvents));
+			}
+			scores[choiceNumber-1] = normalizedLogProbability;
+
+			if (!undecided) {
+				if (choiceNumber!=1 && InterpretationRanking.isTie(normalizedLogProbability.getValue(), logProbabilityOfBestChoice)) { //tie
+					undecided = true;
+				} else if (normalizedLogProbability.getValue() > logProbabilityOfBestChoice) {
+					logProbabilityOfBestChoice = normalizedLogProbability.getValue();
+					bestChoiceNumber = choiceNumber;
+				}
+			}
+		}//done with choice
+
+		return new TaskSensitivity(orderedActions, scores, undecided ? -1 : bestChoiceNumber);
+	}
+
+	/***
+	 * Analyze every given task, and total the influence of each action on the margins of the correct choices.
+	 * Tasks whose margins are infinite, e.g. because no event of a choice could be scored, are skipped.
+	 * @param tricopaTasks the numbered Tricopa tasks
+	 * @param answers the number of the correct choice of each task
+	 * @return the influence of each action mentioned by an analyzed task, most influential first
+	 * @throws InsufficientActionKnowledgeException the knowledge was insufficient to do a task
+	 */
+	public List<ActionInfluence> rankActions(Map<Integer, TricopaTask> tricopaTasks, Map<Integer, Integer> answers) throws InsufficientActionKnowledgeException {
+		TaskDependencyIndex index = new TaskDependencyIndex(tricopaTasks);
+		Map<String, ActionInfluence> influences = new TreeMap<String, ActionInfluence>();
+		for (Map.Entry<Integer, TricopaTask> numberedTricopaTask : new TreeMap<Integer, TricopaTask>(tricopaTasks).entrySet()) {
+			int taskNumber = numberedTricopaTask.getKey();
+			TaskSensitivity sensitivity = this.analyze(numberedTricopaTask.getValue(), index.getActions(taskNumber));
+			DualNumber margin = sensitivity.getMargin(answers.get(taskNumber));
+			if (Double.isInfinite(margin.getValue()) || Double.isNaN(margin.getValue())) {
+				continue;
+			}
+			List<String> actions = sensitivity.getActions();
+			for (int actionIndex=0; actionIndex<actions.size(); actionIndex++) {
+				String action = actions.get(actionIndex);
+				if (!influences.containsKey(action)) {
+					influences.put(action, new ActionInfluence(action));
+				}
+				ActionInfluence influence = influences.get(action);
+				double influenceOnTask = 0;
+				for (int type=0; type<RELATIONSHIP_TYPES.length; type++) {
+					double derivative = Math.abs(margin.getDerivative(actionIndex * RELATIONSHIP_TYPES.length + type));
+					influence.influenceGiven[type] += derivative;
+					influenceOnTask += derivative;
+				}
+				influence.tasks.add(taskNumber);
+				if (influenceOnTask > influence.mostInfluence) {
+					influence.mostInfluence = influenceOnTask;
+					influence.mostInfluencedTask = taskNumber;
+				}
+			}
+		}
+
+		List<ActionInfluence> ranking = new ArrayList<ActionInfluence>(influences.values());
+		Collections.sort(ranking, new Comparator<ActionInfluence>() {
+			@Override
+			public int compare(ActionInfluence a, ActionInfluence b) {
+				return Double.compare(b.getTotalInfluence(), a.getTotalInfluence());
+			}
+		});
+		return ranking;
+	}
+
+	//////////////////////////////////////////
+	/////// REPORTING ////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a table of the given influences, one line per action, in order.
+	 * @param ranking
+	 * @return a table of the given influences
+	 */
+	public static String getInfluenceTable(List<ActionInfluence> ranking) {
+		StringBuilder table = new StringBuilder();
+		int actionWidth = "Action".length();
+		for (ActionInfluence influence : ranking) {
+			actionWidth = Math.max(actionWidth, influence.action.length());
+		}
+		String format = "%-" + actionWidth + "s %-10s %-10s %-10s %-10s %-6s %s%n";
+		table.append(String.format(format, "Action", "Influence", "Friend", "Enemy", "Neutral", "Tasks", "Most swayed task"));
+		for (ActionInfluence influence : ranking) {
+			table.append(String.format(format, influence.action,
+					String.format("%.4f", influence.getTotalInfluence()),
+					String.format("%.4f", influence.influenceGiven[RelationshipType.FRIEND.ordinal()]),
+					String.format("%.4f", influence.influenceGiven[RelationshipType.ENEMY.ordinal()]),
+					String.format("%.4f", influence.influenceGiven[RelationshipType.NEUTRAL.ordinal()]),
+					influence.tasks.size(),
+					influence.mostInfluencedTask));
+		}
+		return table.toString();
+	}
+
+	//////////////////////////////////////////
+	/////// PRIVATE HELPERS //////////////////
+	//////////////////////////////////////////
+
+	private static DualNumber[] getRelativeProbabilities(Map<String, DualNumber[]> relativeProbabilities, String action) throws InsufficientActionKnowledgeException {
+		DualNumber[] rod = relativeProbabilities.get(action);
+		if (rod == null) {
+			throw new InsufficientActionKnowledgeException(action);
+		}
+		return rod;
+	}
+
+	/***
+	 * A world model whose beliefs are DualNumbers, kept alongside an AffinitybasedWorldModel revised by the same actionEvents.
+	 * The AffinitybasedWorldModel decides which relationships are modeled, how many times each has been revised and which are
+	 * rewritten by reflection; only the arithmetic of revising and scoring is repeated in DualNumbers, and its values are checked
+	 * against the AffinitybasedWorldModel's, so the two cannot drift apart unnoticed.
+	 */
+	private static class DualWorldModel {
+		private static final double TOLERANCE = 1e-9;
+
+		private final AffinitybasedWorldModel worldModel;
+		/***
+		 * The beliefs about the relationships revised since their beliefs were last constant. Every other modeled relationship
+		 * has the constant beliefs of the AffinitybasedWorldModel.
+		 */
+		private final Map<Pair<String>, DualNumber[]> affinityBeliefs;
+		private final int numVariables;
+
+		DualWorldModel(ModelParameters parameters, int numVariables) {
+			this.worldModel = new AffinitybasedWorldModel(BeliefStorage.HEAP, false);
+			this.worldModel.setParameters(parameters);
+			this.affinityBeliefs = new HashMap<Pair<String>, DualNumber[]>();
+			this.numVariables = numVariables;
+		}
+
+		/***
+		 * Revise the beliefs about the relationship of the given full actionEvent, as AffinitybasedWorldModel.update does.
+		 * @param actionEvent an ActionEvent with 2 agents
+		 * @param actionKnowledge the knowledge about the action
+		 * @param rod the relative probability of the action given each RelationshipType, by RelationshipType ordinal
+		 * @throws IllegalStateException the beliefs revised in DualNumbers differ from the AffinitybasedWorldModel's
+		 */
+		void update(ActionEvent actionEvent, ActionROD actionKnowledge, DualNumber[] rod) {
+			Pair<String> actingPair = new Pair<String>(actionEvent.actor, actionEvent.actedUpon);
+			int updateCount = this.worldModel.getUpdateCount(actingPair);
+			DualNumber[] beliefs = this.getBeliefs(actingPair); //uniform if not yet modeled
+			this.worldModel.update(actionEvent, actionKnowledge);
+
+			//the n-th update of a relationship is repeated (emphasis base)^n times
+			double emphasis = Math.pow(this.worldModel.getParameters().getEmphasisBase(), updateCount);
+			for (int i=0; i<emphasis; i++) {
+				DualNumber totalProbability = DualNumber.constant(0, this.numVariables);
+				for (int type=0; type<RELATIONSHIP_TYPES.length; type++) {
+					beliefs[type] = beliefs[type].times(rod[type]);
+					totalProbability = totalProbability.plus(beliefs[type]);
+				}
+				for (int type=0; type<RELATIONSHIP_TYPES.length; type++) {
+					beliefs[type] = beliefs[type].dividedBy(totalProbability); //Normalize, so that probabilities sum to 1
+				}
+			}
+			this.affinityBeliefs.put(actingPair, beliefs);
+
+			Map<RelationshipType, Double> expectedBeliefs = this.worldModel.getBeliefs(actingPair);
+			for (RelationshipType relationshipType : RELATIONSHIP_TYPES) {
+				DualWorldModel.check(beliefs[relationshipType.ordinal()].getValue(), expectedBeliefs.get(relationshipType), actingPair);
+			}
+		}
+
+		/***
+		 * Reflect on the AffinitybasedWorldModel; the relationships it rewrites have constant beliefs from then on.
+		 */
+		void reflectOnAndRefineBeliefs() {
+			Map<Pair<String>, Integer> updateCounts = new HashMap<Pair<String>, Integer>();
+			for (Pair<String> relationship : this.affinityBeliefs.keySet()) {
+				updateCounts.put(relationship, this.worldModel.getUpdateCount(relationship));
+			}
+			this.worldModel.reflectOnAndRefineBeliefs();
+			for (Map.Entry<Pair<String>, Integer> updateCount : updateCounts.entrySet()) {
+				if (this.worldModel.getUpdateCount(updateCount.getKey()) != updateCount.getValue()) { //rewritten
+					this.affinityBeliefs.remove(updateCount.getKey());
+				}
+			}
+		}
+
+		/***
+		 * Get the probability of the given full actionEvent, as AffinitybasedWorldModel.probabilityOf does.
+		 * @param actionEvent an ActionEvent with 2 agents
+		 * @param actionKnowledge the knowledge about the action
+		 * @param rod the relative probability of the action given each RelationshipType, by RelationshipType ordinal
+		 * @return the probability, or 1 if the relationship is not modeled
+		 * @throws IllegalStateException the probability computed in DualNumbers differs from the AffinitybasedWorldModel's
+		 */
+		DualNumber probabilityOf(ActionEvent actionEvent, ActionROD actionKnowledge, DualNumber[] rod) {
+			Pair<String> relationship = new Pair<String>(actionEvent.actor, actionEvent.actedUpon);
+			double expectedProbability = this.worldModel.probabilityOf(actionEvent, actionKnowledge);
+			if (!this.worldModel.isModeling(relationship)) {
+				return DualNumber.constant(expectedProbability, this.numVariables);
+			}
+			DualNumber[] beliefs = this.getBeliefs(relationship);
+			DualNumber probabilityOfObservation = DualNumber.constant(0, this.numVariables);
+			for (int type=0; type<RELATIONSHIP_TYPES.length; type++) {
+				probabilityOfObservation = probabilityOfObservation.plus(rod[type].times(beliefs[type]));
+			}
+			DualWorldModel.check(probabilityOfObservation.getValue(), expectedProbability, relationship);
+			return probabilityOfObservation;
+		}
+
+		/***
+		 * Get the beliefs about the given relationship, as a new array.
+		 */
+		private DualNumber[] getBeliefs(Pair<String> relationship) {
+			DualNumber[] beliefs = this.affinityBeliefs.get(relationship);
+			if (beliefs != null) {
+				return beliefs.clone();
+			}
+			beliefs = new DualNumber[RELATIONSHIP_TYPES.length];
+			Map<RelationshipType, Double> constantBeliefs = this.worldModel.getBeliefs(relationship);
+			for (RelationshipType relationshipType : RELATIONSHIP_TYPES) {
+				beliefs[relationshipType.ordinal()] = DualNumber.constant(constantBeliefs.get(relationshipType), this.numVariables);
+			}
+			return beliefs;
+		}
+
+		/***
+		 * Check that a value computed in DualNumbers equals the AffinitybasedWorldModel's, up to rounding.
+		 */
+		private static void check(double value, double expected, Pair<String> relationship) {
+			if (Double.compare(value, expected) != 0 && !(Math.abs(value - expected) <= TOLERANCE * Math.max(1, Math.abs(expected)))) {
+				throw new IllegalStateException("The beliefs about " + relationship + " revised in DualNumbers give " + value
+						+ " where the AffinitybasedWorldModel gives " + expected + ".");
+			}
+		}
+	}
+
+}
@@ -1,17 +1,29 @@
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.net.URISyntaxException;
 import java.nio.file.FileAlreadyExistsException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
+import javax.management.JMException;
+
 /***
  * Given specified files, the Simulation class spawns an AffinitybasedAgent, administers a Scenario or TricopaTasks to the agent, and prints a summary of the results.
  * Files' format must adhere to the instructions in the ReadMe.
@@ -55,6 +67,27 @@ public class Simulation {
 		return subset;
 	}
 
+	/***
+	 * Get the tasks of the given tricopaTasks to administer: every task but the last, and, if an exclude file is given, 
+	 * except the tasks it lists and task 22.
+	 * @param tricopaTasks Tricopa tasks
+	 * @param excludeFilename the name of the file listing the numbers of tasks to exclude, or null
+	 * @return the tasks to administer
+	 * @throws URISyntaxException
+	 * @throws IOException the exclude file could not be read
+	 */
+	private static Map<Integer, TricopaTask> getTasksToDo(Map<Integer,TricopaTask> tricopaTasks, String excludeFilename) throws URISyntaxException, IOException {
+		Set<Integer> taskNumsToDo = GetRange(1, tricopaTasks.size()); //Which task numbers to do
+		if (excludeFilename != null) { //Possibly exclude some tasks
+			Set<Integer> taskNumsToExclude = FileUtility.getExclusionsFromFile(excludeFilename); 	//Which task numbers to consider exceptions
+			taskNumsToExclude.add(22);
+			for (Integer task_number : taskNumsToExclude) {
+				taskNumsToDo.remove(task_number);
+			}
+		}
+		return Simulation.getTasks(tricopaTasks, taskNumsToDo);
+	}
+
 	/////////////////////////////////////////////////////////////////
 	/// FOR ADMINISTERING TRICOPA TASKS /////////////////////////////
 	/////////////////////////////////////////////////////////////////		
@@ -69,7 +102,56 @@ public class Simulation {
 	 * @throws Exception
 	 */
 	public static Map<Integer, TricopaTaskPerformance> administerTricopaTasks(TricopaParticipant socialAgent, Map<Integer, TricopaTask> tricopaTasks, Map<Integer,Integer> answers, boolean verbose) throws InsufficientActionKnowledgeException {
-		Map<Integer,TricopaTaskPerformance> performanceOnTasks = new HashMap<Integer,TricopaTaskPerformance>();
+		return Simulation.administer(socialAgent, tricopaTasks, answers, verbose, null, null);
+	}
+	
+	/***
+	 * Administer tricopaTasks to socialAgent, reusing the choices kept in the given cache for tasks nothing has changed for,
+	 * assess performance against true answers, and return socialAgent's performance. Choices made are kept in the cache.
+	 * @param socialAgent
+	 * @param tricopaTasks
+	 * @param answers
+	 * @param verbose
+	 * @param cache the cache of choices, or null to do every task
+	 * @return
+	 * @throws InsufficientActionKnowledgeException 
+	 */
+	public static Map<Integer, TricopaTaskPerformance> administerTricopaTasks(AffinitybasedAgent socialAgent, Map<Integer, TricopaTask> tricopaTasks, Map<Integer,Integer> answers, boolean verbose, TricopaResultCache cache) throws InsufficientActionKnowledgeException {
+		return Simulation.administer(socialAgent, tricopaTasks, answers, verbose, cache, null);
+	}
+	
+	/***
+	 * Administer tricopaTasks to socialAgent as above, but write the result of each task to the given writer as the task is done
+	 * instead of keeping it: only the number of tasks of each TricopaTaskPerformance is kept, so memory does not grow with the number of tasks.
+	 * @param socialAgent
+	 * @param tricopaTasks
+	 * @param answers
+	 * @param verbose
+	 * @param cache the cache of choices, or null to do every task
+	 * @param writer the writer of results, which is left open
+	 * @return the number of tasks of each TricopaTaskPerformance
+	 * @throws InsufficientActionKnowledgeException 
+	 * @throws IOException if a result could not be written
+	 */
+	public static Map<TricopaTaskPerformance, Integer> administerTricopaTasks(AffinitybasedAgent socialAgent, Map<Integer, TricopaTask> tricopaTasks, Map<Integer,Integer> answers, boolean verbose, TricopaResultCache cache, 
+			TricopaResultWriter writer) throws InsufficientActionKnowledgeException, IOException {
+		CountingTricopaResultWriter countingWriter = new CountingTricopaResultWriter(writer);
+		try {
+			Simulation.administer(socialAgent, tricopaTasks, answers, verbose, cache, countingWriter);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return countingWriter.getPerformanceCounts();
+	}
+	
+	/***
+	 * Administer tricopaTasks to socialAgent, writing the result of each task to the given writer if there is one, and otherwise keeping it.
+	 * @return the performance on each task, or null if results were written
+	 */
+	private static Map<Integer, TricopaTaskPerformance> administer(TricopaParticipant socialAgent, Map<Integer, TricopaTask> tricopaTasks, Map<Integer,Integer> answers, boolean verbose, TricopaResultCache cache, 
+			TricopaResultWriter writer) throws InsufficientActionKnowledgeException {
+		Map<Integer,TricopaTaskPerformance> performanceOnTasks = (writer == null) ? new HashMap<Integer,TricopaTaskPerformance>() : null; //results written are not kept
+		TaskDependencyIndex index = (cache == null) ? null : new TaskDependencyIndex(tricopaTasks);
 		
 		for (Map.Entry<Integer, TricopaTask> numberedTricopaTask : tricopaTasks.entrySet()) {
 			int taskNumber = numberedTricopaTask.getKey();			
@@ -79,20 +161,40 @@ public class Simulation {
 				System.out.println("TASK " + taskNumber);
 			}
 			
+			long startNanos = System.nanoTime();
+			int numHits = (cache == null) ? 0 : cache.getNumberOfHits();
+			int chosen = TricopaTaskResult.UNDECIDED;
+			TricopaTaskPerformance performance;
 			try {
-				int chosen = socialAgent.doTricopaTask(tricopaTask);
+				if (cache == null) {
+					chosen = socialAgent.doTricopaTask(tricopaTask);
+				} else {
+					chosen = Simulation.doTricopaTask((AffinitybasedAgent) socialAgent, tricopaTask, 
+							index.getActions(taskNumber), index.getNames(taskNumber), cache);
+				}
 				
 				if ( chosen == answers.get(taskNumber) ) {
-					performanceOnTasks.put(taskNumber, TricopaTaskPerformance.CORRECT);
+					performance = TricopaTaskPerformance.CORRECT;
 					if (verbose) {System.out.println("CORRECT");}
 				} else {
-					performanceOnTasks.put(taskNumber, TricopaTaskPerformance.INCORRECT);
+					performance = TricopaTaskPerformance.INCORRECT;
 					if (verbose) {System.out.println("INCORRECT");}
 				}
 			} catch (UndecidedAgentException e) {
-				performanceOnTasks.put(taskNumber, TricopaTaskPerformance.INCOMPLETE);
+				performance = TricopaTaskPerformance.INCOMPLETE;
 				if (verbose) {System.out.println("INCOMPLETE (THE CORRECT ANSWER WAS " + answers.get(taskNumber) + ")");}
 			}
+			if (writer == null) {
+				performanceOnTasks.put(taskNumber, performance);
+			} else {
+				long nanos = System.nanoTime() - startNanos;
+				boolean reused = (cache != null && cache.getNumberOfHits() > numHits); //no scores are kept in the cache
+				try {
+					writer.write(new TricopaTaskResult(taskNumber, chosen, reused ? null : socialAgent.getLastChoiceScores(), performance, nanos));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
 			if (verbose) {System.out.println();}
 			if (verbose) {System.out.println("****************************************************************");}
 		}//done with all tasks
@@ -100,6 +202,38 @@ public class Simulation {
 	}
 	
 	
+	/***
+	 * Get the choice of socialAgent in tricopaTask from the given cache, or, if it is not kept there, have socialAgent do the task
+	 * and keep its choice.
+	 * @param socialAgent
+	 * @param tricopaTask
+	 * @param actions the actions the task mentions
+	 * @param names the names the task mentions
+	 * @param cache
+	 * @return the number of the choice
+	 * @throws InsufficientActionKnowledgeException
+	 * @throws UndecidedAgentException
+	 */
+	private static int doTricopaTask(AffinitybasedAgent socialAgent, TricopaTask tricopaTask, Collection<String> actions, Collection<String> names, 
+			TricopaResultCache cache) throws InsufficientActionKnowledgeException, UndecidedAgentException {
+		String key = cache.getKey(tricopaTask, actions, names, socialAgent);
+		Integer cachedChoice = cache.get(key);
+		if (cachedChoice != null) {
+			if (cachedChoice == TricopaResultCache.UNDECIDED) {
+				throw new UndecidedAgentException();
+			}
+			return cachedChoice;
+		}
+		try {
+			int chosen = socialAgent.doTricopaTask(tricopaTask);
+			cache.put(key, chosen);
+			return chosen;
+		} catch (UndecidedAgentException e) {
+			cache.put(key, TricopaResultCache.UNDECIDED);
+			throw e;
+		}
+	}
+	
 	/////////////////////////////////////////////////////////////////
 	/// FOR REPORTING AGENT PERFORMANCE ON TRICOPA TASKS ////////////
 	/////////////////////////////////////////////////////////////////	
@@ -109,13 +243,32 @@ public class Simulation {
 	 * @return short text description of number of tasks completed correctly, total number of tasks administered, and calculated percentage accuracy, given performanceOnTasks
 	 */
 	public static String getScoreStatement(Map<Integer, TricopaTaskPerformance> performanceOnTasks) {
+		Map<TricopaTaskPerformance, Integer> performanceCounts = new EnumMap<TricopaTaskPerformance, Integer>(TricopaTaskPerformance.class);
+		for (TricopaTaskPerformance currPerformance : performanceOnTasks.values()) {
+			Integer count = performanceCounts.get(currPerformance);
+			performanceCounts.put(currPerformance, (count == null) ? 1 : count + 1);
+		}
+		return Simulation.getScoreStatementOfCounts(performanceCounts);
+	}
+	
+	/***
+	 * Construct the description above from the number of tasks of each TricopaTaskPerformance, e.g. as counted while results were written rather than kept.
+	 * @param performanceCounts the number of tasks of each TricopaTaskPerformance; performances of which there are no tasks may be left out
+	 * @return short text description of number of tasks completed correctly, total number of tasks administered, and calculated percentage accuracy
+	 */
+	public static String getScoreStatementOfCounts(Map<TricopaTaskPerformance, Integer> performanceCounts) {
 		int numCorrect = 0;
 		int numAnswered = 0;
-		for ( TricopaTaskPerformance currPerformance : performanceOnTasks.values()) {
-			if (currPerformance.equals(TricopaTaskPerformance.CORRECT)) {numCorrect++; numAnswered++;}
-			else if (currPerformance.equals(TricopaTaskPerformance.INCORRECT)) {numAnswered++;}
+		int numTimedOut = 0;
+		int numTasks = 0;
+		for (Map.Entry<TricopaTaskPerformance, Integer> performanceCount : performanceCounts.entrySet()) {
+			TricopaTaskPerformance currPerformance = performanceCount.getKey();
+			int count = performanceCount.getValue();
+			if (currPerformance.equals(TricopaTaskPerformance.CORRECT)) {numCorrect += count; numAnswered += count;}
+			else if (currPerformance.equals(TricopaTaskPerformance.INCORRECT)) {numAnswered += count;}
+			else if (currPerformance.equals(TricopaTaskPerformance.TIMED_OUT)) {numTimedOut += count;}
+			numTasks += count;
 		}
-		int numTasks = performanceOnTasks.size();
 		
 		//Construct text
 		NumberFormat format = NumberFormat.getPercentInstance();
@@ -124,18 +277,21 @@ public class Simulation {
 		String statement = "";
 		statement += "ON THE " + numTasks + " TASKS, THE AGENT ANSWERED " + numAnswered + "/" + numTasks + "=" + format.format((double)numAnswered/(double)(numTasks)) + "\n";
 		statement += "ON THE " + numAnswered + " TASKS ANSWERED, THE AGENT CORRECTLY ANSWERED " + numCorrect + "/" + numAnswered + "=" + format.format((double)numCorrect/(double)(numAnswered)) + "";
+		if (numTimedOut > 0) {
+			statement += "\n" + numTimedOut + " TASKS TIMED OUT";
+		}
 		return statement;
 	}
 	
 	/***
 	 * TODO test more
 	 * Construct a table-like text representation of performanceOnTasks, where each task number is mapped to 'X' for not administered, '1' for performed correctly,
-	 *  '-1' for performed incorrectly, or '0' for administered but agent was undecided. This is useful for pasting directly into Excel and creating a heatmap.
+	 *  '-1' for performed incorrectly, or '0' for administered but agent was undecided; timed out tasks are left blank like skipped tasks. This is useful for pasting directly into Excel and creating a heatmap.
 	 * @param performanceOnTasks
 	 * @return a table-like text representation of performanceOnTasks
 	 */
 	public static String getTableRepresentationOfPerformance(Map<Integer, TricopaTaskPerformance> performanceOnTasks) {
-		String sheet = "";
+		StringBuilder sheet = new StringBuilder();
 		
 		List<Integer> orderedTaskNumbers = Simulation.asSortedList(performanceOnTasks.keySet());
 		
@@ -143,23 +299,26 @@ public class Simulation {
 		for (int currTaskNumber : orderedTaskNumbers) {
 			//add information about skipped tasks
 			for (int i =lastTaskNumber; i<currTaskNumber; i++) {
-				sheet += i+":\t \n";
+				sheet.append(i).append(":\t \n");
 			}
 			
 			//add information about current task 
 			if (performanceOnTasks.get(currTaskNumber) == TricopaTaskPerformance.INCORRECT) {
-				sheet+= currTaskNumber+":\t -1" + "\n";
+				sheet.append(currTaskNumber).append(":\t -1").append("\n");
 			}
 			else if (performanceOnTasks.get(currTaskNumber) == TricopaTaskPerformance.INCOMPLETE) {
-				sheet+= currTaskNumber+":\t 0" + "\n";
+				sheet.append(currTaskNumber).append(":\t 0").append("\n");
 			}
 			else if (performanceOnTasks.get(currTaskNumber) == TricopaTaskPerformance.CORRECT) {
-				sheet+= currTaskNumber+":\t 1" + "\n";
+				sheet.append(currTaskNumber).append(":\t 1").append("\n");
+			}
+			else if (performanceOnTasks.get(currTaskNumber) == TricopaTaskPerformance.TIMED_OUT) {
+				sheet.append(currTaskNumber).append(":\t \n");
 			}
 			
 			lastTaskNumber = currTaskNumber;
 		}
-		return sheet;
+		return sheet.toString();
 	}	
 	
 	/***
@@ -229,12 +388,27 @@ public class Simulation {
 			case INCOMPLETE:
 				conciseRep.put(entry.getKey(), " ");
 				break;
+			case TIMED_OUT:
+				conciseRep.put(entry.getKey(), "T");
+				break;
 			}
 		}
 		return conciseRep;
 	}
 	
 
+	/***
+	 * Register the given metrics over JMX, so they can be watched while administering. Failing to register is reported but not fatal.
+	 * @param metrics
+	 */
+	private static void registerMetrics(AgentMetrics metrics) {
+		try {
+			metrics.register("Simulation");
+		} catch (JMException e) {
+			System.err.println("Could not expose metrics over JMX: " + e.getMessage());
+		}
+	}
+
 	/***
 	 * Given specified files, spawns a AffinitybasedAgent, administers a single Scenario or a TricopaTask set to the agent, and prints a summary of the results.
 	 * 
@@ -256,6 +430,8 @@ public class Simulation {
 		boolean VERBOSE_AGENT = false;
 		
 		boolean SETUP_ONLY = false;
+		
+		boolean REPORT_METRICS = false; //print a snapshot of the agent's metrics after administering, and expose them over JMX while administering
 
 		boolean ADMINISTER_SINGLE_SCENARIO = false;
 		//Used iff ADMINISTER_SINGLE_SCENARIO parameter is set to true:
@@ -273,6 +449,43 @@ public class Simulation {
 		String TRICOPA_CHARACTERS_FILENAME = null;
 		String TRICOPA_ANSWERS_FILENAME = null;
 		String TRICOPA_EXCLUDE_FILENAME = null;
+		String TRICOPA_CACHE_FILENAME = null; //optional file in which to keep choices, so that unchanged tasks are not done again
+		String TRICOPA_RESULTS_FILENAME = null; //optional file to which to write each task's result as it is done, as CSV if it ends in .csv or else as JSON lines
+		long TRICOPA_TIMEOUT_MILLIS = 0; //optional time allowed for each task, 0 for no limit; if set, tasks are done in parallel by BATCH_THREADS agents
+		
+		BeliefStorage BELIEF_STORAGE = BeliefStorage.HEAP; //used in s and t modes; beliefs stored any other way are stored without history
+		
+		boolean SERVE = false;
+		//Used iff SERVE parameter is set to true:
+		int SERVER_PORT = SimulationServer.DEFAULT_PORT;
+		
+		boolean ADMINISTER_BATCH = false;
+		//Used iff ADMINISTER_BATCH parameter is set to true:
+		String BATCH_SCENARIOS = null; //glob pattern or manifest file
+		int BATCH_THREADS = Runtime.getRuntime().availableProcessors();
+		
+		boolean ADMINISTER_SWEEP = false;
+		//Used iff ADMINISTER_SWEEP parameter is set to true, along with the TRICOPA filenames and BATCH_THREADS:
+		int SWEEP_SAMPLE_SIZE = 0; //0 to sweep the whole grid
+		
+		boolean ADMINISTER_LANES = false;
+		//Used iff ADMINISTER_LANES parameter is set to true, along with the TRICOPA filenames; TRICOPA_KNOWLEDGE_FILENAME may be a glob pattern
+		
+		boolean ANALYZE_SENSITIVITY = false;
+		//Used iff ANALYZE_SENSITIVITY parameter is set to true, along with the TRICOPA filenames
+		
+		boolean TRAIN_KNOWLEDGE = false;
+		//Used iff TRAIN_KNOWLEDGE parameter is set to true, along with the TRICOPA filenames, VERBOSE_AGENT and BATCH_THREADS:
+		String TRAINED_KNOWLEDGE_FILENAME = null;
+		int TRAINING_PASSES = 10;
+		
+		boolean ADMINISTER_RESAMPLING = false;
+		//Used iff ADMINISTER_RESAMPLING parameter is set to true, along with the TRICOPA filenames, TRAINING_PASSES and BATCH_THREADS:
+		int NUM_RESAMPLES = 1000;
+		int NUM_FOLDS = 10;
+		int NUM_PARTITIONS = 10;
+		boolean CROSS_VALIDATE_TRAINING = false;
+		Long RESAMPLING_SEED = null; //null to seed from the clock
 	
 		int numOptionalArgs = 0; //0 so far
 		try {
@@ -306,6 +519,69 @@ public class Simulation {
 					SETUP_ONLY = true;
 					numOptionalArgs ++;
 					break;
+				case "-metrics":
+					REPORT_METRICS = true;
+					numOptionalArgs ++;
+					break;
+				case "-threads":
+					BATCH_THREADS = Integer.parseInt(args[i+1]);
+					numOptionalArgs += 2;
+					i ++;
+					break;
+				case "-cache":
+					TRICOPA_CACHE_FILENAME = args[i+1];
+					numOptionalArgs += 2;
+					i ++;
+					break;
+				case "-results":
+					TRICOPA_RESULTS_FILENAME = args[i+1];
+					numOptionalArgs += 2;
+					i ++;
+					break;
+				case "-timeout":
+					TRICOPA_TIMEOUT_MILLIS = Long.parseLong(args[i+1]);
+					numOptionalArgs += 2;
+					i ++;
+					break;
+				case "-sample":
+					SWEEP_SAMPLE_SIZE = Integer.parseInt(args[i+1]);
+					numOptionalArgs += 2;
+					i ++;
+					break;
+				case "-passes":
+					TRAINING_PASSES = Integer.parseInt(args[i+1]);
+					numOptionalArgs += 2;
+					i ++;
+					break;
+				case "-resamples":
+					NUM_RESAMPLES = Integer.parseInt(args[i+1]);
+					numOptionalArgs += 2;
+					i ++;
+					break;
+				case "-folds":
+					NUM_FOLDS = Integer.parseInt(args[i+1]);
+					numOptionalArgs += 2;
+					i ++;
+					break;
+				case "-partitions":
+					NUM_PARTITIONS = Integer.parseInt(args[i+1]);
+					numOptionalArgs += 2;
+					i ++;
+					break;
+				case "-train":
+					CROSS_VALIDATE_TRAINING = true;
+					numOptionalArgs ++;
+					break;
+				case "-seed":
+					RESAMPLING_SEED = Long.parseLong(args[i+1]);
+					numOptionalArgs += 2;
+					i ++;
+					break;
+				case "-storage":
+					BELIEF_STORAGE = BeliefStorage.valueOf(args[i+1].toUpperCase().replace('-', '_'));
+					numOptionalArgs += 2;
+					i ++;
+					break;
 				}//end this arg
 			}//end all "-" style args
 			
@@ -351,16 +627,270 @@ public class Simulation {
 					}
 				}
 				break;
+			case "batch":
+				ADMINISTER_BATCH = true;
+				BATCH_SCENARIOS = args[numOptionalArgs+1];
+				SCENARIO_KNOWLEDGE_FILENAME = args[numOptionalArgs+2];
+				SCENARIO_CHARACTERS_FILENAME = args[numOptionalArgs+3];
+				if (args.length == numOptionalArgs+5) {
+					System.out.println("Illegal arguments.");
+					return;
+				}
+				if (args.length == numOptionalArgs+6){ //optional
+					QUERY_SPECIFIC_RELATIONSHIP = true;
+					QUERIED_RELATIONSHIP = new Pair<String>(args[numOptionalArgs+4],args[numOptionalArgs+5]);
+				}
+				break;
+			case "sweep":
+				ADMINISTER_SWEEP = true;
+				TRICOPA_TASKS_FILENAME = args[numOptionalArgs+1];
+				TRICOPA_KNOWLEDGE_FILENAME = args[numOptionalArgs+2];
+				TRICOPA_CHARACTERS_FILENAME = args[numOptionalArgs+3];
+				TRICOPA_ANSWERS_FILENAME = args[numOptionalArgs+4];
+				if (args.length == numOptionalArgs+6) {
+					TRICOPA_EXCLUDE_FILENAME = args[numOptionalArgs+5]; //optional
+				}
+				break;
+			case "lanes":
+				ADMINISTER_LANES = true;
+				TRICOPA_TASKS_FILENAME = args[numOptionalArgs+1];
+				TRICOPA_KNOWLEDGE_FILENAME = args[numOptionalArgs+2];
+				TRICOPA_CHARACTERS_FILENAME = args[numOptionalArgs+3];
+				TRICOPA_ANSWERS_FILENAME = args[numOptionalArgs+4];
+				if (args.length == numOptionalArgs+6) {
+					TRICOPA_EXCLUDE_FILENAME = args[numOptionalArgs+5]; //optional
+				}
+				break;
+			case "sensitivity":
+				ANALYZE_SENSITIVITY = true;
+				TRICOPA_TASKS_FILENAME = args[numOptionalArgs+1];
+				TRICOPA_KNOWLEDGE_FILENAME = args[numOptionalArgs+2];
+				TRICOPA_CHARACTERS_FILENAME = args[numOptionalArgs+3];
+				TRICOPA_ANSWERS_FILENAME = args[numOptionalArgs+4];
+				if (args.length == numOptionalArgs+6) {
+					TRICOPA_EXCLUDE_FILENAME = args[numOptionalArgs+5]; //optional
+				}
+				break;
+			case "train":
+				TRAIN_KNOWLEDGE = true;
+				TRICOPA_TASKS_FILENAME = args[numOptionalArgs+1];
+				TRICOPA_KNOWLEDGE_FILENAME = args[numOptionalArgs+2];
+				TRICOPA_CHARACTERS_FILENAME = args[numOptionalArgs+3];
+				TRICOPA_ANSWERS_FILENAME = args[numOptionalArgs+4];
+				TRAINED_KNOWLEDGE_FILENAME = args[numOptionalArgs+5];
+				if (args.length == numOptionalArgs+7) {
+					TRICOPA_EXCLUDE_FILENAME = args[numOptionalArgs+6]; //optional
+				}
+				break;
+			case "resample":
+				ADMINISTER_RESAMPLING = true;
+				TRICOPA_TASKS_FILENAME = args[numOptionalArgs+1];
+				TRICOPA_KNOWLEDGE_FILENAME = args[numOptionalArgs+2];
+				TRICOPA_CHARACTERS_FILENAME = args[numOptionalArgs+3];
+				TRICOPA_ANSWERS_FILENAME = args[numOptionalArgs+4];
+				if (args.length == numOptionalArgs+6) {
+					TRICOPA_EXCLUDE_FILENAME = args[numOptionalArgs+5]; //optional
+				}
+				break;
+			case "serve":
+				SERVE = true;
+				if (args.length == numOptionalArgs+2) {
+					SERVER_PORT = Integer.parseInt(args[numOptionalArgs+1]); //optional
+				}
+				break;
 			default:
 				System.out.println("Illegal arguments.");
 				return;
 			}
-		} catch (IndexOutOfBoundsException e) {
+		} catch (IndexOutOfBoundsException | IllegalArgumentException e) {
 			//arguments did not match expectations
 			System.out.println("Illegal arguments.");
 			return;
 		}
 					
+		/***
+		 * Serve requests until shut down.
+		 */
+		if (SERVE) {
+			SimulationServer server = new SimulationServer(SERVER_PORT);
+			if (REPORT_METRICS) {
+				Simulation.registerMetrics(server.getMetrics());
+			}
+			System.out.println("Serving on port " + server.getPort() + ".");
+			server.serve();
+			return;
+		}
+		
+		/***
+		 * Administer Tricopa tasks to agents built with many different parameters, and report how accurate each is.
+		 */
+		if (ADMINISTER_SWEEP) {
+			Map<Integer,TricopaTask> tasksToDo = Simulation.getTasksToDo(FileUtility.getTricopaTasksFromFile(TRICOPA_TASKS_FILENAME, VERBOSE_FILE_READING), TRICOPA_EXCLUDE_FILENAME);
+			Map<Integer,Integer> answers = FileUtility.getAnswersFromFile(TRICOPA_ANSWERS_FILENAME);
+			Set<String> characters = FileUtility.getCharactersFromFile(TRICOPA_CHARACTERS_FILENAME);
+			ParameterSweep sweep = new ParameterSweep(tasksToDo, answers, TRICOPA_KNOWLEDGE_FILENAME, characters);
+			
+			List<ModelParameters> variants = ParameterSweep.grid(new double[] {1.5, 2, 3, 4}, new double[] {1, 1.5, 2, 3},
+					ModelParameters.getAllOrderings(), new double[] {.0001, .001, .01});
+			if (SWEEP_SAMPLE_SIZE > 0) {
+				variants = ParameterSweep.randomSample(variants, SWEEP_SAMPLE_SIZE, new Random());
+			}
+			List<ParameterSweep.Results> results;
+			try {
+				results = sweep.run(variants, BATCH_THREADS);
+			} catch (InterruptedException e) {
+				System.out.println("Interrupted.");
+				return;
+			}
+			System.out.print(ParameterSweep.getResultsTable(results));
+			return;
+		}
+		
+		/***
+		 * Administer Tricopa tasks with many Knowledge Files in a single pass, and report how accurate each is.
+		 */
+		if (ADMINISTER_LANES) {
+			Map<Integer,TricopaTask> tasksToDo = Simulation.getTasksToDo(FileUtility.getTricopaTasksFromFile(TRICOPA_TASKS_FILENAME, VERBOSE_FILE_READING), TRICOPA_EXCLUDE_FILENAME);
+			Map<Integer,Integer> answers = FileUtility.getAnswersFromFile(TRICOPA_ANSWERS_FILENAME);
+			Set<String> characters = FileUtility.getCharactersFromFile(TRICOPA_CHARACTERS_FILENAME);
+			
+			List<String> knowledgeFilenames = ScenarioBatch.isGlob(TRICOPA_KNOWLEDGE_FILENAME) 
+					? ScenarioBatch.getMatchingFilenames(TRICOPA_KNOWLEDGE_FILENAME) : Arrays.asList(TRICOPA_KNOWLEDGE_FILENAME);
+			if (knowledgeFilenames.isEmpty()) {
+				System.out.println("No Knowledge Files match " + TRICOPA_KNOWLEDGE_FILENAME);
+				return;
+			}
+			List<Map<String, ActionROD>> actionKnowledgebases = new ArrayList<Map<String, ActionROD>>();
+			for (String knowledgeFilename : knowledgeFilenames) {
+				actionKnowledgebases.add(FileUtility.getActionKnowledgebase(knowledgeFilename, VERBOSE_FILE_READING));
+			}
+			MultiLaneEvaluator evaluator = new MultiLaneEvaluator(actionKnowledgebases, characters);
+			System.out.print(MultiLaneEvaluator.getResultsTable(knowledgeFilenames, evaluator.administerTricopaTasks(tasksToDo, answers)));
+			return;
+		}
+		
+		/***
+		 * Differentiate each task's choices with respect to the knowledge about its actions, and rank the actions by how strongly they sway the correct choices.
+		 */
+		if (ANALYZE_SENSITIVITY) {
+			Map<Integer,TricopaTask> tasksToDo = Simulation.getTasksToDo(FileUtility.getTricopaTasksFromFile(TRICOPA_TASKS_FILENAME, VERBOSE_FILE_READING), TRICOPA_EXCLUDE_FILENAME);
+			Map<Integer,Integer> answers = FileUtility.getAnswersFromFile(TRICOPA_ANSWERS_FILENAME);
+			Set<String> characters = FileUtility.getCharactersFromFile(TRICOPA_CHARACTERS_FILENAME);
+			SensitivityAnalyzer analyzer = new SensitivityAnalyzer(FileUtility.getActionKnowledgebase(TRICOPA_KNOWLEDGE_FILENAME, VERBOSE_FILE_READING), characters);
+			try {
+				System.out.print(SensitivityAnalyzer.getInfluenceTable(analyzer.rankActions(tasksToDo, answers)));
+			} catch (InsufficientActionKnowledgeException e) {
+				System.out.println("Could not continue. The Knowledge File is missing knowledge about \"" + e.getAction() + "\"");
+			}
+			return;
+		}
+		
+		/***
+		 * Learn the flags of the actions from the answered tasks, and write them to a new Knowledge File.
+		 */
+		if (TRAIN_KNOWLEDGE) {
+			Map<Integer,TricopaTask> tasksToDo = Simulation.getTasksToDo(FileUtility.getTricopaTasksFromFile(TRICOPA_TASKS_FILENAME, VERBOSE_FILE_READING), TRICOPA_EXCLUDE_FILENAME);
+			Map<Integer,Integer> answers = FileUtility.getAnswersFromFile(TRICOPA_ANSWERS_FILENAME);
+			Set<String> characters = FileUtility.getCharactersFromFile(TRICOPA_CHARACTERS_FILENAME);
+			KnowledgeTrainer trainer = new KnowledgeTrainer(tasksToDo, answers, characters, FileUtility.getActionFlagsFromFile(TRICOPA_KNOWLEDGE_FILENAME));
+			trainer.setVerbose(VERBOSE_AGENT);
+			int numChanges;
+			try {
+				numChanges = trainer.train(TRAINING_PASSES, BATCH_THREADS);
+			} catch (InterruptedException e) {
+				System.out.println("Interrupted.");
+				return;
+			}
+			FileUtility.writeKnowledgeFile(trainer.getActionFlags(), TRAINED_KNOWLEDGE_FILENAME);
+			System.out.println(numChanges + " changes; " + trainer.getNumberCorrect() + "/" + trainer.getNumberOfTasks() + " tasks correct. Wrote " + TRAINED_KNOWLEDGE_FILENAME);
+			return;
+		}
+		
+		/***
+		 * Administer Tricopa tasks once, and estimate the variability of the performance by resampling the tasks.
+		 */
+		if (ADMINISTER_RESAMPLING) {
+			Map<Integer,TricopaTask> tasksToDo = Simulation.getTasksToDo(FileUtility.getTricopaTasksFromFile(TRICOPA_TASKS_FILENAME, VERBOSE_FILE_READING), TRICOPA_EXCLUDE_FILENAME);
+			Map<Integer,Integer> answers = FileUtility.getAnswersFromFile(TRICOPA_ANSWERS_FILENAME);
+			Set<String> characters = FileUtility.getCharactersFromFile(TRICOPA_CHARACTERS_FILENAME);
+			Map<String, ActionROD> actionKnowledgebase = FileUtility.getActionKnowledgebase(TRICOPA_KNOWLEDGE_FILENAME, VERBOSE_FILE_READING);
+			TricopaResultCache cache = (TRICOPA_CACHE_FILENAME == null) ? null : TricopaResultCache.open(TRICOPA_CACHE_FILENAME);
+			Map<Integer, TricopaTaskPerformance> performanceOnTasks;
+			try {
+				performanceOnTasks = Simulation.administerTricopaTasks(new AffinitybasedAgent(actionKnowledgebase, characters, false), tasksToDo, answers, false, cache);
+			} catch (InsufficientActionKnowledgeException e) {
+				System.out.println("Could not continue. The Knowledge File is missing knowledge about \"" + e.getAction() + "\"");
+				return;
+			}
+			if (cache != null) {
+				cache.save(actionKnowledgebase);
+			}
+			
+			long seed = (RESAMPLING_SEED == null) ? System.nanoTime() : RESAMPLING_SEED;
+			AccuracyResampler resampler = new AccuracyResampler(performanceOnTasks);
+			List<String> methods = new ArrayList<String>();
+			List<AccuracyResampler.Estimates> estimates = new ArrayList<AccuracyResampler.Estimates>();
+			List<Map<Integer, TricopaTaskPerformance>> heldOutPerformances = null;
+			try {
+				methods.add("bootstrap");
+				estimates.add(resampler.bootstrap(NUM_RESAMPLES, seed, BATCH_THREADS));
+				methods.add(NUM_FOLDS + "-fold");
+				estimates.add(resampler.kFold(NUM_FOLDS, NUM_PARTITIONS, seed));
+				if (CROSS_VALIDATE_TRAINING) {
+					heldOutPerformances = AccuracyResampler.crossValidateTraining(tasksToDo, answers, characters, 
+							FileUtility.getActionFlagsFromFile(TRICOPA_KNOWLEDGE_FILENAME), NUM_FOLDS, NUM_PARTITIONS, TRAINING_PASSES, seed, BATCH_THREADS);
+					methods.add(NUM_FOLDS + "-fold trained");
+					estimates.add(AccuracyResampler.getEstimates(heldOutPerformances));
+				}
+			} catch (InterruptedException e) {
+				System.out.println("Interrupted.");
+				return;
+			} catch (IllegalArgumentException e) {
+				System.out.println(e.getMessage());
+				return;
+			}
+			System.out.println(Simulation.getScoreStatement(performanceOnTasks));
+			System.out.println("****************************************************************");
+			System.out.println("Resampled with seed " + seed + " (rerun with -seed " + seed + " to reproduce)");
+			System.out.print(AccuracyResampler.getEstimatesTable(methods, estimates));
+			if (heldOutPerformances != null) {
+				System.out.println("****************************************************************");
+				System.out.println("Tasks not always answered the same when held out, with the fraction of partitions in which they were answered correctly:");
+				for (Map.Entry<Integer, Double> taskStability : AccuracyResampler.getStability(heldOutPerformances).entrySet()) {
+					if (taskStability.getValue() > 0 && taskStability.getValue() < 1) {
+						System.out.println(String.format("%d\t%.2f", taskStability.getKey(), taskStability.getValue()));
+					}
+				}
+			}
+			return;
+		}
+		
+		/***
+		 * Administer many stories, writing one JSON line of final beliefs per story.
+		 */
+		if (ADMINISTER_BATCH) {
+			List<ScenarioBatch.Entry> entries = ScenarioBatch.getEntries(BATCH_SCENARIOS, SCENARIO_KNOWLEDGE_FILENAME, SCENARIO_CHARACTERS_FILENAME, QUERIED_RELATIONSHIP);
+			ScenarioBatch batch = new ScenarioBatch(new KnowledgeCache(), NL_SCENARIO, BATCH_THREADS);
+			if (REPORT_METRICS) {
+				Simulation.registerMetrics(batch.getMetrics());
+			}
+			Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+			int numFailures;
+			try {
+				numFailures = batch.run(entries, out);
+			} catch (InterruptedException e) {
+				System.err.println("Interrupted.");
+				return;
+			}
+			if (numFailures > 0) {
+				System.err.println(numFailures + " of " + entries.size() + " scenarios could not be read.");
+			}
+			if (REPORT_METRICS) {
+				System.err.print(batch.getMetrics().getSnapshot()); //keep standard output JSON
+			}
+			return;
+		}
+		
 		try {
 			/***
 			 * Administer single story.
@@ -385,6 +915,10 @@ public class Simulation {
 					Map<String, ActionROD> actionKnowledgebase = FileUtility.getActionKnowledgebase(SCENARIO_KNOWLEDGE_FILENAME, VERBOSE_FILE_READING);
 					Set<String> nonagentsSet = FileUtility.getCharactersFromFile(SCENARIO_CHARACTERS_FILENAME);
 					AffinitybasedAgent affinitybasedAgent = new AffinitybasedAgent(actionKnowledgebase, nonagentsSet, VERBOSE_AGENT);
+					affinitybasedAgent.setBeliefStorage(BELIEF_STORAGE, BELIEF_STORAGE == BeliefStorage.HEAP);
+					if (REPORT_METRICS) {
+						Simulation.registerMetrics(affinitybasedAgent.getMetrics());
+					}
 		
 					/***
 					 * Administer story to social agent
@@ -409,6 +943,13 @@ public class Simulation {
 					} catch (InsufficientActionKnowledgeException e) {
 						System.out.println("Could not continue. The Knowledge File is missing knowledge about \"" + e.getAction() + "\"");
 						return;
+					} finally {
+						affinitybasedAgent.close(); //stop tracing, and release the beliefs
+					}
+					
+					if (REPORT_METRICS) {
+						System.out.println("****************************************************************");
+						System.out.print(affinitybasedAgent.getMetrics().getSnapshot());
 					}
 				}//done reading scenario
 			} // end s mode
@@ -430,23 +971,18 @@ public class Simulation {
 					 */
 					Map<String, ActionROD> actionKnowledgebase = FileUtility.getActionKnowledgebase(TRICOPA_KNOWLEDGE_FILENAME, VERBOSE_FILE_READING);
 					Set<String> characters = FileUtility.getCharactersFromFile(TRICOPA_CHARACTERS_FILENAME);
-					TricopaParticipant socialAgent = new AffinitybasedAgent(actionKnowledgebase, characters, VERBOSE_AGENT);
+					AffinitybasedAgent socialAgent = new AffinitybasedAgent(actionKnowledgebase, characters, VERBOSE_AGENT);
+					socialAgent.setBeliefStorage(BELIEF_STORAGE, BELIEF_STORAGE == BeliefStorage.HEAP);
+					if (REPORT_METRICS) {
+						Simulation.registerMetrics(socialAgent.getMetrics());
+					}
 					
 					/***
 					 * Set up, before administering tasks to social agent
 					 */
 					Map<Integer,TricopaTask> allTricopaTasks = FileUtility.getTricopaTasksFromFile(TRICOPA_TASKS_FILENAME, VERBOSE_FILE_READING);
 					Map<Integer,Integer> answers = FileUtility.getAnswersFromFile(TRICOPA_ANSWERS_FILENAME);
-		
-					Set<Integer> taskNumsToDo = GetRange(1, allTricopaTasks.size()); //Which task numbers to do
-					if (TRICOPA_EXCLUDE_FILENAME != null) { //Possibly exclude some tasks
-						Set<Integer> taskNumsToExclude = FileUtility.getExclusionsFromFile(TRICOPA_EXCLUDE_FILENAME); 	//Which task numbers to consider exceptions
-						taskNumsToExclude.add(22);
-						for (Integer task_number : taskNumsToExclude) {
-							taskNumsToDo.remove(task_number);
-						}
-					}
-					Map<Integer,TricopaTask> tasksToDo = Simulation.getTasks(allTricopaTasks, taskNumsToDo);
+					Map<Integer,TricopaTask> tasksToDo = Simulation.getTasksToDo(allTricopaTasks, TRICOPA_EXCLUDE_FILENAME);
 		
 					
 					/***
@@ -454,21 +990,96 @@ public class Simulation {
 					 * For each task, social agent reads the tasks, updates interpreted relationship information, and answers the task
 					 * runner reports the social agent's performance
 					 */
-					Map<Integer, TricopaTaskPerformance> performanceOnTasks;
+					Map<Integer, TricopaTaskPerformance> performanceOnTasks = null; //null if results are written rather than kept
+					Map<TricopaTaskPerformance, Integer> performanceCounts = null;
+					TricopaResultCache cache = null;
+					Set<String> changedActions = null;
+					if (TRICOPA_CACHE_FILENAME != null) {
+						cache = TricopaResultCache.open(TRICOPA_CACHE_FILENAME);
+						changedActions = cache.getChangedActions(actionKnowledgebase);
+					}
+					TricopaResultWriter resultWriter = null;
+					if (TRICOPA_RESULTS_FILENAME != null) {
+						Writer resultsOut = Files.newBufferedWriter(Paths.get(TRICOPA_RESULTS_FILENAME), StandardCharsets.UTF_8);
+						resultWriter = TRICOPA_RESULTS_FILENAME.endsWith(".csv") ? new CsvTricopaResultWriter(resultsOut) : new JsonlTricopaResultWriter(resultsOut);
+						socialAgent.setScoringEveryChoice(true);
+					}
+					List<AffinitybasedAgent> socialAgents = new ArrayList<AffinitybasedAgent>();
+					socialAgents.add(socialAgent);
+					AsyncTraceSink sharedTraceSink = null;
 					try {
-						performanceOnTasks = Simulation.administerTricopaTasks(socialAgent, tasksToDo, answers, VERBOSE_AGENT);
+						if (TRICOPA_TIMEOUT_MILLIS > 0) {
+							for (int i=1; i<BATCH_THREADS; i++) {
+								AffinitybasedAgent otherSocialAgent = new AffinitybasedAgent(actionKnowledgebase, characters, false);
+								otherSocialAgent.setBeliefStorage(BELIEF_STORAGE, BELIEF_STORAGE == BeliefStorage.HEAP);
+								otherSocialAgent.setMetrics(socialAgent.getMetrics());
+								otherSocialAgent.setScoringEveryChoice(resultWriter != null);
+								socialAgents.add(otherSocialAgent);
+							}
+							if (VERBOSE_AGENT) { //one console for all agents, each reading and choosing printed whole
+								sharedTraceSink = new AsyncTraceSink(new ConsoleTraceSink(System.out));
+								List<GroupingTraceSink> traceSinks = GroupingTraceSink.sharing(sharedTraceSink, socialAgents.size());
+								for (int i=0; i<socialAgents.size(); i++) {
+									socialAgents.get(i).setTraceSink(traceSinks.get(i));
+								}
+							}
+							TimeLimitedAdministrator administrator = new TimeLimitedAdministrator(socialAgents, TRICOPA_TIMEOUT_MILLIS);
+							if (resultWriter != null) {
+								performanceCounts = administrator.administerTricopaTasks(tasksToDo, answers, cache, resultWriter);
+							} else {
+								performanceOnTasks = administrator.administerTricopaTasks(tasksToDo, answers, cache);
+							}
+						} else if (resultWriter != null) {
+							performanceCounts = Simulation.administerTricopaTasks(socialAgent, tasksToDo, answers, VERBOSE_AGENT, cache, resultWriter);
+						} else {
+							performanceOnTasks = Simulation.administerTricopaTasks(socialAgent, tasksToDo, answers, VERBOSE_AGENT, cache);
+						}
 					} catch (InsufficientActionKnowledgeException e) {
 						System.out.println("Could not continue. The Knowledge File is missing knowledge about \"" + e.getAction() + "\"");
 						return;
+					} catch (InterruptedException e) {
+						System.out.println("Interrupted.");
+						return;
+					} finally {
+						if (resultWriter != null) {
+							resultWriter.close();
+						}
+						for (AffinitybasedAgent agent : socialAgents) {
+							agent.close(); //stop tracing, and release the beliefs
+						}
+						if (sharedTraceSink != null) {
+							sharedTraceSink.close();
+						}
+					}
+					if (cache != null) {
+						cache.save(actionKnowledgebase);
 					}
 					
 					
 					/***
 					 * Print results
 					 */
-					System.out.println(Simulation.getConciseRepresentationOfPerformance(performanceOnTasks));
-					System.out.println("****************************************************************");
-					System.out.println("" + Simulation.getScoreStatement(performanceOnTasks));
+					if (performanceOnTasks != null) {
+						System.out.println(Simulation.getConciseRepresentationOfPerformance(performanceOnTasks));
+						System.out.println("****************************************************************");
+						System.out.println("" + Simulation.getScoreStatement(performanceOnTasks));
+					} else { //each task's result is in the results file
+						System.out.println("Results written to " + TRICOPA_RESULTS_FILENAME);
+						System.out.println("****************************************************************");
+						System.out.println("" + Simulation.getScoreStatementOfCounts(performanceCounts));
+					}
+					
+					if (cache != null) {
+						System.out.println("****************************************************************");
+						System.out.println("Reused " + cache.getNumberOfHits() + " of " + tasksToDo.size() + " results from the cache.");
+						System.out.println("Knowledge about " + changedActions.size() + " actions changed since the cache was saved, affecting tasks " 
+								+ new TaskDependencyIndex(tasksToDo).getTasksAffectedBy(changedActions) + ".");
+					}
+					
+					if (REPORT_METRICS) {
+						System.out.println("****************************************************************");
+						System.out.print(socialAgent.getMetrics().getSnapshot());
+					}
 				}//done administering Tricopa tasks
 			}//end t mode
 		} catch (NoSuchFileException e) {
@@ -0,0 +1,372 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/***
+ * A SimulationServer answers scenario-read, belief-query and Tricopa-task requests over a local socket, so that a long-lived process
+ * pays for starting up, and for loading knowledge and characters, once rather than per question.
+ *
+ * The protocol is line-delimited JSON: each line a client sends is a JSON object with a "type" member and possibly an "id" member,
+ * and the server answers each line with one line, a JSON object with the same "id", "ok" true and the answer, or "ok" false and an "error".
+ * <ul>
+ * <li>{"type":"load", "knowledge":file, "characters":file} loads a Knowledge File and a Characters File ahead of time.</li>
+ * <li>{"type":"read", "knowledge":file, "characters":file, "scenario":literals or "sentences":[sentence...], "followup":boolean,
+ * "relationships":[[c1,c2]...]} reads the scenario (a followup scenario continues from the connection's last read) and answers
+ * the beliefs about the given relationships, or about every modeled relationship if none are given.</li>
+ * <li>{"type":"beliefs", "relationships":[[c1,c2]...]} answers the beliefs about the given relationships given the connection's last read.</li>
+ * <li>{"type":"task", "knowledge":file, "characters":file, "premise":literals, "choices":[literals...]} answers the "choice" (1, 2, ...)
+ * thought correct, or "undecided" true.</li>
+ * <li>{"type":"metrics"} answers a text "snapshot" of the AgentMetrics of all requests.</li>
+ * <li>{"type":"shutdown"} stops the server once it has answered.</li>
+ * </ul>
+ * Knowledge and characters are cached by file, so requests naming the same files share them; each connection is served by its own thread.
+ * @author pkalluri
+ *
+ */
+public class SimulationServer implements Closeable {
+
+	/***
+	 * The port served if none is specified.
+	 */
+	public static final int DEFAULT_PORT = 7474;
+
+	private final ServerSocket serverSocket;
+	private final ExecutorService connectionHandlers;
+
+	private final KnowledgeCache knowledgeCache;
+
+	/***
+	 * The metrics of every agent serving a request.
+	 */
+	private final AgentMetrics metrics;
+
+	private volatile boolean running;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTOR //////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a new SimulationServer listening on the given port of the loopback interface. Call serve to start answering requests.
+	 * @param port the port to listen on, or 0 for any free port
+	 * @throws IOException the port could not be listened on
+	 */
+	public SimulationServer(int port) throws IOException {
+		this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.connectionHandlers = Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "SimulationServer connection");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.knowledgeCache = new KnowledgeCache();
+		this.metrics = new AgentMetrics();
+		this.running = true;
+	}
+
+	//////////////////////////////////////////
+	/////// SERVING //////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Get the port being listened on.
+	 * @return the port being listened on
+	 */
+	public int getPort() {
+		return this.serverSocket.getLocalPort();
+	}
+
+	/***
+	 * Get the metrics of every agent serving a request.
+	 * @return the metrics of every agent serving a request
+	 */
+	public AgentMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	/***
+	 * Accept connections and answer their requests until closed.
+	 * @throws IOException the server socket failed
+	 */
+	public void serve() throws IOException {
+		try {
+			while (this.running) {
+				final Socket socket;
+				try {
+					socket = this.serverSocket.accept();
+				} catch (SocketException e) {
+					if (!this.running) { break; } //closed
+					throw e;
+				}
+				this.connectionHandlers.execute(new Runnable() {
+					@Override
+					public void run() {
+						SimulationServer.this.handleConnection(socket);
+					}
+				});
+			}
+		} finally {
+			this.close();
+		}
+	}
+
+	/***
+	 * Stop accepting connections, and stop serving open connections.
+	 */
+	@Override
+	public void close() {
+		this.running = false;
+		try {
+			this.serverSocket.close();
+		} catch (IOException e) {
+			//already closing
+		}
+		this.connectionHandlers.shutdownNow();
+	}
+
+	/***
+	 * Answer the requests of the given connection, one line per request, until the client closes it.
+	 * @param socket
+	 */
+	private void handleConnection(Socket socket) {
+		Session session = new Session();
+		try (	Socket connection = socket;
+				BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+				Writer out = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8))	) {
+			String line;
+			while (this.running && (line = in.readLine()) != null) {
+				if (line.trim().isEmpty()) {
+					continue;
+				}
+				out.write(JsonUtility.toJson(this.answer(line, session)));
+				out.write('\n');
+				out.flush();
+			}
+		} catch (IOException e) {
+			//the client went away
+		}
+	}
+
+	//////////////////////////////////////////
+	/////// ANSWERING REQUESTS ///////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Answer the given request line.
+	 * @param line a JSON object
+	 * @param session the state of the connection the request came from
+	 * @return the answer
+	 */
+	Map<String, Object> answer(String line, Session session) {
+		Map<String, Object> answer = new LinkedHashMap<String, Object>();
+		Object id = null;
+		try {
+			Map<String, Object> request = JsonUtility.parseObject(line);
+			id = request.get("id");
+			answer.put("id", id);
+			answer.put("ok", true);
+
+			String type = SimulationServer.getString(request, "type");
+			switch (type) {
+			case "load":
+				answer.put("actions", this.knowledgeCache.getActionKnowledgebase(SimulationServer.getString(request, "knowledge")).size());
+				answer.put("characters", this.knowledgeCache.getCharacters(SimulationServer.getString(request, "characters")).size());
+				break;
+			case "read":
+				this.read(request, session, answer);
+				break;
+			case "beliefs":
+				if (session.agent == null) {
+					throw new IllegalArgumentException("Nothing has been read on this connection.");
+				}
+				answer.put("beliefs", SimulationServer.getBeliefs(session.agent, SimulationServer.getRelationships(request, session.agent)));
+				break;
+			case "task":
+				this.doTask(request, answer);
+				break;
+			case "metrics":
+				answer.put("snapshot", this.metrics.getSnapshot());
+				break;
+			case "shutdown":
+				this.running = false;
+				try {
+					this.serverSocket.close();
+				} catch (IOException e) {
+					//already closing
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown request type \"" + type + "\".");
+			}
+		} catch (MalformedJsonException | IllegalArgumentException | ClassCastException | UncheckedIOException e) { //including malformed literals
+			answer = SimulationServer.getError(id, e.getMessage());
+		} catch (InsufficientActionKnowledgeException e) {
+			answer = SimulationServer.getError(id, "The Knowledge File is missing knowledge about \"" + e.getAction() + "\"");
+		}
+		return answer;
+	}
+
+	/***
+	 * Read the scenario of the given read request, and put the beliefs into the given answer.
+	 * @param request
+	 * @param session
+	 * @param answer
+	 * @throws InsufficientActionKnowledgeException
+	 */
+	private void read(Map<String, Object> request, Session session, Map<String, Object> answer) throws InsufficientActionKnowledgeException {
+		boolean followupScenario = Boolean.TRUE.equals(request.get("followup"));
+		AffinitybasedAgent agent;
+		if (followupScenario) {
+			if (session.agent == null) {
+				throw new IllegalArgumentException("There is no scenario on this connection to follow up.");
+			}
+			agent = session.agent;
+		} else {
+			agent = this.getAgent(request);
+		}
+
+		Scenario scenario;
+		if (request.containsKey("sentences")) {
+			List<String> sentences = new ArrayList<String>();
+			for (Object sentence : SimulationServer.getList(request, "sentences")) {
+				sentences.add((String) sentence);
+			}
+			scenario = new Scenario(NLPUtility.getActionEvents(sentences));
+		} else {
+			scenario = FileUtility.getScenario(SimulationServer.getString(request, "scenario"));
+		}
+
+		session.agent = null; //until read
+		agent.read(scenario, followupScenario);
+		session.agent = agent;
+		answer.put("beliefs", SimulationServer.getBeliefs(agent, SimulationServer.getRelationships(request, agent)));
+	}
+
+	/***
+	 * Do the task of the given task request, and put the choice into the given answer.
+	 * @param request
+	 * @param answer
+	 * @throws InsufficientActionKnowledgeException
+	 */
+	private void doTask(Map<String, Object> request, Map<String, Object> answer) throws InsufficientActionKnowledgeException {
+		AffinitybasedAgent agent = this.getAgent(request);
+		Scenario premise = FileUtility.getScenario(SimulationServer.getString(request, "premise"));
+		List<Scenario> possibleChoices = new ArrayList<Scenario>();
+		for (Object choice : SimulationServer.getList(request, "choices")) {
+			possibleChoices.add(FileUtility.getScenario((String) choice));
+		}
+		try {
+			answer.put("choice", agent.doTricopaTask(new TricopaTask(premise, possibleChoices)));
+		} catch (UndecidedAgentException e) {
+			answer.put("undecided", true);
+		}
+	}
+
+	/***
+	 * Get a new quiet agent with the knowledge and characters named in the given request.
+	 * @param request
+	 * @return a new agent
+	 */
+	private AffinitybasedAgent getAgent(Map<String, Object> request) {
+		AffinitybasedAgent agent = new AffinitybasedAgent(this.knowledgeCache.getActionKnowledgebase(SimulationServer.getString(request, "knowledge")),
+				this.knowledgeCache.getCharacters(SimulationServer.getString(request, "characters")), false);
+		agent.setMetrics(this.metrics);
+		return agent;
+	}
+
+	//////////////////////////////////////////
+	/////// PRIVATE HELPERS //////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * The state of one connection: the agent that did the connection's last read, if any.
+	 */
+	static class Session {
+		AffinitybasedAgent agent;
+	}
+
+	/***
+	 * Get the relationships named in the given request, or every relationship the given agent models if none are named.
+	 * @param request
+	 * @param agent
+	 * @return the relationships
+	 */
+	private static Iterable<Pair<String>> getRelationships(Map<String, Object> request, AffinitybasedAgent agent) {
+		if (!request.containsKey("relationships")) {
+			return agent.getRelationships();
+		}
+		List<Pair<String>> relationships = new ArrayList<Pair<String>>();
+		for (Object relationship : SimulationServer.getList(request, "relationships")) {
+			List<?> characters = (List<?>) relationship;
+			if (characters.size() != 2) {
+				throw new IllegalArgumentException("A relationship must name 2 characters.");
+			}
+			relationships.add(new Pair<String>((String) characters.get(0), (String) characters.get(1)));
+		}
+		return relationships;
+	}
+
+	/***
+	 * Get the given agent's beliefs about the given relationships as JSON-ready maps.
+	 * @param agent
+	 * @param relationships
+	 * @return the beliefs
+	 */
+	static List<Object> getBeliefs(AffinitybasedAgent agent, Iterable<Pair<String>> relationships) {
+		List<Object> beliefs = new ArrayList<Object>();
+		for (Pair<String> relationship : relationships) {
+			Map<RelationshipType, Double> relationshipBeliefs = agent.getBeliefs(relationship);
+			Map<String, Object> entry = new LinkedHashMap<String, Object>();
+			entry.put("relationship", new ArrayList<String>(relationship.getElements()));
+			for (RelationshipType relationshipType : RelationshipType.values()) {
+				entry.put(relationshipType.name().toLowerCase(), relationshipBeliefs.get(relationshipType));
+			}
+			beliefs.add(entry);
+		}
+		return beliefs;
+	}
+
+	private static String getString(Map<String, Object> request, String name) {
+		Object value = request.get(name);
+		if (!(value instanceof String)) {
+			throw new IllegalArgumentException("The request needs a string \"" + name + "\".");
+		}
+		return (String) value;
+	}
+
+	private static List<?> getList(Map<String, Object> request, String name) {
+		Object value = request.get(name);
+		if (!(value instanceof List)) {
+			throw new IllegalArgumentException("The request needs an array \"" + name + "\".");
+		}
+		return (List<?>) value;
+	}
+
+	private static Map<String, Object> getError(Object id, String message) {
+		Map<String, Object> error = new LinkedHashMap<String, Object>();
+		error.put("id", id);
+		error.put("ok", false);
+		error.put("error", message);
+		return error;
+	}
+
+}
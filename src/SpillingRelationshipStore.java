@@ -0,0 +1,565 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/***
+ * The SpillingRelationshipStore implements the RelationshipStore interface with a bounded number of relationship models resident
+ * on the heap, backed by a memory-mapped spill file holding every relationship.
+ *
+ * Resident models are kept in least recently used order. When more than the resident capacity are resident, the least recently used
+ * is evicted: if it changed since it was loaded, it is written to its record in the spill file.
+ * Touching an evicted relationship reloads it transparently from its record. Beliefs are spilled as doubles, so they are preserved exactly.
+ * Models are copied into the store when put and out of it when got, so a model held by a caller is never the resident one,
+ * and changing it has no effect until it is put back.
+ *
+ * Each relationship is given a record when it is first put. The spill file is a sequence of fixed-size records:
+ * <pre>
+ * long    packed relationship id + 1
+ * double  belief per RelationshipType, in the declared order of RelationshipTypes
+ * int     update count
+ * int     last update age
+ * </pre>
+ * and is mapped in chunks as it grows. Relationships are found through an open-addressing (linear probing) index of
+ * (packed relationship id + 1, record number) slots, and agents through an AgentTable, both in direct memory.
+ * So the heap used by this store is bounded by the resident capacity, whatever the number of agents and relationships.
+ *
+ * A world model using a SpillingRelationshipStore should not store history, which is kept on the heap.
+ * @author pkalluri
+ *
+ */
+public class SpillingRelationshipStore implements RelationshipStore, Closeable {
+
+	private static final long EMPTY = 0;
+	private static final int KEY_OFFSET = 0;
+	private static final int BELIEFS_OFFSET = 8;
+	private static final int UPDATE_COUNT_OFFSET = BELIEFS_OFFSET + 8*RelationshipType.values().length;
+	private static final int LAST_UPDATE_AGE_OFFSET = UPDATE_COUNT_OFFSET + 4;
+	private static final int RECORD_SIZE = LAST_UPDATE_AGE_OFFSET + 4;
+	private static final int RECORD_NUMBER_OFFSET = 8;
+	private static final int INDEX_SLOT_SIZE = 16;
+	private static final int INITIAL_INDEX_CAPACITY = 1024;
+
+	/***
+	 * The resident capacity of a store created by BeliefStorage.SPILLING.
+	 */
+	public static final int DEFAULT_RESIDENT_CAPACITY = 1 << 16;
+
+	/***
+	 * A Resident is a relationship model held on the heap.
+	 */
+	private static class Resident {
+		final long recordNumber;
+		SymmetricRelationshipModel relationship;
+		int updateCount;
+		int lastUpdateAge;
+		boolean changed;
+
+		Resident(long recordNumber, SymmetricRelationshipModel relationship, int updateCount, int lastUpdateAge, boolean changed) {
+			this.recordNumber = recordNumber;
+			this.relationship = relationship;
+			this.updateCount = updateCount;
+			this.lastUpdateAge = lastUpdateAge;
+			this.changed = changed;
+		}
+	}
+
+	//////////////////////////////////////////
+	/////// PARAMETERS ///////////////////////
+	//////////////////////////////////////////
+	/***
+	 * The largest number of relationship models held on the heap at once.
+	 */
+	private final int residentCapacity;
+
+	/***
+	 * True iff the spill file is deleted when the store is closed.
+	 */
+	private final boolean temporary;
+
+	//////////////////////////////////////////
+	/////// STATE ////////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * The agents known to this store, with their ids.
+	 */
+	private final AgentTable agents;
+
+	/***
+	 * The index from relationships to records, and its number of slots.
+	 */
+	private ChunkedBuffer index;
+	private long indexCapacity;
+
+	/***
+	 * The number of relationships modeled, i.e. of records.
+	 */
+	private long size;
+
+	/***
+	 * The resident relationships, by key, in least recently used order.
+	 */
+	private final LinkedHashMap<Long, Resident> residents;
+
+	/***
+	 * The spill file, and its records.
+	 */
+	private final File spillFile;
+	private final RandomAccessFile spill;
+	private final ChunkedBuffer records;
+
+	/***
+	 * The record found by the last call to locate.
+	 */
+	private long lastLocatedRecord;
+
+	//////////////////////////////////////////
+	/////// METRICS //////////////////////////
+	//////////////////////////////////////////
+	private long evictions;
+	private long writeBacks;
+	private long reloads;
+	private long totalReloadNanos;
+	private long maxReloadNanos;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTORS /////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a new SpillingRelationshipStore modeling no relationships, spilling to the indicated file.
+	 * Any existing content of the file is discarded.
+	 * @param spillFilename the name of the spill file
+	 * @param residentCapacity the largest number of relationship models to hold on the heap at once
+	 * @throws IOException if the spill file cannot be opened
+	 */
+	public SpillingRelationshipStore(String spillFilename, int residentCapacity) throws IOException {
+		this(new File(spillFilename), residentCapacity, false);
+	}
+
+	private SpillingRelationshipStore(File spillFile, int residentCapacity, boolean temporary) throws IOException {
+		if (residentCapacity <= 0) { throw new IllegalArgumentException("The resident capacity must be positive."); }
+		this.residentCapacity = residentCapacity;
+		this.temporary = temporary;
+		this.agents = new AgentTable();
+		this.indexCapacity = INITIAL_INDEX_CAPACITY;
+		this.index = new ChunkedBuffer(INDEX_SLOT_SIZE, this.indexCapacity);
+		this.size = 0;
+		this.residents = new LinkedHashMap<Long, Resident>(16, .75f, true);
+		this.spillFile = spillFile;
+		this.spill = new RandomAccessFile(this.spillFile, "rw");
+		this.spill.setLength(0);
+		this.records = new ChunkedBuffer(RECORD_SIZE, this.spill.getChannel());
+	}
+
+	/***
+	 * Create a new SpillingRelationshipStore modeling no relationships, spilling to a new temporary file that is deleted when the store is closed.
+	 * @param residentCapacity the largest number of relationship models to hold on the heap at once
+	 * @return the new store
+	 * @throws IOException if the spill file cannot be created
+	 */
+	public static SpillingRelationshipStore createTemporary(int residentCapacity) throws IOException {
+		File spillFile = File.createTempFile("relationships", ".spill");
+		spillFile.deleteOnExit();
+		return new SpillingRelationshipStore(spillFile, residentCapacity, true);
+	}
+
+	//////////////////////////////////////////
+	/////// OVERRIDE INTERFACE METHODS ///////
+	//////////////////////////////////////////
+
+	@Override
+	public boolean contains(Pair<String> relationship) {
+		return this.locate(this.getKey(relationship, false));
+	}
+
+	@Override
+	public SymmetricRelationshipModel get(Pair<String> relationship) {
+		Resident resident = this.touch(this.getKey(relationship, false));
+		return (resident == null) ? null : new SymmetricRelationshipModel(resident.relationship.getBeliefs());
+	}
+
+	@Override
+	public int getUpdateCount(Pair<String> relationship) {
+		long key = this.getKey(relationship, false);
+		Resident resident = this.residents.get(key);
+		if (resident != null) {
+			return resident.updateCount;
+		}
+		return this.locate(key) ? this.records.getInt(this.lastLocatedRecord, UPDATE_COUNT_OFFSET) : 0;
+	}
+
+	@Override
+	public void put(Pair<String> relationship, SymmetricRelationshipModel relationshipModel, int updateCount) {
+		long key = this.getKey(relationship, true);
+		SymmetricRelationshipModel copy = new SymmetricRelationshipModel(relationshipModel.getBeliefs());
+		Resident resident = this.residents.get(key);
+		if (resident != null) {
+			resident.relationship = copy;
+			resident.updateCount = updateCount;
+			resident.changed = true;
+			return;
+		}
+		long recordNumber;
+		int lastUpdateAge;
+		if (this.locate(key)) {
+			recordNumber = this.lastLocatedRecord;
+			lastUpdateAge = this.records.getInt(recordNumber, LAST_UPDATE_AGE_OFFSET);
+		} else {
+			recordNumber = this.addRecord(key);
+			lastUpdateAge = 0;
+		}
+		this.residents.put(key, new Resident(recordNumber, copy, updateCount, lastUpdateAge, true));
+		this.evictIfOverCapacity();
+	}
+
+	@Override
+	public BeliefStorage getBeliefStorage() {
+		return BeliefStorage.SPILLING;
+	}
+
+	@Override
+	public int size() {
+		return (int) Math.min(this.size, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public void addAgent(String agent) {
+		this.agents.add(agent);
+	}
+
+	@Override
+	public boolean containsAgent(String agent) {
+		return this.agents.getId(agent) >= 0;
+	}
+
+	@Override
+	public Iterable<String> getAgents() {
+		return this.agents;
+	}
+
+	@Override
+	public int getNumberOfAgents() {
+		return this.agents.size();
+	}
+
+	@Override
+	public int getLastUpdateAge(Pair<String> relationship) {
+		long key = this.getKey(relationship, false);
+		Resident resident = this.residents.get(key);
+		if (resident != null) {
+			return resident.lastUpdateAge;
+		}
+		return this.locate(key) ? this.records.getInt(this.lastLocatedRecord, LAST_UPDATE_AGE_OFFSET) : 0;
+	}
+
+	@Override
+	public void setLastUpdateAge(Pair<String> relationship, int age) {
+		Resident resident = this.touch(this.getKey(relationship, false));
+		if (resident != null) {
+			resident.lastUpdateAge = age;
+			resident.changed = true;
+		}
+	}
+
+	/***
+	 * Iterate over the relationships in the order they were first put.
+	 */
+	@Override
+	public Iterator<Pair<String>> iterator() {
+		final long numRecords = this.size;
+		return new Iterator<Pair<String>>() {
+			private long nextRecord = 0;
+
+			@Override
+			public boolean hasNext() {
+				return this.nextRecord < numRecords;
+			}
+
+			@Override
+			public Pair<String> next() {
+				if (!this.hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return SpillingRelationshipStore.this.getRelationship(SpillingRelationshipStore.this.records.getLong(this.nextRecord++, KEY_OFFSET));
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder("{");
+		for (Pair<String> relationship : this) {
+			if (str.length() > 1) {
+				str.append(", ");
+			}
+			str.append(relationship).append('=').append(this.get(relationship));
+		}
+		return str.append('}').toString();
+	}
+
+	/***
+	 * Close the spill file and release the direct memory of the index and agent table. The store must not be used afterwards.
+	 * A temporary spill file is deleted.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.residents.clear();
+		this.records.close();
+		this.index.close();
+		this.agents.close();
+		this.spill.close();
+		if (this.temporary) {
+			this.spillFile.delete();
+		}
+	}
+
+	//////////////////////////////////////////
+	/////// METRICS //////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Get the number of relationship models currently held on the heap.
+	 * @return the number of relationship models currently held on the heap
+	 */
+	public int getResidentSize() {
+		return this.residents.size();
+	}
+
+	/***
+	 * Get the number of relationship models evicted from the heap so far.
+	 * @return the number of relationship models evicted so far
+	 */
+	public long getEvictions() {
+		return this.evictions;
+	}
+
+	/***
+	 * Get the number of evicted relationship models that had changed, and so were written to the spill file.
+	 * @return the number of relationship models written to the spill file so far
+	 */
+	public long getWriteBacks() {
+		return this.writeBacks;
+	}
+
+	/***
+	 * Get the number of relationship models reloaded from the spill file so far.
+	 * @return the number of relationship models reloaded so far
+	 */
+	public long getReloads() {
+		return this.reloads;
+	}
+
+	/***
+	 * Get the mean time taken to reload a relationship model from the spill file, in nanoseconds.
+	 * @return the mean reload latency in nanoseconds, or 0 if none has been reloaded
+	 */
+	public double getMeanReloadNanos() {
+		return (this.reloads == 0) ? 0 : (double) this.totalReloadNanos / this.reloads;
+	}
+
+	/***
+	 * Get the longest time taken to reload a relationship model from the spill file, in nanoseconds.
+	 * @return the longest reload latency in nanoseconds
+	 */
+	public long getMaxReloadNanos() {
+		return this.maxReloadNanos;
+	}
+
+	/***
+	 * Get the number of bytes of direct memory held by the index, which grows with the number of relationships
+	 * (16 bytes per slot, with at least twice as many slots as relationships) off the heap.
+	 * @return the number of bytes of direct memory held by the index
+	 */
+	public long getIndexBytes() {
+		return this.index.getBytes();
+	}
+
+	/***
+	 * Get a one-line summary of the metrics of this store.
+	 * @return a one-line summary of the metrics of this store
+	 */
+	public String getMetricsSummary() {
+		return "resident " + this.getResidentSize() + "/" + this.residentCapacity + " of " + this.size + " relationships, "
+				+ this.evictions + " evictions (" + this.writeBacks + " written back), "
+				+ this.reloads + " reloads (mean " + Math.round(this.getMeanReloadNanos()) + "ns, max " + this.maxReloadNanos + "ns)";
+	}
+
+	//////////////////////////////////////////
+	/////// PRIVATE HELPERS //////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Get the resident model of the relationship with the given key, reloading it if it is not resident, and mark it most recently used.
+	 * @param key
+	 * @return the resident model of the relationship, or null if the relationship is not modeled
+	 */
+	private Resident touch(long key) {
+		Resident resident = this.residents.get(key);
+		if (resident != null) {
+			return resident;
+		}
+		if (!this.locate(key)) {
+			return null;
+		}
+
+		long start = System.nanoTime();
+		long recordNumber = this.lastLocatedRecord;
+		Map<RelationshipType, Double> beliefs = new HashMap<RelationshipType, Double>();
+		for (RelationshipType relationshipType : RelationshipType.values()) {
+			beliefs.put(relationshipType, this.records.getDouble(recordNumber, BELIEFS_OFFSET + 8*relationshipType.ordinal()));
+		}
+		resident = new Resident(recordNumber, new SymmetricRelationshipModel(beliefs), this.records.getInt(recordNumber, UPDATE_COUNT_OFFSET),
+				this.records.getInt(recordNumber, LAST_UPDATE_AGE_OFFSET), false);
+		long reloadNanos = System.nanoTime() - start;
+		this.reloads ++;
+		this.totalReloadNanos += reloadNanos;
+		this.maxReloadNanos = Math.max(this.maxReloadNanos, reloadNanos);
+
+		this.residents.put(key, resident);
+		this.evictIfOverCapacity();
+		return resident;
+	}
+
+	/***
+	 * Evict least recently used models until no more than the resident capacity are resident.
+	 */
+	private void evictIfOverCapacity() {
+		Iterator<Resident> leastRecentlyUsed = this.residents.values().iterator();
+		while (this.residents.size() > this.residentCapacity) {
+			Resident resident = leastRecentlyUsed.next();
+			if (resident.changed) {
+				Map<RelationshipType, Double> beliefs = resident.relationship.getBeliefs();
+				for (RelationshipType relationshipType : RelationshipType.values()) {
+					this.records.putDouble(resident.recordNumber, BELIEFS_OFFSET + 8*relationshipType.ordinal(), beliefs.get(relationshipType));
+				}
+				this.records.putInt(resident.recordNumber, UPDATE_COUNT_OFFSET, resident.updateCount);
+				this.records.putInt(resident.recordNumber, LAST_UPDATE_AGE_OFFSET, resident.lastUpdateAge);
+				this.writeBacks ++;
+			}
+			leastRecentlyUsed.remove();
+			this.evictions ++;
+		}
+	}
+
+	/***
+	 * Give the relationship with the given key the next record, writing the key into the record and the index.
+	 * @param key
+	 * @return the number of the new record
+	 */
+	private long addRecord(long key) {
+		long recordNumber = this.size;
+		this.records.ensureCapacity(recordNumber + 1);
+		this.records.putLong(recordNumber, KEY_OFFSET, key);
+		if (2 * (this.size + 1) > this.indexCapacity) {
+			this.growIndex();
+		}
+		long slot = -1 - this.probe(key);
+		this.index.putLong(slot, KEY_OFFSET, key);
+		this.index.putLong(slot, RECORD_NUMBER_OFFSET, recordNumber);
+		this.size ++;
+		return recordNumber;
+	}
+
+	/***
+	 * Find the record of the relationship with the given key, and set lastLocatedRecord to its number.
+	 * @param key
+	 * @return true iff the relationship has a record
+	 */
+	private boolean locate(long key) {
+		if (key == EMPTY) {
+			return false;
+		}
+		long slot = this.probe(key);
+		if (slot < 0) {
+			return false;
+		}
+		this.lastLocatedRecord = this.index.getLong(slot, RECORD_NUMBER_OFFSET);
+		return true;
+	}
+
+	/***
+	 * Probe the index for the given key.
+	 * @param key
+	 * @return the slot holding the key if it is held, otherwise -1 minus the empty slot where it would be added
+	 */
+	private long probe(long key) {
+		long mask = this.indexCapacity - 1;
+		long slot = SpillingRelationshipStore.hash(key) & mask;
+		while (true) {
+			long slotKey = this.index.getLong(slot, KEY_OFFSET);
+			if (slotKey == key) {
+				return slot;
+			}
+			if (slotKey == EMPTY) {
+				return -1 - slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/***
+	 * Rebuild the index at twice the capacity, from the keys in the records.
+	 */
+	private void growIndex() {
+		this.index.close();
+		this.indexCapacity *= 2;
+		this.index = new ChunkedBuffer(INDEX_SLOT_SIZE, this.indexCapacity);
+		for (long recordNumber=0; recordNumber<this.size; recordNumber++) {
+			long key = this.records.getLong(recordNumber, KEY_OFFSET);
+			long slot = -1 - this.probe(key);
+			this.index.putLong(slot, KEY_OFFSET, key);
+			this.index.putLong(slot, RECORD_NUMBER_OFFSET, recordNumber);
+		}
+	}
+
+	/***
+	 * Get the key of the given relationship: the packed ids of its agents + 1.
+	 * @param relationship
+	 * @param addAgents true iff unknown agents should be given ids
+	 * @return the key of the given relationship, or EMPTY if an agent is unknown and addAgents is false
+	 */
+	private long getKey(Pair<String> relationship, boolean addAgents) {
+		Iterator<String> elements = relationship.getElements().iterator();
+		String a = elements.next();
+		String b = elements.hasNext() ? elements.next() : a;
+		int idA = addAgents ? this.agents.add(a) : this.agents.getId(a);
+		int idB = addAgents ? this.agents.add(b) : this.agents.getId(b);
+		if (idA < 0 || idB < 0) {
+			return EMPTY;
+		}
+		return (((long) Math.min(idA, idB) << 32) | Math.max(idA, idB)) + 1;
+	}
+
+	/***
+	 * Get the relationship with the given key.
+	 * @param key
+	 * @return the relationship with the given key
+	 */
+	private Pair<String> getRelationship(long key) {
+		long packedId = key - 1;
+		return new Pair<String>(this.agents.getName((int) (packedId >>> 32)), this.agents.getName((int) packedId));
+	}
+
+	/***
+	 * Mix the bits of the given key, so that packed ids of agents added in sequence spread over the index.
+	 * @param key
+	 * @return the hash of the given key
+	 */
+	private static long hash(long key) {
+		long h = key;
+		h ^= (h >>> 33);
+		h *= 0xff51afd7ed558ccdL;
+		h ^= (h >>> 33);
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= (h >>> 33);
+		return h;
+	}
+
+}
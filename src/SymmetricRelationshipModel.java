@@ -6,8 +6,14 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CancellationException;
 
 public class SymmetricRelationshipModel implements SymmetricRelationshipModelInterface {
+	/***
+	 * An emphasized update checks for interruption once per (INTERRUPTION_CHECK_MASK + 1) single updates.
+	 */
+	private static final int INTERRUPTION_CHECK_MASK = 0x3ff;
+	
 	/***
 	 * Maps each RelationshipType to the believed probability of that RelationshipType for this relationship.
 	 * Beliefs must sum to 1.
@@ -66,6 +72,14 @@ public class SymmetricRelationshipModel implements SymmetricRelationshipModelInt
 		this.beliefs = beliefs;
 	}
 	
+	/***
+	 * Creates new relationship model holding exactly the given beliefs, for example beliefs restored from a checkpoint.
+	 * @param beliefs map mapping each RelationshipType to the believed probability of that RelationshipType, summing to 1
+	 */
+	SymmetricRelationshipModel(Map<RelationshipType, Double> beliefs) {
+		this.beliefs = new HashMap<RelationshipType,Double>(beliefs);
+	}
+	
 	//////////////////////////////////////////
 	/////// OVERRIDE INTERFACE METHODS ///////
 	//////////////////////////////////////////
@@ -87,9 +101,20 @@ public class SymmetricRelationshipModel implements SymmetricRelationshipModelInt
 		assert isValid();
 	}
 	
+	/***
+	 * Update with the given actionKnowledge repeatedly, emphasis times. Because emphasis grows exponentially with the number
+	 * of updates of a relationship, the update is cancelled, by throwing a CancellationException, if the current thread is
+	 * interrupted; the beliefs are then left as they were before the update. The interruption is left set for the caller to see.
+	 * @throws CancellationException if the current thread is interrupted during the update
+	 */
 	@Override
 	public void update(ActionROD actionKnowledge, double emphasis) {
+		Map<RelationshipType, Double> previousBeliefs = (emphasis > INTERRUPTION_CHECK_MASK) ? this.getBeliefs() : null; //only updates this long can be cancelled
 		for (int i=0; i<emphasis; i++) {
+			if ((i & INTERRUPTION_CHECK_MASK) == INTERRUPTION_CHECK_MASK && Thread.currentThread().isInterrupted()) {
+				this.beliefs = previousBeliefs;
+				throw new CancellationException("Interrupted while updating a relationship.");
+			}
 			update(actionKnowledge);
 		}
 		assert isValid();
@@ -117,10 +142,20 @@ public class SymmetricRelationshipModel implements SymmetricRelationshipModelInt
 
 	@Override
 	public boolean isInformative() {
+		return this.isInformative(ModelParameters.DEFAULT_INFORMATIVENESS_THRESHOLD);
+	}
+	
+	/***
+	 * Returns true iff some belief of this SymmetricRelationshipModel exceeds the belief of having no information 
+	 * about the relationship by more than the given threshold.
+	 * @param threshold
+	 * @return
+	 */
+	public boolean isInformative(double threshold) {
 		boolean isInformative = false;
 		int numEntries = this.beliefs.size();
 		for (Double val : this.beliefs.values()) {
-			if ((val - 1./(double)numEntries) >.001) { //has opinion
+			if ((val - 1./(double)numEntries) > threshold) { //has opinion
 				isInformative = true;
 			}
 		}
@@ -178,5 +213,25 @@ public class SymmetricRelationshipModel implements SymmetricRelationshipModelInt
 	public Map<RelationshipType,Double> getBeliefs() {
 		return new HashMap<RelationshipType,Double>(this.beliefs);
 	}
+	
+	/***
+	 * Decay this relationship model toward the uninformed relationship model, retaining the given fraction of the evidence it holds.
+	 * The log-odds between any two RelationshipTypes are scaled by the retained fraction, so retaining 1 leaves the beliefs unchanged,
+	 * retaining 0 makes them uniform, and decaying by a then by b is the same as decaying by a*b.
+	 * @param retainedFraction the fraction of the evidence to retain, between 0 and 1
+	 */
+	public void decay(double retainedFraction) {
+		double totalProbability = 0;
+		for (Map.Entry<RelationshipType, Double> belief : this.beliefs.entrySet()) {
+			double currRelativeProbability = Math.pow(belief.getValue(), retainedFraction);
+			belief.setValue(currRelativeProbability);
+			totalProbability = totalProbability + currRelativeProbability;
+		}
+		
+		for (Map.Entry<RelationshipType, Double> belief : this.beliefs.entrySet()) {
+			//Normalize, so that probabilities sum to 1
+			belief.setValue( belief.getValue() / totalProbability);
+		}//done normalizing
+	}
 
 }
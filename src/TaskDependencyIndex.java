@@ -0,0 +1,101 @@
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/***
+ * A TaskDependencyIndex indexes which actions and names each Tricopa task mentions, and which tasks mention each action,
+ * so that the tasks affected by a change to the knowledge about some actions can be found without reading any task.
+ * @author pkalluri
+ *
+ */
+public class TaskDependencyIndex {
+
+	/***
+	 * The actions mentioned by each task, by task number.
+	 */
+	private final Map<Integer, SortedSet<String>> actionsByTask;
+
+	/***
+	 * The actors and actedUpons (agents or not) mentioned by each task, by task number.
+	 */
+	private final Map<Integer, SortedSet<String>> namesByTask;
+
+	/***
+	 * The numbers of the tasks mentioning each action.
+	 */
+	private final Map<String, SortedSet<Integer>> tasksByAction;
+
+	/***
+	 * Construct the TaskDependencyIndex of the given tricopaTasks.
+	 * @param tricopaTasks the numbered Tricopa tasks to index
+	 */
+	public TaskDependencyIndex(Map<Integer, TricopaTask> tricopaTasks) {
+		this.actionsByTask = new HashMap<Integer, SortedSet<String>>();
+		this.namesByTask = new HashMap<Integer, SortedSet<String>>();
+		this.tasksByAction = new HashMap<String, SortedSet<Integer>>();
+		for (Map.Entry<Integer, TricopaTask> numberedTricopaTask : tricopaTasks.entrySet()) {
+			int taskNumber = numberedTricopaTask.getKey();
+			TricopaTask tricopaTask = numberedTricopaTask.getValue();
+			SortedSet<String> actions = new TreeSet<String>();
+			SortedSet<String> names = new TreeSet<String>();
+			this.addScenario(tricopaTask.premise, actions, names);
+			for (Scenario choice : tricopaTask.possibleChoices) {
+				this.addScenario(choice, actions, names);
+			}
+			this.actionsByTask.put(taskNumber, Collections.unmodifiableSortedSet(actions));
+			this.namesByTask.put(taskNumber, Collections.unmodifiableSortedSet(names));
+			for (String action : actions) {
+				if (!this.tasksByAction.containsKey(action)) {
+					this.tasksByAction.put(action, new TreeSet<Integer>());
+				}
+				this.tasksByAction.get(action).add(taskNumber);
+			}
+		}
+	}
+
+	private void addScenario(Scenario scenario, SortedSet<String> actions, SortedSet<String> names) {
+		for (ActionEvent actionEvent : scenario.actionEvents) {
+			actions.add(actionEvent.action);
+			if (actionEvent.actor != null) { names.add(actionEvent.actor); }
+			if (actionEvent.actedUpon != null) { names.add(actionEvent.actedUpon); }
+		}
+	}
+
+	/***
+	 * Get the actions mentioned by the given task.
+	 * @param taskNumber
+	 * @return the actions mentioned by the given task, in sorted order
+	 */
+	public SortedSet<String> getActions(int taskNumber) {
+		return this.actionsByTask.get(taskNumber);
+	}
+
+	/***
+	 * Get the actors and actedUpons, whether agents or not, mentioned by the given task.
+	 * @param taskNumber
+	 * @return the names mentioned by the given task, in sorted order
+	 */
+	public SortedSet<String> getNames(int taskNumber) {
+		return this.namesByTask.get(taskNumber);
+	}
+
+	/***
+	 * Get the numbers of the tasks mentioning any of the given actions.
+	 * @param actions
+	 * @return the numbers of the affected tasks, in sorted order
+	 */
+	public SortedSet<Integer> getTasksAffectedBy(Collection<String> actions) {
+		SortedSet<Integer> affectedTasks = new TreeSet<Integer>();
+		for (String action : actions) {
+			SortedSet<Integer> tasks = this.tasksByAction.get(action);
+			if (tasks != null) {
+				affectedTasks.addAll(tasks);
+			}
+		}
+		return affectedTasks;
+	}
+
+}
@@ -0,0 +1,272 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * A TimeLimitedAdministrator administers TricopaTasks to several TricopaParticipants at once, one task per participant at a time,
+ * giving each task a time limit, so that a task that takes too long, e.g. because a relationship is updated so many times that
+ * the emphasis placed on its updates explodes, is cancelled and marked TIMED_OUT while the other tasks carry on.
+ *
+ * A task is cancelled by interrupting the thread doing it, so participants must check for interruption as they work,
+ * as AffinitybasedAgents do. Administering is structured: every task has finished or been cancelled, and every thread
+ * has stopped, by the time administerTricopaTasks returns.
+ *
+ * Choices can be reused from and kept in a TricopaResultCache, and results written to a TricopaResultWriter, as Simulation does;
+ * both are only used by the thread calling administerTricopaTasks, as it collects the results in task number order.
+ * @author pkalluri
+ *
+ */
+public class TimeLimitedAdministrator {
+
+	/***
+	 * How long to wait, after cancelling the tasks still running, for their threads to stop.
+	 */
+	private static final long SHUTDOWN_MILLIS = 10000;
+
+	private final List<? extends TricopaParticipant> participants;
+	private final long timeLimitMillis;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTOR //////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a new TimeLimitedAdministrator of the given participants, administering as many tasks at once as there are participants.
+	 * The participants should answer alike, e.g. AffinitybasedAgents with the same knowledge and characters.
+	 * @param participants the participants, each of which is only used by one thread at a time
+	 * @param timeLimitMillis the time allowed to do each task, in milliseconds
+	 */
+	public TimeLimitedAdministrator(List<? extends TricopaParticipant> participants, long timeLimitMillis) {
+		if (participants.isEmpty()) { throw new IllegalArgumentException("There must be at least one participant."); }
+		if (timeLimitMillis <= 0) { throw new IllegalArgumentException("The time limit must be positive."); }
+		this.participants = new ArrayList<TricopaParticipant>(participants);
+		this.timeLimitMillis = timeLimitMillis;
+	}
+
+	//////////////////////////////////////////
+	/////// ADMINISTERING ////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Administer the given tricopaTasks, assess performance against the true answers, and return the performance on each task.
+	 * @param tricopaTasks
+	 * @param answers
+	 * @return the performance on each task, by task number, in task number order
+	 * @throws InsufficientActionKnowledgeException the participants' knowledge was insufficient for a task; it is reported
+	 * for the first such task, after the other tasks have been done
+	 * @throws InterruptedException if interrupted while waiting for tasks, in which case every task still running is cancelled
+	 */
+	public Map<Integer, TricopaTaskPerformance> administerTricopaTasks(Map<Integer, TricopaTask> tricopaTasks, Map<Integer, Integer> answers)
+			throws InsufficientActionKnowledgeException, InterruptedException {
+		return this.administer(tricopaTasks, answers, null, null);
+	}
+
+	/***
+	 * Administer the given tricopaTasks as above, reusing the choices kept in the given cache for tasks nothing has changed for.
+	 * Choices made are kept in the cache; tasks that time out are not, so they are tried again next time.
+	 * @param tricopaTasks
+	 * @param answers
+	 * @param cache the cache of choices, or null to do every task; if there is one, the participants must be AffinitybasedAgents
+	 * @return the performance on each task, by task number, in task number order
+	 * @throws InsufficientActionKnowledgeException the participants' knowledge was insufficient for a task; it is reported
+	 * for the first such task, after the other tasks have been done
+	 * @throws InterruptedException if interrupted while waiting for tasks, in which case every task still running is cancelled
+	 */
+	public Map<Integer, TricopaTaskPerformance> administerTricopaTasks(Map<Integer, TricopaTask> tricopaTasks, Map<Integer, Integer> answers,
+			TricopaResultCache cache) throws InsufficientActionKnowledgeException, InterruptedException {
+		return this.administer(tricopaTasks, answers, cache, null);
+	}
+
+	/***
+	 * Administer the given tricopaTasks as above, but write the result of each task, including each task that timed out, to the given
+	 * writer in task number order instead of keeping it: only the number of tasks of each TricopaTaskPerformance is kept.
+	 * @param tricopaTasks
+	 * @param answers
+	 * @param cache the cache of choices, or null to do every task; if there is one, the participants must be AffinitybasedAgents
+	 * @param writer the writer of results, which is left open
+	 * @return the number of tasks of each TricopaTaskPerformance
+	 * @throws InsufficientActionKnowledgeException the participants' knowledge was insufficient for a task; it is reported
+	 * for the first such task, after the other tasks have been done
+	 * @throws InterruptedException if interrupted while waiting for tasks, in which case every task still running is cancelled
+	 * @throws IOException if a result could not be written, in which case every task still running is cancelled
+	 */
+	public Map<TricopaTaskPerformance, Integer> administerTricopaTasks(Map<Integer, TricopaTask> tricopaTasks, Map<Integer, Integer> answers,
+			TricopaResultCache cache, TricopaResultWriter writer) throws InsufficientActionKnowledgeException, InterruptedException, IOException {
+		CountingTricopaResultWriter countingWriter = new CountingTricopaResultWriter(writer);
+		try {
+			this.administer(tricopaTasks, answers, cache, countingWriter);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return countingWriter.getPerformanceCounts();
+	}
+
+	//////////////////////////////////////////
+	/////// PRIVATE HELPERS //////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Administer the given tricopaTasks, writing the result of each task to the given writer if there is one, and otherwise keeping it.
+	 * @return the performance on each task, in task number order, or null if results were written
+	 */
+	private Map<Integer, TricopaTaskPerformance> administer(Map<Integer, TricopaTask> tricopaTasks, final Map<Integer, Integer> answers,
+			TricopaResultCache cache, TricopaResultWriter writer) throws InsufficientActionKnowledgeException, InterruptedException {
+		if (cache != null && !(this.participants.get(0) instanceof AffinitybasedAgent)) {
+			throw new IllegalArgumentException("Only the choices of AffinitybasedAgents can be kept in a cache.");
+		}
+		TaskDependencyIndex index = (cache == null) ? null : new TaskDependencyIndex(tricopaTasks);
+		final BlockingQueue<TricopaParticipant> idleParticipants = new ArrayBlockingQueue<TricopaParticipant>(this.participants.size(), false, this.participants);
+		ExecutorService administrators = Executors.newFixedThreadPool(this.participants.size());
+		final ScheduledExecutorService timekeeper = Executors.newSingleThreadScheduledExecutor();
+		try {
+			Map<Integer, Future<TricopaTaskResult>> futures = new LinkedHashMap<Integer, Future<TricopaTaskResult>>();
+			Map<Integer, String> keys = new HashMap<Integer, String>(); //the keys of the tasks not found in the cache
+			for (Map.Entry<Integer, TricopaTask> numberedTricopaTask : new TreeMap<Integer, TricopaTask>(tricopaTasks).entrySet()) {
+				final int taskNumber = numberedTricopaTask.getKey();
+				final TricopaTask tricopaTask = numberedTricopaTask.getValue();
+				if (cache != null) {
+					long startNanos = System.nanoTime();
+					String key = cache.getKey(tricopaTask, index.getActions(taskNumber), index.getNames(taskNumber), (AffinitybasedAgent) this.participants.get(0));
+					Integer cachedChoice = cache.get(key);
+					if (cachedChoice != null) { //no scores are kept in the cache
+						TricopaTaskPerformance performance = (cachedChoice == TricopaResultCache.UNDECIDED) ? TricopaTaskPerformance.INCOMPLETE
+								: TimeLimitedAdministrator.getPerformance(cachedChoice, answers.get(taskNumber));
+						futures.put(taskNumber, CompletableFuture.completedFuture(
+								new TricopaTaskResult(taskNumber, cachedChoice, null, performance, System.nanoTime() - startNanos)));
+						continue;
+					}
+					keys.put(taskNumber, key);
+				}
+				futures.put(taskNumber, administrators.submit(new Callable<TricopaTaskResult>() {
+					@Override
+					public TricopaTaskResult call() throws InsufficientActionKnowledgeException, InterruptedException {
+						TricopaParticipant participant = idleParticipants.take();
+						try {
+							return TimeLimitedAdministrator.this.administer(participant, taskNumber, tricopaTask, answers.get(taskNumber), timekeeper);
+						} finally {
+							Thread.interrupted(); //clear an interruption that came as the task failed, so the participant is returned
+							idleParticipants.put(participant);
+						}
+					}
+				}));
+			}
+
+			Map<Integer, TricopaTaskPerformance> performanceOnTasks = (writer == null) ? new LinkedHashMap<Integer, TricopaTaskPerformance>() : null; //results written are not kept
+			InsufficientActionKnowledgeException insufficientKnowledge = null;
+			Iterator<Map.Entry<Integer, Future<TricopaTaskResult>>> futureIterator = futures.entrySet().iterator();
+			while (futureIterator.hasNext()) {
+				Map.Entry<Integer, Future<TricopaTaskResult>> future = futureIterator.next();
+				TricopaTaskResult result;
+				try {
+					result = future.getValue().get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof InsufficientActionKnowledgeException) {
+						if (insufficientKnowledge == null) {
+							insufficientKnowledge = (InsufficientActionKnowledgeException) e.getCause();
+						}
+						continue;
+					} else {
+						throw new IllegalStateException("Administering task " + future.getKey() + " failed unexpectedly.", e.getCause());
+					}
+				}
+				futureIterator.remove(); //the result is not kept once collected
+				String key = keys.remove(future.getKey());
+				if (key != null && result.performance != TricopaTaskPerformance.TIMED_OUT) {
+					cache.put(key, result.choice); //UNDECIDED if incomplete
+				}
+				if (writer == null) {
+					performanceOnTasks.put(result.taskNumber, result.performance);
+				} else {
+					try {
+						writer.write(result);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+			}
+			if (insufficientKnowledge != null) {
+				throw insufficientKnowledge;
+			}
+			return performanceOnTasks;
+		} finally {
+			administrators.shutdownNow();
+			timekeeper.shutdownNow();
+			administrators.awaitTermination(SHUTDOWN_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/***
+	 * Have the given participant do the given task in the current thread, interrupting the thread if the time limit passes first.
+	 * The thread is left uninterrupted afterwards, ready for the next task.
+	 * @return the result of the task, which has no choice or scores if it timed out
+	 */
+	private TricopaTaskResult administer(TricopaParticipant participant, int taskNumber, TricopaTask tricopaTask, int answer, ScheduledExecutorService timekeeper)
+			throws InsufficientActionKnowledgeException {
+		long startNanos = System.nanoTime();
+		final Thread worker = Thread.currentThread();
+		final Object lock = new Object();
+		final boolean[] state = new boolean[2]; //{done, timed out}, guarded by lock
+		ScheduledFuture<?> alarm = timekeeper.schedule(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (lock) {
+					if (!state[0]) {
+						state[1] = true;
+						worker.interrupt();
+					}
+				}
+			}
+		}, this.timeLimitMillis, TimeUnit.MILLISECONDS);
+
+		int chosen = TricopaTaskResult.UNDECIDED;
+		TricopaTaskPerformance performance;
+		try {
+			chosen = participant.doTricopaTask(tricopaTask);
+			performance = TimeLimitedAdministrator.getPerformance(chosen, answer);
+		} catch (UndecidedAgentException e) {
+			performance = TricopaTaskPerformance.INCOMPLETE;
+		} catch (CancellationException e) {
+			performance = TricopaTaskPerformance.TIMED_OUT;
+		} finally {
+			alarm.cancel(false);
+			synchronized (lock) {
+				state[0] = true; //no interruption after this
+			}
+		}
+		boolean timedOut;
+		synchronized (lock) {
+			timedOut = state[1];
+		}
+		if (timedOut) {
+			Thread.interrupted(); //clear the interruption meant for this task
+			return new TricopaTaskResult(taskNumber, TricopaTaskResult.UNDECIDED, null, TricopaTaskPerformance.TIMED_OUT, System.nanoTime() - startNanos);
+		}
+		return new TricopaTaskResult(taskNumber, chosen, participant.getLastChoiceScores(), performance, System.nanoTime() - startNanos);
+	}
+
+	/***
+	 * Get the performance on a task in which the given choice was made.
+	 */
+	private static TricopaTaskPerformance getPerformance(int chosen, int answer) {
+		return (chosen == answer) ? TricopaTaskPerformance.CORRECT : TricopaTaskPerformance.INCORRECT;
+	}
+
+}
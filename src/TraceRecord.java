@@ -0,0 +1,176 @@
+import java.util.Map;
+
+/***
+ * A TraceRecord records one step of an agent's reading or choosing, as typed data rather than text,
+ * so that tracing costs little more than allocating the record and text is only formatted by a TraceSink that wants it.
+ *
+ * Records hold references to the agent's ActionEvents, ActionRODs and Pairs, which are never modified once created,
+ * and to copies of beliefs, so a record may be handled on another thread after the agent moves on.
+ * @author pkalluri
+ *
+ */
+public abstract class TraceRecord {
+
+	private TraceRecord() {
+	}
+
+	//////////////////////////////////////////
+	/////// READING //////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * The agent started tracing a world model; the BeliefsChanged records that follow, if any, describe the relationships
+	 * the world model already held.
+	 */
+	public static final class WorldModelStarted extends TraceRecord {
+		public WorldModelStarted() {
+		}
+	}
+
+	/***
+	 * The agent started reading a scenario.
+	 */
+	public static final class ReadingStarted extends TraceRecord {
+		public ReadingStarted() {
+		}
+	}
+
+	/***
+	 * The beliefs about a relationship were created or changed.
+	 */
+	public static final class BeliefsChanged extends TraceRecord {
+		public final Pair<String> relationship;
+		public final Map<RelationshipType, Double> beliefs;
+		public final int age;
+
+		public BeliefsChanged(Pair<String> relationship, Map<RelationshipType, Double> beliefs, int age) {
+			this.relationship = relationship;
+			this.beliefs = beliefs;
+			this.age = age;
+		}
+	}
+
+	/***
+	 * The agent read an ActionEvent. The beliefs it touched were recorded by the BeliefsChanged records just before this record.
+	 */
+	public static final class ActionEventRead extends TraceRecord {
+		public final ActionEvent actionEvent;
+		public final ActionROD actionKnowledge;
+		/***
+		 * The ActionEvent with 2 agents, or null if it could not be filled.
+		 */
+		public final ActionEvent fullActionEvent;
+		/***
+		 * The relationship the reading focuses on, or null if it has no focus.
+		 */
+		public final Pair<String> focus;
+
+		public ActionEventRead(ActionEvent actionEvent, ActionROD actionKnowledge, ActionEvent fullActionEvent, Pair<String> focus) {
+			this.actionEvent = actionEvent;
+			this.actionKnowledge = actionKnowledge;
+			this.fullActionEvent = fullActionEvent;
+			this.focus = focus;
+		}
+	}
+
+	/***
+	 * The agent reflected on the world model it read, finishing the reading.
+	 */
+	public static final class ReadingFinished extends TraceRecord {
+		/***
+		 * The relationship the reading focuses on, or null if it has no focus.
+		 */
+		public final Pair<String> focus;
+
+		public ReadingFinished(Pair<String> focus) {
+			this.focus = focus;
+		}
+	}
+
+	//////////////////////////////////////////
+	/////// CHOOSING /////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * The agent started considering a possible choice.
+	 */
+	public static final class ChoiceStarted extends TraceRecord {
+		public ChoiceStarted() {
+		}
+	}
+
+	/***
+	 * The agent scored a possible ActionEvent of the choice it is considering.
+	 */
+	public static final class PossibleEventScored extends TraceRecord {
+		public final ActionEvent actionEvent;
+		public final ActionROD actionKnowledge;
+		/***
+		 * The probability of the ActionEvent, or NaN if it could not be filled.
+		 */
+		public final double probability;
+
+		public PossibleEventScored(ActionEvent actionEvent, ActionROD actionKnowledge, double probability) {
+			this.actionEvent = actionEvent;
+			this.actionKnowledge = actionKnowledge;
+			this.probability = probability;
+		}
+	}
+
+	/***
+	 * The agent finished scoring the choice it is considering.
+	 */
+	public static final class ChoiceScored extends TraceRecord {
+		/***
+		 * The number of missing ActionEvents assumed to have the normalizing probability,
+		 * to compare the choice to the longest choice.
+		 */
+		public final int numberOfNormalizingEvents;
+		public final double normalizingProbability;
+		/***
+		 * The normalized probability of the choice.
+		 */
+		public final double probability;
+
+		public ChoiceScored(int numberOfNormalizingEvents, double normalizingProbability, double probability) {
+			this.numberOfNormalizingEvents = numberOfNormalizingEvents;
+			this.normalizingProbability = normalizingProbability;
+			this.probability = probability;
+		}
+	}
+
+	/***
+	 * The agent stopped scoring the choice it is considering, because the choice can no longer beat the best choice so far.
+	 * The agent still reads the rest of the choice into its memory, but scores none of its ActionEvents.
+	 */
+	public static final class ChoicePruned extends TraceRecord {
+		/***
+		 * The probability of the ActionEvents scored so far, which bounds the normalized probability of the choice from above.
+		 */
+		public final double bound;
+
+		public ChoicePruned(double bound) {
+			this.bound = bound;
+		}
+	}
+
+	/***
+	 * The agent was unable to decide between the choices.
+	 */
+	public static final class Undecided extends TraceRecord {
+		public Undecided() {
+		}
+	}
+
+	/***
+	 * The agent chose a choice.
+	 */
+	public static final class ChoiceMade extends TraceRecord {
+		public final int choiceNumber;
+
+		public ChoiceMade(int choiceNumber) {
+			this.choiceNumber = choiceNumber;
+		}
+	}
+
+}
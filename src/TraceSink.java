@@ -0,0 +1,19 @@
+/***
+ * A TraceSink receives the TraceRecords of an agent, in the order the agent emits them.
+ * @author pkalluri
+ *
+ */
+public interface TraceSink {
+
+	/***
+	 * Receive the given record.
+	 * @param record
+	 */
+	public void accept(TraceRecord record);
+
+	/***
+	 * Return once every record received so far has been handled, e.g. written out.
+	 */
+	public void flush();
+
+}
@@ -14,4 +14,13 @@ public interface TricopaParticipant {
 	 * @throws InsufficientActionKnowledgeException the agent had insufficient knowledge to decide
 	 */
 	public int doTricopaTask(TricopaTask tricopaTask) throws InsufficientActionKnowledgeException, UndecidedAgentException;
+	
+	/***
+	 * Get the score of each choice of the tricopaTask last done, e.g. to report alongside the choice made.
+	 * Choices not scored completely, e.g. those left once the participant was undecided, are given NaN.
+	 * @return the score of each choice of the last tricopaTask, in order, or null if this participant does not score choices
+	 */
+	public default double[] getLastChoiceScores() {
+		return null;
+	}
 }
@@ -0,0 +1,265 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/***
+ * A TricopaResultCache keeps the choices AffinitybasedAgents made in Tricopa tasks in a file, so that a task need only be
+ * done again when something it depends on has changed.
+ *
+ * A choice is kept under the hash of everything that determines it: the ActionEvents of the task, which of the names in
+ * the task are characters, the relative observation distributions of exactly the actions the task mentions, and the
+ * parameters by which beliefs are revised. Editing the knowledge about some actions therefore only misses the cache for the
+ * tasks mentioning those actions, and choices made with earlier knowledge stay in the cache in case the edit is undone.
+ *
+ * The file also records the knowledge it was last saved with, so that the actions changed since can be reported.
+ * @author pkalluri
+ *
+ */
+public class TricopaResultCache {
+
+	/***
+	 * The choice kept for a task in which the agent was undecided.
+	 */
+	public static final int UNDECIDED = 0;
+
+	private static final int FORMAT_VERSION = 1;
+
+	private final String filename;
+
+	/***
+	 * The choice made in each task, by key.
+	 */
+	private final Map<String, Integer> choices;
+
+	/***
+	 * The relative observation distribution of each action when the cache was last saved, in RelationshipType order.
+	 */
+	private final Map<String, List<Object>> savedKnowledge;
+
+	private int numHits;
+	private int numMisses;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTOR //////////////////////
+	//////////////////////////////////////////
+
+	private TricopaResultCache(String filename, Map<String, Integer> choices, Map<String, List<Object>> savedKnowledge) {
+		this.filename = filename;
+		this.choices = choices;
+		this.savedKnowledge = savedKnowledge;
+		this.numHits = 0;
+		this.numMisses = 0;
+	}
+
+	/***
+	 * Open the cache in the indicated file, which is empty if the file does not exist.
+	 * @param filename the name of the cache file
+	 * @return the cache in the indicated file
+	 * @throws IOException the file exists but could not be read as a cache
+	 */
+	@SuppressWarnings("unchecked")
+	public static TricopaResultCache open(String filename) throws IOException {
+		Map<String, Integer> choices = new HashMap<String, Integer>();
+		Map<String, List<Object>> savedKnowledge = new HashMap<String, List<Object>>();
+		File file = new File(filename);
+		if (file.exists()) {
+			try {
+				Map<String, Object> contents = JsonUtility.parseObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+				if (!Double.valueOf(FORMAT_VERSION).equals(contents.get("format"))) {
+					throw new IOException(filename + " is not a result cache of a supported version.");
+				}
+				for (Map.Entry<String, Object> choice : ((Map<String, Object>) contents.get("choices")).entrySet()) {
+					choices.put(choice.getKey(), ((Number) choice.getValue()).intValue());
+				}
+				for (Map.Entry<String, Object> rod : ((Map<String, Object>) contents.get("knowledge")).entrySet()) {
+					savedKnowledge.put(rod.getKey(), (List<Object>) rod.getValue());
+				}
+			} catch (MalformedJsonException | ClassCastException | NullPointerException e) {
+				throw new IOException(filename + " is not a result cache.", e);
+			}
+		}
+		return new TricopaResultCache(filename, choices, savedKnowledge);
+	}
+
+	//////////////////////////////////////////
+	/////// KEYS /////////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Get the key under which the choice the given agent makes in the given task is kept.
+	 * @param tricopaTask
+	 * @param actions the actions the task mentions
+	 * @param names the actors and actedUpons the task mentions
+	 * @param agent
+	 * @return the key of the task
+	 */
+	public String getKey(TricopaTask tricopaTask, Collection<String> actions, Collection<String> names, AffinitybasedAgent agent) {
+		Map<String, Object> content = new LinkedHashMap<String, Object>();
+		content.put("premise", TricopaResultCache.getContent(tricopaTask.premise));
+		List<Object> possibleChoices = new ArrayList<Object>();
+		for (Scenario choice : tricopaTask.possibleChoices) {
+			possibleChoices.add(TricopaResultCache.getContent(choice));
+		}
+		content.put("choices", possibleChoices);
+
+		Set<String> characters = new TreeSet<String>();
+		for (String name : names) {
+			if (agent.getCharacters().contains(name)) {
+				characters.add(name);
+			}
+		}
+		content.put("characters", new ArrayList<String>(characters));
+
+		Map<String, Object> knowledge = new TreeMap<String, Object>();
+		for (String action : actions) {
+			knowledge.put(action, TricopaResultCache.getContent(agent.getActionKnowledgebase().get(action)));
+		}
+		content.put("knowledge", knowledge);
+
+		ModelParameters parameters = agent.getParameters();
+		content.put("parameters", Arrays.asList(parameters.getEmphasisBase(), parameters.getDefaultOrderingString(), parameters.getInformativenessThreshold()));
+
+		return TricopaResultCache.hash(JsonUtility.toJson(content));
+	}
+
+	//////////////////////////////////////////
+	/////// CACHING //////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Get the choice kept under the given key.
+	 * @param key
+	 * @return the number of the choice, UNDECIDED, or null if no choice is kept under the key
+	 */
+	public Integer get(String key) {
+		Integer choice = this.choices.get(key);
+		if (choice == null) {
+			this.numMisses ++;
+		} else {
+			this.numHits ++;
+		}
+		return choice;
+	}
+
+	/***
+	 * Keep the given choice under the given key.
+	 * @param key
+	 * @param choice the number of the choice, or UNDECIDED
+	 */
+	public void put(String key, int choice) {
+		this.choices.put(key, choice);
+	}
+
+	public int getNumberOfHits() {
+		return this.numHits;
+	}
+
+	public int getNumberOfMisses() {
+		return this.numMisses;
+	}
+
+	/***
+	 * Get the actions whose knowledge differs in the given knowledge base from the knowledge the cache was last saved with,
+	 * including actions added or removed.
+	 * @param actionKnowledgebase
+	 * @return the changed actions, in sorted order, or all actions if the cache has never been saved
+	 */
+	public Set<String> getChangedActions(Map<String, ActionROD> actionKnowledgebase) {
+		Set<String> changedActions = new TreeSet<String>();
+		for (Map.Entry<String, ActionROD> actionKnowledge : actionKnowledgebase.entrySet()) {
+			List<Object> rod = TricopaResultCache.getContent(actionKnowledge.getValue());
+			if (!rod.equals(this.savedKnowledge.get(actionKnowledge.getKey()))) {
+				changedActions.add(actionKnowledge.getKey());
+			}
+		}
+		for (String action : this.savedKnowledge.keySet()) {
+			if (!actionKnowledgebase.containsKey(action)) {
+				changedActions.add(action);
+			}
+		}
+		return changedActions;
+	}
+
+	/***
+	 * Save the cache to its file, recording the given knowledge base as the knowledge it was last saved with.
+	 * @param actionKnowledgebase
+	 * @throws IOException
+	 */
+	public void save(Map<String, ActionROD> actionKnowledgebase) throws IOException {
+		this.savedKnowledge.clear();
+		for (Map.Entry<String, ActionROD> actionKnowledge : actionKnowledgebase.entrySet()) {
+			this.savedKnowledge.put(actionKnowledge.getKey(), TricopaResultCache.getContent(actionKnowledge.getValue()));
+		}
+
+		Map<String, Object> contents = new LinkedHashMap<String, Object>();
+		contents.put("format", FORMAT_VERSION);
+		contents.put("choices", new TreeMap<String, Integer>(this.choices));
+		contents.put("knowledge", new TreeMap<String, List<Object>>(this.savedKnowledge));
+
+		File file = new File(this.filename);
+		File temporaryFile = new File(this.filename + ".tmp");
+		try (Writer out = Files.newBufferedWriter(temporaryFile.toPath(), StandardCharsets.UTF_8)) {
+			out.write(JsonUtility.toJson(contents));
+			out.write('\n');
+		}
+		Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	//////////////////////////////////////////
+	/////// PRIVATE HELPERS //////////////////
+	//////////////////////////////////////////
+
+	private static List<Object> getContent(Scenario scenario) {
+		List<Object> actionEvents = new ArrayList<Object>();
+		for (ActionEvent actionEvent : scenario.actionEvents) {
+			actionEvents.add(Arrays.asList(actionEvent.actor, actionEvent.action, actionEvent.actedUpon));
+		}
+		return actionEvents;
+	}
+
+	/***
+	 * Get the relative observation distribution of the given action knowledge in RelationshipType order,
+	 * as the Doubles read back from a saved cache.
+	 * @param actionKnowledge
+	 * @return the relative observation distribution, or null if there is no knowledge
+	 */
+	private static List<Object> getContent(ActionROD actionKnowledge) {
+		if (actionKnowledge == null) {
+			return null;
+		}
+		List<Object> rod = new ArrayList<Object>();
+		for (RelationshipType relationshipType : RelationshipType.values()) {
+			rod.add(Double.valueOf(JsonUtility.toJson(actionKnowledge.getRelativeProbabilityGiven(relationshipType))));
+		}
+		return rod;
+	}
+
+	private static String hash(String content) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest) {
+				hex.append(String.format("%02x", b & 0xff));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available.", e);
+		}
+	}
+
+}
@@ -0,0 +1,19 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/***
+ * A TricopaResultWriter writes the result of each TricopaTask as the task is done, so results of any number of tasks
+ * can be reported without keeping them in memory.
+ * @author pkalluri
+ *
+ */
+public interface TricopaResultWriter extends Closeable {
+
+	/***
+	 * Write the given result.
+	 * @param result
+	 * @throws IOException
+	 */
+	public void write(TricopaTaskResult result) throws IOException;
+
+}
@@ -1,6 +1,6 @@
 
 /***
- * The TricopaTaskPerformance enum describes the possible types of performance on TricopaTasks: Correct, Incorrect, and Incomplete.
+ * The TricopaTaskPerformance enum describes the possible types of performance on TricopaTasks: Correct, Incorrect, Incomplete, and Timed out.
  * @author pkalluri
  *
  */
@@ -19,6 +19,11 @@ public enum TricopaTaskPerformance {
 	/***
 	 * The task was not responded to, so was left incomplete.
 	 */
-	INCOMPLETE
+	INCOMPLETE,
+	
+	/***
+	 * The task was cancelled because it was not responded to in the time allowed.
+	 */
+	TIMED_OUT
 
 }
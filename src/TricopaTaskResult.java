@@ -0,0 +1,49 @@
+/***
+ * A TricopaTaskResult describes how a TricopaParticipant did a single TricopaTask.
+ * @author pkalluri
+ *
+ */
+public class TricopaTaskResult {
+
+	/***
+	 * The choice of a participant that was undecided.
+	 */
+	public static final int UNDECIDED = 0;
+
+	public final int taskNumber;
+
+	/***
+	 * The number of the choice made, or UNDECIDED.
+	 */
+	public final int choice;
+
+	/***
+	 * The score of each choice, in order, with NaN for choices not scored completely, or null if no scores are known,
+	 * e.g. because the choice was reused from a TricopaResultCache.
+	 */
+	public final double[] scores;
+
+	public final TricopaTaskPerformance performance;
+
+	/***
+	 * The time taken to do the task, in nanoseconds.
+	 */
+	public final long nanos;
+
+	/***
+	 * Construct a new TricopaTaskResult.
+	 * @param taskNumber
+	 * @param choice the number of the choice made, or UNDECIDED
+	 * @param scores the score of each choice, or null if no scores are known
+	 * @param performance
+	 * @param nanos the time taken to do the task, in nanoseconds
+	 */
+	public TricopaTaskResult(int taskNumber, int choice, double[] scores, TricopaTaskPerformance performance, long nanos) {
+		this.taskNumber = taskNumber;
+		this.choice = choice;
+		this.scores = scores;
+		this.performance = performance;
+		this.nanos = nanos;
+	}
+
+}
@@ -0,0 +1,205 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/***
+ * A WindowedRelationshipModel holds the beliefs about a relationship given only the last few ActionEvents of that relationship:
+ * the beliefs an uninformed SymmetricRelationshipModel would hold had it observed just the ActionEvents in the window, with the same
+ * emphasis rule (the j-th ActionEvent in the window, counting from 0, is applied b^j times, where b is the emphasis base).
+ * For an emphasis base that is not a whole number, the repeated updates of a SymmetricRelationshipModel round b^j up, while the window
+ * weighs each ActionEvent by exactly b^j.
+ *
+ * In log space those beliefs are the uniform prior plus the sum over the window of b^j times the log-likelihoods of each ActionEvent.
+ * Such weighted sums combine associatively -- a window A followed by a window B sums to sum(A) + b^|A| sum(B) -- so the window slides in
+ * O(1) amortized time per ActionEvent by two-stack aggregation: new ActionEvents are pushed onto a back stack with a running sum,
+ * and old ActionEvents are popped from a front stack that holds, for each of its ActionEvents, the sum from that ActionEvent through
+ * the newest ActionEvent on the front stack. When the front stack is empty, the back stack is moved onto it.
+ * @author pkalluri
+ *
+ */
+public class WindowedRelationshipModel {
+
+	/***
+	 * The largest window, beyond which the default emphasis 2^j would overflow a double.
+	 */
+	public static final int MAXIMUM_WINDOW_SIZE = 1000;
+
+	private static final int NUM_TYPES = RelationshipType.values().length;
+	private static final int INITIAL_CAPACITY = 4;
+
+	/***
+	 * The number of ActionEvents in a full window.
+	 */
+	private final int windowSize;
+
+	/***
+	 * The base of the emphasis placed on successive ActionEvents in the window.
+	 */
+	private final double emphasisBase;
+
+	/***
+	 * The log-likelihoods of the ActionEvents on the back stack, oldest first, and their weighted sum.
+	 * The stacks grow as needed up to the window size, so that relationships with few ActionEvents stay small.
+	 */
+	private double[][] back;
+	private int backSize;
+	private final double[] backSum;
+
+	/***
+	 * The weighted sums held by the front stack: front[i] is the sum from the ActionEvent at i through the ActionEvent at 0,
+	 * so the oldest ActionEvent is at frontSize-1.
+	 */
+	private double[][] front;
+	private int frontSize;
+
+	//////////////////////////////////////////
+	/////// CONSTRUCTOR //////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Construct a new WindowedRelationshipModel with an empty window and the default emphasis base.
+	 * @param windowSize the number of ActionEvents in a full window
+	 */
+	public WindowedRelationshipModel(int windowSize) {
+		this(windowSize, ModelParameters.DEFAULT_EMPHASIS_BASE);
+	}
+
+	/***
+	 * Construct a new WindowedRelationshipModel with an empty window.
+	 * @param windowSize the number of ActionEvents in a full window, at most getMaximumWindowSize(emphasisBase)
+	 * @param emphasisBase the base of the emphasis placed on successive ActionEvents in the window, e.g. that of the world model's ModelParameters
+	 */
+	public WindowedRelationshipModel(int windowSize, double emphasisBase) {
+		if (windowSize <= 0 || windowSize > WindowedRelationshipModel.getMaximumWindowSize(emphasisBase)) {
+			throw new IllegalArgumentException("The window size must be between 1 and " + WindowedRelationshipModel.getMaximumWindowSize(emphasisBase) + ".");
+		}
+		this.windowSize = windowSize;
+		this.emphasisBase = emphasisBase;
+		this.back = new double[Math.min(windowSize, INITIAL_CAPACITY)][NUM_TYPES];
+		this.backSize = 0;
+		this.backSum = new double[NUM_TYPES];
+		this.front = new double[0][NUM_TYPES];
+		this.frontSize = 0;
+	}
+
+	//////////////////////////////////////////
+	/////// UPDATING /////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Add an ActionEvent of the relationship, assuming the given actionKnowledge, dropping the oldest ActionEvent if the window is full.
+	 * @param actionKnowledge the ActionKnowledge about the action being completed
+	 */
+	public void update(ActionROD actionKnowledge) {
+		if (this.getNumberOfActionEvents() == this.windowSize) {
+			this.removeOldest();
+		}
+		if (this.backSize == this.back.length) {
+			this.back = WindowedRelationshipModel.grow(this.back, Math.min(2*this.back.length, this.windowSize));
+		}
+		double[] logLikelihoods = this.back[this.backSize];
+		double emphasis = Math.pow(this.emphasisBase, this.backSize);
+		for (RelationshipType relationshipType : RelationshipType.values()) {
+			int i = relationshipType.ordinal();
+			logLikelihoods[i] = Math.log(actionKnowledge.getRelativeProbabilityGiven(relationshipType));
+			this.backSum[i] += emphasis * logLikelihoods[i];
+		}
+		this.backSize ++;
+	}
+
+	/***
+	 * Drop the oldest ActionEvent in the window.
+	 */
+	private void removeOldest() {
+		if (this.frontSize == 0) { //move the back stack onto the front stack, newest first
+			if (this.front.length < this.backSize) {
+				this.front = WindowedRelationshipModel.grow(this.front, this.back.length);
+			}
+			for (int b=this.backSize-1; b>=0; b--) {
+				double[] sum = this.front[this.frontSize];
+				for (int i=0; i<NUM_TYPES; i++) {
+					//this ActionEvent, followed by the frontSize newer ActionEvents already moved
+					sum[i] = this.back[b][i] + ((this.frontSize == 0) ? 0 : this.emphasisBase * this.front[this.frontSize-1][i]);
+				}
+				this.frontSize ++;
+			}
+			this.backSize = 0;
+			Arrays.fill(this.backSum, 0);
+		}
+		this.frontSize --;
+	}
+
+	/***
+	 * Get the largest window for the given emphasis base, beyond which the emphasis b^j would overflow a double.
+	 * @param emphasisBase
+	 * @return the largest window for the given emphasis base, at most MAXIMUM_WINDOW_SIZE
+	 */
+	public static int getMaximumWindowSize(double emphasisBase) {
+		if (emphasisBase <= 2) {
+			return MAXIMUM_WINDOW_SIZE;
+		}
+		return (int) Math.min(MAXIMUM_WINDOW_SIZE, Math.floor(MAXIMUM_WINDOW_SIZE * Math.log(2) / Math.log(emphasisBase)));
+	}
+
+	/***
+	 * Get a copy of the given stack with the given capacity.
+	 * @param stack
+	 * @param capacity
+	 * @return a copy of the given stack with the given capacity
+	 */
+	private static double[][] grow(double[][] stack, int capacity) {
+		double[][] grownStack = Arrays.copyOf(stack, capacity);
+		for (int i=stack.length; i<capacity; i++) {
+			grownStack[i] = new double[NUM_TYPES];
+		}
+		return grownStack;
+	}
+
+	//////////////////////////////////////////
+	/////// QUERYING /////////////////////////
+	//////////////////////////////////////////
+
+	/***
+	 * Get the number of ActionEvents in the window.
+	 * @return the number of ActionEvents in the window
+	 */
+	public int getNumberOfActionEvents() {
+		return this.frontSize + this.backSize;
+	}
+
+	/***
+	 * Get the beliefs given the ActionEvents in the window as a map mapping possible RelationshipTypes to believed probability of the RelationshipTypes.
+	 * @return the beliefs given the ActionEvents in the window
+	 */
+	public Map<RelationshipType, Double> getBeliefs() {
+		double[] logBeliefs = new double[NUM_TYPES];
+		double frontEmphasis = Math.pow(this.emphasisBase, this.frontSize);
+		double maxLogBelief = Double.NEGATIVE_INFINITY;
+		for (int i=0; i<NUM_TYPES; i++) {
+			double frontSum = (this.frontSize == 0) ? 0 : this.front[this.frontSize-1][i];
+			logBeliefs[i] = frontSum + frontEmphasis * this.backSum[i];
+			maxLogBelief = Math.max(maxLogBelief, logBeliefs[i]);
+		}
+
+		double totalProbability = 0;
+		for (int i=0; i<NUM_TYPES; i++) {
+			logBeliefs[i] = Math.exp(logBeliefs[i] - maxLogBelief);
+			totalProbability += logBeliefs[i];
+		}
+		Map<RelationshipType, Double> beliefs = new HashMap<RelationshipType, Double>();
+		for (RelationshipType relationshipType : RelationshipType.values()) {
+			beliefs.put(relationshipType, logBeliefs[relationshipType.ordinal()] / totalProbability);
+		}
+		return beliefs;
+	}
+
+	/***
+	 * Get a SymmetricRelationshipModel holding the beliefs given the ActionEvents in the window,
+	 * for example to get the probability of an ActionEvent given only recent ActionEvents.
+	 * @return a SymmetricRelationshipModel holding the beliefs given the ActionEvents in the window
+	 */
+	public SymmetricRelationshipModel toRelationshipModel() {
+		return new SymmetricRelationshipModel(this.getBeliefs());
+	}
+
+}
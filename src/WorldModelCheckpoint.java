@@ -0,0 +1,257 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/***
+ * A WorldModelCheckpoint is a snapshot of an agent's reading state: its AffinitybasedWorldModel, its
+ * RecentlyObservedAgentsMemory, and how far into its ActionEventLog it had read.
+ *
+ * Checkpoints are written as a stream into a versioned binary file and are restored by streaming that file back in, so their size is not limited.
+ * The file format (big-endian) is:
+ * <pre>
+ * int     magic number
+ * short   format version
+ * byte    flags (history included, beliefs reflected on, world model projected, world model storing history)
+ * byte    belief storage (the ordinal of the world model's BeliefStorage)
+ * long    position in the ActionEventLog
+ * long    number of ActionEvents read
+ * ...     world model (see AffinitybasedWorldModel.writeTo)
+ * String  second to last observed agent
+ * String  last observed agent
+ * </pre>
+ * Strings are written as an int length followed by UTF-8 bytes, with length -1 denoting null.
+ * Version 1 checkpoints, which have no belief storage byte, are restored into world models storing their beliefs and history on the heap.
+ * @author pkalluri
+ *
+ */
+public class WorldModelCheckpoint {
+
+	private static final int MAGIC_NUMBER = 0x4146574D; //"AFWM"
+	private static final short FORMAT_VERSION = 2;
+	private static final byte HISTORY_FLAG = 1;
+	private static final byte REFLECTED_FLAG = 2;
+	private static final byte PROJECTED_FLAG = 4;
+	private static final byte STORING_HISTORY_FLAG = 8;
+
+	/***
+	 * The checkpointed world model.
+	 */
+	public final AffinitybasedWorldModel worldModel;
+
+	/***
+	 * The checkpointed memory of recently observed agents.
+	 */
+	public final RecentlyObservedAgentsMemory memory;
+
+	/***
+	 * The position in the ActionEventLog of the first ActionEvent not reflected in this checkpoint.
+	 */
+	public final long eventLogPosition;
+
+	/***
+	 * The number of ActionEvents of the current reading reflected in this checkpoint.
+	 */
+	public final long numEventsRead;
+
+	/***
+	 * True iff the world model had already been reflected on, i.e. the reading was finished.
+	 */
+	public final boolean reflected;
+
+	////////////////////////////////////////////////////////////
+	//////// CONSTRUCTOR ///////////////////////////////////////
+	////////////////////////////////////////////////////////////
+
+	private WorldModelCheckpoint(AffinitybasedWorldModel worldModel, RecentlyObservedAgentsMemory memory, long eventLogPosition, long numEventsRead, boolean reflected) {
+		this.worldModel = worldModel;
+		this.memory = memory;
+		this.eventLogPosition = eventLogPosition;
+		this.numEventsRead = numEventsRead;
+		this.reflected = reflected;
+	}
+
+	////////////////////////////////////////////////////////////
+	//////// WRITING AND READING CHECKPOINTS ///////////////////
+	////////////////////////////////////////////////////////////
+
+	/***
+	 * Write a checkpoint of the given reading state to the indicated file.
+	 * The checkpoint is streamed to a temporary file which then replaces the indicated file, so that a crash while
+	 * checkpointing never destroys the previous checkpoint.
+	 * @param filename the name of the checkpoint file
+	 * @param worldModel the world model to checkpoint
+	 * @param memory the memory of recently observed agents to checkpoint
+	 * @param eventLogPosition the position in the ActionEventLog of the first ActionEvent not reflected in the world model
+	 * @param numEventsRead the number of ActionEvents of the current reading reflected in the world model
+	 * @param reflected true iff the world model has already been reflected on
+	 * @param includeHistory true iff the belief history of the world model should be checkpointed
+	 * @throws IOException
+	 * @throws IllegalStateException if the world model has a decay policy or windowed beliefs, which are not checkpointed
+	 */
+	public static void write(String filename, AffinitybasedWorldModel worldModel, RecentlyObservedAgentsMemory memory,
+			long eventLogPosition, long numEventsRead, boolean reflected, boolean includeHistory) throws IOException {
+		File file = new File(filename);
+		File temporaryFile = new File(filename + ".tmp");
+
+		byte flags = 0;
+		if (includeHistory) { flags |= HISTORY_FLAG; }
+		if (reflected) { flags |= REFLECTED_FLAG; }
+		if (worldModel.isProjected()) { flags |= PROJECTED_FLAG; }
+		if (worldModel.isStoringHistory()) { flags |= STORING_HISTORY_FLAG; }
+
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+			output.writeInt(MAGIC_NUMBER);
+			output.writeShort(FORMAT_VERSION);
+			output.writeByte(flags);
+			output.writeByte(worldModel.getBeliefStorage().ordinal());
+			output.writeLong(eventLogPosition);
+			output.writeLong(numEventsRead);
+			worldModel.writeTo(output, includeHistory);
+			WorldModelCheckpoint.writeString(output, memory.getSecondToLastObservedAgent());
+			WorldModelCheckpoint.writeString(output, memory.getLastObservedAgent());
+		}
+		Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/***
+	 * Read the checkpoint in the indicated file.
+	 * @param filename the name of the checkpoint file
+	 * @return the checkpoint in the indicated file
+	 * @throws IOException if the file cannot be read or is not a checkpoint of a supported version
+	 */
+	public static WorldModelCheckpoint read(String filename) throws IOException {
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+			int magicNumber;
+			try {
+				magicNumber = input.readInt();
+			} catch (EOFException e) {
+				throw new IOException(filename + " is not a world model checkpoint.");
+			}
+			if (magicNumber != MAGIC_NUMBER) {
+				throw new IOException(filename + " is not a world model checkpoint.");
+			}
+			short version = input.readShort();
+			if (version != 1 && version != FORMAT_VERSION) {
+				throw new IOException(filename + " is a version " + version + " checkpoint, but only versions 1 to " + FORMAT_VERSION + " are supported.");
+			}
+			byte flags = input.readByte();
+			BeliefStorage beliefStorage = BeliefStorage.HEAP;
+			boolean storeHistory = true;
+			if (version > 1) {
+				int beliefStorageOrdinal = input.readByte();
+				if (beliefStorageOrdinal < 0 || beliefStorageOrdinal >= BeliefStorage.values().length) {
+					throw new IOException(filename + " records an unknown belief storage.");
+				}
+				beliefStorage = BeliefStorage.values()[beliefStorageOrdinal];
+				storeHistory = (flags & STORING_HISTORY_FLAG) != 0;
+			}
+			long eventLogPosition = input.readLong();
+			long numEventsRead = input.readLong();
+			AffinitybasedWorldModel worldModel = AffinitybasedWorldModel.readFrom(input, (flags & PROJECTED_FLAG) != 0, (flags & HISTORY_FLAG) != 0, beliefStorage, storeHistory);
+			RecentlyObservedAgentsMemory memory = new RecentlyObservedAgentsMemory();
+			try {
+				String secondToLastObservedAgent = WorldModelCheckpoint.readString(input);
+				String lastObservedAgent = WorldModelCheckpoint.readString(input);
+				memory.setRecentlyObservedAgents(secondToLastObservedAgent, lastObservedAgent);
+			} catch (IOException | RuntimeException e) {
+				worldModel.close(); //release the store of a world model never returned
+				throw e;
+			}
+
+			return new WorldModelCheckpoint(worldModel, memory, eventLogPosition, numEventsRead, (flags & REFLECTED_FLAG) != 0);
+		} catch (EOFException e) {
+			throw new IOException(filename + " is truncated.");
+		}
+	}
+
+	////////////////////////////////////////////////////////////
+	//////// HELPERS - RE: ENCODING ////////////////////////////
+	////////////////////////////////////////////////////////////
+
+	/***
+	 * Write the given String (which may be null) as an int length followed by UTF-8 bytes.
+	 * @param output
+	 * @param str
+	 * @throws IOException
+	 */
+	static void writeString(DataOutputStream output, String str) throws IOException {
+		if (str == null) {
+			output.writeInt(-1);
+		} else {
+			byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}
+	}
+
+	/***
+	 * Read a String (which may be null) written by writeString.
+	 * @param input
+	 * @return the String read
+	 * @throws IOException
+	 */
+	static String readString(DataInput input) throws IOException {
+		int length = input.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/***
+	 * Read a String (which may be null) written by writeString from the given buffer.
+	 * @param input
+	 * @return the String read
+	 */
+	static String readString(ByteBuffer input) {
+		int length = input.getInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		input.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/***
+	 * Write the given beliefs as one double per RelationshipType, in the declared order of RelationshipTypes.
+	 * @param output
+	 * @param beliefs
+	 * @throws IOException
+	 */
+	static void writeBeliefs(DataOutputStream output, Map<RelationshipType, Double> beliefs) throws IOException {
+		for (RelationshipType relationshipType : RelationshipType.values()) {
+			output.writeDouble(beliefs.get(relationshipType));
+		}
+	}
+
+	/***
+	 * Read beliefs written by writeBeliefs.
+	 * @param input
+	 * @return map mapping each RelationshipType to the believed probability of that RelationshipType
+	 * @throws IOException
+	 */
+	static Map<RelationshipType, Double> readBeliefs(DataInput input) throws IOException {
+		Map<RelationshipType, Double> beliefs = new HashMap<RelationshipType, Double>();
+		for (RelationshipType relationshipType : RelationshipType.values()) {
+			beliefs.put(relationshipType, input.readDouble());
+		}
+		return beliefs;
+	}
+
+}